@@ -7,6 +7,8 @@
 
 #define MODE_AUTO 0
 #define MODE_CONSTANT 1
+#define MODE_TABLE 2
+#define TABLE_SIZE 141 // 30.0 a 100.0 °C em passos de meio grau
 
 SoftwareSerial bluetooth(RX, TX); // Configuração da comunicação serial com o HC-05
 
@@ -30,9 +32,19 @@ int pwmMinVel = 65;      // PWM mínimo Fan
 int pwmMaxVel = 242;     // PWM máximo Fan
 double k = 1;               // Fator de crescimento exponencial (1 = linear, >1 = mais lento no início, <1 = mais rápido no início)
 
-// Define o modo de operação: MODE_AUTO ou MODE_CONSTANT
+// Tabelas de velocidade (0-100%) por meio grau, enviadas pelo java em quadros L e ativadas por um quadro U
+uint8_t cpuTable[TABLE_SIZE];
+uint8_t gpuTable[TABLE_SIZE];
+
+// Define o modo de operação: MODE_AUTO, MODE_CONSTANT ou MODE_TABLE
 int opMode = MODE_AUTO;
 
+// CRC do último quadro A, C ou U aplicado, respondido à consulta H (0 antes de qualquer perfil)
+unsigned int profileHash = 0;
+
+// Verdadeiro depois que o java mandou um comando pela USB: a Serial passa a levar só o protocolo, sem mensagens de depuração
+bool serialHost = false;
+
 void setup(){ 
   // Configura os pinos de controle como saída
   pinMode(A_PIN_OUT, OUTPUT);  // Define o pino IN1 como saída
@@ -49,69 +61,23 @@ void setup(){
 
 void loop() {   
   if (Serial.available()){
-    // Lê o valor PWM enviado pelo Serial Monitor e aplica na saída
-    targetPwm = Serial.readString().toInt();
-    if(targetPwm != currentPwm){
-      // analogWrite(A_PIN_OUT, targetPwm);
-      setFanSpeedGradual(targetPwm, updateDelay);
-      Serial.println("Pwm da fan alterado: " + String(targetPwm));
-      currentPwm = targetPwm;
-    }
-    Serial.println("Pwm da fan alterado: " + String(targetPwm)); 
-  } else if (bluetooth.available()){
-    String read = bluetooth.readStringUntil('\n');
-    char command = read.charAt(0);
-    if (command == 'T' && opMode == MODE_AUTO) { // Processa dados de temperatura para modo automático linear
-      read = read.substring(1); // remove 'T'
-      int pos1 = read.indexOf(':');
-      int pos2 = read.indexOf(':', pos1+1);
-      float cpuTemp = read.substring(0, pos1).toFloat();
-      float gpuTemp = read.substring(pos1+1, pos2).toFloat();
-      float diskTemp = read.substring(pos2+1).toFloat();
-      Serial.println("BT Read (Temp): " + read);
-      Serial.println("Cpu: " + String(cpuTemp) + " Gpu: " + String(gpuTemp) + " Disk: " + String(diskTemp));
-      targetPwm = temperatureToPwm(cpuTemp, gpuTemp); 
-      if(targetPwm != currentPwm ){
-        Serial.println("Pwm da fan alterado: " + String(targetPwm));
+    String read = Serial.readStringUntil('\n');
+    if (isDigit(read.charAt(0))) {
+      // Lê o valor PWM digitado no Serial Monitor e aplica na saída
+      targetPwm = read.toInt();
+      if(targetPwm != currentPwm){
         // analogWrite(A_PIN_OUT, targetPwm);
         setFanSpeedGradual(targetPwm, updateDelay);
         currentPwm = targetPwm;
       }
-      Serial.println("Pwm da fan igual: " + String(targetPwm));
-    } else if (command == 'C') { // Processa atualização de perfil para PWM constante
-      // Processa comando PWM constante e altera o modo para constante
-      opMode = MODE_CONSTANT;
-      String percentStr = read.substring(1);
-      int percent = percentStr.toInt();
-      targetPwm = percentToPwm(percent, 0, pwmMaxVel);
-      Serial.println("BT Read (PWM %): " + String(percent));
-      Serial.println("Pwm da fan alterado: " + String(targetPwm));
-      analogWrite(A_PIN_OUT, targetPwm);
-    } else if (command == 'A'){ // Processa atualização de perfil para modo automático
-      opMode = MODE_AUTO;
-      // Trata configuração Polinomial: formato "A%d:%d:%d:%d:%d:%d:%.2f\n"
-      Serial.println("BT Read : " + String(read));
-      read.replace(",", ".");
-      String config = read.substring(1); // remove 'A'
-      int pos1 = config.indexOf(':');
-      int pos2 = config.indexOf(':', pos1+1);
-      int pos3 = config.indexOf(':', pos2+1);
-      int pos4 = config.indexOf(':', pos3+1);
-      int pos5 = config.indexOf(':', pos4+1);
-      int pos6 = config.indexOf(':', pos5+1);
-      cpuMinTemp = config.substring(0, pos1).toInt();
-      gpuMinTemp = config.substring(pos1+1, pos2).toInt();
-      cpuMaxTemp = config.substring(pos2+1, pos3).toInt();
-      gpuMaxTemp = config.substring(pos3+1, pos4).toInt();
-      pwmMinVel = percentToPwm(config.substring(pos4+1, pos5).toInt(), 60, 242);
-      pwmMaxVel = percentToPwm(config.substring(pos5+1, pos6).toInt(), 60, 242);
-      k = config.substring(pos6+1).toFloat(); // Fator de crescimento polinomial
-      Serial.println("BT Config Updated: " + String(cpuMinTemp) + ":" + String(gpuMinTemp) + ":" + String(cpuMaxTemp) + ":" + String(gpuMaxTemp));
-      Serial.println("Profile updated: " + String(pwmMinVel) + ":" + String(pwmMaxVel) + ":" + String(k));
+      debug("Pwm da fan alterado: " + String(targetPwm));
     } else {
-      Serial.println("BT Unknown command: " + read);
+      // Comando do java pela USB, no mesmo protocolo do Bluetooth
+      serialHost = true;
+      handleLine(Serial, read);
     }
-    
+  } else if (bluetooth.available()){
+    handleLine(bluetooth, bluetooth.readStringUntil('\n'));
   } else {
       start_time = millis();
       count = 0;
@@ -121,8 +87,12 @@ void loop() {
 
       if(lastRpm < rpm-100 || lastRpm > rpm+100){ //ignorar pequenas flutuações no envio de rpm
         bluetooth.println(rpm);
-        Serial.print(rpm);
-        Serial.println(" rpm");
+        if (serialHost) {
+          Serial.println(rpm);
+        } else {
+          Serial.print(rpm);
+          Serial.println(" rpm");
+        }
         analogWrite(A_PIN_OUT, targetPwm);
         lastRpm = rpm;
       }
@@ -130,6 +100,104 @@ void loop() {
   }
 }
 
+void handleLine(Stream &port, String read) {
+  // Trata uma linha recebida pelo Bluetooth ou pela USB; as respostas voltam pela mesma porta
+  if (read.charAt(0) == '#') { // Comando com número de sequência: "#<seq> <comando>", respondido com K<seq> (ok) ou N<seq> (rejeitado)
+    int sep = read.indexOf(' ');
+    int seq = read.substring(1, sep).toInt();
+    bool ok = sep > 1 && handleCommand(read.substring(sep+1));
+    port.println((ok ? "K" : "N") + String(seq));
+  } else if (read.charAt(0) == 'E') { // Sonda de enlace do java: "E<token>", devolvida sem alteração para medir o tempo de ida e volta
+    port.println(read);
+  } else if (read.charAt(0) == 'H') { // Consulta do perfil em execução: "H<hash>", sem alterar o modo de operação
+    port.println("H" + String(profileHash));
+  } else {
+    handleCommand(read);
+  }
+}
+
+void debug(String message) {
+  // Mensagens para o Serial Monitor, caladas enquanto o java usa a USB
+  if (!serialHost) Serial.println(message);
+}
+
+bool handleCommand(String read) {
+  // Processa um comando recebido pelo Bluetooth ou pela USB. Retorna false se o comando não foi reconhecido
+  char command = read.charAt(0);
+  // Hash do quadro como chegou, antes das alterações abaixo; vale só se o perfil for aplicado
+  unsigned int frameHash = (command == 'A' || command == 'C' || command == 'U') ? stringCrc(read) : 0;
+  if (command == 'T' && opMode == MODE_CONSTANT) { // Temperaturas não mudam o PWM constante; o quadro é aceito e ignorado
+    debug("BT Read (Temp) ignorado no modo constante");
+  } else if (command == 'T') { // Processa dados de temperatura para modo automático ou por tabela
+    read = read.substring(1); // remove 'T'
+    int pos1 = read.indexOf(':');
+    int pos2 = read.indexOf(':', pos1+1);
+    float cpuTemp = read.substring(0, pos1).toFloat();
+    float gpuTemp = read.substring(pos1+1, pos2).toFloat();
+    float diskTemp = read.substring(pos2+1).toFloat();
+    debug("BT Read (Temp): " + read);
+    debug("Cpu: " + String(cpuTemp) + " Gpu: " + String(gpuTemp) + " Disk: " + String(diskTemp));
+    targetPwm = opMode == MODE_TABLE ? tableToPwm(cpuTemp, gpuTemp) : temperatureToPwm(cpuTemp, gpuTemp); 
+    if(targetPwm != currentPwm ){
+      debug("Pwm da fan alterado: " + String(targetPwm));
+      // analogWrite(A_PIN_OUT, targetPwm);
+      setFanSpeedGradual(targetPwm, updateDelay);
+      currentPwm = targetPwm;
+    }
+    debug("Pwm da fan igual: " + String(targetPwm));
+  } else if (command == 'C') { // Processa atualização de perfil para PWM constante
+    // Processa comando PWM constante e altera o modo para constante
+    opMode = MODE_CONSTANT;
+    String percentStr = read.substring(1);
+    int percent = percentStr.toInt();
+    targetPwm = percentToPwm(percent, 0, pwmMaxVel);
+    debug("BT Read (PWM %): " + String(percent));
+    debug("Pwm da fan alterado: " + String(targetPwm));
+    analogWrite(A_PIN_OUT, targetPwm);
+  } else if (command == 'A'){ // Processa atualização de perfil para modo automático
+    opMode = MODE_AUTO;
+    // Trata configuração Polinomial: formato "A%d:%d:%d:%d:%d:%d:%.2f\n"
+    debug("BT Read : " + String(read));
+    read.replace(",", ".");
+    String config = read.substring(1); // remove 'A'
+    int pos1 = config.indexOf(':');
+    int pos2 = config.indexOf(':', pos1+1);
+    int pos3 = config.indexOf(':', pos2+1);
+    int pos4 = config.indexOf(':', pos3+1);
+    int pos5 = config.indexOf(':', pos4+1);
+    int pos6 = config.indexOf(':', pos5+1);
+    cpuMinTemp = config.substring(0, pos1).toInt();
+    gpuMinTemp = config.substring(pos1+1, pos2).toInt();
+    cpuMaxTemp = config.substring(pos2+1, pos3).toInt();
+    gpuMaxTemp = config.substring(pos3+1, pos4).toInt();
+    pwmMinVel = percentToPwm(config.substring(pos4+1, pos5).toInt(), 60, 242);
+    pwmMaxVel = percentToPwm(config.substring(pos5+1, pos6).toInt(), 60, 242);
+    k = config.substring(pos6+1).toFloat(); // Fator de crescimento polinomial
+    debug("BT Config Updated: " + String(cpuMinTemp) + ":" + String(gpuMinTemp) + ":" + String(cpuMaxTemp) + ":" + String(gpuMaxTemp));
+    debug("Profile updated: " + String(pwmMinVel) + ":" + String(pwmMaxVel) + ":" + String(k));
+  } else if (command == 'L') { // Entradas de tabela: "L<c|g><início>:<pares hex>"
+    if (!storeTableEntries(read)) {
+      debug("BT Invalid table entries: " + read);
+      return false;
+    }
+    // As tabelas mudam durante o envio; a curva do modo automático roda até o quadro U conferir o CRC
+    if (opMode == MODE_TABLE) opMode = MODE_AUTO;
+  } else if (command == 'U') { // Ativa as tabelas se o CRC enviado conferir: "U<crc>"
+    unsigned int crc = (unsigned int) read.substring(1).toInt();
+    if (crc != tableCrc()) {
+      debug("BT Table CRC mismatch: " + read);
+      return false;
+    }
+    opMode = MODE_TABLE;
+    debug("Table profile active");
+  } else {
+    debug("BT Unknown command: " + read);
+    return false;
+  }
+  if (frameHash != 0) profileHash = frameHash;
+  return true;
+}
+
 void counter(){
   count++;
 }
@@ -161,6 +229,78 @@ int temperatureToPwm(float cpuTemp, float gpuTemp) {
     return (int)(finalPercentage * (pwmMaxVel - pwmMinVel) + pwmMinVel);
 }
 
+bool storeTableEntries(String read) {
+    // Só grava se o quadro inteiro for válido
+    char table = read.charAt(1);
+    int colon = read.indexOf(':');
+    if ((table != 'c' && table != 'g') || colon < 3) return false;
+    int start = read.substring(2, colon).toInt();
+    int digits = read.length() - colon - 1;
+    int count = digits / 2;
+    if (digits == 0 || digits % 2 != 0 || start < 0 || start + count > TABLE_SIZE) return false;
+
+    for (int i = 0; i < count; i++) {
+      int high = hexValue(read.charAt(colon + 1 + 2 * i));
+      int low = hexValue(read.charAt(colon + 2 + 2 * i));
+      if (high < 0 || low < 0 || high * 16 + low > 100) return false;
+    }
+    uint8_t *target = table == 'c' ? cpuTable : gpuTable;
+    for (int i = 0; i < count; i++) {
+      target[start + i] = hexValue(read.charAt(colon + 1 + 2 * i)) * 16 + hexValue(read.charAt(colon + 2 + 2 * i));
+    }
+    return true;
+}
+
+int hexValue(char c) {
+    if (c >= '0' && c <= '9') return c - '0';
+    if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+    if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+    return -1;
+}
+
+unsigned int crc16(unsigned int crc, uint8_t b) {
+    // Um byte de CRC-16/CCITT-FALSE
+    crc ^= (unsigned int) b << 8;
+    for (int bit = 0; bit < 8; bit++) {
+      crc = (crc & 0x8000) ? (crc << 1) ^ 0x1021 : crc << 1;
+    }
+    return crc;
+}
+
+unsigned int tableCrc() {
+    // CRC-16/CCITT-FALSE sobre a tabela da cpu e depois a da gpu, como FanProtocol.tableCrc no java
+    unsigned int crc = 0xFFFF;
+    for (int i = 0; i < TABLE_SIZE; i++) crc = crc16(crc, cpuTable[i]);
+    for (int i = 0; i < TABLE_SIZE; i++) crc = crc16(crc, gpuTable[i]);
+    return crc;
+}
+
+unsigned int stringCrc(String frame) {
+    // CRC-16/CCITT-FALSE do quadro sem terminador, como FanProtocol.profileHash no java; 0 fica reservado para "nenhum perfil"
+    unsigned int crc = 0xFFFF;
+    for (unsigned int i = 0; i < frame.length(); i++) {
+      char c = frame.charAt(i);
+      if (c == '\r' || c == '\n') break;
+      crc = crc16(crc, (uint8_t) c);
+    }
+    return crc == 0 ? 1 : crc;
+}
+
+int tableIndex(float temp) {
+    // Meio grau por entrada a partir de 30 °C, limitado à tabela
+    int index = (int) ((temp - 30) * 2);
+    if (index < 0) return 0;
+    if (index > TABLE_SIZE - 1) return TABLE_SIZE - 1;
+    return index;
+}
+
+int tableToPwm(float cpuTemp, float gpuTemp) {
+    // Consulta nas tabelas em vez de calcular a curva: a maior velocidade dos dois canais
+    if (cpuTemp < 0 || gpuTemp < 0) return currentPwm; // Prevent read error
+    int percent = max(cpuTable[tableIndex(cpuTemp)], gpuTable[tableIndex(gpuTemp)]);
+    return percentToPwm(percent, 60, 242);
+}
+
 double roundToInterval(double value) { 
   return floor(value * 10) / 10.0;
 }
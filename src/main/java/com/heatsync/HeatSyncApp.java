@@ -85,6 +85,8 @@ public class HeatSyncApp {
             e.printStackTrace();
             System.exit(1); //User opted exit from keepStateFlag being true
         } 
+        // Pick up edits of the config file without a restart
+        FanProfileIOService.startWatching();
         
         SwingUtilities.invokeLater(() -> {
             HeatSyncApp app = new HeatSyncApp();
@@ -7,6 +7,7 @@ import java.util.logging.Logger;
 import com.heatsync.service.BluetoothService;
 import com.heatsync.service.TemperatureMonitor;
 import com.heatsync.service.bluetooth.BluetoothEventListener;
+import com.heatsync.service.bluetooth.InboundFrameType;
 import com.heatsync.ui.BluetoothPanel;
 import com.heatsync.ui.TemperaturePanel;
 
@@ -27,6 +28,8 @@ public class MonitoringController implements BluetoothEventListener {
     private int cpuTempSnapshot = 0;
     private int gpuTempSnapshot = 0;
     private boolean canSendTemperature = false;
+    private long lastTemperatureSentMs = 0;
+    private volatile int currentFanRpm = -1;
     
     private Timer updateTimer;
     
@@ -48,6 +51,7 @@ public class MonitoringController implements BluetoothEventListener {
         this.bluetoothService = bluetoothService;
         this.temperaturePanel = temperaturePanel;
         this.bluetoothPanel = bluetoothPanel;
+        bluetoothService.addInboundHandler(InboundFrameType.RPM, this::onFanRpmReceived);
     }
     
     /**
@@ -61,6 +65,7 @@ public class MonitoringController implements BluetoothEventListener {
                 updateTemperatures();
                 // updatePowerConsumption();
                 sendDataIfNeeded();
+                bluetoothPanel.updateLinkQuality(bluetoothService.isConnected() ? bluetoothService.getLinkQuality() : null);
             }
         }, 0, 1000); // Update every 1 seconds
     }
@@ -78,6 +83,8 @@ public class MonitoringController implements BluetoothEventListener {
         
         temperaturePanel.updateCpuTemperature(cpuTemp);
         temperaturePanel.updateGpuTemperature(gpuTemp);
+        // Looked up in the active profile's compiled table, as the device does
+        temperaturePanel.updateTargetSpeed(bluetoothService.getProfileSwitcher().getTargetSpeed(cpuTemp, gpuTemp));
         // LOGGER.info("updateTemperatures() chamando temperaturePanel.updateFanRpm com rpm = " + currentFanRpm);
         // temperaturePanel.updateFanRpm(currentFanRpm);
     }
@@ -116,17 +123,25 @@ public class MonitoringController implements BluetoothEventListener {
             return;
         }
         if (bluetoothService.isConnected()) {
-            if (canSendTemperature) {
+            // The interval grows when the link prober sees the round trip degrade
+            long interval = bluetoothService.getTelemetryIntervalMs();
+            if (canSendTemperature && System.currentTimeMillis() - lastTemperatureSentMs < interval) {
+                LOGGER.fine("Link degraded. Holding temperature update (interval " + interval + " ms).");
+            } else if (canSendTemperature) {
                 double cpuTemp = temperatureMonitor.getCpuTemperature();
                 double gpuTemp = temperatureMonitor.getGpuTemperature();
                 double diskTemp = temperatureMonitor.getDiskTemperature();
+                long start = System.nanoTime();
                 boolean sent = bluetoothService.sendTemperatureData(cpuTemp, gpuTemp, diskTemp);
+                long sendMs = (System.nanoTime() - start) / 1_000_000L;
                 if (!sent && bluetoothService.isInitialized()) {
                     LOGGER.info("Bluetooth send failed. Attempting reconnect using saved MAC address...");
                     bluetoothService.reconnectToDevice();
                 } else if (sent) {
-                    LOGGER.info("Temperature data sent via Bluetooth: CPU=" + cpuTemp + "°C, GPU=" + gpuTemp + "°C, Disk=" + diskTemp + "°C");
+                    LOGGER.info("Temperature data sent via Bluetooth in " + sendMs + " ms (link RTT p50 <= "
+                            + bluetoothService.getLinkQuality().getRttP50Ms() + " ms): CPU=" + cpuTemp + "°C, GPU=" + gpuTemp + "°C, Disk=" + diskTemp + "°C");
                     canSendTemperature = false; // Reset flag until next significant change
+                    lastTemperatureSentMs = System.currentTimeMillis();
                 }
             } else {
                 LOGGER.info("Temperature change within tolerance. Skipping Bluetooth update.");
@@ -208,11 +223,17 @@ public class MonitoringController implements BluetoothEventListener {
         }
     }
 
+    /**
+     * Receives RPM frames from the read thread and shows them.
+     *
+     * @param rpm The fan speed reported by the device
+     */
     @Override
     public void onFanRpmReceived(int rpm) {
-    //     LOGGER.info("onFanRpmReceived() chamado com rpm = " + rpm);
-    //     updateFanRpmValue(rpm);
-    //     LOGGER.info("Fan RPM atualizado via Bluetooth: " + rpm);
+        if (rpm != currentFanRpm) {
+            currentFanRpm = rpm;
+            temperaturePanel.updateFanRpm(rpm);
+        }
     }
 
     @Override
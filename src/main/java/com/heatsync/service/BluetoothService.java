@@ -5,13 +5,27 @@ import org.slf4j.LoggerFactory;
 
 import com.heatsync.service.bluetooth.BluetoothEventListener;
 import com.heatsync.service.bluetooth.BluetoothManager;
+import com.heatsync.service.bluetooth.CommandResult;
+import com.heatsync.service.bluetooth.ConnectionPool;
+import com.heatsync.service.bluetooth.ConnectionState;
+import com.heatsync.service.bluetooth.ConnectionStateListener;
+import com.heatsync.service.bluetooth.DeviceRegistry;
+import com.heatsync.service.bluetooth.FanProtocol;
+import com.heatsync.service.bluetooth.InboundFrameType;
+import com.heatsync.service.bluetooth.LinkQuality;
+import com.heatsync.service.configIO.FanConfig;
+import com.heatsync.service.configIO.FanCurveTable;
 import com.heatsync.service.configIO.FanProfileIOService;
+import com.heatsync.service.transport.FanLinkTransport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
 
 /**
  * Service that handles Bluetooth communication with peripherals.
@@ -20,15 +34,27 @@ public class BluetoothService implements BluetoothEventListener {
     private static final Logger LOGGER = LoggerFactory.getLogger(BluetoothService.class);
     
     private final BluetoothManager bluetoothManager;
+    private final ConnectionPool connectionPool;
+    private final ProfileSwitcher profileSwitcher;
     private BluetoothEventListener eventListener;
     
     /**
      * Creates a new Bluetooth service.
      */
     public BluetoothService() {
-        LOGGER.info("Initializing BluetoothService with BlueCove (SPP)...");
+        this(null);
+    }
+
+    /**
+     * Creates the service on top of a specific transport, e.g. a TCP or in-memory link
+     * to an emulated controller.
+     *
+     * @param transport The transport, or null for Bluetooth SPP
+     */
+    public BluetoothService(FanLinkTransport transport) {
+        LOGGER.info("Initializing BluetoothService with {}...", transport == null ? "BlueCove (SPP)" : transport.getName());
         try {
-            bluetoothManager = new BluetoothManager();
+            bluetoothManager = transport == null ? new BluetoothManager() : new BluetoothManager(transport);
             bluetoothManager.setEventListener(this);
             if (!bluetoothManager.isInitialized()) {
                 LOGGER.error("BluetoothManager initialized but reported isInitialized() = false");
@@ -39,6 +65,29 @@ public class BluetoothService implements BluetoothEventListener {
             LOGGER.error("Exception during BluetoothManager initialization", e);
             throw new RuntimeException("Failed to initialize BluetoothService", e);
         }
+        connectionPool = new ConnectionPool(bluetoothManager.getTransport());
+        addPoolDevicesFromProperty();
+        profileSwitcher = new ProfileSwitcher(this);
+    }
+
+    /**
+     * Adds the extra cooling pads listed in -Dheatsync.pool.devices (comma separated addresses)
+     * to the connection pool, each with the current automatic profile.
+     */
+    private void addPoolDevicesFromProperty() {
+        String devices = System.getProperty("heatsync.pool.devices", "").trim();
+        if (devices.isEmpty()) return;
+
+        FanConfig config = FanProfileIOService.getConfig();
+        String profile = FanProtocol.autoProfileFrame(
+                config.minCpu(), config.minGpu(), config.maxCpu(), config.maxGpu(),
+                config.minSpeed(), config.maxSpeed(), config.curveGrowthConstant());
+        for (String address : devices.split(",")) {
+            address = address.trim();
+            if (!address.isEmpty() && !address.equalsIgnoreCase(config.macAddress())) {
+                connectionPool.add(address, profile);
+            }
+        }
     }
     
     /**
@@ -110,6 +159,8 @@ public class BluetoothService implements BluetoothEventListener {
      * @return true if the data was sent, false otherwise.
      */
     public boolean sendTemperatureData(double cpuTemp, double gpuTemp, double diskTemp) {
+        // Extra pads get the same telemetry; this never blocks on them
+        connectionPool.broadcastTemperature(cpuTemp, gpuTemp, diskTemp);
         return bluetoothManager.sendTemperatureData(cpuTemp, gpuTemp, diskTemp);
     }
     
@@ -162,6 +213,93 @@ public class BluetoothService implements BluetoothEventListener {
         return bluetoothManager.sendProfileData(cpuMinTemp, gpuMinTemp, cpuMaxTemp, gpuMaxTemp, minSpeed, maxSpeed, k);
     }
     
+    /**
+     * Same as {@link #sendConstantProfile(int)}, but completes when the device acknowledges the frame.
+     * Without the acknowledged mode the result is UNCONFIRMED as soon as the frame is written.
+     * Nothing is sent if the device already runs this profile.
+     *
+     * @param percentage The value (0-100) to send
+     * @return A future with the device answer
+     */
+    public CompletableFuture<CommandResult> sendConstantProfileAcknowledged(int percentage) {
+        return bluetoothManager.sendProfileIfChanged(FanProtocol.constantProfileFrame(percentage));
+    }
+
+    /**
+     * Same as {@link #sendSimplifiedProfileData(int, int, int, int)}, but completes when the
+     * device acknowledges the frame.
+     *
+     * @return A future with the device answer
+     */
+    public CompletableFuture<CommandResult> sendSimplifiedProfileDataAcknowledged(int cpuMinTemp, int gpuMinTemp, int cpuMaxTemp, int gpuMaxTemp) {
+        final int DEFAULT_MIN_SPEED = 0;
+        final int DEFAULT_MAX_SPEED = 100;
+        final double DEFAULT_K = 1.0;
+        return this.sendProfileDataAcknowledged(cpuMinTemp, gpuMinTemp, cpuMaxTemp, gpuMaxTemp,
+                                                DEFAULT_MIN_SPEED, DEFAULT_MAX_SPEED, DEFAULT_K);
+    }
+
+    /**
+     * Same as {@link #sendProfileData(int, int, int, int, int, int, double)}, but completes when the
+     * device acknowledges the frame. Nothing is sent if the device already runs this profile.
+     *
+     * @return A future with the device answer
+     */
+    public CompletableFuture<CommandResult> sendProfileDataAcknowledged(int cpuMinTemp, int gpuMinTemp, int cpuMaxTemp, int gpuMaxTemp, int minSpeed, int maxSpeed, double k) {
+        FanProfileIOService.updateFanProfile(cpuMaxTemp, cpuMinTemp, gpuMaxTemp, gpuMinTemp, maxSpeed, minSpeed, k);
+
+        return bluetoothManager.sendProfileIfChanged(
+                FanProtocol.autoProfileFrame(cpuMinTemp, gpuMinTemp, cpuMaxTemp, gpuMaxTemp, minSpeed, maxSpeed, k));
+    }
+
+    /**
+     * Sends an encoded profile frame, unless the device already runs it.
+     *
+     * @param frame An A or C frame or the frames of a table profile, built with {@link FanProtocol}
+     * @return A future with the device answer
+     */
+    public CompletableFuture<CommandResult> sendProfileFrameAcknowledged(String frame) {
+        return bluetoothManager.sendProfileIfChanged(frame);
+    }
+
+    /**
+     * Uploads a compiled table to the device, which then looks its fan speed up instead of computing
+     * a curve. Nothing is sent if the device already runs these tables.
+     *
+     * @param table The tables, compiled from any kind of profile
+     * @return A future with the device answer to the last frame
+     */
+    public CompletableFuture<CommandResult> sendTableProfileAcknowledged(FanCurveTable table) {
+        return bluetoothManager.sendProfileIfChanged(FanProtocol.tableProfileFrames(table.cpuTable(), table.gpuTable()));
+    }
+
+    /**
+     * Sets what chooses the profile uploaded when a device connects.
+     *
+     * @param resolver Maps the device address to a profile frame, or to null for the saved curve
+     */
+    public void setConnectProfileResolver(Function<String, String> resolver) {
+        bluetoothManager.setConnectProfileResolver(resolver);
+    }
+
+    /**
+     * Gets the switcher of the named profiles.
+     *
+     * @return The profile switcher
+     */
+    public ProfileSwitcher getProfileSwitcher() {
+        return profileSwitcher;
+    }
+
+    /**
+     * Enables the sequence numbered ACK/NAK layer for commands. Takes effect on the next connection.
+     *
+     * @param enabled true to enable
+     */
+    public void setAcknowledgedMode(boolean enabled) {
+        bluetoothManager.setAcknowledgedMode(enabled);
+    }
+
     /**
      * Closes the connection with the current peripheral.
      */
@@ -193,10 +331,75 @@ public class BluetoothService implements BluetoothEventListener {
         return bluetoothManager.isScanning();
     }
     
+    /**
+     * Gets the current state of the link (idle, scanning, connecting, connected, draining or backoff).
+     * @return The connection state.
+     */
+    public ConnectionState getConnectionState() {
+        return bluetoothManager.getConnectionState();
+    }
+
+    /**
+     * Registers a listener notified on every connection state transition.
+     * @param listener The listener to add.
+     */
+    public void addConnectionStateListener(ConnectionStateListener listener) {
+        bluetoothManager.addConnectionStateListener(listener);
+    }
+    
+    /**
+     * Gets the registry of devices seen by inquiry.
+     *
+     * @return The registry
+     */
+    public DeviceRegistry getDeviceRegistry() {
+        return bluetoothManager.getDeviceRegistry();
+    }
+
+    /**
+     * Registers a handler for one type of frame received from the device. Handlers run on the
+     * read thread and must not block.
+     *
+     * @param type The frame type
+     * @param handler Receives the frame's value
+     */
+    public void addInboundHandler(InboundFrameType type, IntConsumer handler) {
+        bluetoothManager.getInboundDispatcher().on(type, handler);
+    }
+
+    /**
+     * Gets the health of the current link: round trip times, throughput and write errors.
+     *
+     * @return The latest measurements
+     */
+    public LinkQuality getLinkQuality() {
+        return bluetoothManager.getLinkQuality();
+    }
+
+    /**
+     * Gets how often telemetry should be sent. Grows automatically when the link degrades.
+     *
+     * @return The interval in milliseconds
+     */
+    public long getTelemetryIntervalMs() {
+        return bluetoothManager.getTelemetryIntervalMs();
+    }
+
+    /**
+     * Gets the pool of additional cooling pads driven alongside the main device.
+     *
+     * @return The pool
+     */
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
     /**
      * Shuts down the Bluetooth service, stopping scans and disconnecting.
      */
     public void shutdown() {
+        profileSwitcher.close();
+        connectionPool.close();
         bluetoothManager.shutdown();
     }
     
@@ -208,6 +411,13 @@ public class BluetoothService implements BluetoothEventListener {
         }
     }
 
+    @Override
+    public void onDeviceLost(Object deviceObj, String address) {
+        if (eventListener != null) {
+            eventListener.onDeviceLost(deviceObj, address);
+        }
+    }
+
     @Override
     public void onDeviceConnected(Object deviceObj) {
         if (eventListener != null) {
@@ -0,0 +1,319 @@
+package com.heatsync.service;
+
+import com.heatsync.service.bluetooth.CommandResult;
+import com.heatsync.service.bluetooth.FanProtocol;
+import com.heatsync.service.configIO.FanConfig;
+import com.heatsync.service.configIO.FanConfigListener;
+import com.heatsync.service.configIO.FanCurveTable;
+import com.heatsync.service.configIO.FanProfile;
+import com.heatsync.service.configIO.FanProfileIOService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Switches between the named profiles of the profile store.
+ *
+ * Profiles are validated when the config is parsed and encoded into their device frames whenever a
+ * config version with different profiles is published, so a switch is a map lookup, a reference swap
+ * and one send (the frames of a table, in turn). The active profile is also what a device gets when
+ * it connects, unless the device has a default profile of its own; that one then becomes active.
+ *
+ * Switching to a curve profile also makes it the saved curve, so it survives a restart. That update
+ * of the config, its file write and its listeners run on a background thread, off the thread that
+ * switched (the EDT, the hotkey thread, or the connect); only the latest curve of a burst is saved.
+ *
+ * Every profile, and the saved curve, is also compiled into its {@link FanCurveTable}, which gives the
+ * fan speed the device aims for at any temperature in two array reads. Points profiles are sent as
+ * those tables; the other kinds keep their short A and C frames.
+ */
+public class ProfileSwitcher implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProfileSwitcher.class);
+
+    /**
+     * Notified on the thread that made the change; UI listeners must hop to the EDT themselves.
+     */
+    public interface Listener {
+        void onProfilesChanged(List<String> names);
+        void onActiveProfileChanged(String name);
+    }
+
+    // The profiles of one config version with their frames and tables, names in store order
+    private static final class Compiled {
+        final Map<String, FanProfile> profiles;
+        final Map<String, String> frames;
+        final Map<String, FanCurveTable> tables;
+        final List<String> names;
+
+        Compiled(Map<String, FanProfile> profiles) {
+            Map<String, String> encoded = new LinkedHashMap<>();
+            Map<String, FanCurveTable> compiledTables = new LinkedHashMap<>();
+            for (FanProfile profile : profiles.values()) {
+                FanCurveTable table = FanCurveTable.compile(profile);
+                compiledTables.put(profile.name(), table);
+                encoded.put(profile.name(), encode(profile, table));
+            }
+            this.profiles = profiles;
+            this.frames = encoded;
+            this.tables = compiledTables;
+            this.names = Collections.unmodifiableList(new ArrayList<>(profiles.keySet()));
+        }
+    }
+
+    private final BluetoothService bluetoothService;
+    private final AtomicReference<String> active = new AtomicReference<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final FanConfigListener configListener = this::onConfigChanged;
+    private final FanConfigListener reloadListener = this::onConfigReloaded;
+    // The curve profile waiting to become the saved curve, null once saved
+    private final AtomicReference<FanProfile> curveToSave = new AtomicReference<>();
+    private final ExecutorService curveSaver = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "heatsync-curve-saver");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Compiled compiled;
+    private volatile FanCurveTable savedCurveTable;
+    // Version of the config that removed the active profile, so a reload can put the device back on the saved curve
+    private volatile long activeRemovedAt = -1L;
+
+    /**
+     * @param bluetoothService The service the switched profiles are sent through
+     */
+    public ProfileSwitcher(BluetoothService bluetoothService) {
+        this.bluetoothService = bluetoothService;
+        this.compiled = new Compiled(FanProfileIOService.getConfig().profiles());
+        this.savedCurveTable = FanCurveTable.compile(FanProfileIOService.getConfig());
+        FanProfileIOService.addConfigListener(configListener);
+        FanProfileIOService.addReloadListener(reloadListener);
+        bluetoothService.setConnectProfileResolver(this::frameForConnect);
+    }
+
+    /**
+     * Makes the named profile active and sends it to the connected device. When no device is
+     * connected the profile is sent on the next connect.
+     *
+     * @param name A profile of the store
+     * @return A future with the device answer; FAILED if there is no such profile
+     */
+    public CompletableFuture<CommandResult> switchTo(String name) {
+        Compiled current = compiled;
+        String frame = name == null ? null : current.frames.get(name);
+        if (frame == null) {
+            LOGGER.warn("No profile named {}", name);
+            return CompletableFuture.completedFuture(new CommandResult(CommandResult.Status.FAILED, -1, 0L));
+        }
+
+        activate(name, current.profiles.get(name));
+        if (!bluetoothService.isConnected()) {
+            LOGGER.info("Profile {} is active and will be sent when a device connects", name);
+            return CompletableFuture.completedFuture(CommandResult.unconfirmed(false));
+        }
+        return bluetoothService.sendProfileFrameAcknowledged(frame);
+    }
+
+    /**
+     * Switches to the n-th profile of the store, counting from 0.
+     *
+     * @return A future with the device answer; FAILED if there is no such profile
+     */
+    public CompletableFuture<CommandResult> switchTo(int index) {
+        List<String> names = compiled.names;
+        return switchTo(index >= 0 && index < names.size() ? names.get(index) : null);
+    }
+
+    /**
+     * @return The profile names, in store order
+     */
+    public List<String> getProfileNames() {
+        return compiled.names;
+    }
+
+    /**
+     * @return The active profile, or null if the saved curve is in use
+     */
+    public String getActiveProfile() {
+        return active.get();
+    }
+
+    /**
+     * @return The encoded frame of a profile, or null if there is no such profile
+     */
+    public String getFrame(String name) {
+        return compiled.frames.get(name);
+    }
+
+    /**
+     * @return The compiled table of a profile, or null if there is no such profile
+     */
+    public FanCurveTable getTable(String name) {
+        return compiled.tables.get(name);
+    }
+
+    /**
+     * @return The compiled table of the active profile, or of the saved curve if none is active
+     */
+    public FanCurveTable getActiveTable() {
+        String name = active.get();
+        FanCurveTable table = name == null ? null : compiled.tables.get(name);
+        return table != null ? table : savedCurveTable;
+    }
+
+    /**
+     * The fan speed the device aims for at these temperatures, looked up in the active table.
+     *
+     * @return The speed in percent, 0-100
+     */
+    public int getTargetSpeed(double cpuTemp, double gpuTemp) {
+        return getActiveTable().speedAt(cpuTemp, gpuTemp);
+    }
+
+    /**
+     * Forgets the active profile, e.g. after a profile was sent from the editor.
+     */
+    public void clearActive() {
+        String name = active.getAndSet(null);
+        if (name != null) {
+            for (Listener listener : listeners) listener.onActiveProfileChanged(null);
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void close() {
+        FanProfileIOService.removeConfigListener(configListener);
+        FanProfileIOService.removeReloadListener(reloadListener);
+        // A curve switched to just before exit still reaches the config writer, which flushes on exit
+        curveSaver.shutdown();
+        try {
+            curveSaver.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Chooses the frame uploaded when a device connects: its default profile, else the active one.
+     */
+    private String frameForConnect(String address) {
+        Compiled current = compiled;
+        FanProfile deviceDefault = FanProfileIOService.getConfig().profileForDevice(address);
+        if (deviceDefault != null && current.frames.containsKey(deviceDefault.name())) {
+            LOGGER.info("Device {} starts with its default profile {}", address, deviceDefault.name());
+            activate(deviceDefault.name(), current.profiles.get(deviceDefault.name()));
+            return current.frames.get(deviceDefault.name());
+        }
+        String name = active.get();
+        return name == null ? null : current.frames.get(name);
+    }
+
+    private void activate(String name, FanProfile profile) {
+        String previous = active.getAndSet(name);
+        if (!profile.isConstant() && !profile.isPoints()) {
+            curveToSave.set(profile);
+            curveSaver.execute(this::saveCurve);
+        }
+        if (!name.equals(previous)) {
+            LOGGER.info("Active profile: {}", name);
+            for (Listener listener : listeners) listener.onActiveProfileChanged(name);
+        }
+    }
+
+    // Runs once per switch; the first run saves the latest curve, the others find nothing left to do
+    private void saveCurve() {
+        FanProfile profile = curveToSave.get();
+        if (profile == null) return;
+        FanProfileIOService.applyNamedProfile(profile);
+        curveToSave.compareAndSet(profile, null);
+    }
+
+    private void onConfigChanged(FanConfig previous, FanConfig current) {
+        if (!current.sameProfile(previous)) {
+            savedCurveTable = FanCurveTable.compile(current);
+        }
+
+        // A saved curve edited elsewhere no longer is the active curve profile; one still waiting to be
+        // saved is, whatever was saved before it
+        String name = active.get();
+        FanProfile activeProfile = name == null ? null : compiled.profiles.get(name);
+        if (activeProfile != null && !activeProfile.isConstant() && !activeProfile.isPoints() && !isSavedCurve(activeProfile, current)
+                && !activeProfile.equals(curveToSave.get()) && active.compareAndSet(name, null)) {
+            for (Listener listener : listeners) listener.onActiveProfileChanged(null);
+        }
+
+        if (current.profiles().equals(compiled.profiles)) return;
+
+        Compiled recompiled = new Compiled(current.profiles());
+        compiled = recompiled;
+        LOGGER.info("Profile store holds {} profiles", recompiled.names.size());
+        for (Listener listener : listeners) listener.onProfilesChanged(recompiled.names);
+
+        name = active.get();
+        if (name != null && !recompiled.frames.containsKey(name) && active.compareAndSet(name, null)) {
+            activeRemovedAt = current.version();
+            for (Listener listener : listeners) listener.onActiveProfileChanged(null);
+        }
+    }
+
+    /**
+     * Pushes what an outside edit of the config file changed to the connected device, and nothing else:
+     * the active profile's frame if its definition changed, else the saved curve if it changed or the
+     * active profile was removed. Device defaults and the mac address apply from the next connect.
+     */
+    private void onConfigReloaded(FanConfig previous, FanConfig current) {
+        if (!bluetoothService.isConnected()) return;
+
+        String name = active.get();
+        if (name != null) {
+            if (!Objects.equals(current.profiles().get(name), previous.profiles().get(name))) {
+                LOGGER.info("Profile {} changed in the config file, resending it", name);
+                switchTo(name);
+            }
+            return;
+        }
+
+        if (!current.sameProfile(previous) || activeRemovedAt == current.version()) {
+            LOGGER.info("Saved curve changed in the config file, resending it");
+            bluetoothService.sendProfileFrameAcknowledged(FanProtocol.autoProfileFrame(current.minCpu(), current.minGpu(),
+                    current.maxCpu(), current.maxGpu(), current.minSpeed(), current.maxSpeed(), current.curveGrowthConstant()));
+        }
+    }
+
+    private static boolean isSavedCurve(FanProfile profile, FanConfig config) {
+        return profile.minCpu() == config.minCpu() && profile.maxCpu() == config.maxCpu()
+                && profile.minGpu() == config.minGpu() && profile.maxGpu() == config.maxGpu()
+                && profile.minSpeed() == config.minSpeed() && profile.maxSpeed() == config.maxSpeed()
+                && profile.curveGrowthConstant() == config.curveGrowthConstant();
+    }
+
+    private static String encode(FanProfile profile, FanCurveTable table) {
+        if (profile.isConstant()) {
+            return FanProtocol.constantProfileFrame(profile.constantSpeed());
+        }
+        if (profile.isPoints()) {
+            return FanProtocol.tableProfileFrames(table.cpuTable(), table.gpuTable());
+        }
+        return FanProtocol.autoProfileFrame(profile.minCpu(), profile.minGpu(), profile.maxCpu(), profile.maxGpu(),
+                profile.minSpeed(), profile.maxSpeed(), profile.curveGrowthConstant());
+    }
+}
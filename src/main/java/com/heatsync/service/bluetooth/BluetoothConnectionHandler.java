@@ -8,8 +8,6 @@ import javax.microedition.io.StreamConnection;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Responsible for managing connections with Bluetooth devices.
@@ -26,8 +24,6 @@ public class BluetoothConnectionHandler {
     private OutputStream outputStream = null;
     private boolean connected = false;
     
-    // Executor for async operations
-    private final ExecutorService executor = Executors.newCachedThreadPool();
     private Thread readThread;
     private volatile boolean keepReading = false;
     
@@ -4,7 +4,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.bluetooth.RemoteDevice;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -151,13 +150,19 @@ public class BluetoothDeviceScanner {
         // Check device information
         LOGGER.debug("Discovered device - Address: {}, Raw name: {}, RSSI: {}", address, name, rssi);
         
-        // If the name is empty, try to get it from the device or use the address as identification
+        // If the name is empty, use the cached one or the address; asking the device here would
+        // block discovery, so the name is requested in the background and arrives as an update
         if (name == null || name.isEmpty()) {
-            try {
-                name = device.getFriendlyName(false);
-            } catch (IOException e) {
-                LOGGER.warn("Could not retrieve device name", e);
+            String cached = bluetoothManager != null ? bluetoothManager.getNameResolver().cached(address) : null;
+            if (cached != null) {
+                name = cached;
+            } else {
                 name = "Device " + address;
+                if (bluetoothManager != null) {
+                    final int sightingRssi = rssi;
+                    bluetoothManager.getNameResolver().resolve(address, device,
+                            (mac, resolved) -> onNameResolved(device, resolved, mac, sightingRssi));
+                }
             }
         }
         
@@ -170,4 +175,11 @@ public class BluetoothDeviceScanner {
             eventListener.onDeviceDiscovered(device, name, address, rssi);
         }
     }
-} 
\ No newline at end of file
+
+    private void onNameResolved(RemoteDevice device, String name, String address, int rssi) {
+        LOGGER.info("Resolved device name: {} ({})", name, address);
+        if (eventListener != null) {
+            eventListener.onDeviceDiscovered(device, name, address, rssi);
+        }
+    }
+}
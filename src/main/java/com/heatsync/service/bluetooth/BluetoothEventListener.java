@@ -13,6 +13,14 @@ public interface BluetoothEventListener extends BluetoothDataListener {
      * @param rssi The signal strength (RSSI)
      */
     void onDeviceDiscovered(Object deviceObj, String name, String address, int rssi);
+
+    /**
+     * Called when a previously discovered device has not been seen for a while.
+     *
+     * @param deviceObj The device object
+     * @param address The MAC address of the device
+     */
+    default void onDeviceLost(Object deviceObj, String address) {}
     
     /**
      * Called when a device is successfully connected.
@@ -4,24 +4,30 @@ import javax.bluetooth.*;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.HashMap;
-import java.util.Map;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.Vector;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import javax.microedition.io.Connector;
-import javax.microedition.io.StreamConnection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
-import java.text.DecimalFormat;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.heatsync.service.BluetoothService;
+import com.heatsync.service.configIO.FanConfig;
+import com.heatsync.service.configIO.FanConfigListener;
 import com.heatsync.service.configIO.FanProfileIOService;
+import com.heatsync.service.transport.FanLink;
+import com.heatsync.service.transport.FanLinkTransport;
+import com.heatsync.service.transport.LinkMetrics;
+import com.heatsync.service.transport.SerialTransport;
+import com.heatsync.service.transport.TcpTransport;
 import com.heatsync.ui.BluetoothPanel;
 import com.profesorfalken.jsensors.model.sensors.Fan;
 
@@ -37,41 +43,211 @@ public class BluetoothManager implements DiscoveryListener {
     private static final UUID SPP_UUID = new UUID("1101", true); // Serial Port Profile UUID
     
     private DiscoveryAgent discoveryAgent;
-    private final Map<String, RemoteDevice> discoveredDevices = new HashMap<>();
+    private final DeviceRegistry deviceRegistry = new DeviceRegistry();
+    private final DeviceNameResolver nameResolver = new DeviceNameResolver();
+    private static final long DEVICE_EVICTION_PERIOD_MS = 5000L;
     private BluetoothEventListener eventListener;
-    private boolean isInitialized = false;
-    private boolean isScanning = false;
+    private volatile boolean isInitialized = false;
     private int minimumRssi = -80; // Default RSSI filter threshold
     
-    // Connection related fields
-    private StreamConnection streamConnection;
-    private InputStream inputStream;
-    private OutputStream outputStream;
-    private RemoteDevice connectedDevice;
-    private String connectedDeviceAddress;
-    private boolean isConnected = false;
-    private Thread readThread;
-    private volatile boolean keepReading = false;
-    private boolean firstReading = true; // Flag to indicate if it's the first reading
-    private volatile boolean reconnecting = false;
-    private volatile boolean connectionAttemptInProgress = false;
-    private static final int RECONNECT_MAX_ATTEMPTS = 3;
-    private static final long RECONNECT_INITIAL_DELAY_MS = 1200L;
-    private static final long RECONNECT_DELAY_STEP_MS = 1200L;
-    private static final int MAX_CONSECUTIVE_FAILURES = 3;
-    private static final long RECONNECT_COOLDOWN_MS = 12_000L;
-    private int consecutiveFailures = 0;
-    private long lastReconnectAttemptAt = 0L;
+    // Connection state. Scanning, connecting, connected, draining and backoff are mutually
+    // exclusive and only change through compare-and-set transitions.
+    private final ConnectionStateMachine connectionState = new ConnectionStateMachine();
+    private static final Set<ConnectionState> CONNECTABLE_STATES = EnumSet.of(ConnectionState.IDLE, ConnectionState.SCANNING);
+
+    // Connection related fields. Written by the attempt that owns the CONNECTING state and
+    // published to other threads by the CONNECTING -> CONNECTED transition.
+    private final FanLinkTransport transport;
+    private volatile FanLink link;
+    private volatile InputStream inputStream;
+    private volatile OutputStream outputStream;
+    private volatile RemoteDevice connectedDevice;
+    private volatile String connectedDeviceAddress;
+    private volatile StackExecutor.Task readTask;
+    // Startup fast path: connect to the saved MAC directly, inquire only if that fails
+    private final AtomicBoolean startupConnectPending = new AtomicBoolean(false);
+    private final AtomicBoolean awaitingSavedDevice = new AtomicBoolean(false);
+    private final AtomicBoolean firstCommandSent = new AtomicBoolean(false);
+    private volatile long launchToFirstCommandMs = -1L;
+    // Reconnect timing (backoff, jitter, learned per-device recovery time)
+    private final ReconnectPolicy reconnectPolicy = new ReconnectPolicy();
+    // Set when an established link was lost and not yet recovered; cleared by an explicit disconnect
+    private final AtomicBoolean reconnectWanted = new AtomicBoolean(false);
+    // Held while reconnectWanted is acted on, so an explicit close is never followed by a cycle
+    // that a failure decided on just before it
+    private final Object reconnectLock = new Object();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
+
+    // Optional acknowledged command layer (enable with -Dheatsync.bluetooth.ack=true)
+    private volatile boolean acknowledgedMode = Boolean.getBoolean("heatsync.bluetooth.ack");
+    private volatile CommandPipeline commandPipeline;
+    private final Object writeLock = new Object();
     
-    // Executor for async operations
-    private final ExecutorService executor = Executors.newCachedThreadPool();
-    private final ScheduledExecutorService reconnectScheduler = Executors.newSingleThreadScheduledExecutor();
+    // Threads of the manager: named, cancellable tasks on a timer and workers
+    private final StackExecutor executor = new StackExecutor("bt");
+    private final ScheduledExecutorService reconnectScheduler = executor.scheduler();
+    private volatile StackExecutor.Task pendingReconnect;
+
+    // Burst/idle duty cycle of device discovery
+    private final DiscoveryScheduler discoveryScheduler;
+
+    // Round trip, throughput and write error measurements of the live link
+    private final LinkProber linkProber = new LinkProber(reconnectScheduler, this::writeFrame);
+
+    // Coalesces the frames of the send methods and the acknowledged layer into one write per window.
+    // A frame counts as sent once its batch reached the link
+    private final OutboundBatcher outboundBatcher = new OutboundBatcher(reconnectScheduler, this::writeFrame,
+            this::registerBluetoothSuccess, this::handleBatchedWriteFailure);
+
+    // Uploads the profile on connect only when the device does not run it already
+    private final ProfileSync profileSync = new ProfileSync(reconnectScheduler, this::writeFrame, this::sendProfileFrames);
+
+    // Without acknowledgements, the next frame of a table profile waits out one firmware tachometer window
+    private static final long UNACKNOWLEDGED_FRAME_GAP_MS = 1100L;
+
+    // A write error with the link it happened on, or null when there was none, so a failure that
+    // surfaces late never tears down the link that replaced it
+    private static final class LinkWriteException extends IOException {
+        private final transient FanLink link;
+
+        LinkWriteException(FanLink link, String message, Throwable cause) {
+            super(message, cause);
+            this.link = link;
+        }
+    }
+
+    // Automatic profile frame of the saved config, encoded once per config version
+    private record SavedProfileFrame(long version, String frame) {}
+    private volatile SavedProfileFrame savedProfileFrame;
+    private final FanConfigListener configListener = (previous, current) -> savedProfileFrame(current);
+
+    // Chooses the profile frame uploaded when a device connects; the saved curve when unset or it returns null
+    private volatile Function<String, String> connectProfileResolver;
+
+    // Typed frames from the device; values of the latest PWM and version frames, -1 until received
+    private final InboundDispatcher inboundDispatcher = new InboundDispatcher();
+    private volatile int appliedPwm = -1;
+    private volatile int firmwareVersion = -1;
     
     /**
-     * Creates a new Bluetooth manager using BlueCove.
+     * Creates a new Bluetooth manager using BlueCove, unless another transport is selected
+     * with -Dheatsync.transport=tcp://host:port or serial:/dev/ttyUSB0.
      */
     public BluetoothManager() {
-        init();
+        this(transportFromProperty());
+    }
+
+    /**
+     * Creates a manager that reaches the controller through the given transport.
+     *
+     * @param transport The transport, or null for Bluetooth SPP through BlueCove
+     */
+    public BluetoothManager(FanLinkTransport transport) {
+        discoveryScheduler = new DiscoveryScheduler(reconnectScheduler, this::startInquiryCycle);
+        registerInboundHandlers();
+        FanProfileIOService.addConfigListener(configListener);
+        connectionState.addListener((from, to) -> {
+            if (to == ConnectionState.CONNECTING || to == ConnectionState.CONNECTED || to == ConnectionState.BACKOFF) {
+                // Inquiry and RFCOMM share the adapter: no discovery while a link is made or held
+                discoveryScheduler.suspend();
+            } else if (to == ConnectionState.IDLE && from != ConnectionState.SCANNING) {
+                discoveryScheduler.onLinkIdle(() -> connectionState.is(ConnectionState.IDLE));
+            }
+        });
+        deviceRegistry.addListener(new DeviceRegistryListener() {
+            @Override
+            public void onDeviceAdded(DiscoveredDevice device) {
+                if (eventListener != null) {
+                    String name = device.getName() != null ? device.getName() : "[Unknown]";
+                    eventListener.onDeviceDiscovered(device.getDevice(), name, device.getAddress(), device.getLastRssi());
+                }
+            }
+
+            @Override
+            public void onDeviceUpdated(DiscoveredDevice device) {
+                onDeviceAdded(device);
+            }
+
+            @Override
+            public void onDeviceRemoved(DiscoveredDevice device) {
+                if (eventListener != null) {
+                    eventListener.onDeviceLost(device.getDevice(), device.getAddress());
+                }
+            }
+        });
+        reconnectScheduler.scheduleWithFixedDelay(deviceRegistry::evictExpired,
+                DEVICE_EVICTION_PERIOD_MS, DEVICE_EVICTION_PERIOD_MS, TimeUnit.MILLISECONDS);
+
+        FanLinkTransport fallback = fallbackTransportFromProperty();
+        if (transport == null) {
+            if (executor.getMode() == StackExecutor.Mode.VIRTUAL) {
+                LOGGER.warn("Virtual threads with BlueCove: every blocked native read pins a carrier thread. Prefer -Dheatsync.threads=platform.");
+            }
+            FanLinkTransport spp = new BluetoothSppTransport(() -> discoveryAgent, this::discoveredDevice);
+            this.transport = fallback != null ? new LinkSupervisor(Arrays.asList(spp, fallback), executor) : spp;
+            init();
+            if (!isInitialized && fallback != null) {
+                // The adapter is unusable, but the controller can still be reached over the fallback
+                LOGGER.warn("Bluetooth is unavailable. Connecting through {} only.", fallback.getName());
+                isInitialized = true;
+                connectSavedDeviceAtStartup();
+            }
+        } else {
+            // No adapter involved: discovery is unavailable, connecting is not
+            this.transport = fallback != null ? new LinkSupervisor(Arrays.asList(transport, fallback), executor) : transport;
+            isInitialized = true;
+            LOGGER.info("BluetoothManager using transport {}", this.transport.getName());
+            connectSavedDeviceAtStartup();
+        }
+    }
+
+    private static FanLinkTransport transportFromProperty() {
+        String spec = System.getProperty("heatsync.transport");
+        if (spec == null || spec.isEmpty() || spec.equals("bluetooth")) {
+            return null;
+        }
+        if (spec.startsWith("tcp://")) {
+            return TcpTransport.parse(spec);
+        }
+        if (spec.startsWith("serial:")) {
+            return SerialTransport.parse(spec);
+        }
+        LOGGER.warn("Unknown transport '{}'. Using Bluetooth.", spec);
+        return null;
+    }
+
+    /**
+     * Second path to the same controller, kept open alongside the main transport and used when it
+     * fails or is slower: -Dheatsync.transport.fallback=serial:auto (or serial:/dev/ttyACM0, tcp://...).
+     */
+    private static FanLinkTransport fallbackTransportFromProperty() {
+        String spec = System.getProperty("heatsync.transport.fallback");
+        if (spec == null || spec.isEmpty()) {
+            return null;
+        }
+        if (spec.startsWith("serial:")) {
+            return SerialTransport.parse(spec);
+        }
+        if (spec.startsWith("tcp://")) {
+            return TcpTransport.parse(spec);
+        }
+        LOGGER.warn("Unknown fallback transport '{}'. Ignored.", spec);
+        return null;
+    }
+
+    /**
+     * Startup fast path: connect to the saved device directly, scan only if that fails.
+     */
+    private void connectSavedDeviceAtStartup() {
+        String savedMac = FanProfileIOService.getMacAddress();
+        if (savedMac != null && !savedMac.trim().isEmpty()) {
+            LOGGER.info("Attempting to connect to the last MAC address: {}", savedMac);
+            startupConnectPending.set(true);
+            if (!connectToDevice(savedMac)) {
+                startupConnectPending.set(false);
+                startDiscoveryForSavedDevice();
+            }
+        }
     }
     
     /**
@@ -122,10 +298,7 @@ public class BluetoothManager implements DiscoveryListener {
             LOGGER.info("Local device obtained successfully");
             discoveryAgent = localDevice.getDiscoveryAgent();
             isInitialized = true;
-            if(FanProfileIOService.getMacAddress() != null) {
-                LOGGER.info("Attempting to connect to the last MAC address: {}", FanProfileIOService.getMacAddress());
-                startDeviceDiscovery();
-            } 
+            connectSavedDeviceAtStartup();
             LOGGER.info("BluetoothManager initialized successfully.");
             LOGGER.info("Local device address: {}", localDevice.getBluetoothAddress());
             LOGGER.info("Local device name: {}", localDevice.getFriendlyName());
@@ -217,29 +390,46 @@ public class BluetoothManager implements DiscoveryListener {
             LOGGER.error("Cannot start discovery, BlueCove is not initialized.");
             return false;
         }
+        if (discoveryAgent == null) {
+            LOGGER.warn("Discovery is not available on transport {}.", transport.getName());
+            return false;
+        }
         
-        if (isScanning) {
-            LOGGER.warn("Discovery already in progress.");
-            return true;
+        return discoveryScheduler.request();
+    }
+
+    /**
+     * Starts one inquiry cycle. Called by the discovery scheduler at the start of each burst.
+     *
+     * @return true if an inquiry is running
+     */
+    private boolean startInquiryCycle() {
+        if (!connectionState.transition(ConnectionState.IDLE, ConnectionState.SCANNING)) {
+            if (connectionState.is(ConnectionState.SCANNING)) {
+                LOGGER.warn("Discovery already in progress.");
+                return true;
+            }
+            LOGGER.warn("Cannot start discovery while {}.", connectionState.get());
+            return false;
         }
         
         try {
-            LOGGER.info("Starting Bluetooth device discovery (indefinite)...");
-            discoveredDevices.clear();
+            LOGGER.info("Starting Bluetooth device discovery burst...");
             boolean started = discoveryAgent.startInquiry(DiscoveryAgent.GIAC, this);
             if (started) {
-                isScanning = true;
+                discoveryScheduler.onInquiryStarted();
                 LOGGER.info("Bluetooth discovery started successfully.");
             } else {
                 LOGGER.error("Failed to start Bluetooth discovery.");
+                connectionState.transition(ConnectionState.SCANNING, ConnectionState.IDLE);
             }
             return started;
         } catch (BluetoothStateException e) {
             LOGGER.error("Error starting Bluetooth discovery", e);
+            connectionState.transition(ConnectionState.SCANNING, ConnectionState.IDLE);
             if (eventListener != null) {
                 eventListener.onScanFailed(-1);
             }
-            isScanning = false; // Ensure isScanning is false on failure
             return false;
         }
     }
@@ -248,15 +438,25 @@ public class BluetoothManager implements DiscoveryListener {
      * Stops the discovery of Bluetooth devices.
      */
     public void stopDeviceDiscovery() {
-        if (isScanning) {
+        boolean sessionActive = discoveryScheduler.isActive();
+        discoveryScheduler.cancel();
+        if (connectionState.transition(ConnectionState.SCANNING, ConnectionState.IDLE)) {
             LOGGER.info("Stopping Bluetooth discovery...");
-            try {
-                discoveryAgent.cancelInquiry(this);
-                LOGGER.info("Bluetooth discovery stopped.");
-            } catch (Exception e) {
-                LOGGER.error("Error stopping Bluetooth discovery", e);
-            }
-            isScanning = false;
+            cancelInquiry();
+        } else if (sessionActive && eventListener != null) {
+            // Idle between bursts: no inquiry to cancel, so no completion callback will report the stop
+            LOGGER.info("Discovery session ended between bursts.");
+            eventListener.onScanStopped();
+        }
+    }
+
+    private void cancelInquiry() {
+        if (discoveryAgent == null) return;
+        try {
+            discoveryAgent.cancelInquiry(this);
+            LOGGER.info("Bluetooth discovery stopped.");
+        } catch (Exception e) {
+            LOGGER.error("Error stopping Bluetooth discovery", e);
         }
     }
     
@@ -267,142 +467,173 @@ public class BluetoothManager implements DiscoveryListener {
      * @return true if the connection attempt was initiated, false otherwise
      */
     public boolean connectToDevice(String deviceAddress) {
-        return connectToDevice(deviceAddress, false, 0);
-    }
-
-    /**
-     * Attempts to connect to a specific device by MAC address.
-     * Supports retry attempts for reconnect flows.
-     *
-     * @param deviceAddress MAC address of the device
-     * @param reconnectAttempt true when called from a reconnect flow
-     * @param attemptNumber current attempt number starting at 0
-     * @return true if the connection attempt was initiated, false otherwise
-     */
-    private boolean connectToDevice(String deviceAddress, boolean reconnectAttempt, int attemptNumber) {
         if (!isInitialized) {
             LOGGER.error("Cannot connect, BlueCove is not initialized.");
             return false;
         }
 
-        if (connectionAttemptInProgress || reconnecting) {
-            LOGGER.warn("Connection attempt already in progress. Ignoring new request for {}.", deviceAddress);
-            return false;
-        }
-
         if (deviceAddress == null || deviceAddress.trim().isEmpty()) {
             LOGGER.error("Cannot connect: device address is null or empty.");
             return false;
         }
         
-        if (isConnected) {
+        if (connectionState.is(ConnectionState.CONNECTED)) {
             LOGGER.warn("Already connected to a device. Disconnecting first...");
             closeConnection();
         }
 
-        final RemoteDevice device = discoveredDevices.get(deviceAddress);
+        ConnectionState previous = connectionState.transitionFromAny(CONNECTABLE_STATES, ConnectionState.CONNECTING);
+        if (previous == null) {
+            LOGGER.warn("Connection attempt already in progress ({}). Ignoring new request for {}.", connectionState.get(), deviceAddress);
+            return false;
+        }
+        if (previous == ConnectionState.SCANNING) {
+            // Inquiry and paging share the radio; the connect path stops discovery anyway
+            cancelInquiry();
+        }
+
+        final RemoteDevice device = discoveredDevice(deviceAddress);
         if (device == null) {
             LOGGER.warn("Device with address {} not found in discovered devices. Trying direct connection by MAC.", deviceAddress);
         }
 
-        scheduleConnectionAttempt(deviceAddress, device, reconnectAttempt, attemptNumber);
+        executor.submit("connect-" + deviceAddress, () -> runConnectionAttempt(deviceAddress, device, false, 0));
         return true;
     }
 
-    private void scheduleConnectionAttempt(String deviceAddress, RemoteDevice discoveredDevice, boolean reconnectAttempt, int attemptNumber) {
-        connectionAttemptInProgress = true;
-        long delayMs = reconnectAttempt
-                ? RECONNECT_INITIAL_DELAY_MS + (long) attemptNumber * RECONNECT_DELAY_STEP_MS
-                : 0L;
+    /**
+     * Performs one connection attempt. The caller must have moved the state machine to CONNECTING;
+     * this method always leaves it in CONNECTED, BACKOFF or IDLE.
+     */
+    private void runConnectionAttempt(String deviceAddress, RemoteDevice discoveredDevice, boolean reconnectAttempt, int attemptNumber) {
+        long attemptStart = System.nanoTime();
+        try {
+            LOGGER.info("Attempting to connect to device: {}", deviceAddress);
+            
+            // Open the link (for SPP: cached service URL first, SDP on miss or failure)
+            FanLink opened = transport.open(deviceAddress);
+            link = opened;
+            inputStream = opened.getInputStream();
+            outputStream = opened.getOutputStream();
 
-        Runnable connectionTask = () -> executor.submit(() -> {
-            try {
-                LOGGER.info("Attempting to connect to device: {}", deviceAddress);
-                
-                // First, search for services on the remote device
-                LOGGER.info("Searching for SPP service on device: {}", deviceAddress);
-                String connectionUrl = searchService(deviceAddress);
-                
-                if (connectionUrl == null) {
-                    LOGGER.error("No SPP service found on device: {}", deviceAddress);
-                    if (eventListener != null) {
-                        eventListener.onDeviceDisconnected(discoveredDevice != null ? discoveredDevice : deviceAddress, -1);
-                    }
-                    return;
-                }
-                
-                // Connect to the service
-                LOGGER.info("Connecting to: {}", connectionUrl);
-                streamConnection = (StreamConnection) Connector.open(connectionUrl);
-                
-                // Get the input and output streams
-                inputStream = streamConnection.openInputStream();
-                outputStream = streamConnection.openOutputStream();
-                
-                // Mark as connected
-                connectedDevice = discoveredDevice;
-                connectedDeviceAddress = deviceAddress;
-                isConnected = true;
-                reconnecting = false;
-                consecutiveFailures = 0;
-                lastReconnectAttemptAt = 0L;
-                
-                // Start the read thread
-                startReadThread();
-                
-                // Notify success
-                if (eventListener != null) {
-                    eventListener.onDeviceConnected(discoveredDevice != null ? discoveredDevice : deviceAddress);
-                }
-                
+            if (acknowledgedMode) {
+                // Same ordered path as the unacknowledged frames, so an acked frame never overtakes them
+                commandPipeline = new CommandPipeline(outboundBatcher::submit, reconnectScheduler);
+            }
+
+            connectedDevice = discoveredDevice;
+            connectedDeviceAddress = deviceAddress;
+            consecutiveFailures.set(0);
+
+            // Mark as connected
+            if (!connectionState.transition(ConnectionState.CONNECTING, ConnectionState.CONNECTED)) {
+                LOGGER.warn("Connection to {} completed but state is now {}. Discarding link.", deviceAddress, connectionState.get());
+                releaseConnectionResources();
+                return;
+            }
             
-                FanProfileIOService.setMacAddress(deviceAddress); // Save the MAC address for future reference
-                
-                sendProfileData(FanProfileIOService.getMinCpu(), FanProfileIOService.getMinGpu(), FanProfileIOService.getMaxCpu(), FanProfileIOService.getMaxGpu(), FanProfileIOService.getMinSpeed(), FanProfileIOService.getMaxSpeed(), FanProfileIOService.getCurveGrowthConstant()); 
-                stopDeviceDiscovery(); // Stop discovery after connection
-                LOGGER.info("Successfully connected to device: {}", deviceAddress);
-                
-            } catch (IOException e) {
-                LOGGER.error("Error connecting to device: {}", deviceAddress, e);
-                closeConnection();
-                
-                if (eventListener != null) {
-                    eventListener.onDeviceDisconnected(discoveredDevice != null ? discoveredDevice : deviceAddress, -2);
-                }
+            long attemptMs = (System.nanoTime() - attemptStart) / 1_000_000L;
+            reconnectWanted.set(false);
+            awaitingSavedDevice.set(false);
+            if (startupConnectPending.getAndSet(false)) {
+                LOGGER.info("Startup connect to {} succeeded in {} ms", deviceAddress, attemptMs);
+            }
+            if (reconnectAttempt) {
+                long recoveryMs = reconnectPolicy.onConnected(deviceAddress, attemptMs);
+                LOGGER.info("Reconnected to {} after {} ms (attempt {}). Stats: {}",
+                        deviceAddress, recoveryMs, attemptNumber + 1, reconnectPolicy.getStats(deviceAddress));
+            }
 
-                if (reconnectAttempt && attemptNumber + 1 < RECONNECT_MAX_ATTEMPTS) {
-                    scheduleReconnectAttempt(deviceAddress, attemptNumber + 1);
-                } else if (reconnectAttempt) {
-                    reconnecting = false;
-                    LOGGER.warn("Reconnect attempts exhausted for device {}", deviceAddress);
+            // Start the read thread
+            startReadThread();
+            linkProber.start(opened);
+            
+            // Notify success
+            if (eventListener != null) {
+                eventListener.onDeviceConnected(discoveredDevice != null ? discoveredDevice : deviceAddress);
+            }
+            
+        
+            FanProfileIOService.setMacAddress(deviceAddress); // Save the MAC address for future reference
+            
+            Function<String, String> resolver = connectProfileResolver;
+            String connectFrame = resolver != null ? resolver.apply(deviceAddress) : null;
+            profileSync.onConnected(deviceAddress, connectFrame != null ? connectFrame : savedProfileFrame(FanProfileIOService.getConfig()));
+            LOGGER.info("Successfully connected to device: {}", deviceAddress);
+            
+        } catch (IOException e) {
+            LOGGER.error("Error connecting to device: {}", deviceAddress, e);
+            releaseConnectionResources();
+            if (reconnectAttempt) {
+                reconnectPolicy.onAttemptFailed(deviceAddress, (System.nanoTime() - attemptStart) / 1_000_000L);
+            }
+
+            if (reconnectAttempt && reconnectPolicy.hasAttemptsLeft(attemptNumber)
+                    && connectionState.transition(ConnectionState.CONNECTING, ConnectionState.BACKOFF)) {
+                scheduleReconnectAttempt(attemptNumber + 1);
+            } else {
+                if (reconnectAttempt) {
+                    reconnectPolicy.onCycleAbandoned(deviceAddress);
+                    LOGGER.warn("Reconnect attempts exhausted for device {}. Stats: {}", deviceAddress, reconnectPolicy.getStats(deviceAddress));
                 }
-            } finally {
-                connectionAttemptInProgress = false;
+                connectionState.transition(ConnectionState.CONNECTING, ConnectionState.IDLE);
             }
-        });
+            
+            if (eventListener != null) {
+                eventListener.onDeviceDisconnected(discoveredDevice != null ? discoveredDevice : deviceAddress, -2);
+            }
+            if (startupConnectPending.getAndSet(false)) {
+                startDiscoveryForSavedDevice();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Unexpected error connecting to device: {}", deviceAddress, e);
+            releaseConnectionResources();
+            connectionState.transition(ConnectionState.CONNECTING, ConnectionState.IDLE);
+            if (startupConnectPending.getAndSet(false)) {
+                startDiscoveryForSavedDevice();
+            }
+        }
+    }
 
-        if (delayMs > 0) {
-            reconnectScheduler.schedule(connectionTask, delayMs, TimeUnit.MILLISECONDS);
-        } else {
-            connectionTask.run();
+    /**
+     * Fallback when the startup connect failed: scans and connects as soon as the saved
+     * device shows up, without waiting for the inquiry cycle to end.
+     */
+    private void startDiscoveryForSavedDevice() {
+        LOGGER.info("Direct connect to the saved device failed. Scanning for it instead.");
+        awaitingSavedDevice.set(true);
+        if (!startDeviceDiscovery()) {
+            awaitingSavedDevice.set(false);
         }
     }
 
-    private void scheduleReconnectAttempt(String deviceAddress, int attemptNumber) {
+    /**
+     * Schedules a reconnect attempt to the saved MAC. The state machine must be in BACKOFF;
+     * the attempt only runs if it still is when the delay expires.
+     */
+    private void scheduleReconnectAttempt(int attemptNumber) {
         String savedMac = FanProfileIOService.getMacAddress();
         if (savedMac == null || savedMac.trim().isEmpty()) {
-            reconnecting = false;
+            connectionState.transition(ConnectionState.BACKOFF, ConnectionState.IDLE);
             LOGGER.warn("Cannot schedule reconnect attempt because no saved MAC address exists.");
             return;
         }
 
-        LOGGER.warn("Scheduling reconnect attempt {} for {}", attemptNumber + 1, savedMac);
-        scheduleConnectionAttempt(savedMac, discoveredDevices.get(savedMac), true, attemptNumber);
+        long delayMs = reconnectPolicy.delayBeforeAttempt(savedMac, attemptNumber);
+        LOGGER.warn("Scheduling reconnect attempt {}/{} for {} in {} ms", attemptNumber + 1, reconnectPolicy.getMaxAttempts(), savedMac, delayMs);
+        pendingReconnect = executor.schedule("reconnect-" + savedMac, () -> {
+            if (!connectionState.transition(ConnectionState.BACKOFF, ConnectionState.CONNECTING)) {
+                LOGGER.info("Reconnect attempt {} skipped, state is {}", attemptNumber + 1, connectionState.get());
+                return;
+            }
+            runConnectionAttempt(savedMac, discoveredDevice(savedMac), true, attemptNumber);
+        }, delayMs, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Requests a reconnect using the saved MAC address, but only if the
-     * failure threshold has been reached and the cooldown period elapsed.
+     * Requests a reconnect using the saved MAC address, but only if an established link was
+     * lost and not explicitly closed since, and the previous reconnect cycle was not abandoned
+     * within the cooldown.
      *
      * @return true if a reconnect attempt was started, false otherwise
      */
@@ -413,56 +644,43 @@ public class BluetoothManager implements DiscoveryListener {
             return false;
         }
 
-        if (!shouldAttemptReconnect()) {
-            LOGGER.info("Reconnect not started yet. Failures: {}/{}", consecutiveFailures, MAX_CONSECUTIVE_FAILURES);
-            return false;
+        synchronized (reconnectLock) {
+            if (!reconnectWanted.get()) {
+                LOGGER.info("Reconnect not started: no lost link to recover.");
+                return false;
+            }
+
+            if (!reconnectPolicy.canStartCycle(savedMac)) {
+                LOGGER.info("Reconnect not started yet: previous cycle for {} was abandoned recently.", savedMac);
+                return false;
+            }
+
+            if (connectionState.transitionFromAny(CONNECTABLE_STATES, ConnectionState.BACKOFF) == null) {
+                LOGGER.info("Reconnect not started, state is {}", connectionState.get());
+                return false;
+            }
         }
 
         LOGGER.info("Attempting reconnect to saved MAC address: {}", savedMac);
-        reconnecting = true;
-        lastReconnectAttemptAt = System.currentTimeMillis();
-        scheduleConnectionAttempt(savedMac, discoveredDevices.get(savedMac), true, 0);
+        reconnectPolicy.onCycleStarted(savedMac, false);
+        scheduleReconnectAttempt(0);
         return true;
     }
     
-    /**
-     * Creates a SPP connection URL for a remote device.
-     * 
-     * @param device The remote device
-     * @return The connection URL
-     */
-    private String searchService(RemoteDevice device) {
-        return searchService(device.getBluetoothAddress());
-    }
-
-    /**
-     * Creates a SPP connection URL for a device address.
-     *
-     * @param deviceAddress Bluetooth MAC address
-     * @return The connection URL
-     */
-    private String searchService(String deviceAddress) {
-        // For SPP connections, we can create a direct connection URL
-        // without explicit service discovery in many cases
-        String url = "btspp://" + deviceAddress + ":1;authenticate=false;encrypt=false;master=false";
-        LOGGER.info("Created SPP connection URL: {}", url);
-        return url;
-    }
-
     /**
      * Attempts to reconnect using the MAC address saved in FanProfileIOService.
      * The reconnect is scheduled asynchronously to avoid blocking the caller.
      *
+     * The caller closes the link that failed first. A link that came up since is left open: the
+     * failure was not its own, and the state machine then refuses the cycle.
+     *
      * @param reason Reason for the reconnection attempt
+     * @param linkDropped true if an established link just failed, which allows an immediate first attempt
      */
-    private void attemptReconnectFromSavedMac(String reason) {
-        if (reconnecting) {
-            LOGGER.warn("Reconnect already in progress. Skipping duplicate request. Reason: {}", reason);
-            return;
-        }
-
-        if (!shouldAttemptReconnect()) {
-            LOGGER.info("Reconnect suppressed until failure threshold is reached. Reason: {}", reason);
+    private void attemptReconnectFromSavedMac(String reason, boolean linkDropped) {
+        ConnectionState current = connectionState.get();
+        if (current == ConnectionState.CONNECTING || current == ConnectionState.BACKOFF) {
+            LOGGER.warn("Reconnect already in progress ({}). Skipping duplicate request. Reason: {}", current, reason);
             return;
         }
 
@@ -472,46 +690,67 @@ public class BluetoothManager implements DiscoveryListener {
             return;
         }
 
-        reconnecting = true;
-        lastReconnectAttemptAt = System.currentTimeMillis();
-        LOGGER.warn("Attempting Bluetooth reconnection to {} after {}", savedMac, reason);
-        closeConnection();
-        scheduleConnectionAttempt(savedMac, discoveredDevices.get(savedMac), true, 0);
-    }
-
-    private boolean shouldAttemptReconnect() {
-        if (consecutiveFailures < MAX_CONSECUTIVE_FAILURES) {
-            return false;
+        if (!linkDropped && !reconnectPolicy.canStartCycle(savedMac)) {
+            LOGGER.info("Reconnect after {} suppressed: previous cycle was abandoned recently.", reason);
+            return;
         }
 
-        long now = System.currentTimeMillis();
-        return lastReconnectAttemptAt == 0L || now - lastReconnectAttemptAt >= RECONNECT_COOLDOWN_MS;
+        // Several threads may get here for the same failure burst; only one wins the transition
+        if (connectionState.transitionFromAny(CONNECTABLE_STATES, ConnectionState.BACKOFF) == null) {
+            LOGGER.info("Reconnect after {} not started, state is {}", reason, connectionState.get());
+            return;
+        }
+        reconnectPolicy.onCycleStarted(savedMac, linkDropped);
+        LOGGER.warn("Attempting Bluetooth reconnection to {} after {}", savedMac, reason);
+        scheduleReconnectAttempt(0);
     }
 
     private void registerBluetoothFailure(String operationName) {
         registerBluetoothFailure(operationName, null);
     }
 
+    /**
+     * Records a failed operation. An I/O error on an open link means the link is gone, so a
+     * reconnect starts right away; a send attempted without a link only resumes a pending reconnect.
+     *
+     * A write error names the link it happened on (see {@link LinkWriteException}); other errors
+     * are taken for the current link. Only that link is recovered: if it was closed on purpose or
+     * replaced meanwhile, the error is stale and nothing else happens.
+     */
     private void registerBluetoothFailure(String operationName, Exception error) {
-        consecutiveFailures = Math.min(MAX_CONSECUTIVE_FAILURES, consecutiveFailures + 1);
+        int failures = consecutiveFailures.incrementAndGet();
+        FanLink failedLink = error instanceof LinkWriteException ? ((LinkWriteException) error).link : link;
 
-        if (error != null) {
-            LOGGER.error("{} failed (failure {}/{})", operationName, consecutiveFailures, MAX_CONSECUTIVE_FAILURES, error);
+        if (error != null && failedLink != null) {
+            LOGGER.error("{} failed (consecutive failures: {})", operationName, failures, error);
+            recoverDroppedLink(failedLink, operationName);
         } else {
-            LOGGER.warn("{} failed (failure {}/{})", operationName, consecutiveFailures, MAX_CONSECUTIVE_FAILURES);
+            LOGGER.warn("{} failed (consecutive failures: {})", operationName, failures);
+            synchronized (reconnectLock) {
+                if (reconnectWanted.get()) {
+                    attemptReconnectFromSavedMac(operationName, false);
+                }
+            }
         }
+    }
 
-        if (consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
-            attemptReconnectFromSavedMac(operationName);
+    /**
+     * Closes a link that failed and starts recovering it. Nothing happens if the link was already
+     * closed, explicitly or by another failure, or replaced.
+     */
+    private void recoverDroppedLink(FanLink dropped, String reason) {
+        synchronized (reconnectLock) {
+            if (closeLink(dropped, -3)) {
+                reconnectWanted.set(true);
+                attemptReconnectFromSavedMac(reason, true);
+            }
         }
     }
 
     private void registerBluetoothSuccess() {
-        if (consecutiveFailures != 0) {
+        if (consecutiveFailures.getAndSet(0) != 0) {
             LOGGER.info("Bluetooth communication recovered. Resetting failure counter.");
         }
-        consecutiveFailures = 0;
-        lastReconnectAttemptAt = 0L;
     }
 
     /**
@@ -525,49 +764,94 @@ public class BluetoothManager implements DiscoveryListener {
     }
     
     /**
-     * Starts a thread that continuously reads from the input stream.
+     * Handles the error of a scheduled batch flush. After an explicit close the link is gone on
+     * purpose, so the frames left in the batch are dropped without starting a reconnect.
+     */
+    private void handleBatchedWriteFailure(IOException error) {
+        if (!isConnected() && !reconnectWanted.get()) {
+            LOGGER.debug("Batched write after close dropped: {}", error.getMessage());
+            return;
+        }
+        handleBluetoothFailure("batched write", error);
+    }
+
+    /**
+     * Starts a thread that reads the link and hands the bytes to the inbound dispatcher.
+     * The read blocks until data arrives; closing the link ends it.
+     *
+     * The thread belongs to the link it was started for. Cancelling it does not wait for it, so a
+     * reader of a closed link may still wake up after the next link was opened; it then finds its
+     * link is no longer the current one and ends without touching the new link. Each reader feeds
+     * a dispatcher of its own, so a late one never mixes its bytes into the new link's lines.
      */
     private void startReadThread() {
-        keepReading = true;
-        readThread = new Thread(() -> {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-            while (keepReading && isConnected) {
-                try {
-                    if (reader.ready()) {
-                        String line = reader.readLine();
-                        if (line != null && !line.isEmpty()) {
-                            LOGGER.debug("Received message: {}", line);
-                            // Supondo que a mensagem seja somente o valor do RPM enviado pelo Arduino
-                            try {
-                                int rpm = Integer.parseInt(line.trim());
-                                // Notifica a camada de UI ou controlador com o novo valor de RPM
-                                notifyFanRpmReceived(rpm);
-                            } catch (NumberFormatException ex) {
-                                LOGGER.error("Mensagem de RPM inválida: {}", line, ex);
-                            }
-                        }
-                    } else {
-                        Thread.sleep(100);
-                    }
-                } catch (IOException e) {
-                    if (keepReading) {
-                        LOGGER.error("Erro ao ler dados do dispositivo", e);
-                        closeConnection();
-                        if (eventListener != null) {
-                            eventListener.onDeviceDisconnected(connectedDevice, -3);
-                        }
-                    }
-                    break;
-                } catch (InterruptedException e) {
-                    LOGGER.error("Thread de leitura interrompida", e);
-                    Thread.currentThread().interrupt();
-                    break;
+        FanLink readerLink = link;
+        InputStream in = inputStream;
+        InboundDispatcher feed = inboundDispatcher.newFeed();
+        String address = connectedDeviceAddress;
+        readTask = executor.startThread("reader-" + address, () -> {
+            byte[] chunk = new byte[256];
+            try {
+                int n;
+                while (link == readerLink && (n = in.read(chunk)) >= 0) {
+                    if (link != readerLink) break; // Bytes of a link closed meanwhile
+                    feed.feed(chunk, 0, n);
+                }
+                if (link == readerLink) {
+                    throw new IOException("Link closed by the device");
+                }
+            } catch (IOException e) {
+                if (link == readerLink) {
+                    LOGGER.error("Erro ao ler dados do dispositivo", e);
+                    // Recover only a link this reader closed, not one closed explicitly meanwhile
+                    recoverDroppedLink(readerLink, "read failure");
                 }
             }
             LOGGER.info("Thread de leitura finalizada");
         });
-        readThread.setDaemon(true);
-        readThread.start();
+    }
+
+    /**
+     * Registers the manager's own handlers of inbound frames.
+     */
+    private void registerInboundHandlers() {
+        inboundDispatcher.on(InboundFrameType.RPM, this::notifyFanRpmReceived);
+        inboundDispatcher.on(InboundFrameType.ACK, sequence -> {
+            CommandPipeline pipeline = commandPipeline;
+            if (pipeline != null) pipeline.handleReply(true, sequence);
+        });
+        inboundDispatcher.on(InboundFrameType.NAK, sequence -> {
+            CommandPipeline pipeline = commandPipeline;
+            if (pipeline != null) pipeline.handleReply(false, sequence);
+        });
+        inboundDispatcher.on(InboundFrameType.ECHO, linkProber::onEcho);
+        inboundDispatcher.on(InboundFrameType.PWM, pwm -> appliedPwm = pwm);
+        inboundDispatcher.on(InboundFrameType.VERSION, version -> {
+            if (firmwareVersion != version) {
+                firmwareVersion = version;
+                LOGGER.info("Fan controller firmware {}.{}.{}", version / 10000, version / 100 % 100, version % 100);
+            }
+        });
+        inboundDispatcher.on(InboundFrameType.ERROR, code -> LOGGER.warn("Fan controller reported error {}", code));
+        inboundDispatcher.on(InboundFrameType.PROFILE_HASH, profileSync::onDeviceHash);
+    }
+
+    /**
+     * Returns the automatic profile frame of a config, encoding it only when the config version
+     * is not the one already cached. Also called by the config listener, so a changed profile is
+     * encoded before the next connect needs it.
+     */
+    private String savedProfileFrame(FanConfig config) {
+        SavedProfileFrame cached = savedProfileFrame;
+        if (cached != null && cached.version() == config.version()) {
+            return cached.frame();
+        }
+        String frame = FanProtocol.autoProfileFrame(config.minCpu(), config.minGpu(), config.maxCpu(), config.maxGpu(),
+                config.minSpeed(), config.maxSpeed(), config.curveGrowthConstant());
+        if (cached == null || cached.version() < config.version()) {
+            savedProfileFrame = new SavedProfileFrame(config.version(), frame);
+        }
+        return frame;
     }
 
     /**
@@ -576,7 +860,7 @@ public class BluetoothManager implements DiscoveryListener {
     private void notifyFanRpmReceived(int rpm) {
         // Try to use eventListener directly if it's a BluetoothDataListener
         if (eventListener != null) {
-            LOGGER.info("notifyFanRpmReceived() chamado com rpm = " + rpm);
+            LOGGER.debug("Fan RPM received: {}", rpm);
             eventListener.onFanRpmReceived(rpm);
         } 
         else {
@@ -590,27 +874,19 @@ public class BluetoothManager implements DiscoveryListener {
      * @param cpuTemp CPU temperature
      * @param gpuTemp GPU temperature
      * @param diskTemp Disk temperature
-     * @return true if the data was sent, false otherwise
+     * @return true if the data was queued for the link, false otherwise
      */
     public boolean sendTemperatureData(double cpuTemp, double gpuTemp, double diskTemp) {
-        if (!isConnected || outputStream == null) {
+        if (!isConnected() || outputStream == null) {
             handleBluetoothFailure("sendTemperatureData: connection unavailable", null);
             return false;
         }
         
         try {
-            DecimalFormat df = new DecimalFormat("00.0");
-            // Format the temperature data as a string
-            // T:CPU:GPU:DISK\n format (easily parseable by Arduino or similar)
-            String data = String.format("T%s:%s:%s\n", df.format(cpuTemp), df.format(gpuTemp), df.format(diskTemp));
-            byte[] bytes = data.getBytes();
+            String data = FanProtocol.temperatureFrame(cpuTemp, gpuTemp, diskTemp);
+            outboundBatcher.submit(data.getBytes());
             
-            // Send the data
-            outputStream.write(bytes);
-            outputStream.flush();
-            
-            LOGGER.debug("Sent temperature data: {}", data.trim());
-            registerBluetoothSuccess();
+            LOGGER.debug("Queued temperature data: {}", data.trim());
             return true;
         } catch (IOException e) {
             handleBluetoothFailure("sendTemperatureData", e);
@@ -622,10 +898,10 @@ public class BluetoothManager implements DiscoveryListener {
      * Sends a PWM value to the connected peripheral.
      * 
      * @param pwmValue PWM value (e.g., 0-100)
-     * @return true if the command was sent, false otherwise
+     * @return true if the command was queued for the link, false otherwise
      */
     public boolean sendPwmCommand(int pwmValue) {
-        if (!isConnected || outputStream == null) {
+        if (!isConnected() || outputStream == null) {
             handleBluetoothFailure("sendPwmCommand: connection unavailable", null);
             return false;
         }
@@ -634,14 +910,9 @@ public class BluetoothManager implements DiscoveryListener {
             // Format the PWM command as a string
             // P:VALUE\n format (easily parseable by Arduino or similar)
             String command = String.format("P:%d\n", pwmValue);
-            byte[] bytes = command.getBytes();
-            
-            // Send the command
-            outputStream.write(bytes);
-            outputStream.flush();
+            outboundBatcher.submit(command.getBytes());
             
-            LOGGER.debug("Sent PWM command: {}", command.trim());
-            registerBluetoothSuccess();
+            LOGGER.debug("Queued PWM command: {}", command.trim());
             return true;
         } catch (IOException e) {
             handleBluetoothFailure("sendPwmCommand", e);
@@ -658,20 +929,17 @@ public class BluetoothManager implements DiscoveryListener {
      * @param gpuMinTemp Minimum GPU temperature threshold
      * @param cpuMaxTemp Maximum CPU temperature threshold
      * @param gpuMaxTemp Maximum GPU temperature threshold
-     * @return true if the data was sent, false otherwise
+     * @return true if the data was queued for the link, false otherwise
      */
     public boolean sendProfileData(int cpuMinTemp, int gpuMinTemp, int cpuMaxTemp, int gpuMaxTemp, int minSpeed, int maxSpeed, double k) {
-        if (!isConnected || outputStream == null) {
+        if (!isConnected() || outputStream == null) {
             handleBluetoothFailure("sendProfileData(auto): connection unavailable", null);
             return false;
         }
         try {
-            String data = String.format("A%d:%d:%d:%d:%d:%d:%.2f\n", cpuMinTemp, gpuMinTemp, cpuMaxTemp, gpuMaxTemp, minSpeed, maxSpeed, k);
-            byte[] bytes = data.getBytes();
-            outputStream.write(bytes);
-            outputStream.flush();
-            LOGGER.debug("Sent profile data: {}", data.trim());
-            registerBluetoothSuccess();
+            String data = FanProtocol.autoProfileFrame(cpuMinTemp, gpuMinTemp, cpuMaxTemp, gpuMaxTemp, minSpeed, maxSpeed, k);
+            outboundBatcher.submit(data.getBytes());
+            LOGGER.debug("Queued profile data: {}", data.trim());
             return true;
         } catch (IOException e) {
             handleBluetoothFailure("sendProfileData(auto)", e);
@@ -685,20 +953,17 @@ public class BluetoothManager implements DiscoveryListener {
      * Command format: C<percentage>
      * 
      * @param percentage The constant value (0-100) to be sent
-     * @return true if the command was sent, false otherwise
+     * @return true if the command was queued for the link, false otherwise
      */
     public boolean sendProfileData(int percentage) {
-        if (!isConnected || outputStream == null) {
+        if (!isConnected() || outputStream == null) {
             handleBluetoothFailure("sendProfileData(constant): connection unavailable", null);
             return false;
         }
         try {
-            String command = String.format("C%d", percentage);
-            byte[] bytes = command.getBytes();
-            outputStream.write(bytes);
-            outputStream.flush();
-            LOGGER.debug("Sent constant command: {}", command.trim());
-            registerBluetoothSuccess();
+            String command = FanProtocol.constantProfileFrame(percentage);
+            outboundBatcher.submit(command.getBytes());
+            LOGGER.debug("Queued constant command: {}", command.trim());
             return true;
         } catch (IOException e) {
             handleBluetoothFailure("sendProfileData(constant)", e);
@@ -707,59 +972,329 @@ public class BluetoothManager implements DiscoveryListener {
     }
     
     /**
-     * Closes the connection with the current peripheral.
+     * Sends a frame through the acknowledged command layer, in order with the frames of the send methods.
+     * When the layer is disabled the frame is queued like theirs and the result is UNCONFIRMED.
+     *
+     * @param frame An unsequenced frame built with {@link FanProtocol}
+     * @return A future completed with the device answer
      */
-    public void closeConnection() {
-        if (isConnected) {
-            RemoteDevice deviceBeingDisconnected = connectedDevice; // Store reference before nulling
-            int disconnectionStatus = 0; // 0 for clean user disconnect
-
-            // Stop the read thread
-            keepReading = false;
-            if (readThread != null) {
-                readThread.interrupt();
-                // Wait briefly for the thread to potentially finish? Optional.
-                // try { readThread.join(100); } catch (InterruptedException ignored) {}
-                readThread = null;
+    public CompletableFuture<CommandResult> sendCommandAcknowledged(String frame) {
+        CommandPipeline pipeline = commandPipeline;
+        if (pipeline == null) {
+            if (!isConnected() || outputStream == null) {
+                handleBluetoothFailure("sendCommandAcknowledged: connection unavailable", null);
+                return CompletableFuture.completedFuture(CommandResult.unconfirmed(false));
             }
-            
-            // Close streams and connection
             try {
-                if (inputStream != null) {
-                    inputStream.close();
-                    inputStream = null;
-                }
-                
-                if (outputStream != null) {
-                    outputStream.close();
-                    outputStream = null;
-                }
-                
-                if (streamConnection != null) {
-                    streamConnection.close();
-                    streamConnection = null;
-                }
+                outboundBatcher.submit(frame.getBytes());
+                return CompletableFuture.completedFuture(CommandResult.unconfirmed(true));
             } catch (IOException e) {
-                LOGGER.error("Error closing connection resources", e);
-                disconnectionStatus = -4; // Assign a new error code for resource closing failure
-            } finally {
-                // Update state regardless of stream closing errors
-                isConnected = false;
-                connectedDevice = null;
-                connectedDeviceAddress = null;
-                consecutiveFailures = 0;
-                lastReconnectAttemptAt = 0L;
-                
-                LOGGER.info("Connection closed internally.");
-                
-                // Notify the listener AFTER internal state is updated
-                if (eventListener != null) {
-                    eventListener.onDeviceDisconnected(deviceBeingDisconnected, disconnectionStatus);
+                handleBluetoothFailure("sendCommandAcknowledged", e);
+                return CompletableFuture.completedFuture(CommandResult.unconfirmed(false));
+            }
+        }
+
+        FanLink pipelineLink = link;
+        return pipeline.submit(frame).whenComplete((result, error) -> {
+            // A FAILED result of the current pipeline is a write error; the pipeline of a closed link
+            // fails what it still holds, which is expected
+            if (result != null && result.getStatus() == CommandResult.Status.FAILED && commandPipeline == pipeline) {
+                registerBluetoothFailure("sendCommandAcknowledged",
+                        new LinkWriteException(pipelineLink, "Sequenced frame could not be written", null));
+            } else if (result != null && result.isDelivered()) {
+                registerBluetoothSuccess();
+            }
+        });
+    }
+
+    /**
+     * Sends the frames of a profile one after the other, each once the one before was acknowledged,
+     * or one firmware tachometer window later without the acknowledged layer. The firmware buffers
+     * a single table frame at most, so the frames of a table profile must not be pipelined or batched.
+     *
+     * @param frames One frame, or several joined one per line as {@link FanProtocol#tableProfileFrames} makes them
+     * @return A future completed with the answer to the last frame, or to the first that was not delivered
+     */
+    public CompletableFuture<CommandResult> sendProfileFrames(String frames) {
+        String[] parts = FanProtocol.splitFrames(frames);
+        if (parts.length == 1) {
+            return sendCommandAcknowledged(frames);
+        }
+        CompletableFuture<CommandResult> done = new CompletableFuture<>();
+        sendProfileFrame(parts, 0, done);
+        return done;
+    }
+
+    private void sendProfileFrame(String[] frames, int index, CompletableFuture<CommandResult> done) {
+        sendCommandAcknowledged(frames[index]).whenComplete((result, error) -> {
+            if (error != null) {
+                done.completeExceptionally(error);
+            } else if (index == frames.length - 1 || !result.isDelivered()) {
+                if (!result.isDelivered()) {
+                    LOGGER.warn("Profile frame {} of {} not delivered: {}", index + 1, frames.length, result);
                 }
+                done.complete(result);
+            } else if (result.getStatus() == CommandResult.Status.ACKED) {
+                reconnectScheduler.execute(() -> sendProfileFrame(frames, index + 1, done));
+            } else {
+                reconnectScheduler.schedule(() -> sendProfileFrame(frames, index + 1, done),
+                        UNACKNOWLEDGED_FRAME_GAP_MS, TimeUnit.MILLISECONDS);
             }
-        } else {
-             LOGGER.warn("closeConnection called but already disconnected.");
+        });
+    }
+
+    /**
+     * Sends a profile frame unless the connected device is known to run it already.
+     *
+     * @param frame An A or C frame or the frames of a table profile, built with {@link FanProtocol}
+     * @return A future completed with the device answer; ACKED without sequence when skipped
+     */
+    public CompletableFuture<CommandResult> sendProfileIfChanged(String frame) {
+        return profileSync.send(connectedDeviceAddress, frame);
+    }
+
+    /**
+     * Sets what chooses the profile uploaded when a device connects, e.g. the active named profile.
+     *
+     * @param resolver Maps the device address to a profile frame, or to null for the saved curve
+     */
+    public void setConnectProfileResolver(Function<String, String> resolver) {
+        this.connectProfileResolver = resolver;
+    }
+
+    /**
+     * Enables or disables the acknowledged command layer. Takes effect on the next connection.
+     *
+     * @param enabled true to wrap commands with sequence numbers and wait for device ACK/NAK frames
+     */
+    public void setAcknowledgedMode(boolean enabled) {
+        this.acknowledgedMode = enabled;
+        LOGGER.info("Acknowledged command mode {}", enabled ? "enabled" : "disabled");
+    }
+
+    public boolean isAcknowledgedMode() {
+        return acknowledgedMode;
+    }
+
+    /**
+     * Gets the acknowledged command layer of the current connection.
+     *
+     * @return The pipeline or null if disabled or not connected
+     */
+    public CommandPipeline getCommandPipeline() {
+        return commandPipeline;
+    }
+
+    /**
+     * Writes the frames queued by the send methods now instead of at the end of the batching window,
+     * e.g. at the end of a tick.
+     *
+     * @return false if the write failed
+     */
+    public boolean flushOutbound() {
+        try {
+            outboundBatcher.flush();
+            return true;
+        } catch (IOException e) {
+            handleBluetoothFailure("flushOutbound", e);
+            return false;
+        }
+    }
+
+    /**
+     * Gets the outbound batcher, which counts frames and link writes.
+     */
+    public OutboundBatcher getOutboundBatcher() {
+        return outboundBatcher;
+    }
+
+    /**
+     * Writes a complete frame and flushes it. Frames from different threads are never interleaved.
+     */
+    private void writeFrame(byte[] bytes) throws IOException {
+        synchronized (writeLock) {
+            FanLink target = link;
+            OutputStream out = outputStream;
+            if (out == null) {
+                throw new LinkWriteException(null, "Output stream is closed", null);
+            }
+            long start = System.nanoTime();
+            try {
+                out.write(bytes);
+                out.flush();
+            } catch (IOException e) {
+                linkProber.recordWrite(System.nanoTime() - start, false);
+                throw new LinkWriteException(target, e.getMessage(), e);
+            }
+            long nanos = System.nanoTime() - start;
+            discoveryScheduler.recordLinkWrite(nanos);
+            linkProber.recordWrite(nanos, true);
+        }
+        if (!firstCommandSent.get() && firstCommandSent.compareAndSet(false, true)) {
+            long launchedAt = ManagementFactory.getRuntimeMXBean().getStartTime();
+            launchToFirstCommandMs = System.currentTimeMillis() - launchedAt;
+            LOGGER.info("First fan command sent {} ms after launch", launchToFirstCommandMs);
+        }
+    }
+
+    /**
+     * Gets the link health measured by probing the live link.
+     *
+     * @return The latest measurements
+     */
+    public LinkQuality getLinkQuality() {
+        return linkProber.getQuality();
+    }
+
+    /**
+     * Gets how often telemetry should be sent, lowered automatically when the link degrades.
+     *
+     * @return The interval in milliseconds
+     */
+    public long getTelemetryIntervalMs() {
+        return linkProber.getTelemetryIntervalMs();
+    }
+
+    /**
+     * Gets the link prober, which holds the round trip and write latency histograms.
+     */
+    public LinkProber getLinkProber() {
+        return linkProber;
+    }
+
+    /**
+     * Gets the dispatcher of inbound frames, to register handlers per frame type.
+     */
+    public InboundDispatcher getInboundDispatcher() {
+        return inboundDispatcher;
+    }
+
+    /**
+     * @return The PWM duty the firmware last reported applying (0-255), or -1
+     */
+    public int getAppliedPwm() {
+        return appliedPwm;
+    }
+
+    /**
+     * @return The firmware version as major * 10000 + minor * 100 + patch, or -1 if not reported
+     */
+    public int getFirmwareVersion() {
+        return firmwareVersion;
+    }
+
+    /**
+     * Gets the time from JVM launch to the first frame written to the fan controller.
+     *
+     * @return The time in milliseconds, or -1 if no frame was written yet
+     */
+    public long getLaunchToFirstCommandMs() {
+        return launchToFirstCommandMs;
+    }
+
+    /**
+     * Closes the connection with the current peripheral.
+     * An explicit close cancels any pending automatic reconnect.
+     */
+    public void closeConnection() {
+        synchronized (reconnectLock) {
+            reconnectWanted.set(false);
+            connectionState.transition(ConnectionState.BACKOFF, ConnectionState.IDLE);
+            closeLink();
+        }
+    }
+
+    /**
+     * Tears the link down without changing whether a reconnect is wanted.
+     */
+    private void closeLink() {
+        closeLink(null, 0);
+    }
+
+    /**
+     * Tears the link down, but only while it is still the given one.
+     *
+     * @param expected The link to close, or null for whichever is current
+     * @param status Status of the disconnect event: 0 for a close, -3 for a link the device dropped
+     * @return true if this call closed the link
+     */
+    private boolean closeLink(FanLink expected, int status) {
+        if (expected != null && link != expected) {
+            LOGGER.info("Link to close was already replaced. Leaving the current one open.");
+            return false;
+        }
+        // Only one caller can move CONNECTED -> DRAINING, so the link is torn down and the
+        // disconnect event published exactly once even when close races with a read failure.
+        if (!connectionState.transition(ConnectionState.CONNECTED, ConnectionState.DRAINING)) {
+            LOGGER.warn("closeConnection called but not connected (state {}).", connectionState.get());
+            return false;
+        }
+
+        RemoteDevice deviceBeingDisconnected = connectedDevice; // Store reference before nulling
+        int disconnectionStatus = releaseConnectionResources() ? status : -4; // -4 if closing resources failed
+
+        consecutiveFailures.set(0);
+        connectionState.transition(ConnectionState.DRAINING, ConnectionState.IDLE);
+
+        LOGGER.info("Connection closed internally.");
+
+        // Notify the listener AFTER internal state is updated
+        if (eventListener != null) {
+            eventListener.onDeviceDisconnected(deviceBeingDisconnected, disconnectionStatus);
+        }
+        return true;
+    }
+
+    /**
+     * Closes the streams, then drops the pending batch, fails pending acknowledgements and stops
+     * the read thread.
+     *
+     * @return true if every resource closed cleanly
+     */
+    private boolean releaseConnectionResources() {
+        boolean clean = true;
+
+        // Close the link first: a batch flush blocked writing to it holds the batcher until the
+        // write fails, so discarding the batch before would wait for it forever
+        FanLink closing = link;
+        link = null;
+        inputStream = null;
+        outputStream = null;
+        connectedDevice = null;
+        connectedDeviceAddress = null;
+        try {
+            if (closing != null) {
+                LOGGER.info("Link to {} closed: {}", closing.getAddress(), closing.getMetrics());
+                closing.close();
+            }
+        } catch (IOException e) {
+            LOGGER.error("Error closing connection resources", e);
+            clean = false;
         }
+
+        LOGGER.info("Link quality: {} rtt histogram: {}", linkProber.getQuality(), linkProber.getRttHistogram());
+        LOGGER.info("Inbound frames: {}", inboundDispatcher);
+        LOGGER.info("Profile sync: {}", profileSync);
+        LOGGER.info("Outbound batching: {}", outboundBatcher);
+        outboundBatcher.discard();
+        linkProber.stop();
+        profileSync.onDisconnected();
+
+        // Fail anything still waiting for an acknowledgement
+        CommandPipeline pipeline = commandPipeline;
+        commandPipeline = null;
+        if (pipeline != null) {
+            LOGGER.info("Command pipeline closed: {}", pipeline);
+            pipeline.close();
+        }
+
+        // Stop the read thread; it ends once it sees its link is no longer the current one
+        StackExecutor.Task reader = readTask;
+        readTask = null;
+        if (reader != null) {
+            reader.cancel();
+        }
+        return clean;
     }
     
     /**
@@ -768,7 +1303,7 @@ public class BluetoothManager implements DiscoveryListener {
      * @return true if connected, false otherwise
      */
     public boolean isConnected() {
-        return isConnected;
+        return connectionState.is(ConnectionState.CONNECTED);
     }
     
     /**
@@ -786,7 +1321,66 @@ public class BluetoothManager implements DiscoveryListener {
      * @return true if scanning, false otherwise
      */
     public boolean isScanning() {
-        return isScanning;
+        // A discovery session idling between bursts still counts as scanning
+        return connectionState.is(ConnectionState.SCANNING) || discoveryScheduler.isActive();
+    }
+
+    /**
+     * Gets the reconnect statistics collected for a device.
+     *
+     * @param deviceAddress MAC address of the device
+     * @return The statistics, empty if the device never reconnected
+     */
+    public ReconnectPolicy.DeviceStats getReconnectStats(String deviceAddress) {
+        return reconnectPolicy.getStats(deviceAddress);
+    }
+
+    /**
+     * Gets the discovery duty cycle scheduler, which also holds the inquiry airtime metrics.
+     */
+    public DiscoveryScheduler getDiscoveryScheduler() {
+        return discoveryScheduler;
+    }
+
+    /**
+     * Gets the registry of devices seen by inquiry.
+     */
+    public DeviceRegistry getDeviceRegistry() {
+        return deviceRegistry;
+    }
+
+    /**
+     * Gets the resolver of device friendly names.
+     */
+    public DeviceNameResolver getNameResolver() {
+        return nameResolver;
+    }
+
+    private RemoteDevice discoveredDevice(String address) {
+        Object device = deviceRegistry.getDevice(address);
+        return device instanceof RemoteDevice ? (RemoteDevice) device : null;
+    }
+
+    /**
+     * Gets the current connection state.
+     *
+     * @return The state of the link
+     */
+    public ConnectionState getConnectionState() {
+        return connectionState.get();
+    }
+
+    /**
+     * Registers a listener that is notified on every connection state transition.
+     *
+     * @param listener The listener to add
+     */
+    public void addConnectionStateListener(ConnectionStateListener listener) {
+        connectionState.addListener(listener);
+    }
+
+    public void removeConnectionStateListener(ConnectionStateListener listener) {
+        connectionState.removeListener(listener);
     }
     
     /**
@@ -794,20 +1388,44 @@ public class BluetoothManager implements DiscoveryListener {
      */
     public void shutdown() {
         LOGGER.info("Shutting down BluetoothManager...");
+        LOGGER.info("Discovery metrics: {}", discoveryScheduler);
+        LOGGER.info("Link quality: {}", linkProber.getQuality());
         
-        if (isScanning) {
-            stopDeviceDiscovery();
+        stopDeviceDiscovery();
+        FanProfileIOService.removeConfigListener(configListener);
+        connectionState.transition(ConnectionState.BACKOFF, ConnectionState.IDLE); // Cancel a pending reconnect
+        StackExecutor.Task reconnect = pendingReconnect;
+        if (reconnect != null) {
+            reconnect.cancel();
+        }
+        if (isConnected()) {
+            closeConnection();
         }
         
-        closeConnection();
-        
-        // Shutdown executor
+        // Cancel what is still pending and wait for the threads to end
+        nameResolver.shutdown();
         executor.shutdown();
-        reconnectScheduler.shutdown();
         
         LOGGER.info("BluetoothManager shutdown complete.");
     }
     
+    /**
+     * Gets the traffic counters of the current link.
+     *
+     * @return The metrics, or null if not connected
+     */
+    public LinkMetrics getLinkMetrics() {
+        FanLink current = link;
+        return current != null ? current.getMetrics() : null;
+    }
+
+    /**
+     * Gets the transport used to reach the controller.
+     */
+    public FanLinkTransport getTransport() {
+        return transport;
+    }
+
     /**
      * Gets the output stream for the current connection.
      * 
@@ -830,28 +1448,27 @@ public class BluetoothManager implements DiscoveryListener {
     
     @Override
     public void deviceDiscovered(RemoteDevice device, DeviceClass deviceClass) {
-        try {
-            String address = device.getBluetoothAddress();
-            String name = device.getFriendlyName(false);
-            
-            // Sometimes name can be null or empty
-            if (name == null || name.isEmpty()) {
-                name = "[Unknown]";
-            }
-            
-            LOGGER.info("Device discovered: {} ({})", name, address);
-            
-            // Store the device in our map
-            discoveredDevices.put(address, device);
-            
-            // Notify the listener (use a default RSSI since BlueCove doesn't provide it)
-            // The deviceClass.getMajorDeviceClass() could be used for filtering instead of RSSI
-            if (eventListener != null) {
-                // -50 is a moderate signal strength when we can't get the actual RSSI
-                eventListener.onDeviceDiscovered(device, name, address, -50);
-            }
-        } catch (IOException e) {
-            LOGGER.error("Error getting device name", e);
+        String address = device.getBluetoothAddress();
+
+        // Asking for the name is a remote request that can block this callback for seconds.
+        // Report the device by address now; the name follows as an update when it resolves.
+        String name = nameResolver.cached(address);
+        LOGGER.info("Device discovered: {} ({})", name != null ? name : "[Unknown]", address);
+
+        // Record the sighting; the registry notifies the listener only if something changed.
+        // BlueCove does not report RSSI, -50 is a moderate placeholder strength.
+        deviceRegistry.observe(address, name, device,
+                deviceClass != null ? deviceClass.getMajorDeviceClass() : 0,
+                deviceClass != null ? deviceClass.getMinorDeviceClass() : 0, -50);
+        if (name == null) {
+            nameResolver.resolve(address, device, deviceRegistry::updateName);
+        }
+
+        // Startup fallback scan: connect the moment the saved device answers the inquiry
+        if (address.equalsIgnoreCase(FanProfileIOService.getMacAddress())
+                && awaitingSavedDevice.compareAndSet(true, false)) {
+            LOGGER.info("Saved device {} found by inquiry. Connecting.", address);
+            executor.submit("connect-" + address, () -> connectToDevice(address));
         }
     }
     
@@ -910,20 +1527,26 @@ public class BluetoothManager implements DiscoveryListener {
 
         switch (discType) {
             case DiscoveryListener.INQUIRY_COMPLETED:
-                // Inquiry cycle finished normally. If we are still supposed to be scanning, restart it.
-                if (isScanning) {
+                // Inquiry cycle finished normally. The scheduler decides between the next cycle of
+                // the burst and an idle gap; the session itself stays active in both cases.
+                boolean nextCycle = discoveryScheduler.onInquiryCompleted(true);
+                if (nextCycle && connectionState.is(ConnectionState.SCANNING)) {
                     completionType = "INQUIRY_COMPLETED (Restarting)";
                     restartScan = true; // Mark for restart instead of stopping
+                } else if (connectionState.transition(ConnectionState.SCANNING, ConnectionState.IDLE)) {
+                    completionType = "INQUIRY_COMPLETED (Idle until next burst)";
                 } else {
-                    // If isScanning is false, it means stopDeviceDiscovery was called concurrently
-                    // or some other logic decided to stop. Treat as terminated.
+                    // If not SCANNING, stopDeviceDiscovery or a connection attempt won concurrently.
+                    // Treat as terminated.
                     completionType = "INQUIRY_COMPLETED (Scan already stopped)";
                     stoppedByUser = true; // Treat as if stopped by user in this edge case
                 }
                 break;
             case DiscoveryListener.INQUIRY_ERROR:
                 completionType = "INQUIRY_ERROR";
-                isScanning = false; // Stop scanning on error
+                discoveryScheduler.onInquiryStopped();
+                discoveryScheduler.cancel();
+                connectionState.transition(ConnectionState.SCANNING, ConnectionState.IDLE); // Stop scanning on error
                 if (eventListener != null) {
                     eventListener.onScanFailed(discType);
                 }
@@ -931,27 +1554,21 @@ public class BluetoothManager implements DiscoveryListener {
                 break;
             case DiscoveryListener.INQUIRY_TERMINATED:
                 completionType = "INQUIRY_TERMINATED (Stopped by user)";
-                isScanning = false; // Explicitly stopped
+                discoveryScheduler.onInquiryStopped();
+                connectionState.transition(ConnectionState.SCANNING, ConnectionState.IDLE); // Explicitly stopped
                 stoppedByUser = true;
                 break;
             default:
                 completionType = "Unknown Completion Type: " + discType;
-                isScanning = false; // Stop scanning on unknown state
+                discoveryScheduler.onInquiryStopped();
+                discoveryScheduler.cancel();
+                connectionState.transition(ConnectionState.SCANNING, ConnectionState.IDLE); // Stop scanning on unknown state
                 unexpectedCompletion = true;
                 break;
         }
 
         LOGGER.info("Discovery cycle ended: {}", completionType);
 
-        if (firstReading) {
-            LOGGER.info("Attempting to connect to the last MAC address: {}", FanProfileIOService.getMacAddress());
-            // Attempt to connect to the last known MAC address if available
-            connectToDevice(FanProfileIOService.getMacAddress());
-            // First reading completed, set the flag to false
-            firstReading = false;
-        }
-        
-
         if (restartScan) {
             // Restart the inquiry immediately
             try {
@@ -959,16 +1576,19 @@ public class BluetoothManager implements DiscoveryListener {
                 boolean started = discoveryAgent.startInquiry(DiscoveryAgent.GIAC, this);
                 if (!started) {
                     LOGGER.error("Failed to restart Bluetooth inquiry.");
-                    isScanning = false; // If restart fails, stop scanning
+                    discoveryScheduler.cancel();
+                    connectionState.transition(ConnectionState.SCANNING, ConnectionState.IDLE); // If restart fails, stop scanning
                     if (eventListener != null) {
                         eventListener.onScanFailed(-1); // Use a generic error code
                     }
                 } else {
+                    discoveryScheduler.onInquiryStarted();
                     LOGGER.info("Bluetooth inquiry restarted successfully.");
                 }
             } catch (BluetoothStateException e) {
                 LOGGER.error("Error restarting Bluetooth inquiry", e);
-                isScanning = false; // Stop scanning on error
+                discoveryScheduler.cancel();
+                connectionState.transition(ConnectionState.SCANNING, ConnectionState.IDLE); // Stop scanning on error
                 if (eventListener != null) {
                     eventListener.onScanFailed(-1); // Use a generic error code
                 }
@@ -977,14 +1597,14 @@ public class BluetoothManager implements DiscoveryListener {
             // Notify UI that scan has stopped only if it was terminated, errored, or completed unexpectedly
             // We don't notify if restartScan is true
             if ((stoppedByUser || unexpectedCompletion || discType == DiscoveryListener.INQUIRY_ERROR) && eventListener != null) {
-                // Check if scanning is actually false before notifying stop
-                if (!isScanning) {
+                // Check if scanning is actually over before notifying stop
+                if (!isScanning()) {
                      eventListener.onScanStopped();
                 } else {
                     // This case should ideally not happen if logic is correct, but log it
-                    LOGGER.warn("inquiryCompleted finished but isScanning is still true without restart intent. Type: {}", completionType);
+                    LOGGER.warn("inquiryCompleted finished but state is still SCANNING without restart intent. Type: {}", completionType);
                 }
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,102 @@
+package com.heatsync.service.bluetooth;
+
+import com.heatsync.service.transport.FanLink;
+import com.heatsync.service.transport.FanLinkTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.bluetooth.DiscoveryAgent;
+import javax.bluetooth.RemoteDevice;
+import javax.microedition.io.Connector;
+import javax.microedition.io.StreamConnection;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Bluetooth Serial Port Profile transport through BlueCove.
+ *
+ * The cached service URL is tried first; if it is missing or fails, the device's service records
+ * are searched again through SDP. Channel 1, the usual channel of HC-05/HC-06 modules, is the last
+ * resort when SDP yields nothing.
+ */
+public class BluetoothSppTransport implements FanLinkTransport {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BluetoothSppTransport.class);
+
+    private final Supplier<DiscoveryAgent> discoveryAgent;
+    private final Function<String, RemoteDevice> discoveredDevices;
+    private final ServiceUrlCache serviceUrlCache;
+    private final SppServiceLocator serviceLocator;
+
+    /**
+     * @param discoveryAgent Supplies the agent of the local adapter, may supply null before init
+     * @param discoveredDevices Looks a discovered device up by MAC, returns null if unknown
+     */
+    public BluetoothSppTransport(Supplier<DiscoveryAgent> discoveryAgent, Function<String, RemoteDevice> discoveredDevices) {
+        this(discoveryAgent, discoveredDevices, new ServiceUrlCache());
+    }
+
+    public BluetoothSppTransport(Supplier<DiscoveryAgent> discoveryAgent, Function<String, RemoteDevice> discoveredDevices,
+                                 ServiceUrlCache serviceUrlCache) {
+        this.discoveryAgent = discoveryAgent;
+        this.discoveredDevices = discoveredDevices;
+        this.serviceUrlCache = serviceUrlCache;
+        this.serviceLocator = new SppServiceLocator(serviceUrlCache);
+    }
+
+    @Override
+    public FanLink open(String deviceAddress) throws IOException {
+        long start = System.nanoTime();
+        StreamConnection connection = openServiceConnection(deviceAddress);
+        try {
+            InputStream in = connection.openInputStream();
+            long latencyMs = (System.nanoTime() - start) / 1_000_000L;
+            return new FanLink(deviceAddress, in, connection.openOutputStream(), connection::close, latencyMs);
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "bluetooth-spp";
+    }
+
+    private StreamConnection openServiceConnection(String deviceAddress) throws IOException {
+        String cachedUrl = serviceLocator.cached(deviceAddress);
+        if (cachedUrl != null) {
+            try {
+                LOGGER.info("Connecting to cached service URL: {}", cachedUrl);
+                return (StreamConnection) Connector.open(cachedUrl);
+            } catch (IOException e) {
+                LOGGER.warn("Cached service URL for {} failed ({}). Searching services again.", deviceAddress, e.getMessage());
+            }
+        }
+
+        LOGGER.info("Searching for SPP service on device: {}", deviceAddress);
+        String url = serviceLocator.resolve(discoveryAgent.get(), discoveredDevices.apply(deviceAddress), deviceAddress);
+        if (url == null) {
+            url = defaultServiceUrl(deviceAddress);
+            LOGGER.warn("No SPP service record for {}. Falling back to {}", deviceAddress, url);
+        }
+
+        LOGGER.info("Connecting to: {}", url);
+        StreamConnection connection = (StreamConnection) Connector.open(url);
+        if (!url.equals(serviceLocator.cached(deviceAddress))) {
+            serviceUrlCache.put(deviceAddress, url);
+        }
+        return connection;
+    }
+
+    /**
+     * Creates the SPP connection URL used when SDP finds no service record.
+     *
+     * @param deviceAddress Bluetooth MAC address
+     * @return The connection URL for RFCOMM channel 1
+     */
+    private static String defaultServiceUrl(String deviceAddress) {
+        return "btspp://" + deviceAddress + ":1;authenticate=false;encrypt=false;master=false";
+    }
+}
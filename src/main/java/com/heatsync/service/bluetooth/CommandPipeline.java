@@ -0,0 +1,295 @@
+package com.heatsync.service.bluetooth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request/response layer on top of the fan controller link.
+ *
+ * Every submitted frame is wrapped with a sequence number (see {@link FanProtocol#sequencedFrame})
+ * and completes when the device answers with K<seq> (ack) or N<seq> (nak), or when the timeout
+ * expires. Up to {@code windowSize} frames may be in flight at once, so several commands can be
+ * pipelined without waiting for each round trip; frames beyond the window are queued and
+ * transmitted as soon as a slot frees up.
+ *
+ * The link is written and futures are completed outside the pipeline lock, so a slow write or a
+ * dependent callback never stalls the reader handing in acks. Frames still reach the writer in
+ * sequence order: they are queued for writing under the lock and written by one thread at a time.
+ */
+public class CommandPipeline {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommandPipeline.class);
+
+    public static final int DEFAULT_WINDOW_SIZE = 4;
+    // The firmware acks a frame only after handling it, one frame per pass of loop(). A frame
+    // queued behind a T frame waits out its PWM ramp, up to 255 steps of 16 ms, and the 1 s
+    // tachometer window loop() may be in; the last second covers the transfer and the frame itself
+    private static final long FIRMWARE_RAMP_MS = 255L * 16L;
+    private static final long FIRMWARE_TACH_WINDOW_MS = 1000L;
+    public static final long DEFAULT_TIMEOUT_MS = FIRMWARE_RAMP_MS + FIRMWARE_TACH_WINDOW_MS + 1000L;
+    private static final int MAX_QUEUED = 32;
+
+    /**
+     * Writes an encoded frame to the link.
+     */
+    public interface FrameWriter {
+        void write(byte[] frame) throws IOException;
+    }
+
+    private static final class Pending {
+        final int sequence;
+        final String frame;
+        final CompletableFuture<CommandResult> future = new CompletableFuture<>();
+        long sentAtNanos;
+        ScheduledFuture<?> timeout;
+
+        Pending(int sequence, String frame) {
+            this.sequence = sequence;
+            this.frame = frame;
+        }
+    }
+
+    private final FrameWriter writer;
+    private final ScheduledExecutorService scheduler;
+    private final int windowSize;
+    private final long timeoutMs;
+
+    private final Object lock = new Object();
+    private final Map<Integer, Pending> inFlight = new HashMap<>();
+    private final Deque<Pending> queued = new ArrayDeque<>();
+    // Admitted to the window, not written yet; guarded by lock
+    private final Deque<Pending> outbox = new ArrayDeque<>();
+    private final Object writeLock = new Object();
+    private int nextSequence = 0;
+    private boolean closed = false;
+
+    private final LatencyStats ackLatency = new LatencyStats();
+    private long acked = 0, naked = 0, timedOut = 0, failed = 0;
+
+    public CommandPipeline(FrameWriter writer, ScheduledExecutorService scheduler) {
+        this(writer, scheduler, DEFAULT_WINDOW_SIZE, DEFAULT_TIMEOUT_MS);
+    }
+
+    public CommandPipeline(FrameWriter writer, ScheduledExecutorService scheduler, int windowSize, long timeoutMs) {
+        if (windowSize < 1) throw new IllegalArgumentException("windowSize must be at least 1");
+        this.writer = writer;
+        this.scheduler = scheduler;
+        this.windowSize = windowSize;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Submits a frame for acknowledged delivery. Never blocks on the device.
+     *
+     * @param frame An unsequenced protocol frame, as produced by {@link FanProtocol}
+     * @return A future completed with the device answer, a timeout or a failure
+     */
+    public CompletableFuture<CommandResult> submit(String frame) {
+        Pending pending;
+        boolean rejected = false;
+        synchronized (lock) {
+            nextSequence = nextSequence >= FanProtocol.MAX_SEQUENCE ? 1 : nextSequence + 1;
+            pending = new Pending(nextSequence, frame);
+
+            if (closed) {
+                failed++;
+                rejected = true;
+            } else if (inFlight.size() < windowSize) {
+                admit(pending);
+            } else if (queued.size() < MAX_QUEUED) {
+                LOGGER.debug("Window full ({} in flight). Queueing #{}", inFlight.size(), pending.sequence);
+                queued.addLast(pending);
+            } else {
+                LOGGER.warn("Command queue full. Rejecting #{}", pending.sequence);
+                failed++;
+                rejected = true;
+            }
+        }
+        if (rejected) {
+            pending.future.complete(new CommandResult(CommandResult.Status.FAILED, pending.sequence, 0L));
+        } else {
+            drainOutbox();
+        }
+        return pending.future;
+    }
+
+    /**
+     * Offers an inbound line to the pipeline.
+     *
+     * @param line A line received from the device, without terminator
+     * @return true if the line was an ack/nak frame and has been consumed
+     */
+    public boolean handleInboundLine(String line) {
+        if (line == null) return false;
+        String trimmed = line.trim();
+        if (trimmed.length() < 2) return false;
+
+        char type = trimmed.charAt(0);
+        if (type != FanProtocol.ACK && type != FanProtocol.NAK) return false;
+
+        int sequence;
+        try {
+            sequence = Integer.parseInt(trimmed.substring(1));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+
+        handleReply(type == FanProtocol.ACK, sequence);
+        return true;
+    }
+
+    /**
+     * Completes a frame from an already parsed K<seq> or N<seq> reply.
+     *
+     * @param acked true for K, false for N
+     */
+    public void handleReply(boolean acked, int sequence) {
+        complete(sequence, acked ? CommandResult.Status.ACKED : CommandResult.Status.NAKED);
+    }
+
+    /**
+     * Fails every in-flight and queued command, e.g. when the link drops.
+     * The pipeline rejects further submissions afterwards.
+     */
+    public void close() {
+        List<CompletableFuture<CommandResult>> futures = new ArrayList<>();
+        List<CommandResult> results = new ArrayList<>();
+        synchronized (lock) {
+            closed = true;
+            for (Pending pending : inFlight.values()) {
+                if (pending.timeout != null) pending.timeout.cancel(false);
+                failed++;
+                futures.add(pending.future);
+                results.add(new CommandResult(CommandResult.Status.FAILED, pending.sequence, elapsedMs(pending)));
+            }
+            inFlight.clear();
+            outbox.clear();
+            for (Pending pending : queued) {
+                failed++;
+                futures.add(pending.future);
+                results.add(new CommandResult(CommandResult.Status.FAILED, pending.sequence, 0L));
+            }
+            queued.clear();
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            futures.get(i).complete(results.get(i));
+        }
+    }
+
+    public LatencyStats getAckLatency() { return ackLatency; }
+
+    public int getInFlightCount() {
+        synchronized (lock) { return inFlight.size(); }
+    }
+
+    public int getQueuedCount() {
+        synchronized (lock) { return queued.size(); }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return String.format("acked=%d naked=%d timedOut=%d failed=%d inFlight=%d queued=%d latency[%s]",
+                    acked, naked, timedOut, failed, inFlight.size(), queued.size(), ackLatency);
+        }
+    }
+
+    // Must hold lock
+    private void admit(Pending pending) {
+        pending.sentAtNanos = System.nanoTime();
+        inFlight.put(pending.sequence, pending);
+        pending.timeout = scheduler.schedule(
+                () -> complete(pending.sequence, CommandResult.Status.TIMED_OUT),
+                timeoutMs, TimeUnit.MILLISECONDS);
+        outbox.addLast(pending);
+    }
+
+    /*
+     * Writes the admitted frames in order. Whoever holds writeLock writes every frame admitted
+     * meanwhile, so a frame admitted after another is never written before it.
+     */
+    private void drainOutbox() {
+        synchronized (writeLock) {
+            while (true) {
+                Pending pending;
+                synchronized (lock) {
+                    pending = outbox.pollFirst();
+                }
+                if (pending == null) return;
+
+                String wire = FanProtocol.sequencedFrame(pending.sequence, pending.frame);
+                try {
+                    writer.write(wire.getBytes(StandardCharsets.US_ASCII));
+                } catch (IOException e) {
+                    LOGGER.error("Failed to write sequenced frame #{}", pending.sequence, e);
+                    settle(pending.sequence, CommandResult.Status.FAILED);
+                }
+            }
+        }
+    }
+
+    private void complete(int sequence, CommandResult.Status status) {
+        if (settle(sequence, status)) {
+            drainOutbox();
+        }
+    }
+
+    // Completes an in-flight frame and refills the window; the caller writes what was admitted
+    private boolean settle(int sequence, CommandResult.Status status) {
+        Pending pending;
+        CommandResult result;
+        synchronized (lock) {
+            pending = inFlight.remove(sequence);
+            if (pending == null) {
+                LOGGER.debug("Answer {} for unknown or expired sequence #{}", status, sequence);
+                return false;
+            }
+            if (pending.timeout != null && status != CommandResult.Status.TIMED_OUT) {
+                pending.timeout.cancel(false);
+            }
+
+            long latencyMs = elapsedMs(pending);
+            switch (status) {
+                case ACKED:
+                    acked++;
+                    ackLatency.record(latencyMs);
+                    break;
+                case NAKED:
+                    naked++;
+                    break;
+                case TIMED_OUT:
+                    timedOut++;
+                    LOGGER.warn("Command #{} timed out after {} ms", sequence, latencyMs);
+                    break;
+                default:
+                    failed++;
+                    break;
+            }
+            result = new CommandResult(status, sequence, latencyMs);
+
+            // Refill the window
+            while (!closed && inFlight.size() < windowSize && !queued.isEmpty()) {
+                admit(queued.pollFirst());
+            }
+        }
+        // Complete outside the lock so dependent callbacks cannot stall the reader
+        pending.future.complete(result);
+        return true;
+    }
+
+    private static long elapsedMs(Pending pending) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pending.sentAtNanos);
+    }
+}
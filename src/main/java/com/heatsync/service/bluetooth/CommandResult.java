@@ -0,0 +1,46 @@
+package com.heatsync.service.bluetooth;
+
+/**
+ * Outcome of a command sent to the fan controller.
+ */
+public final class CommandResult {
+
+    public enum Status {
+        ACKED,       // Device parsed and applied the frame
+        NAKED,       // Device received the frame but rejected it
+        TIMED_OUT,   // No answer within the pipeline timeout
+        FAILED,      // Frame could not be written or the link dropped while waiting
+        UNCONFIRMED  // Frame was written without the acknowledgement layer
+    }
+
+    private final Status status;
+    private final int sequence;
+    private final long latencyMs;
+
+    public CommandResult(Status status, int sequence, long latencyMs) {
+        this.status = status;
+        this.sequence = sequence;
+        this.latencyMs = latencyMs;
+    }
+
+    public static CommandResult unconfirmed(boolean written) {
+        return new CommandResult(written ? Status.UNCONFIRMED : Status.FAILED, -1, -1L);
+    }
+
+    public Status getStatus() { return status; }
+    public int getSequence() { return sequence; }
+    public long getLatencyMs() { return latencyMs; }
+
+    /**
+     * @return true if the frame reached the device as far as the host can tell
+     */
+    public boolean isDelivered() {
+        return status == Status.ACKED || status == Status.UNCONFIRMED;
+    }
+
+    @Override
+    public String toString() {
+        if (sequence < 0) return status.toString();
+        return status + " #" + sequence + " (" + latencyMs + " ms)";
+    }
+}
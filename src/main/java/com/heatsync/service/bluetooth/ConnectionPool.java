@@ -0,0 +1,175 @@
+package com.heatsync.service.bluetooth;
+
+import com.heatsync.service.transport.FanLinkTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps links to several fan controllers open at once, e.g. two or three cooling pads on one
+ * workstation.
+ *
+ * Every device is a {@link PooledConnection} with its own threads, queue and reconnect policy, so a
+ * slow or dropped device never delays the others. {@link #broadcastTemperature} encodes a telemetry
+ * frame once and hands it to every device without blocking; each device's writer sends it as fast
+ * as its own link allows.
+ */
+public class ConnectionPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionPool.class);
+
+    /**
+     * Events of pooled devices. Called on the device's own threads.
+     */
+    public interface Listener {
+        default void onStateChanged(PooledConnection connection, ConnectionState from, ConnectionState to) {}
+        default void onRpm(PooledConnection connection, int rpm) {}
+    }
+
+    private final FanLinkTransport transport;
+    private final Map<String, PooledConnection> connections = new ConcurrentHashMap<>();
+    // Connection attempts, backoff timers and the reader and writer of every device
+    private final StackExecutor executor = new StackExecutor("pool");
+    private volatile Listener listener = new Listener() {};
+
+    public ConnectionPool(FanLinkTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Sets the listener for devices added from now on.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener != null ? listener : new Listener() {};
+    }
+
+    /**
+     * Adds a device and starts connecting to it. Adding a device twice only updates its profile.
+     *
+     * @param address Device address
+     * @param profileFrame Profile written on every connect, or null
+     * @return The device's connection
+     */
+    public PooledConnection add(String address, String profileFrame) {
+        boolean[] created = { false };
+        Listener current = listener;
+        PooledConnection connection = connections.computeIfAbsent(address, key -> {
+            created[0] = true;
+            return new PooledConnection(key, profileFrame, transport, executor,
+                    new Listener() {
+                        @Override
+                        public void onStateChanged(PooledConnection c, ConnectionState from, ConnectionState to) {
+                            current.onStateChanged(c, from, to);
+                        }
+
+                        @Override
+                        public void onRpm(PooledConnection c, int rpm) {
+                            current.onRpm(c, rpm);
+                        }
+                    });
+        });
+        if (created[0]) {
+            LOGGER.info("Added {} to the connection pool ({} devices).", address, connections.size());
+            connection.start();
+        } else {
+            connection.setProfileFrame(profileFrame);
+        }
+        return connection;
+    }
+
+    /**
+     * Disconnects a device and removes it from the pool.
+     *
+     * @return true if the device was in the pool
+     */
+    public boolean remove(String address) {
+        PooledConnection connection = connections.remove(address);
+        if (connection == null) return false;
+        connection.stop();
+        LOGGER.info("Removed {} from the connection pool.", address);
+        return true;
+    }
+
+    public PooledConnection get(String address) {
+        return connections.get(address);
+    }
+
+    public Collection<PooledConnection> getConnections() {
+        return new ArrayList<>(connections.values());
+    }
+
+    public int size() {
+        return connections.size();
+    }
+
+    /**
+     * @return Number of devices currently connected
+     */
+    public int connectedCount() {
+        int count = 0;
+        for (PooledConnection connection : connections.values()) {
+            if (connection.isConnected()) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Sends temperature telemetry to every device. Never blocks.
+     *
+     * @return Number of devices currently connected
+     */
+    public int broadcastTemperature(double cpuTemp, double gpuTemp, double diskTemp) {
+        byte[] frame = FanProtocol.temperatureFrame(cpuTemp, gpuTemp, diskTemp).getBytes(StandardCharsets.US_ASCII);
+        int connected = 0;
+        for (PooledConnection connection : connections.values()) {
+            connection.sendTelemetry(frame);
+            if (connection.isConnected()) connected++;
+        }
+        return connected;
+    }
+
+    /**
+     * Queues a command frame on every device. Never blocks.
+     *
+     * @return Number of devices that accepted the frame
+     */
+    public int broadcast(String frame) {
+        int accepted = 0;
+        for (PooledConnection connection : connections.values()) {
+            if (connection.send(frame)) accepted++;
+        }
+        return accepted;
+    }
+
+    /**
+     * Disconnects every device and stops the pool's threads.
+     */
+    public void close() {
+        List<String> addresses = new ArrayList<>(connections.keySet());
+        for (String address : addresses) {
+            remove(address);
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Gets the executor running the pool's tasks, e.g. to count its threads.
+     */
+    public StackExecutor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("pool[" + connectedCount() + "/" + connections.size() + " connected]");
+        for (PooledConnection connection : connections.values()) {
+            sb.append("\n  ").append(connection);
+        }
+        return sb.toString();
+    }
+}
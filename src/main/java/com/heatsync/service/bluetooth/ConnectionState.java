@@ -0,0 +1,20 @@
+package com.heatsync.service.bluetooth;
+
+/**
+ * States of the link between the host and the fan controller.
+ *
+ *   IDLE ──► SCANNING ──► IDLE
+ *   IDLE/SCANNING ──► CONNECTING ──► CONNECTED ──► DRAINING ──► IDLE
+ *   CONNECTING ──► IDLE                          (an attempt failed, none follows)
+ *   CONNECTING ──► BACKOFF ──► CONNECTING       (reconnect attempts)
+ *   IDLE/SCANNING ──► BACKOFF                    (reconnect requested after a failure)
+ *   BACKOFF ──► IDLE                             (explicit close, or no saved device)
+ */
+public enum ConnectionState {
+    IDLE,        // No link, no inquiry running
+    SCANNING,    // Device inquiry in progress
+    CONNECTING,  // A single connection attempt owns the link
+    CONNECTED,   // Streams are open and the read thread is running
+    DRAINING,    // Link is being torn down, streams are closing
+    BACKOFF      // Waiting for the next scheduled reconnect attempt
+}
@@ -0,0 +1,14 @@
+package com.heatsync.service.bluetooth;
+
+/**
+ * Notified on every transition of the {@link ConnectionStateMachine}.
+ */
+public interface ConnectionStateListener {
+    /**
+     * Called on the thread that performed the transition, right after it succeeded.
+     *
+     * @param from The state that was left
+     * @param to The state that was entered
+     */
+    void onStateChanged(ConnectionState from, ConnectionState to);
+}
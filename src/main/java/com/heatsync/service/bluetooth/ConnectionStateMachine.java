@@ -0,0 +1,81 @@
+package com.heatsync.service.bluetooth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free holder of the current {@link ConnectionState}.
+ *
+ * Every change goes through a compare-and-set, so when several threads (executor, reconnect
+ * scheduler, read thread, BlueCove callbacks, EDT) race for the same transition exactly one wins
+ * and the others observe the failure instead of silently overwriting each other.
+ */
+public class ConnectionStateMachine {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionStateMachine.class);
+
+    private final AtomicReference<ConnectionState> state = new AtomicReference<>(ConnectionState.IDLE);
+    private final List<ConnectionStateListener> listeners = new CopyOnWriteArrayList<>();
+
+    public ConnectionState get() {
+        return state.get();
+    }
+
+    public boolean is(ConnectionState expected) {
+        return state.get() == expected;
+    }
+
+    /**
+     * Moves from {@code from} to {@code to} if the machine is currently in {@code from}.
+     *
+     * @return true if this call performed the transition
+     */
+    public boolean transition(ConnectionState from, ConnectionState to) {
+        if (state.compareAndSet(from, to)) {
+            publish(from, to);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Moves to {@code to} from whichever of the {@code from} states the machine is currently in.
+     *
+     * @return The state that was left, or null if the machine was in none of {@code from}
+     */
+    public ConnectionState transitionFromAny(Set<ConnectionState> from, ConnectionState to) {
+        while (true) {
+            ConnectionState current = state.get();
+            if (!from.contains(current)) {
+                return null;
+            }
+            if (state.compareAndSet(current, to)) {
+                publish(current, to);
+                return current;
+            }
+        }
+    }
+
+    public void addListener(ConnectionStateListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ConnectionStateListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void publish(ConnectionState from, ConnectionState to) {
+        LOGGER.debug("Connection state {} -> {}", from, to);
+        for (ConnectionStateListener listener : listeners) {
+            try {
+                listener.onStateChanged(from, to);
+            } catch (RuntimeException e) {
+                LOGGER.error("Connection state listener failed on {} -> {}", from, to, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.heatsync.service.bluetooth;
+
+import com.heatsync.service.configIO.FanProfileIOService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.bluetooth.RemoteDevice;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Resolves device friendly names off the discovery callback thread.
+ *
+ * A remote name request goes over the air and can take seconds, so discovery reports devices by
+ * address right away and names follow as updates. Requests run on a small bounded pool, at most one
+ * per MAC at a time; a failed MAC is not retried for {@link #RETRY_AFTER_MS}. Resolved names are kept
+ * in {@code device-names.txt} of the config folder ({@code <mac> <name>} per line) and served from
+ * there on the next run without any radio traffic.
+ */
+public class DeviceNameResolver {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeviceNameResolver.class);
+
+    // Next to the config file, so -Dheatsync.config.dir moves it too
+    static final Path DEFAULT_PATH = FanProfileIOService.getConfigFolder().resolve("device-names.txt");
+    private static final int THREADS = 2;
+    private static final int MAX_QUEUED = 64;
+    static final long RETRY_AFTER_MS = 60_000L;
+
+    private final Path file;
+    private final Map<String, String> names = new ConcurrentHashMap<>();
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> failedAt = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor pool;
+    private volatile boolean loaded = false;
+
+    public DeviceNameResolver() {
+        this(DEFAULT_PATH);
+    }
+
+    public DeviceNameResolver(Path file) {
+        this.file = file;
+        this.pool = new ThreadPoolExecutor(THREADS, THREADS, 30L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED), runnable -> {
+                    Thread thread = new Thread(runnable, "bt-name-resolver");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return The known name of a device, or null
+     */
+    public String cached(String mac) {
+        ensureLoaded();
+        return names.get(mac);
+    }
+
+    /**
+     * Queues a name request for a device unless its name is known, a request is already pending,
+     * or the last one failed recently.
+     *
+     * @param mac Device address
+     * @param device The device to query
+     * @param onResolved Receives (mac, name) on a pool thread when the name is known
+     */
+    public void resolve(String mac, RemoteDevice device, BiConsumer<String, String> onResolved) {
+        if (cached(mac) != null) return;
+        Long failed = failedAt.get(mac);
+        if (failed != null && System.currentTimeMillis() - failed < RETRY_AFTER_MS) return;
+        if (!inFlight.add(mac)) return;
+
+        Runnable task = () -> {
+            long start = System.nanoTime();
+            try {
+                String name = device.getFriendlyName(false);
+                if (name == null || name.trim().isEmpty()) {
+                    failedAt.put(mac, System.currentTimeMillis());
+                    return;
+                }
+                name = name.trim();
+                LOGGER.debug("Resolved name of {} in {} ms: {}", mac, (System.nanoTime() - start) / 1_000_000L, name);
+                failedAt.remove(mac);
+                names.put(mac, name);
+                save();
+                onResolved.accept(mac, name);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.debug("Name request for {} failed: {}", mac, e.getMessage());
+                failedAt.put(mac, System.currentTimeMillis());
+            } finally {
+                inFlight.remove(mac);
+            }
+        };
+
+        try {
+            pool.execute(task);
+        } catch (java.util.concurrent.RejectedExecutionException e) {
+            // Queue full or shut down; the next sighting asks again
+            inFlight.remove(mac);
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private synchronized void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        if (!Files.exists(file)) return;
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split("\\s+", 2);
+                if (parts.length == 2) names.put(parts[0], parts[1]);
+            }
+            LOGGER.info("Loaded {} cached device name(s) from {}", names.size(), file);
+        } catch (IOException e) {
+            LOGGER.warn("Could not read device name cache {}", file, e);
+        }
+    }
+
+    private synchronized void save() {
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write("# mac name");
+                writer.newLine();
+                for (Map.Entry<String, String> e : names.entrySet()) {
+                    writer.write(e.getKey() + " " + e.getValue());
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.warn("Could not write device name cache {}", file, e);
+        }
+    }
+}
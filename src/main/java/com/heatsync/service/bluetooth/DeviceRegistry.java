@@ -0,0 +1,202 @@
+package com.heatsync.service.bluetooth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Devices seen by inquiry, keyed by MAC address.
+ *
+ * Written from the stack's discovery callback thread and read from any thread. Entries survive
+ * across inquiry cycles and are only evicted when a device has not been seen for the TTL, so a
+ * device does not vanish and reappear every time a new cycle starts. Listeners receive only deltas:
+ * an add for a new device, an update when its name or signal strength changed, a remove on eviction.
+ */
+public class DeviceRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeviceRegistry.class);
+
+    public static final long DEFAULT_TTL_MS = 60_000L;
+    private static final int RSSI_WINDOW = 8;
+
+    // Mutable state of one device. Guarded by its own monitor.
+    private static final class Entry {
+        final String address;
+        final long firstSeenMs;
+        String name;
+        Object device;
+        int majorDeviceClass, minorDeviceClass;
+        long lastSeenMs;
+        final int[] rssi = new int[RSSI_WINDOW];
+        int rssiCount = 0, rssiNext = 0;
+
+        Entry(String address, long now) {
+            this.address = address;
+            this.firstSeenMs = now;
+            this.lastSeenMs = now;
+        }
+
+        void addRssi(int value) {
+            rssi[rssiNext] = value;
+            rssiNext = (rssiNext + 1) % RSSI_WINDOW;
+            rssiCount = Math.min(rssiCount + 1, RSSI_WINDOW);
+        }
+
+        int lastRssi() {
+            return rssiCount == 0 ? 0 : rssi[(rssiNext + RSSI_WINDOW - 1) % RSSI_WINDOW];
+        }
+
+        DiscoveredDevice snapshot() {
+            double sum = 0;
+            for (int i = 0; i < rssiCount; i++) sum += rssi[i];
+            return new DiscoveredDevice(address, name, device, majorDeviceClass, minorDeviceClass,
+                    firstSeenMs, lastSeenMs, lastRssi(), rssiCount == 0 ? 0 : sum / rssiCount, rssiCount);
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final List<DeviceRegistryListener> listeners = new CopyOnWriteArrayList<>();
+    private final long ttlMs;
+
+    public DeviceRegistry() {
+        this(DEFAULT_TTL_MS);
+    }
+
+    public DeviceRegistry(long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    public void addListener(DeviceRegistryListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(DeviceRegistryListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Records a sighting of a device and publishes an add or update if something changed.
+     *
+     * @param address MAC address
+     * @param name Friendly name, may be null if not resolved
+     * @param device The stack's device object
+     * @param majorDeviceClass Major device class, 0 if unknown
+     * @param minorDeviceClass Minor device class, 0 if unknown
+     * @param rssi Signal strength of this sighting
+     */
+    public void observe(String address, String name, Object device, int majorDeviceClass, int minorDeviceClass, int rssi) {
+        long now = System.currentTimeMillis();
+        boolean added;
+        DiscoveredDevice snapshot;
+        while (true) {
+            boolean[] created = { false };
+            Entry entry = entries.computeIfAbsent(address, key -> {
+                created[0] = true;
+                return new Entry(key, now);
+            });
+            synchronized (entry) {
+                if (entries.get(address) != entry) {
+                    continue; // Evicted between lookup and lock
+                }
+                added = created[0];
+                boolean changed = added
+                        || (name != null && !name.equals(entry.name))
+                        || entry.lastRssi() != rssi;
+                if (name != null) entry.name = name;
+                entry.device = device;
+                entry.majorDeviceClass = majorDeviceClass;
+                entry.minorDeviceClass = minorDeviceClass;
+                entry.lastSeenMs = now;
+                entry.addRssi(rssi);
+                snapshot = changed ? entry.snapshot() : null;
+            }
+            break;
+        }
+
+        if (added) {
+            LOGGER.debug("Device added: {}", snapshot);
+            for (DeviceRegistryListener listener : listeners) listener.onDeviceAdded(snapshot);
+        } else if (snapshot != null) {
+            for (DeviceRegistryListener listener : listeners) listener.onDeviceUpdated(snapshot);
+        }
+    }
+
+    /**
+     * Sets the name of a known device, e.g. once an asynchronous name request returns, and publishes
+     * an update if it changed. Does not count as a sighting.
+     *
+     * @return true if the device is known and its name changed
+     */
+    public boolean updateName(String address, String name) {
+        Entry entry = entries.get(address);
+        if (entry == null || name == null) return false;
+        DiscoveredDevice snapshot;
+        synchronized (entry) {
+            if (entries.get(address) != entry || name.equals(entry.name)) return false;
+            entry.name = name;
+            snapshot = entry.snapshot();
+        }
+        for (DeviceRegistryListener listener : listeners) listener.onDeviceUpdated(snapshot);
+        return true;
+    }
+
+    /**
+     * Removes every device not seen within the TTL and publishes the removals.
+     *
+     * @return Number of devices removed
+     */
+    public int evictExpired() {
+        long cutoff = System.currentTimeMillis() - ttlMs;
+        int removed = 0;
+        for (Entry entry : entries.values()) {
+            DiscoveredDevice snapshot;
+            synchronized (entry) {
+                // Removing under the entry lock keeps a concurrent sighting from updating a dead entry
+                if (entry.lastSeenMs >= cutoff || !entries.remove(entry.address, entry)) continue;
+                snapshot = entry.snapshot();
+            }
+            removed++;
+            LOGGER.debug("Device expired: {}", snapshot);
+            for (DeviceRegistryListener listener : listeners) listener.onDeviceRemoved(snapshot);
+        }
+        return removed;
+    }
+
+    public DiscoveredDevice get(String address) {
+        Entry entry = entries.get(address);
+        if (entry == null) return null;
+        synchronized (entry) {
+            return entry.snapshot();
+        }
+    }
+
+    /**
+     * @return The stack's device object for an address, or null if unknown
+     */
+    public Object getDevice(String address) {
+        Entry entry = entries.get(address);
+        if (entry == null) return null;
+        synchronized (entry) {
+            return entry.device;
+        }
+    }
+
+    public Collection<DiscoveredDevice> snapshot() {
+        List<DiscoveredDevice> devices = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                devices.add(entry.snapshot());
+            }
+        }
+        return devices;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
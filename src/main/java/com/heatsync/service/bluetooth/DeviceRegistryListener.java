@@ -0,0 +1,15 @@
+package com.heatsync.service.bluetooth;
+
+/**
+ * Receives the changes of a {@link DeviceRegistry}. Called on the thread that made the change.
+ */
+public interface DeviceRegistryListener {
+    /** A device was seen for the first time, or again after being evicted. */
+    void onDeviceAdded(DiscoveredDevice device);
+
+    /** A known device changed its name or signal strength. */
+    void onDeviceUpdated(DiscoveredDevice device);
+
+    /** A device was not seen within the registry TTL. */
+    void onDeviceRemoved(DiscoveredDevice device);
+}
@@ -0,0 +1,49 @@
+package com.heatsync.service.bluetooth;
+
+/**
+ * Immutable snapshot of a device seen by inquiry, as published by {@link DeviceRegistry}.
+ */
+public final class DiscoveredDevice {
+    private final String address;
+    private final String name;
+    private final Object device;
+    private final int majorDeviceClass;
+    private final int minorDeviceClass;
+    private final long firstSeenMs;
+    private final long lastSeenMs;
+    private final int lastRssi;
+    private final double averageRssi;
+    private final int rssiSamples;
+
+    DiscoveredDevice(String address, String name, Object device, int majorDeviceClass, int minorDeviceClass,
+                     long firstSeenMs, long lastSeenMs, int lastRssi, double averageRssi, int rssiSamples) {
+        this.address = address;
+        this.name = name;
+        this.device = device;
+        this.majorDeviceClass = majorDeviceClass;
+        this.minorDeviceClass = minorDeviceClass;
+        this.firstSeenMs = firstSeenMs;
+        this.lastSeenMs = lastSeenMs;
+        this.lastRssi = lastRssi;
+        this.averageRssi = averageRssi;
+        this.rssiSamples = rssiSamples;
+    }
+
+    public String getAddress() { return address; }
+    public String getName() { return name; }
+    /** The stack's device object (a BlueCove RemoteDevice), or null. */
+    public Object getDevice() { return device; }
+    public int getMajorDeviceClass() { return majorDeviceClass; }
+    public int getMinorDeviceClass() { return minorDeviceClass; }
+    public long getFirstSeenMs() { return firstSeenMs; }
+    public long getLastSeenMs() { return lastSeenMs; }
+    public int getLastRssi() { return lastRssi; }
+    public double getAverageRssi() { return averageRssi; }
+    public int getRssiSamples() { return rssiSamples; }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s) rssi=%d avg=%.1f seen=%dms ago", name, address, lastRssi, averageRssi,
+                System.currentTimeMillis() - lastSeenMs);
+    }
+}
@@ -0,0 +1,243 @@
+package com.heatsync.service.bluetooth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Duty cycle of device discovery.
+ *
+ * A discovery session runs bursts of {@code burstCycles} inquiry cycles separated by
+ * {@code idleMs} of radio silence, instead of restarting inquiry forever: inquiry competes with
+ * RFCOMM for the adapter and is pointless once the wanted device is known. A session is suspended
+ * while a connection is being made or held, and resumes when the link goes back to idle.
+ *
+ * Configure with -Dheatsync.discovery.burstCycles and -Dheatsync.discovery.idleMs; an idle time
+ * of 0 restores continuous inquiry.
+ *
+ * The scheduler also accounts inquiry airtime and, through {@link #recordLinkWrite}, how long link
+ * writes take with and without an inquiry in progress.
+ */
+public class DiscoveryScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiscoveryScheduler.class);
+
+    public static final int DEFAULT_BURST_CYCLES = 2;   // About 20 s of GIAC inquiry
+    public static final long DEFAULT_IDLE_MS = 30_000L;
+    private static final long RESUME_DELAY_MS = 1000L;
+
+    private final ScheduledExecutorService scheduler;
+    private final BooleanSupplier startInquiry;
+    private final int burstCycles;
+    private final long idleMs;
+
+    // Guarded by this
+    private boolean wanted = false;
+    private boolean suspended = false;
+    private int cyclesInBurst = 0;
+    private ScheduledFuture<?> pendingStart;
+    private long inquiryStartedNanos = 0L;
+
+    // Metrics, guarded by this
+    private long cycles = 0, bursts = 0, airtimeNanos = 0;
+    private final long createdNanos = System.nanoTime();
+    private final LatencyStats writeLatencyDuringInquiry = new LatencyStats();
+    private final LatencyStats writeLatencyWithoutInquiry = new LatencyStats();
+
+    /**
+     * @param scheduler Runs the delayed burst starts
+     * @param startInquiry Starts one inquiry cycle, returns false if it could not
+     */
+    public DiscoveryScheduler(ScheduledExecutorService scheduler, BooleanSupplier startInquiry) {
+        this(scheduler, startInquiry,
+                Integer.getInteger("heatsync.discovery.burstCycles", DEFAULT_BURST_CYCLES),
+                Long.getLong("heatsync.discovery.idleMs", DEFAULT_IDLE_MS));
+    }
+
+    public DiscoveryScheduler(ScheduledExecutorService scheduler, BooleanSupplier startInquiry, int burstCycles, long idleMs) {
+        this.scheduler = scheduler;
+        this.startInquiry = startInquiry;
+        this.burstCycles = Math.max(1, burstCycles);
+        this.idleMs = Math.max(0L, idleMs);
+    }
+
+    /**
+     * Starts a discovery session, or a new burst if the session is idle between bursts.
+     *
+     * @return true if an inquiry is running or was started
+     */
+    public boolean request() {
+        synchronized (this) {
+            wanted = true;
+            suspended = false;
+            cancelPendingStart();
+            if (inquiryStartedNanos != 0L) {
+                return true;
+            }
+            cyclesInBurst = 0;
+            bursts++;
+        }
+        boolean started = startInquiry.getAsBoolean();
+        if (!started) {
+            synchronized (this) {
+                wanted = false;
+            }
+        }
+        return started;
+    }
+
+    /**
+     * Ends the session.
+     */
+    public synchronized void cancel() {
+        wanted = false;
+        suspended = false;
+        cancelPendingStart();
+    }
+
+    /**
+     * Pauses the session while a connection is made or held.
+     */
+    public synchronized void suspend() {
+        if (wanted && !suspended) {
+            LOGGER.info("Discovery suspended while connecting.");
+            suspended = true;
+        }
+        cancelPendingStart();
+    }
+
+    /**
+     * Called when the link returns to idle. Resumes a suspended session shortly after, so a
+     * reconnect that starts right away is not raced by inquiry.
+     *
+     * @param stillIdle Checked when the delay expires; the session only resumes if it returns true
+     */
+    public synchronized void onLinkIdle(BooleanSupplier stillIdle) {
+        if (!wanted || !suspended) return;
+        cancelPendingStart();
+        pendingStart = scheduler.schedule(() -> {
+            synchronized (this) {
+                if (!wanted || !suspended || !stillIdle.getAsBoolean()) return;
+                LOGGER.info("Link idle. Resuming discovery.");
+                suspended = false;
+                cyclesInBurst = 0;
+                bursts++;
+            }
+            startOrGiveUp();
+        }, RESUME_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void onInquiryStarted() {
+        inquiryStartedNanos = System.nanoTime();
+    }
+
+    /**
+     * Records the end of an inquiry cycle and decides what follows.
+     *
+     * @return true if the next cycle should start immediately, false if the radio should go idle
+     */
+    public boolean onInquiryCompleted(boolean completedNormally) {
+        synchronized (this) {
+            endAirtime();
+            if (!completedNormally || !wanted || suspended) {
+                return false;
+            }
+            cyclesInBurst++;
+            if (idleMs == 0L || cyclesInBurst < burstCycles) {
+                return true;
+            }
+
+            LOGGER.info("Discovery burst of {} cycles done. Idling {} ms. {}", cyclesInBurst, idleMs, this);
+            cancelPendingStart();
+            pendingStart = scheduler.schedule(() -> {
+                synchronized (this) {
+                    if (!wanted || suspended) return;
+                    cyclesInBurst = 0;
+                    bursts++;
+                }
+                startOrGiveUp();
+            }, idleMs, TimeUnit.MILLISECONDS);
+            return false;
+        }
+    }
+
+    /**
+     * Records an inquiry that ended without completing, e.g. cancelled or failed.
+     */
+    public synchronized void onInquiryStopped() {
+        endAirtime();
+    }
+
+    /**
+     * @return true while a session is wanted and not suspended, including idle gaps between bursts
+     */
+    public synchronized boolean isActive() {
+        return wanted && !suspended;
+    }
+
+    /**
+     * Records how long a write to the link took, attributing it to whether inquiry was running.
+     */
+    public void recordLinkWrite(long nanos) {
+        boolean inquiring;
+        synchronized (this) {
+            inquiring = inquiryStartedNanos != 0L;
+        }
+        (inquiring ? writeLatencyDuringInquiry : writeLatencyWithoutInquiry).record(TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    public synchronized long getInquiryCycles() { return cycles; }
+    public synchronized long getBursts() { return bursts; }
+
+    /**
+     * @return Total inquiry airtime in milliseconds, including the cycle in progress
+     */
+    public synchronized long getAirtimeMs() {
+        long running = inquiryStartedNanos != 0L ? System.nanoTime() - inquiryStartedNanos : 0L;
+        return TimeUnit.NANOSECONDS.toMillis(airtimeNanos + running);
+    }
+
+    /**
+     * @return Fraction of the scheduler's lifetime spent in inquiry
+     */
+    public synchronized double getDutyRatio() {
+        long lifetime = System.nanoTime() - createdNanos;
+        return lifetime <= 0 ? 0.0 : (double) TimeUnit.MILLISECONDS.toNanos(getAirtimeMs()) / lifetime;
+    }
+
+    public LatencyStats getWriteLatencyDuringInquiry() { return writeLatencyDuringInquiry; }
+    public LatencyStats getWriteLatencyWithoutInquiry() { return writeLatencyWithoutInquiry; }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("cycles=%d bursts=%d airtime=%dms duty=%.1f%% write[inquiry: %s | quiet: %s]",
+                cycles, bursts, getAirtimeMs(), getDutyRatio() * 100, writeLatencyDuringInquiry, writeLatencyWithoutInquiry);
+    }
+
+    private void startOrGiveUp() {
+        if (!startInquiry.getAsBoolean()) {
+            LOGGER.warn("Could not start scheduled inquiry. Ending discovery session.");
+            cancel();
+        }
+    }
+
+    // Must hold this
+    private void endAirtime() {
+        if (inquiryStartedNanos != 0L) {
+            airtimeNanos += System.nanoTime() - inquiryStartedNanos;
+            inquiryStartedNanos = 0L;
+            cycles++;
+        }
+    }
+
+    // Must hold this
+    private void cancelPendingStart() {
+        if (pendingStart != null) {
+            pendingStart.cancel(false);
+            pendingStart = null;
+        }
+    }
+}
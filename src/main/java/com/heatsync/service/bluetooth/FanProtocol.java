@@ -0,0 +1,178 @@
+package com.heatsync.service.bluetooth;
+
+import java.text.DecimalFormat;
+
+/**
+ * Encoders for the line based protocol understood by ArduinoFanControl.
+ *
+ * Host to device frames:
+ *   T<cpu>:<gpu>:<disk>\n                         temperature telemetry
+ *   A<cpuMin>:<gpuMin>:<cpuMax>:<gpuMax>:<minSpeed>:<maxSpeed>:<k>\n   automatic profile
+ *   C<percentage>\n                                constant profile
+ *   E<token>\n                                     link probe, echoed back unchanged
+ *   H\n                                            query of the running profile's hash (opt-in firmware command)
+ *   L<c|g><start>:<hex>\n                          fan speed table entries from start on, two hex digits each
+ *   U<crc>\n                                       run on the uploaded tables if their CRC-16 is crc
+ *   #<seq> <frame>\n                               any of the above, acknowledged by the device
+ *
+ * Device to host frames:
+ *   <rpm>\n                                        tachometer reading
+ *   P<pwm>\n                                       applied PWM duty
+ *   V<major>.<minor>[.<patch>]\n                   firmware version
+ *   X<code>\n                                      firmware error
+ *   K<seq>\n / N<seq>\n                            acknowledgement / rejection of a sequenced frame
+ *   E<token>\n                                     echo of a link probe
+ *   H<hash>\n                                      hash of the running profile, 0 before any profile
+ *
+ * A table profile is a run of L frames followed by one U frame, sent one after the other: the
+ * firmware buffers no more than 64 bytes, and sees no L frame as a profile on its own. The tables are
+ * those of {@link com.heatsync.service.configIO.FanCurveTable}, one speed in percent per half degree.
+ */
+public final class FanProtocol {
+    public static final char TEMPERATURE = 'T';
+    public static final char AUTO_PROFILE = 'A';
+    public static final char CONSTANT_PROFILE = 'C';
+    public static final char ECHO = 'E';
+    public static final char PWM_REPORT = 'P';
+    public static final char VERSION = 'V';
+    public static final char ERROR = 'X';
+    public static final char PROFILE_HASH = 'H';
+    public static final char SEQUENCED = '#';
+    public static final char ACK = 'K';
+    public static final char NAK = 'N';
+    public static final char TABLE_ENTRIES = 'L';
+    public static final char USE_TABLE = 'U';
+    public static final char CPU_TABLE = 'c';
+    public static final char GPU_TABLE = 'g';
+
+    // Entries per L frame: "#32767 Lg120:" and 24 entries of two digits fit the firmware's 64 byte buffer
+    public static final int TABLE_ENTRIES_PER_FRAME = 24;
+
+    // The firmware stores sequence numbers in a 16 bit signed int
+    public static final int MAX_SEQUENCE = 0x7FFF;
+
+    // Hide constructor
+    private FanProtocol() {}
+
+    /**
+     * Encodes a temperature telemetry frame.
+     * T:CPU:GPU:DISK\n format (easily parseable by Arduino or similar)
+     */
+    public static String temperatureFrame(double cpuTemp, double gpuTemp, double diskTemp) {
+        DecimalFormat df = new DecimalFormat("00.0");
+        return String.format("T%s:%s:%s\n", df.format(cpuTemp), df.format(gpuTemp), df.format(diskTemp));
+    }
+
+    /**
+     * Encodes an automatic (curve) profile frame.
+     */
+    public static String autoProfileFrame(int cpuMinTemp, int gpuMinTemp, int cpuMaxTemp, int gpuMaxTemp, int minSpeed, int maxSpeed, double k) {
+        return String.format("A%d:%d:%d:%d:%d:%d:%.2f\n", cpuMinTemp, gpuMinTemp, cpuMaxTemp, gpuMaxTemp, minSpeed, maxSpeed, k);
+    }
+
+    /**
+     * Encodes a constant profile frame. Terminated like the others: without it the firmware waits
+     * out its 1 s serial timeout and reads the next frame sent within it into the percentage.
+     */
+    public static String constantProfileFrame(int percentage) {
+        return String.format("C%d\n", percentage);
+    }
+
+    /**
+     * Encodes a link probe. Firmware that supports it answers with the same frame; older firmware
+     * ignores it.
+     */
+    public static String echoFrame(int token) {
+        return ECHO + Integer.toString(token) + "\n";
+    }
+
+    /**
+     * Encodes the query for the hash of the profile the firmware runs, answered with H<hash>.
+     */
+    public static String profileHashQuery() {
+        return PROFILE_HASH + "\n";
+    }
+
+    /**
+     * Encodes a table profile: the L frames of both tables, then the U frame that switches the
+     * firmware over to them. One frame per line.
+     *
+     * @param cpu Speeds in percent (0-100) against CPU temperature
+     * @param gpu Speeds in percent (0-100) against GPU temperature, as many as cpu
+     */
+    public static String tableProfileFrames(byte[] cpu, byte[] gpu) {
+        StringBuilder sb = new StringBuilder((cpu.length + gpu.length) * 2 + 128);
+        appendTableFrames(sb, CPU_TABLE, cpu);
+        appendTableFrames(sb, GPU_TABLE, gpu);
+        sb.append(USE_TABLE).append(tableCrc(cpu, gpu)).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Splits frames joined one per line, such as a table profile, into single frames.
+     */
+    public static String[] splitFrames(String frames) {
+        String body = frames.endsWith("\n") ? frames.substring(0, frames.length() - 1) : frames;
+        String[] lines = body.split("\n");
+        for (int i = 0; i < lines.length; i++) lines[i] = lines[i] + "\n";
+        return lines;
+    }
+
+    /**
+     * CRC-16/CCITT-FALSE over the cpu table, then the gpu table, one byte per entry. The firmware
+     * checks it before a U frame makes it use the tables.
+     */
+    public static int tableCrc(byte[] cpu, byte[] gpu) {
+        int crc = 0xFFFF;
+        for (byte b : cpu) crc = crc16(crc, b);
+        for (byte b : gpu) crc = crc16(crc, b);
+        return crc;
+    }
+
+    /**
+     * Hashes an A, C or U profile frame the way the firmware does: CRC-16/CCITT-FALSE over the frame
+     * as written, without its line terminator. Cheap enough for the board to compute on receipt.
+     * Of several frames joined one per line only the last counts, which for a table profile is the U
+     * frame carrying the tables' CRC.
+     *
+     * @return The hash, 1 to 65535 (0 is reserved for "no profile")
+     */
+    public static int profileHash(String frame) {
+        int end = frame.length();
+        while (end > 0 && (frame.charAt(end - 1) == '\n' || frame.charAt(end - 1) == '\r')) end--;
+        int start = frame.lastIndexOf('\n', end - 1) + 1;
+        int crc = 0xFFFF;
+        for (int i = start; i < end; i++) {
+            crc = crc16(crc, frame.charAt(i));
+        }
+        return crc == 0 ? 1 : crc;
+    }
+
+    private static void appendTableFrames(StringBuilder sb, char table, byte[] entries) {
+        for (int start = 0; start < entries.length; start += TABLE_ENTRIES_PER_FRAME) {
+            sb.append(TABLE_ENTRIES).append(table).append(start).append(':');
+            int end = Math.min(entries.length, start + TABLE_ENTRIES_PER_FRAME);
+            for (int i = start; i < end; i++) {
+                sb.append(Character.forDigit((entries[i] >> 4) & 0xF, 16)).append(Character.forDigit(entries[i] & 0xF, 16));
+            }
+            sb.append('\n');
+        }
+    }
+
+    private static int crc16(int crc, int b) {
+        crc ^= (b & 0xFF) << 8;
+        for (int bit = 0; bit < 8; bit++) {
+            crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+        }
+        return crc & 0xFFFF;
+    }
+
+    /**
+     * Wraps a frame with a sequence number so the device answers with K<seq> or N<seq>.
+     * Sequenced frames are always newline terminated.
+     */
+    public static String sequencedFrame(int sequence, String frame) {
+        String body = frame.endsWith("\n") ? frame.substring(0, frame.length() - 1) : frame;
+        return SEQUENCED + Integer.toString(sequence) + " " + body + "\n";
+    }
+}
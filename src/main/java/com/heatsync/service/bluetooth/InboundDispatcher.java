@@ -0,0 +1,206 @@
+package com.heatsync.service.bluetooth;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
+
+/**
+ * Splits the byte stream from the fan controller into lines and dispatches them as typed frames.
+ *
+ * Lines are parsed in place in a fixed buffer: no String or boxed value is created per frame, so the
+ * read loop allocates nothing in steady state. Handlers are registered per {@link InboundFrameType}
+ * and receive the frame's integer value. Lines that match no type, such as the firmware's debug
+ * prints, and lines longer than the buffer are only counted.
+ *
+ * {@link #feed} must be called from a single thread; handlers may be registered from any thread.
+ * A second feeding thread, such as the reader of the next link while the last one winds down, gets
+ * its own line buffer from {@link #newFeed()}, sharing the handlers and counters.
+ */
+public class InboundDispatcher {
+    static final int MAX_LINE = 64;
+
+    private static final InboundFrameType[] TYPES = InboundFrameType.values();
+    private static final IntConsumer[] NONE = new IntConsumer[0];
+
+    // Copy on write, one array per type; shared by every feed, and the lock of registrations
+    private final AtomicReferenceArray<IntConsumer[]> handlers;
+
+    // Feed thread only
+    private final byte[] line = new byte[MAX_LINE];
+    private int length = 0;
+    private boolean overflowing = false;
+
+    // Shared by every feed
+    private final AtomicLongArray received;
+    private final AtomicLong unknown;
+    private final AtomicLong overlong;
+
+    public InboundDispatcher() {
+        handlers = new AtomicReferenceArray<>(TYPES.length);
+        for (int i = 0; i < TYPES.length; i++) handlers.set(i, NONE);
+        received = new AtomicLongArray(TYPES.length);
+        unknown = new AtomicLong();
+        overlong = new AtomicLong();
+    }
+
+    private InboundDispatcher(InboundDispatcher shared) {
+        handlers = shared.handlers;
+        received = shared.received;
+        unknown = shared.unknown;
+        overlong = shared.overlong;
+    }
+
+    /**
+     * A dispatcher with an empty line buffer of its own that shares this one's handlers and counters,
+     * for one more feeding thread. Handlers registered on either apply to both.
+     */
+    public InboundDispatcher newFeed() {
+        return new InboundDispatcher(this);
+    }
+
+    /**
+     * Registers a handler for a frame type. Handlers run on the feeding thread and must not block.
+     */
+    public void on(InboundFrameType type, IntConsumer handler) {
+        synchronized (handlers) {
+            IntConsumer[] current = handlers.get(type.ordinal());
+            IntConsumer[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = handler;
+            handlers.set(type.ordinal(), next);
+        }
+    }
+
+    public void remove(InboundFrameType type, IntConsumer handler) {
+        synchronized (handlers) {
+            IntConsumer[] current = handlers.get(type.ordinal());
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == handler) {
+                    IntConsumer[] next = new IntConsumer[current.length - 1];
+                    System.arraycopy(current, 0, next, 0, i);
+                    System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                    handlers.set(type.ordinal(), next);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Consumes bytes read from the link, dispatching every complete line.
+     */
+    public void feed(byte[] buffer, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            byte b = buffer[i];
+            if (b == '\n') {
+                if (overflowing) {
+                    overflowing = false;
+                } else {
+                    dispatchLine();
+                }
+                length = 0;
+            } else if (length < MAX_LINE) {
+                line[length++] = b;
+            } else if (!overflowing) {
+                overflowing = true;
+                overlong.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Drops a partial line. Feed thread only: a new link gets a buffer of its own from {@link #newFeed()}.
+     */
+    public void reset() {
+        length = 0;
+        overflowing = false;
+    }
+
+    public long getReceived(InboundFrameType type) { return received.get(type.ordinal()); }
+    public long getUnknown() { return unknown.get(); }
+    public long getOverlong() { return overlong.get(); }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (InboundFrameType type : TYPES) {
+            long n = received.get(type.ordinal());
+            if (n > 0) sb.append(type).append('=').append(n).append(' ');
+        }
+        return sb.append("unknown=").append(unknown.get()).append(" overlong=").append(overlong.get()).toString();
+    }
+
+    private void dispatchLine() {
+        int start = 0, end = length;
+        while (start < end && line[start] <= ' ') start++;
+        while (end > start && line[end - 1] <= ' ') end--;  // Also strips the '\r' of "\r\n"
+        if (start == end) return;
+
+        byte first = line[start];
+        InboundFrameType type;
+        int value;
+        if (first >= '0' && first <= '9') {
+            type = InboundFrameType.RPM;
+            value = parseInt(start, end);
+        } else if (first == FanProtocol.VERSION) {
+            type = InboundFrameType.VERSION;
+            value = parseVersion(start + 1, end);
+        } else {
+            switch (first) {
+                case FanProtocol.PWM_REPORT: type = InboundFrameType.PWM; break;
+                case FanProtocol.ACK: type = InboundFrameType.ACK; break;
+                case FanProtocol.NAK: type = InboundFrameType.NAK; break;
+                case FanProtocol.ECHO: type = InboundFrameType.ECHO; break;
+                case FanProtocol.ERROR: type = InboundFrameType.ERROR; break;
+                case FanProtocol.PROFILE_HASH: type = InboundFrameType.PROFILE_HASH; break;
+                default: type = null; break;
+            }
+            value = type != null ? parseInt(start + 1, end) : -1;
+        }
+
+        if (type == null || value < 0) {
+            unknown.incrementAndGet();
+            return;
+        }
+        received.incrementAndGet(type.ordinal());
+        for (IntConsumer handler : handlers.get(type.ordinal())) {
+            handler.accept(value);
+        }
+    }
+
+    // Non-negative decimal spanning the whole range, or -1
+    private int parseInt(int from, int to) {
+        if (from >= to || to - from > 9) return -1;
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    // major.minor[.patch], minor and patch 0-99; or -1
+    private int parseVersion(int from, int to) {
+        int major = 0, minor = 0, patch = 0;
+        int part = 0, digits = 0;
+        for (int i = from; i < to; i++) {
+            byte b = line[i];
+            if (b == '.') {
+                if (digits == 0 || ++part > 2) return -1;
+                digits = 0;
+            } else if (b >= '0' && b <= '9') {
+                if (++digits > 4) return -1;
+                int digit = b - '0';
+                if (part == 0) major = major * 10 + digit;
+                else if (part == 1) minor = minor * 10 + digit;
+                else patch = patch * 10 + digit;
+            } else {
+                return -1;
+            }
+        }
+        if (digits == 0 || part == 0 || minor > 99 || patch > 99) return -1;
+        return major * 10000 + minor * 100 + patch;
+    }
+}
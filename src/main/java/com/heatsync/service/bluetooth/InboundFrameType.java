@@ -0,0 +1,23 @@
+package com.heatsync.service.bluetooth;
+
+/**
+ * Kinds of frames the fan controller sends to the host, each carrying one integer value.
+ *
+ *   <rpm>                          RPM       tachometer reading
+ *   P<pwm>                         PWM       duty cycle the firmware applied, 0-255
+ *   V<major>.<minor>[.<patch>]     VERSION   firmware version, as major * 10000 + minor * 100 + patch
+ *   K<seq> / N<seq>                ACK / NAK acknowledgement / rejection of a sequenced frame
+ *   E<token>                       ECHO      answer to a link probe
+ *   X<code>                        ERROR     firmware error code
+ *   H<hash>                        PROFILE_HASH  hash of the running profile, see {@link FanProtocol#profileHash}
+ */
+public enum InboundFrameType {
+    RPM,
+    PWM,
+    VERSION,
+    ACK,
+    NAK,
+    ECHO,
+    ERROR,
+    PROFILE_HASH
+}
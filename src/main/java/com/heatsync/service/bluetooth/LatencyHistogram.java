@@ -0,0 +1,71 @@
+package com.heatsync.service.bluetooth;
+
+/**
+ * Thread safe fixed-bucket histogram of latencies in milliseconds.
+ *
+ * Buckets follow a 1-2-5 progression up to 10 s plus an overflow bucket, which is fine enough for
+ * link round trips and costs one array increment per sample. Percentiles are reported as the upper
+ * bound of the bucket they fall in.
+ */
+public class LatencyHistogram {
+    private static final long[] BOUNDS_MS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+
+    private final long[] counts = new long[BOUNDS_MS.length + 1];
+    private long count = 0;
+    private long maxMs = 0;
+
+    public synchronized void record(long latencyMs) {
+        int bucket = 0;
+        while (bucket < BOUNDS_MS.length && latencyMs > BOUNDS_MS[bucket]) bucket++;
+        counts[bucket]++;
+        count++;
+        maxMs = Math.max(maxMs, latencyMs);
+    }
+
+    public synchronized void reset() {
+        java.util.Arrays.fill(counts, 0L);
+        count = 0;
+        maxMs = 0;
+    }
+
+    public synchronized long getCount() { return count; }
+    public synchronized long getMaxMs() { return maxMs; }
+
+    /**
+     * @param percentile 0 to 100
+     * @return Upper bound of the bucket holding the percentile (the maximum for the overflow bucket),
+     *         or -1 without samples
+     */
+    public synchronized long percentile(double percentile) {
+        if (count == 0) return -1L;
+        long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return i < BOUNDS_MS.length ? Math.min(BOUNDS_MS[i], maxMs) : maxMs;
+            }
+        }
+        return maxMs;
+    }
+
+    /**
+     * @return Bucket upper bounds in milliseconds; the overflow bucket has no bound
+     */
+    public static long[] getBoundsMs() {
+        return BOUNDS_MS.clone();
+    }
+
+    /**
+     * @return Sample count per bucket, the last entry being the overflow bucket
+     */
+    public synchronized long[] getCounts() {
+        return counts.clone();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("n=%d p50<=%dms p95<=%dms p99<=%dms max=%dms",
+                count, percentile(50), percentile(95), percentile(99), maxMs);
+    }
+}
@@ -0,0 +1,43 @@
+package com.heatsync.service.bluetooth;
+
+/**
+ * Thread safe running statistics for a latency measurement, in milliseconds.
+ */
+public class LatencyStats {
+    private long count = 0;
+    private long totalMs = 0;
+    private long minMs = Long.MAX_VALUE;
+    private long maxMs = 0;
+    private long lastMs = 0;
+
+    public synchronized void record(long latencyMs) {
+        count++;
+        totalMs += latencyMs;
+        minMs = Math.min(minMs, latencyMs);
+        maxMs = Math.max(maxMs, latencyMs);
+        lastMs = latencyMs;
+    }
+
+    public synchronized void reset() {
+        count = 0;
+        totalMs = 0;
+        minMs = Long.MAX_VALUE;
+        maxMs = 0;
+        lastMs = 0;
+    }
+
+    public synchronized long getCount() { return count; }
+    public synchronized long getMinMs() { return count == 0 ? 0 : minMs; }
+    public synchronized long getMaxMs() { return maxMs; }
+    public synchronized long getLastMs() { return lastMs; }
+
+    public synchronized double getMeanMs() {
+        return count == 0 ? 0.0 : (double) totalMs / count;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("n=%d min=%dms mean=%.1fms max=%dms last=%dms",
+                count, getMinMs(), getMeanMs(), maxMs, lastMs);
+    }
+}
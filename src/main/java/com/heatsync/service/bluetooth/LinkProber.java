@@ -0,0 +1,283 @@
+package com.heatsync.service.bluetooth;
+
+import com.heatsync.service.transport.FanLink;
+import com.heatsync.service.transport.LinkMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the health of the live link and derives the telemetry rate from it.
+ *
+ * Every {@code periodMs} an echo frame ({@link FanProtocol#echoFrame}) is written and the time to
+ * its echo goes into a round trip histogram; echoes missing after {@link #PROBE_TIMEOUT_MS} count as
+ * lost. A device that never answers the first {@link #UNSUPPORTED_AFTER_LOST} probes of a link is
+ * taken to lack the command and is not probed again on that link. All link writes are also timed
+ * through {@link #recordWrite}, and the link's byte counters give the effective throughput.
+ *
+ * The smoothed round trip grades the link; the grade sets the interval at which telemetry should be
+ * sent ({@link #getTelemetryIntervalMs()}), so a struggling link gets fewer frames to carry. A grade
+ * only improves once the round trip is well below the threshold that lowered it.
+ *
+ * Configure the period with -Dheatsync.probe.periodMs; 0 disables probing.
+ */
+public class LinkProber {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LinkProber.class);
+
+    public static final long DEFAULT_PERIOD_MS = 5000L;
+    static final long PROBE_TIMEOUT_MS = 5000L;
+    static final int UNSUPPORTED_AFTER_LOST = 3;
+
+    // The firmware only reads between 1 s tachometer windows, so round trips up to ~1 s are normal
+    static final long DEGRADED_RTT_MS = 1500L;
+    static final long POOR_RTT_MS = 3000L;
+    static final int POOR_CONSECUTIVE_LOST = 2;
+    private static final double RECOVERY_FACTOR = 0.7;
+    private static final double EWMA_WEIGHT = 0.3;
+
+    static final long BASE_TELEMETRY_INTERVAL_MS = 1000L;
+    static final long DEGRADED_TELEMETRY_INTERVAL_MS = 2000L;
+    static final long POOR_TELEMETRY_INTERVAL_MS = 5000L;
+
+    private final ScheduledExecutorService scheduler;
+    private final CommandPipeline.FrameWriter writer;
+    private final long periodMs;
+
+    private final LatencyHistogram rttHistogram = new LatencyHistogram();
+    private final LatencyHistogram writeHistogram = new LatencyHistogram();
+    private final Map<Integer, Long> outstanding = new ConcurrentHashMap<>();
+
+    // Guarded by this
+    private ScheduledFuture<?> ticker;
+    private FanLink link;
+    private int nextToken = 0;
+    private boolean supported = true;
+    private boolean answeredOnLink = false;
+    private int consecutiveLost = 0;
+    private double ewmaRttMs = -1;
+    private long probesSent = 0, probesLost = 0, writes = 0, writeErrors = 0;
+    private long lastBytesWritten = 0, lastBytesRead = 0, lastSampleNanos = 0;
+    private double txBytesPerSecond = 0, rxBytesPerSecond = 0;
+    private LinkQuality.Grade grade = LinkQuality.Grade.UNKNOWN;
+
+    /**
+     * @param scheduler Runs the probe ticks
+     * @param writer Writes a frame to the current link
+     */
+    public LinkProber(ScheduledExecutorService scheduler, CommandPipeline.FrameWriter writer) {
+        this(scheduler, writer, Long.getLong("heatsync.probe.periodMs", DEFAULT_PERIOD_MS));
+    }
+
+    public LinkProber(ScheduledExecutorService scheduler, CommandPipeline.FrameWriter writer, long periodMs) {
+        this.scheduler = scheduler;
+        this.writer = writer;
+        this.periodMs = Math.max(0L, periodMs);
+    }
+
+    /**
+     * Starts probing a newly opened link. Histograms keep accumulating across links.
+     */
+    public synchronized void start(FanLink link) {
+        stopTicker();
+        this.link = link;
+        outstanding.clear();
+        supported = true;
+        answeredOnLink = false;
+        consecutiveLost = 0;
+        ewmaRttMs = -1;
+        setGrade(LinkQuality.Grade.UNKNOWN);
+        LinkMetrics metrics = link.getMetrics();
+        lastBytesWritten = metrics.getBytesWritten();
+        lastBytesRead = metrics.getBytesRead();
+        lastSampleNanos = System.nanoTime();
+        txBytesPerSecond = 0;
+        rxBytesPerSecond = 0;
+        if (periodMs > 0) {
+            ticker = scheduler.scheduleWithFixedDelay(this::tick, periodMs, periodMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops probing when the link closes.
+     */
+    public synchronized void stop() {
+        stopTicker();
+        link = null;
+        outstanding.clear();
+        setGrade(LinkQuality.Grade.UNKNOWN);
+    }
+
+    /**
+     * Consumes an echo line from the device.
+     *
+     * @return true if the line was an echo and must not be processed further
+     */
+    public boolean handleInboundLine(String line) {
+        String trimmed = line.trim();
+        if (trimmed.length() < 2 || trimmed.charAt(0) != FanProtocol.ECHO) {
+            return false;
+        }
+        int token;
+        try {
+            token = Integer.parseInt(trimmed.substring(1));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+
+        onEcho(token);
+        return true;
+    }
+
+    /**
+     * Records an already parsed E<token> echo.
+     */
+    public void onEcho(int token) {
+        Long sentAt = outstanding.remove(token);
+        if (sentAt == null) {
+            LOGGER.debug("Late or unknown echo: {}", token);
+            return;
+        }
+        long rttMs = (System.nanoTime() - sentAt) / 1_000_000L;
+        rttHistogram.record(rttMs);
+        synchronized (this) {
+            answeredOnLink = true;
+            consecutiveLost = 0;
+            ewmaRttMs = ewmaRttMs < 0 ? rttMs : EWMA_WEIGHT * rttMs + (1 - EWMA_WEIGHT) * ewmaRttMs;
+            regrade();
+        }
+    }
+
+    /**
+     * Records a write to the link, successful or not.
+     */
+    public void recordWrite(long nanos, boolean ok) {
+        writeHistogram.record(TimeUnit.NANOSECONDS.toMillis(nanos));
+        synchronized (this) {
+            writes++;
+            if (!ok) writeErrors++;
+        }
+    }
+
+    /**
+     * @return How often telemetry should be sent given the current link grade
+     */
+    public synchronized long getTelemetryIntervalMs() {
+        return intervalFor(grade);
+    }
+
+    public synchronized LinkQuality getQuality() {
+        return new LinkQuality(grade, supported, rttHistogram.percentile(50), rttHistogram.percentile(95),
+                rttHistogram.getMaxMs(), Math.max(0, ewmaRttMs), probesSent, probesLost, writes, writeErrors,
+                writeHistogram.percentile(95), txBytesPerSecond, rxBytesPerSecond, getTelemetryIntervalMs());
+    }
+
+    public LatencyHistogram getRttHistogram() { return rttHistogram; }
+    public LatencyHistogram getWriteHistogram() { return writeHistogram; }
+
+    private void tick() {
+        String frame;
+        int token;
+        synchronized (this) {
+            if (link == null) return;
+            expireProbes();
+            sampleThroughput();
+            if (!supported) return;
+            token = nextToken;
+            nextToken = (nextToken + 1) % (FanProtocol.MAX_SEQUENCE + 1);
+            probesSent++;
+            frame = FanProtocol.echoFrame(token);
+        }
+        outstanding.put(token, System.nanoTime());
+        try {
+            writer.write(frame.getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException e) {
+            // The failed write is accounted by the caller's write path; the probe will expire
+            LOGGER.debug("Probe write failed: {}", e.getMessage());
+        }
+    }
+
+    // Must hold this
+    private void expireProbes() {
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(PROBE_TIMEOUT_MS);
+        for (Iterator<Map.Entry<Integer, Long>> it = outstanding.entrySet().iterator(); it.hasNext(); ) {
+            if (it.next().getValue() < cutoff) {
+                it.remove();
+                probesLost++;
+                consecutiveLost++;
+            }
+        }
+        if (!answeredOnLink && consecutiveLost >= UNSUPPORTED_AFTER_LOST) {
+            LOGGER.info("Device does not answer link probes. Probing stopped for this link.");
+            supported = false;
+        }
+        regrade();
+    }
+
+    // Must hold this
+    private void sampleThroughput() {
+        LinkMetrics metrics = link.getMetrics();
+        long now = System.nanoTime();
+        double seconds = (now - lastSampleNanos) / 1e9;
+        if (seconds <= 0) return;
+        long written = metrics.getBytesWritten();
+        long read = metrics.getBytesRead();
+        txBytesPerSecond = (written - lastBytesWritten) / seconds;
+        rxBytesPerSecond = (read - lastBytesRead) / seconds;
+        lastBytesWritten = written;
+        lastBytesRead = read;
+        lastSampleNanos = now;
+    }
+
+    // Must hold this
+    private void regrade() {
+        LinkQuality.Grade next;
+        if (!supported || !answeredOnLink) {
+            // Lost probes only mean something once the device has shown it answers them
+            next = LinkQuality.Grade.UNKNOWN;
+        } else if (consecutiveLost >= POOR_CONSECUTIVE_LOST || ewmaRttMs > threshold(POOR_RTT_MS, LinkQuality.Grade.POOR)) {
+            next = LinkQuality.Grade.POOR;
+        } else if (ewmaRttMs > threshold(DEGRADED_RTT_MS, LinkQuality.Grade.DEGRADED)) {
+            next = LinkQuality.Grade.DEGRADED;
+        } else {
+            next = LinkQuality.Grade.GOOD;
+        }
+        setGrade(next);
+    }
+
+    // Leaving a grade takes a round trip well below the threshold that entered it
+    private double threshold(long rttMs, LinkQuality.Grade level) {
+        return grade.compareTo(level) >= 0 ? rttMs * RECOVERY_FACTOR : rttMs;
+    }
+
+    // Must hold this
+    private void setGrade(LinkQuality.Grade next) {
+        if (next == grade) return;
+        LOGGER.info("Link grade {} -> {} (smoothed RTT {} ms). Telemetry every {} ms.",
+                grade, next, Math.round(Math.max(0, ewmaRttMs)), intervalFor(next));
+        grade = next;
+    }
+
+    private static long intervalFor(LinkQuality.Grade grade) {
+        switch (grade) {
+            case DEGRADED: return DEGRADED_TELEMETRY_INTERVAL_MS;
+            case POOR: return POOR_TELEMETRY_INTERVAL_MS;
+            default: return BASE_TELEMETRY_INTERVAL_MS;
+        }
+    }
+
+    // Must hold this
+    private void stopTicker() {
+        if (ticker != null) {
+            ticker.cancel(false);
+            ticker = null;
+        }
+    }
+}
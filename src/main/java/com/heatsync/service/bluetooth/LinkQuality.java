@@ -0,0 +1,86 @@
+package com.heatsync.service.bluetooth;
+
+/**
+ * Immutable snapshot of the link health measured by {@link LinkProber}.
+ */
+public final class LinkQuality {
+    /**
+     * Coarse grade of the link, driving the telemetry rate.
+     */
+    public enum Grade {
+        UNKNOWN,   // No echo measured yet, or the device does not answer probes
+        GOOD,
+        DEGRADED,
+        POOR
+    }
+
+    private final Grade grade;
+    private final boolean probeSupported;
+    private final long rttP50Ms;
+    private final long rttP95Ms;
+    private final long rttMaxMs;
+    private final double rttAverageMs;
+    private final long probesSent;
+    private final long probesLost;
+    private final long writes;
+    private final long writeErrors;
+    private final long writeP95Ms;
+    private final double txBytesPerSecond;
+    private final double rxBytesPerSecond;
+    private final long telemetryIntervalMs;
+
+    LinkQuality(Grade grade, boolean probeSupported, long rttP50Ms, long rttP95Ms, long rttMaxMs, double rttAverageMs,
+                long probesSent, long probesLost, long writes, long writeErrors, long writeP95Ms,
+                double txBytesPerSecond, double rxBytesPerSecond, long telemetryIntervalMs) {
+        this.grade = grade;
+        this.probeSupported = probeSupported;
+        this.rttP50Ms = rttP50Ms;
+        this.rttP95Ms = rttP95Ms;
+        this.rttMaxMs = rttMaxMs;
+        this.rttAverageMs = rttAverageMs;
+        this.probesSent = probesSent;
+        this.probesLost = probesLost;
+        this.writes = writes;
+        this.writeErrors = writeErrors;
+        this.writeP95Ms = writeP95Ms;
+        this.txBytesPerSecond = txBytesPerSecond;
+        this.rxBytesPerSecond = rxBytesPerSecond;
+        this.telemetryIntervalMs = telemetryIntervalMs;
+    }
+
+    public Grade getGrade() { return grade; }
+    public boolean isProbeSupported() { return probeSupported; }
+    public long getRttP50Ms() { return rttP50Ms; }
+    public long getRttP95Ms() { return rttP95Ms; }
+    public long getRttMaxMs() { return rttMaxMs; }
+    public double getRttAverageMs() { return rttAverageMs; }
+    public long getProbesSent() { return probesSent; }
+    public long getProbesLost() { return probesLost; }
+    public long getWrites() { return writes; }
+    public long getWriteErrors() { return writeErrors; }
+    public long getWriteP95Ms() { return writeP95Ms; }
+    public double getTxBytesPerSecond() { return txBytesPerSecond; }
+    public double getRxBytesPerSecond() { return rxBytesPerSecond; }
+    public long getTelemetryIntervalMs() { return telemetryIntervalMs; }
+
+    /**
+     * @return Fraction of probes that were never answered
+     */
+    public double getProbeLossRate() {
+        return probesSent == 0 ? 0.0 : (double) probesLost / probesSent;
+    }
+
+    /**
+     * @return Fraction of writes that failed
+     */
+    public double getWriteErrorRate() {
+        return writes == 0 ? 0.0 : (double) writeErrors / writes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s rtt[p50<=%dms p95<=%dms max=%dms avg=%.0fms] loss=%.0f%% writeErr=%.1f%% write p95<=%dms tx=%.0fB/s rx=%.0fB/s telemetry every %dms",
+                grade, rttP50Ms, rttP95Ms, rttMaxMs, rttAverageMs, getProbeLossRate() * 100, getWriteErrorRate() * 100,
+                writeP95Ms, txBytesPerSecond, rxBytesPerSecond, telemetryIntervalMs);
+    }
+}
@@ -0,0 +1,427 @@
+package com.heatsync.service.bluetooth;
+
+import com.heatsync.service.transport.FanLink;
+import com.heatsync.service.transport.FanLinkTransport;
+import com.heatsync.service.transport.MemoryPipe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reaches the same controller over several transports at once, e.g. Bluetooth SPP and USB serial,
+ * and presents them as one link that survives the loss of any of them.
+ *
+ * Every path is opened and kept open. Frames are written to the active path; when a write fails the
+ * path is marked down and the same frame is written to the next path, so nothing queued above the
+ * link is lost by a failover. Lines read from all paths are merged into one inbound stream, whole
+ * lines at a time. A path that went down is reopened in the background with a growing delay.
+ *
+ * Each path is probed with its own echo frames, using tokens above {@link #TOKEN_BASE} that the
+ * supervisor consumes itself, and the path with the lowest smoothed round trip becomes active. A
+ * path must be clearly faster ({@link #SWITCH_MARGIN}) to take over, so near-equal paths do not
+ * flap. Until round trips are known, paths are preferred in the order given.
+ *
+ * A path carries frames only once it answered a probe, so frames never go to a port where nothing
+ * speaks the protocol; until then it gets a single probe at a time, repeated only after
+ * {@link #PROBE_TIMEOUT_MS}. A reopened path is verified again. Opening waits up to
+ * {@link #VERIFY_TIMEOUT_MS} for the first path to answer.
+ *
+ * The opened link fails when no path can be opened or none answers a probe, or when every path is
+ * down and a frame has to be written.
+ */
+public class LinkSupervisor implements FanLinkTransport {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LinkSupervisor.class);
+
+    public static final long DEFAULT_PROBE_PERIOD_MS = 5000L;
+    // Above the sequence space of LinkProber, so their echoes never mix
+    static final int TOKEN_BASE = 1_000_000;
+    static final double SWITCH_MARGIN = 0.2;
+    private static final double EWMA_WEIGHT = 0.3;
+    private static final long PROBE_TIMEOUT_MS = 10000L;
+    // The firmware reads commands between one second tachometer windows, after a PWM ramp at worst
+    static final long VERIFY_TIMEOUT_MS = 5000L;
+    private static final long REOPEN_MIN_MS = 1000L;
+    private static final long REOPEN_MAX_MS = 30000L;
+    private static final int PIPE_CAPACITY = 4096;
+    private static final int MAX_LINE = 256;
+
+    private final List<FanLinkTransport> transports;
+    private final StackExecutor executor;
+    private final long probePeriodMs;
+
+    /**
+     * @param transports Paths to the controller, in order of preference while no round trip is known
+     * @param executor Runs the path readers, probes and reopen attempts
+     */
+    public LinkSupervisor(List<FanLinkTransport> transports, StackExecutor executor) {
+        this(transports, executor, Long.getLong("heatsync.supervisor.probePeriodMs", DEFAULT_PROBE_PERIOD_MS));
+    }
+
+    public LinkSupervisor(List<FanLinkTransport> transports, StackExecutor executor, long probePeriodMs) {
+        if (transports.isEmpty()) {
+            throw new IllegalArgumentException("A link supervisor needs at least one transport");
+        }
+        this.transports = new ArrayList<>(transports);
+        this.executor = executor;
+        this.probePeriodMs = Math.max(0L, probePeriodMs);
+    }
+
+    @Override
+    public FanLink open(String address) throws IOException {
+        long start = System.nanoTime();
+        Session session = new Session(address);
+        IOException failure = null;
+        for (FanLinkTransport transport : transports) {
+            Path path = new Path(session, transport);
+            session.paths.add(path);
+            try {
+                path.attach(transport.open(address));
+            } catch (IOException e) {
+                LOGGER.info("Path {} to {} unavailable: {}", transport.getName(), address, e.getMessage());
+                if (failure == null) failure = e; else failure.addSuppressed(e);
+            }
+        }
+        if (session.paths.stream().noneMatch(Path::isUp)) {
+            session.close();
+            throw failure != null ? failure : new IOException("No path to " + address);
+        }
+        if (!session.start()) {
+            session.close();
+            throw new IOException("No path to " + address + " answered a probe within " + VERIFY_TIMEOUT_MS + " ms");
+        }
+        long latencyMs = (System.nanoTime() - start) / 1_000_000L;
+        return new FanLink(address, session.inbound.source(), session.outbound, session, latencyMs);
+    }
+
+    @Override
+    public String getName() {
+        StringBuilder sb = new StringBuilder("supervised[");
+        for (int i = 0; i < transports.size(); i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(transports.get(i).getName());
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * All paths of one opened link.
+     */
+    private final class Session implements Closeable {
+        final String address;
+        final List<Path> paths = new ArrayList<>();
+        final MemoryPipe inbound = new MemoryPipe(PIPE_CAPACITY);
+        final Map<Integer, Long> outstanding = new ConcurrentHashMap<>();
+        final AtomicInteger nextToken = new AtomicInteger(TOKEN_BASE);
+        final CountDownLatch firstVerified = new CountDownLatch(1);
+        volatile Path active;
+        volatile boolean closed = false;
+        ScheduledFuture<?> prober;
+
+        final OutputStream outbound = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                send(b, off, len);
+            }
+        };
+
+        Session(String address) {
+            this.address = address;
+        }
+
+        // Probes every path and waits for the first answer. Returns false if none answered in time
+        boolean start() {
+            if (probePeriodMs > 0) {
+                prober = executor.scheduler().scheduleWithFixedDelay(this::probe, 0L, probePeriodMs, TimeUnit.MILLISECONDS);
+            } else {
+                probe();
+            }
+            try {
+                if (!firstVerified.await(VERIFY_TIMEOUT_MS, TimeUnit.MILLISECONDS)) return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            active = active();
+            if (active == null) return false;
+            LOGGER.info("Supervised link to {} active on {}", address, active.transport.getName());
+            return true;
+        }
+
+        // First path up and verified, in preference order
+        Path active() {
+            for (Path path : paths) {
+                if (path.isUsable()) return path;
+            }
+            return null;
+        }
+
+        // Writes a whole frame, failing over until a path takes it
+        synchronized void send(byte[] b, int off, int len) throws IOException {
+            while (!closed) {
+                Path path = active;
+                if (path == null || !path.isUsable()) {
+                    path = active();
+                    if (path == null) {
+                        throw new IOException("No path to " + address + " is up");
+                    }
+                    switchTo(path, "previous path down");
+                }
+                try {
+                    path.write(b, off, len);
+                    return;
+                } catch (IOException e) {
+                    path.down(e);
+                }
+            }
+            throw new IOException("Supervised link to " + address + " is closed");
+        }
+
+        void switchTo(Path path, String reason) {
+            Path previous = active;
+            active = path;
+            if (previous != path) {
+                LOGGER.warn("Supervised link to {} moved to {} ({})", address, path.transport.getName(), reason);
+            }
+        }
+
+        // Writes a probe on every path that is up and re-elects the active path. A path not verified
+        // yet gets a new probe only once its previous one expired
+        void probe() {
+            long now = System.nanoTime();
+            long cutoff = now - TimeUnit.MILLISECONDS.toNanos(PROBE_TIMEOUT_MS);
+            outstanding.values().removeIf(sentAt -> sentAt < cutoff);
+            for (Path path : paths) {
+                if (!path.isUp()) continue;
+                if (!path.verified && path.verifyProbe != null && outstanding.containsKey(path.verifyProbe)) continue;
+                int token = nextToken.getAndUpdate(t -> t == Integer.MAX_VALUE ? TOKEN_BASE : t + 1);
+                outstanding.put(token, now);
+                if (!path.verified) path.verifyProbe = token;
+                byte[] frame = FanProtocol.echoFrame(token).getBytes(StandardCharsets.US_ASCII);
+                try {
+                    path.write(frame, 0, frame.length);
+                } catch (IOException e) {
+                    path.down(e);
+                }
+            }
+            elect();
+        }
+
+        synchronized void elect() {
+            Path current = active;
+            Path best = null;
+            for (Path path : paths) {
+                if (!path.isUsable() || path.rttMs < 0) continue;
+                if (best == null || path.rttMs < best.rttMs) best = path;
+            }
+            if (best == null || best == current) return;
+            if (current == null || !current.isUsable() || current.rttMs < 0
+                    || best.rttMs < current.rttMs * (1 - SWITCH_MARGIN)) {
+                switchTo(best, String.format("round trip %.0f ms against %.0f ms", best.rttMs,
+                        current != null ? current.rttMs : -1.0));
+            }
+        }
+
+        void onEcho(Path path, int token) {
+            Long sentAt = outstanding.remove(token);
+            if (sentAt == null) return;
+            double rttMs = (System.nanoTime() - sentAt) / 1e6;
+            path.rttMs = path.rttMs < 0 ? rttMs : EWMA_WEIGHT * rttMs + (1 - EWMA_WEIGHT) * path.rttMs;
+            if (!path.verified) {
+                path.verified = true;
+                LOGGER.info("Path {} to {} answered its first probe in {} ms", path.transport.getName(), address, Math.round(rttMs));
+                firstVerified.countDown();
+            }
+        }
+
+        // One line at a time, so lines of different paths never interleave
+        void deliver(byte[] line, int length) throws IOException {
+            synchronized (inbound) {
+                OutputStream sink = inbound.sink();
+                sink.write(line, 0, length);
+                sink.write('\n');
+                sink.flush();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            if (prober != null) prober.cancel(false);
+            for (Path path : paths) {
+                path.close();
+            }
+            try {
+                inbound.sink().close();
+            } catch (IOException ignored) {
+                // Memory pipe
+            }
+        }
+    }
+
+    /**
+     * One transport of a session and its current link.
+     */
+    private final class Path {
+        final Session session;
+        final FanLinkTransport transport;
+        final Object writeLock = new Object();
+        volatile FanLink link;
+        volatile double rttMs = -1;
+        // Set once the current link answered a probe; frames go only to verified paths
+        volatile boolean verified = false;
+        volatile Integer verifyProbe;
+        long reopenDelayMs = REOPEN_MIN_MS;
+        StackExecutor.Task reader;
+
+        Path(Session session, FanLinkTransport transport) {
+            this.session = session;
+            this.transport = transport;
+        }
+
+        boolean isUp() {
+            return link != null;
+        }
+
+        boolean isUsable() {
+            return link != null && verified;
+        }
+
+        synchronized void attach(FanLink opened) {
+            link = opened;
+            rttMs = -1;
+            verified = false;
+            verifyProbe = null;
+            reopenDelayMs = REOPEN_MIN_MS;
+            reader = executor.startThread("path-" + transport.getName(), () -> readLoop(opened));
+        }
+
+        void write(byte[] b, int off, int len) throws IOException {
+            FanLink current = link;
+            if (current == null) {
+                throw new IOException(transport.getName() + " is down");
+            }
+            synchronized (writeLock) {
+                OutputStream out = current.getOutputStream();
+                out.write(b, off, len);
+                out.flush();
+            }
+        }
+
+        void down(IOException cause) {
+            FanLink current;
+            synchronized (this) {
+                current = link;
+                if (current == null) return;
+                link = null;
+                rttMs = -1;
+                verified = false;
+            }
+            LOGGER.warn("Path {} to {} down: {}", transport.getName(), session.address, cause != null ? cause.getMessage() : "closed");
+            closeQuietly(current);
+            if (!session.closed) scheduleReopen();
+        }
+
+        void scheduleReopen() {
+            long delay;
+            synchronized (this) {
+                delay = reopenDelayMs;
+                reopenDelayMs = Math.min(REOPEN_MAX_MS, reopenDelayMs * 2);
+            }
+            executor.schedule("reopen-" + transport.getName(), () -> {
+                if (session.closed || isUp()) return;
+                try {
+                    FanLink opened = transport.open(session.address);
+                    if (session.closed) {
+                        closeQuietly(opened);
+                        return;
+                    }
+                    attach(opened);
+                    LOGGER.info("Path {} to {} is back", transport.getName(), session.address);
+                } catch (IOException e) {
+                    LOGGER.debug("Reopening {} failed: {}", transport.getName(), e.getMessage());
+                    scheduleReopen();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        void readLoop(FanLink current) {
+            byte[] chunk = new byte[256];
+            byte[] line = new byte[MAX_LINE];
+            int length = 0;
+            try {
+                InputStream in = current.getInputStream();
+                int n;
+                while ((n = in.read(chunk)) >= 0) {
+                    for (int i = 0; i < n; i++) {
+                        byte b = chunk[i];
+                        if (b != '\n') {
+                            if (length < MAX_LINE) line[length++] = b;
+                            continue;
+                        }
+                        int token = supervisorEcho(line, length);
+                        if (token >= 0) {
+                            session.onEcho(this, token);
+                        } else {
+                            session.deliver(line, length);
+                        }
+                        length = 0;
+                    }
+                }
+                if (link == current) down(new IOException("closed by the device"));
+            } catch (IOException e) {
+                if (link == current) down(e);
+            }
+        }
+
+        void close() {
+            FanLink current;
+            synchronized (this) {
+                current = link;
+                link = null;
+                if (reader != null) reader.cancel();
+            }
+            if (current != null) closeQuietly(current);
+        }
+    }
+
+    // Token of an "E<token>" line answering one of our probes, or -1
+    private static int supervisorEcho(byte[] line, int length) {
+        int end = length;
+        while (end > 0 && line[end - 1] <= ' ') end--;
+        if (end < 2 || line[0] != FanProtocol.ECHO) return -1;
+        long value = 0;
+        for (int i = 1; i < end; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE) return -1;
+            value = value * 10 + digit;
+        }
+        return value >= TOKEN_BASE && value <= Integer.MAX_VALUE ? (int) value : -1;
+    }
+
+    private static void closeQuietly(FanLink link) {
+        try {
+            link.close();
+        } catch (IOException e) {
+            LOGGER.debug("Error closing {}", link.getAddress(), e);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.heatsync.service.bluetooth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces the frames produced within a short window into one write and one flush.
+ *
+ * Every flush of an RFCOMM stream becomes at least one baseband packet carrying its own RFCOMM,
+ * L2CAP and ACL headers, so a profile and a temperature frame sent together cost two packets where
+ * one would do. Frames are appended to a contiguous buffer; the first frame of a batch schedules a
+ * flush {@code windowMs} later, and {@link #flush()} ends a batch early, e.g. at the end of a tick.
+ *
+ * What a batch guarantees, and what it does not:
+ * - a frame is never split between two writes;
+ * - a batch never grows past 64 bytes unless a single frame is larger. This bounds one write,
+ *   not the rate: a batch may follow every window, faster than 9600 baud drains 64 bytes, and the
+ *   firmware reads nothing during a PWM ramp or its 1 s tachometer window, so its receive buffer
+ *   can still overflow. Pacing is left to the callers;
+ * - a frame without line terminator ends its batch, but the firmware reads it until the next
+ *   '\n' or its 1 s serial timeout and so would join it with whatever follows; every
+ *   {@link FanProtocol} frame is terminated for that reason.
+ *
+ * Errors of a scheduled flush go to the error handler; errors of a flush made while submitting
+ * are thrown to the submitter. Every batch the sink accepted is reported to the flush handler, so
+ * callers count a frame as sent when it reached the link, not when it was queued.
+ *
+ * A window of 0 disables batching: every frame is written through.
+ * Configure it with -Dheatsync.batch.windowMs.
+ */
+public class OutboundBatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutboundBatcher.class);
+
+    public static final long DEFAULT_WINDOW_MS = 5L;
+    // SoftwareSerial's _SS_MAX_RX_BUFF
+    public static final int DEFAULT_MAX_BATCH_BYTES = 64;
+    // RFCOMM (address, control, length, FCS) + L2CAP basic header + HCI ACL header, per packet
+    public static final int PACKET_OVERHEAD_BYTES = 4 + 4 + 4;
+
+    private final ScheduledExecutorService scheduler;
+    private final CommandPipeline.FrameWriter sink;
+    private final Runnable flushHandler;
+    private final Consumer<IOException> errorHandler;
+    private final long windowMs;
+    private final int maxBatchBytes;
+
+    // Guarded by this
+    private final byte[] buffer;
+    private int size = 0;
+    private int framesInBatch = 0;
+    private ScheduledFuture<?> scheduledFlush;
+    private long frames = 0, flushes = 0, bytes = 0;
+
+    /**
+     * @param scheduler Runs the end of window flushes
+     * @param sink Writes and flushes a batch to the link
+     * @param errorHandler Receives the errors of scheduled flushes
+     */
+    public OutboundBatcher(ScheduledExecutorService scheduler, CommandPipeline.FrameWriter sink, Consumer<IOException> errorHandler) {
+        this(scheduler, sink, () -> {}, errorHandler);
+    }
+
+    /**
+     * @param scheduler Runs the end of window flushes
+     * @param sink Writes and flushes a batch to the link
+     * @param flushHandler Runs after every batch the sink wrote
+     * @param errorHandler Receives the errors of scheduled flushes
+     */
+    public OutboundBatcher(ScheduledExecutorService scheduler, CommandPipeline.FrameWriter sink, Runnable flushHandler,
+                           Consumer<IOException> errorHandler) {
+        this(scheduler, sink, flushHandler, errorHandler, Long.getLong("heatsync.batch.windowMs", DEFAULT_WINDOW_MS),
+                DEFAULT_MAX_BATCH_BYTES);
+    }
+
+    public OutboundBatcher(ScheduledExecutorService scheduler, CommandPipeline.FrameWriter sink, Consumer<IOException> errorHandler,
+                           long windowMs, int maxBatchBytes) {
+        this(scheduler, sink, () -> {}, errorHandler, windowMs, maxBatchBytes);
+    }
+
+    public OutboundBatcher(ScheduledExecutorService scheduler, CommandPipeline.FrameWriter sink, Runnable flushHandler,
+                           Consumer<IOException> errorHandler, long windowMs, int maxBatchBytes) {
+        this.scheduler = scheduler;
+        this.sink = sink;
+        this.flushHandler = flushHandler;
+        this.errorHandler = errorHandler;
+        this.windowMs = Math.max(0L, windowMs);
+        this.maxBatchBytes = Math.max(1, maxBatchBytes);
+        this.buffer = new byte[this.maxBatchBytes];
+    }
+
+    /**
+     * Queues a complete frame.
+     *
+     * @throws IOException if a flush this frame caused failed
+     */
+    public void submit(byte[] frame) throws IOException {
+        boolean terminated = frame.length > 0 && frame[frame.length - 1] == '\n';
+        synchronized (this) {
+            frames++;
+            if (windowMs == 0 || frame.length > maxBatchBytes) {
+                // Written on its own, after whatever is already queued
+                flushLocked();
+                writeLocked(frame, 1);
+                return;
+            }
+            if (size + frame.length > maxBatchBytes) {
+                flushLocked();
+            }
+            System.arraycopy(frame, 0, buffer, size, frame.length);
+            size += frame.length;
+            framesInBatch++;
+
+            if (!terminated) {
+                flushLocked();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::flushScheduled, windowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Writes the pending batch now.
+     */
+    public synchronized void flush() throws IOException {
+        flushLocked();
+    }
+
+    /**
+     * Drops the pending batch, e.g. when the link closes.
+     */
+    public synchronized void discard() {
+        cancelScheduled();
+        size = 0;
+        framesInBatch = 0;
+    }
+
+    public synchronized long getFrames() { return frames; }
+    public synchronized long getFlushes() { return flushes; }
+    public synchronized long getBytes() { return bytes; }
+
+    /**
+     * @return Bytes waiting for the end of the current window
+     */
+    public synchronized int getPendingBytes() { return size; }
+
+    /**
+     * @return Average number of frames per link write
+     */
+    public synchronized double getFramesPerFlush() {
+        return flushes == 0 ? 0.0 : (double) frames / flushes;
+    }
+
+    /**
+     * @return Estimated bytes of packet headers saved by not writing every frame on its own
+     */
+    public synchronized long getOverheadSavedBytes() {
+        return Math.max(0L, frames - flushes) * PACKET_OVERHEAD_BYTES;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("frames=%d flushes=%d (%.2f frames/flush) bytes=%d overhead saved~%dB window=%dms",
+                frames, flushes, getFramesPerFlush(), bytes, getOverheadSavedBytes(), windowMs);
+    }
+
+    private void flushScheduled() {
+        try {
+            synchronized (this) {
+                scheduledFlush = null;
+                flushLocked();
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Batched write failed: {}", e.getMessage());
+            errorHandler.accept(e);
+        }
+    }
+
+    // Must hold this
+    private void flushLocked() throws IOException {
+        cancelScheduled();
+        if (size == 0) {
+            return;
+        }
+        byte[] batch = Arrays.copyOf(buffer, size);
+        int count = framesInBatch;
+        size = 0;
+        framesInBatch = 0;
+        writeLocked(batch, count);
+    }
+
+    // Must hold this
+    private void writeLocked(byte[] data, int count) throws IOException {
+        flushes++;
+        bytes += data.length;
+        try {
+            sink.write(data);
+        } catch (IOException e) {
+            LOGGER.debug("Dropped {} batched frame(s) after a write error", count);
+            throw e;
+        }
+        flushHandler.run();
+    }
+
+    // Must hold this
+    private void cancelScheduled() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.heatsync.service.bluetooth;
+
+import com.heatsync.service.transport.FanLink;
+import com.heatsync.service.transport.FanLinkTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * One device of a {@link ConnectionPool}: a link with its own reader thread, writer thread,
+ * writer queue, reconnect policy and profile.
+ *
+ * Commands are queued in order and dropped when the queue is full. Telemetry is not queued: only the
+ * latest frame is kept and written as soon as the writer is free, so a slow link sends fewer, fresher
+ * frames instead of building a backlog. The profile frame is written first on every (re)connect.
+ */
+public class PooledConnection {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PooledConnection.class);
+
+    static final int MAX_QUEUED_COMMANDS = 32;
+    // Wakes the writer when only the telemetry slot has something to send
+    private static final byte[] WAKE = new byte[0];
+
+    private final String address;
+    private final FanLinkTransport transport;
+    private final StackExecutor executor;
+    private final ConnectionPool.Listener listener;
+    private final ReconnectPolicy reconnectPolicy = new ReconnectPolicy();
+    private final ConnectionStateMachine state = new ConnectionStateMachine();
+
+    private final BlockingQueue<byte[]> commands = new ArrayBlockingQueue<>(MAX_QUEUED_COMMANDS);
+    private final AtomicReference<byte[]> telemetry = new AtomicReference<>();
+    private volatile byte[] profileFrame;
+
+    private volatile boolean wanted = false;
+    private volatile FanLink link;
+    private volatile StackExecutor.Task writer;
+    // Bumped on every new link so threads of an old link cannot tear down a newer one
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong framesWritten = new AtomicLong();
+    private final AtomicLong telemetryReplaced = new AtomicLong();
+    private final AtomicLong commandsDropped = new AtomicLong();
+    private final AtomicLong rpmReports = new AtomicLong();
+    private volatile int lastRpm = -1;
+    private final LatencyStats writeLatency = new LatencyStats();
+
+    PooledConnection(String address, String profileFrame, FanLinkTransport transport, StackExecutor executor,
+                     ConnectionPool.Listener listener) {
+        this.address = address;
+        this.transport = transport;
+        this.executor = executor;
+        this.listener = listener;
+        setProfileFrame(profileFrame);
+        state.addListener((from, to) -> listener.onStateChanged(this, from, to));
+    }
+
+    /**
+     * Starts connecting, and keeps reconnecting after drops until {@link #stop()}.
+     */
+    void start() {
+        wanted = true;
+        startCycle(false);
+    }
+
+    /**
+     * Closes the link and stops reconnecting.
+     */
+    void stop() {
+        wanted = false;
+        state.transition(ConnectionState.BACKOFF, ConnectionState.IDLE);
+        dropLink(generation.get(), null);
+    }
+
+    /**
+     * Queues a command frame. Never blocks.
+     *
+     * @return false if the queue is full and the frame was dropped
+     */
+    public boolean send(String frame) {
+        if (!commands.offer(frame.getBytes(StandardCharsets.US_ASCII))) {
+            commandsDropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the pending telemetry frame. Never blocks.
+     */
+    public void sendTelemetry(byte[] frame) {
+        if (telemetry.getAndSet(frame) != null) {
+            telemetryReplaced.incrementAndGet();
+        } else {
+            commands.offer(WAKE);
+        }
+    }
+
+    /**
+     * Sets the profile of this device. It is written now if connected, and after every reconnect.
+     *
+     * @param frame An encoded profile frame (see {@link FanProtocol}), or null for none
+     */
+    public void setProfileFrame(String frame) {
+        byte[] bytes = frame != null ? frame.getBytes(StandardCharsets.US_ASCII) : null;
+        profileFrame = bytes;
+        if (bytes != null && isConnected()) {
+            send(frame);
+        }
+    }
+
+    public String getAddress() { return address; }
+    public ConnectionState getState() { return state.get(); }
+    public boolean isConnected() { return state.is(ConnectionState.CONNECTED); }
+    public int getLastRpm() { return lastRpm; }
+    public long getFramesWritten() { return framesWritten.get(); }
+    public long getTelemetryReplaced() { return telemetryReplaced.get(); }
+    public long getCommandsDropped() { return commandsDropped.get(); }
+    public long getRpmReports() { return rpmReports.get(); }
+    public LatencyStats getWriteLatency() { return writeLatency; }
+    public ReconnectPolicy.DeviceStats getReconnectStats() { return reconnectPolicy.getStats(address); }
+
+    public String getProfileFrame() {
+        byte[] bytes = profileFrame;
+        return bytes != null ? new String(bytes, StandardCharsets.US_ASCII) : null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s written=%d replaced=%d dropped=%d rpm=%d write[%s]",
+                address, state.get(), framesWritten.get(), telemetryReplaced.get(), commandsDropped.get(), lastRpm, writeLatency);
+    }
+
+    private void startCycle(boolean linkDropped) {
+        if (!wanted || !state.transition(ConnectionState.IDLE, ConnectionState.CONNECTING)) return;
+        reconnectPolicy.onCycleStarted(address, linkDropped);
+        scheduleAttempt(0);
+    }
+
+    // Must be in CONNECTING
+    private void scheduleAttempt(int attemptNumber) {
+        long delay = reconnectPolicy.delayBeforeAttempt(address, attemptNumber);
+        if (delay == 0L) {
+            executor.submit("connect-" + address, () -> attempt(attemptNumber));
+            return;
+        }
+        state.transition(ConnectionState.CONNECTING, ConnectionState.BACKOFF);
+        executor.schedule("reconnect-" + address, () -> {
+            if (wanted && state.transition(ConnectionState.BACKOFF, ConnectionState.CONNECTING)) {
+                attempt(attemptNumber);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void attempt(int attemptNumber) {
+        long start = System.nanoTime();
+        FanLink opened;
+        try {
+            opened = transport.open(address);
+        } catch (IOException e) {
+            long attemptMs = (System.nanoTime() - start) / 1_000_000L;
+            reconnectPolicy.onAttemptFailed(address, attemptMs);
+            if (!wanted) {
+                state.transition(ConnectionState.CONNECTING, ConnectionState.IDLE);
+            } else if (reconnectPolicy.hasAttemptsLeft(attemptNumber)) {
+                LOGGER.debug("Attempt {} to {} failed: {}", attemptNumber + 1, address, e.getMessage());
+                scheduleAttempt(attemptNumber + 1);
+            } else {
+                LOGGER.warn("Giving up on {} after {} attempts. Retrying in {} ms.",
+                        address, attemptNumber + 1, ReconnectPolicy.ABANDON_COOLDOWN_MS);
+                reconnectPolicy.onCycleAbandoned(address);
+                state.transition(ConnectionState.CONNECTING, ConnectionState.IDLE);
+                executor.schedule("cooldown-" + address, () -> startCycle(false), ReconnectPolicy.ABANDON_COOLDOWN_MS, TimeUnit.MILLISECONDS);
+            }
+            return;
+        }
+
+        long attemptMs = (System.nanoTime() - start) / 1_000_000L;
+        if (!wanted) {
+            closeQuietly(opened);
+            state.transition(ConnectionState.CONNECTING, ConnectionState.IDLE);
+            return;
+        }
+
+        long gen = generation.incrementAndGet();
+        link = opened;
+        long recoveryMs = reconnectPolicy.onConnected(address, attemptMs);
+        LOGGER.info("Pooled link to {} open in {} ms (recovery {} ms).", address, attemptMs, recoveryMs);
+
+        state.transition(ConnectionState.CONNECTING, ConnectionState.CONNECTED);
+        writer = executor.startThread("writer-" + address, () -> writeLoop(opened, gen));
+        executor.startThread("reader-" + address, () -> readLoop(opened, gen));
+    }
+
+    private void readLoop(FanLink current, long gen) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(current.getInputStream(), StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || !Character.isDigit(line.charAt(0))) continue;
+                try {
+                    int rpm = Integer.parseInt(line);
+                    lastRpm = rpm;
+                    rpmReports.incrementAndGet();
+                    listener.onRpm(this, rpm);
+                } catch (NumberFormatException e) {
+                    LOGGER.debug("Ignoring line from {}: {}", address, line);
+                }
+            }
+            dropLink(gen, null);
+        } catch (IOException e) {
+            dropLink(gen, e);
+        }
+    }
+
+    private void writeLoop(FanLink current, long gen) {
+        OutputStream out = current.getOutputStream();
+        try {
+            byte[] profile = profileFrame;
+            if (profile != null) write(out, profile);
+            while (generation.get() == gen) {
+                byte[] next = commands.take();
+                if (next != WAKE) write(out, next);
+                byte[] latest = telemetry.getAndSet(null);
+                if (latest != null) write(out, latest);
+            }
+        } catch (InterruptedException e) {
+            // Link closed
+        } catch (IOException e) {
+            dropLink(gen, e);
+        }
+    }
+
+    private void write(OutputStream out, byte[] frame) throws IOException {
+        long start = System.nanoTime();
+        out.write(frame);
+        out.flush();
+        writeLatency.record((System.nanoTime() - start) / 1_000_000L);
+        framesWritten.incrementAndGet();
+    }
+
+    private void dropLink(long gen, IOException cause) {
+        if (!generation.compareAndSet(gen, gen + 1)) return; // Already dropped, or a newer link
+
+        boolean wasConnected = state.transition(ConnectionState.CONNECTED, ConnectionState.DRAINING);
+        FanLink current = link;
+        link = null;
+        StackExecutor.Task stale = writer;
+        writer = null;
+        if (stale != null) stale.cancel();
+        if (current != null) {
+            LOGGER.info("Pooled link to {} closed{}. {}", address, cause != null ? " (" + cause.getMessage() + ")" : "", current.getMetrics());
+            closeQuietly(current);
+        }
+        if (wasConnected) {
+            state.transition(ConnectionState.DRAINING, ConnectionState.IDLE);
+            if (wanted) startCycle(true);
+        }
+    }
+
+    private static void closeQuietly(FanLink link) {
+        try {
+            link.close();
+        } catch (IOException e) {
+            LOGGER.debug("Error closing link to {}", link.getAddress(), e);
+        }
+    }
+}
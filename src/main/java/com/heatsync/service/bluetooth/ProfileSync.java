@@ -0,0 +1,209 @@
+package com.heatsync.service.bluetooth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Uploads a profile frame only when the device does not already run it.
+ *
+ * Profiles are identified by {@link FanProtocol#profileHash}. The hash of the profile last
+ * delivered to or reported by each device is kept per address, so sending the same profile again
+ * while connected is skipped. After a connect, firmware that supports it is asked for the hash of
+ * the profile it runs ({@link FanProtocol#profileHashQuery()}); the profile is uploaded only when
+ * that hash differs, which avoids resetting the firmware's operation mode on every reconnect.
+ * Without an answer within the timeout the profile is uploaded and the device is not queried again
+ * during this session.
+ *
+ * The query is opt-in with -Dheatsync.profile.query=true, since older firmware does not know it;
+ * -Dheatsync.profile.queryTimeoutMs sets how long to wait for the answer.
+ */
+public class ProfileSync {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProfileSync.class);
+
+    // The firmware only reads between 1 s tachometer windows
+    public static final long DEFAULT_QUERY_TIMEOUT_MS = 3000L;
+
+    private final ScheduledExecutorService scheduler;
+    private final CommandPipeline.FrameWriter writer;
+    private final Function<String, CompletableFuture<CommandResult>> uploader;
+    private final boolean queryEnabled;
+    private final long queryTimeoutMs;
+
+    private final Map<String, Integer> confirmed = new ConcurrentHashMap<>();
+    private final Set<String> queryUnsupported = ConcurrentHashMap.newKeySet();
+
+    // Guarded by this
+    private String pendingAddress;
+    private String pendingFrame;
+    private ScheduledFuture<?> pendingTimeout;
+    private long uploads = 0, skipped = 0;
+
+    /**
+     * @param scheduler Runs the query timeout and the uploads decided on the read thread
+     * @param writer Writes the query to the current link
+     * @param uploader Sends a profile frame, acknowledged when that mode is enabled
+     */
+    public ProfileSync(ScheduledExecutorService scheduler, CommandPipeline.FrameWriter writer,
+                       Function<String, CompletableFuture<CommandResult>> uploader) {
+        this(scheduler, writer, uploader, Boolean.getBoolean("heatsync.profile.query"),
+                Long.getLong("heatsync.profile.queryTimeoutMs", DEFAULT_QUERY_TIMEOUT_MS));
+    }
+
+    public ProfileSync(ScheduledExecutorService scheduler, CommandPipeline.FrameWriter writer,
+                       Function<String, CompletableFuture<CommandResult>> uploader,
+                       boolean queryEnabled, long queryTimeoutMs) {
+        this.scheduler = scheduler;
+        this.writer = writer;
+        this.uploader = uploader;
+        this.queryEnabled = queryEnabled;
+        this.queryTimeoutMs = Math.max(1L, queryTimeoutMs);
+    }
+
+    /**
+     * Brings a newly connected device to the given profile, querying its current one first when
+     * enabled.
+     *
+     * @param address The device address
+     * @param frame The profile frame the device should run
+     */
+    public void onConnected(String address, String frame) {
+        cancelPending();
+        if (!queryEnabled || queryUnsupported.contains(address)) {
+            // The device may have been reset while away: only a query can show it kept the profile
+            confirmed.remove(address);
+            upload(address, frame);
+            return;
+        }
+
+        synchronized (this) {
+            pendingAddress = address;
+            pendingFrame = frame;
+            pendingTimeout = scheduler.schedule(() -> onQueryTimeout(address), queryTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+        try {
+            writer.write(FanProtocol.profileHashQuery().getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException e) {
+            // The link is going down; the timeout clears the pending query
+            LOGGER.debug("Profile hash query write failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Records the profile hash reported by the device. Runs on the read thread.
+     */
+    public void onDeviceHash(int hash) {
+        String address, frame;
+        synchronized (this) {
+            if (pendingAddress == null) {
+                return;
+            }
+            address = pendingAddress;
+            frame = pendingFrame;
+            clearPending();
+        }
+
+        confirmed.put(address, hash);
+        if (hash == FanProtocol.profileHash(frame)) {
+            synchronized (this) { skipped++; }
+            LOGGER.info("Device {} already runs the profile (hash {}). Upload skipped.", address, hash);
+        } else {
+            LOGGER.info("Device {} runs profile hash {}, expected {}. Uploading.", address, hash, FanProtocol.profileHash(frame));
+            scheduler.execute(() -> upload(address, frame));
+        }
+    }
+
+    /**
+     * Sends a profile frame unless the device is known to run it already.
+     *
+     * @return The device answer, or an already completed ACKED result without sequence when skipped
+     */
+    public CompletableFuture<CommandResult> send(String address, String frame) {
+        synchronized (this) {
+            // An explicit send supersedes the profile a pending query would settle
+            if (address != null && address.equals(pendingAddress)) clearPending();
+        }
+        if (address != null && isInSync(address, frame)) {
+            synchronized (this) { skipped++; }
+            LOGGER.debug("Profile unchanged on {}. Not sent.", address);
+            return CompletableFuture.completedFuture(new CommandResult(CommandResult.Status.ACKED, -1, 0L));
+        }
+        return upload(address, frame);
+    }
+
+    /**
+     * @return true if the profile last confirmed on the device is this frame
+     */
+    public boolean isInSync(String address, String frame) {
+        Integer hash = confirmed.get(address);
+        return hash != null && hash == FanProtocol.profileHash(frame);
+    }
+
+    /**
+     * Drops a pending query when the link closes. Confirmed hashes are kept.
+     */
+    public void onDisconnected() {
+        cancelPending();
+    }
+
+    public synchronized long getUploads() { return uploads; }
+    public synchronized long getSkipped() { return skipped; }
+
+    private void onQueryTimeout(String address) {
+        String frame;
+        synchronized (this) {
+            if (pendingAddress == null || !pendingAddress.equals(address)) {
+                return;
+            }
+            frame = pendingFrame;
+            clearPending();
+        }
+        LOGGER.info("Device {} does not answer the profile hash query. Uploading, and not querying it again.", address);
+        queryUnsupported.add(address);
+        upload(address, frame);
+    }
+
+    private CompletableFuture<CommandResult> upload(String address, String frame) {
+        synchronized (this) { uploads++; }
+        int hash = FanProtocol.profileHash(frame);
+        return uploader.apply(frame).whenComplete((result, error) -> {
+            if (address == null) {
+                return;
+            }
+            if (result != null && result.isDelivered()) {
+                confirmed.put(address, hash);
+            } else {
+                confirmed.remove(address);
+            }
+        });
+    }
+
+    private synchronized void cancelPending() {
+        clearPending();
+    }
+
+    // Must hold this
+    private void clearPending() {
+        if (pendingTimeout != null) {
+            pendingTimeout.cancel(false);
+        }
+        pendingTimeout = null;
+        pendingAddress = null;
+        pendingFrame = null;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "uploads=" + uploads + " skipped=" + skipped;
+    }
+}
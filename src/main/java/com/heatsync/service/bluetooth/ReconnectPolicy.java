@@ -0,0 +1,197 @@
+package com.heatsync.service.bluetooth;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides when reconnect attempts run.
+ *
+ * A reconnect cycle starts either because an established link dropped or because a caller asked
+ * for a reconnect while disconnected. After a link drop the first attempt runs immediately, since
+ * most drops (out of range for a moment, adapter hiccup, laptop resume) are over by the time the
+ * stack notices. Further attempts back off exponentially from a base delay, capped, with equal
+ * jitter so several hosts do not page the device in lock step.
+ *
+ * The base delay is learned per device: it is derived from how long previous cycles for the same
+ * MAC actually took to recover, so a device that usually needs a few seconds after resume is not
+ * hammered in the meantime, while a device that comes back quickly is retried quickly.
+ */
+public class ReconnectPolicy {
+    public static final int DEFAULT_MAX_ATTEMPTS = 8;
+    static final long DEFAULT_BASE_DELAY_MS = 500L;
+    static final long MIN_BASE_DELAY_MS = 250L;
+    static final long MAX_BASE_DELAY_MS = 4_000L;
+    static final long MAX_DELAY_MS = 15_000L;
+    static final long ABANDON_COOLDOWN_MS = 10_000L;
+    private static final double EWMA_WEIGHT = 0.3;
+
+    /**
+     * Reconnect history of a single device. Guarded by its own monitor.
+     */
+    public static final class DeviceStats {
+        private long cycles = 0, recoveries = 0, abandoned = 0, failedAttempts = 0;
+        private double ewmaRecoveryMs = -1, ewmaAttemptMs = -1;
+        private long lastRecoveryMs = 0;
+        private long cycleStartNanos = 0;
+        private boolean cycleStartedByDrop = false;
+        private long abandonedAtMs = 0;
+
+        public synchronized long getCycles() { return cycles; }
+        public synchronized long getRecoveries() { return recoveries; }
+        public synchronized long getAbandoned() { return abandoned; }
+        public synchronized long getFailedAttempts() { return failedAttempts; }
+        public synchronized long getLastRecoveryMs() { return lastRecoveryMs; }
+        public synchronized double getAverageRecoveryMs() { return Math.max(0, ewmaRecoveryMs); }
+        public synchronized double getAverageAttemptMs() { return Math.max(0, ewmaAttemptMs); }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("cycles=%d recovered=%d abandoned=%d failedAttempts=%d avgRecovery=%.0fms lastRecovery=%dms avgAttempt=%.0fms",
+                    cycles, recoveries, abandoned, failedAttempts, getAverageRecoveryMs(), lastRecoveryMs, getAverageAttemptMs());
+        }
+
+        private static double ewma(double current, double sample) {
+            return current < 0 ? sample : current + EWMA_WEIGHT * (sample - current);
+        }
+    }
+
+    private final Map<String, DeviceStats> stats = new ConcurrentHashMap<>();
+    private final int maxAttempts;
+    private final Random random;
+
+    public ReconnectPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, null);
+    }
+
+    /**
+     * @param maxAttempts Attempts per cycle before giving up
+     * @param random Source of jitter, or null for {@link ThreadLocalRandom}
+     */
+    public ReconnectPolicy(int maxAttempts, Random random) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.random = random;
+    }
+
+    /**
+     * Marks the start of a reconnect cycle.
+     *
+     * @param mac The device being reconnected
+     * @param linkDropped true if an established link was just lost
+     */
+    public void onCycleStarted(String mac, boolean linkDropped) {
+        DeviceStats s = statsFor(mac);
+        synchronized (s) {
+            s.cycles++;
+            s.cycleStartNanos = System.nanoTime();
+            s.cycleStartedByDrop = linkDropped;
+        }
+    }
+
+    /**
+     * @return true unless the previous cycle for this device was abandoned less than the cooldown ago
+     */
+    public boolean canStartCycle(String mac) {
+        DeviceStats s = statsFor(mac);
+        synchronized (s) {
+            return s.abandonedAtMs == 0L || System.currentTimeMillis() - s.abandonedAtMs >= ABANDON_COOLDOWN_MS;
+        }
+    }
+
+    /**
+     * Computes how long to wait before an attempt of the current cycle.
+     *
+     * @param attemptNumber Attempt index in the cycle, starting at 0
+     * @return Delay in milliseconds, 0 to run immediately
+     */
+    public long delayBeforeAttempt(String mac, int attemptNumber) {
+        DeviceStats s = statsFor(mac);
+        long base;
+        int exponent;
+        synchronized (s) {
+            if (attemptNumber == 0 && s.cycleStartedByDrop) {
+                return 0L;
+            }
+            base = s.ewmaRecoveryMs < 0
+                    ? DEFAULT_BASE_DELAY_MS
+                    : clamp((long) (s.ewmaRecoveryMs / 4), MIN_BASE_DELAY_MS, MAX_BASE_DELAY_MS);
+            exponent = s.cycleStartedByDrop ? attemptNumber - 1 : attemptNumber;
+        }
+
+        long raw = base << Math.min(exponent, 16);
+        long capped = Math.min(MAX_DELAY_MS, raw);
+        // Equal jitter: half fixed, half random
+        long half = capped / 2;
+        return half + (long) (nextDouble() * (capped - half));
+    }
+
+    /**
+     * @return true if another attempt may follow the given one in the same cycle
+     */
+    public boolean hasAttemptsLeft(int attemptNumber) {
+        return attemptNumber + 1 < maxAttempts;
+    }
+
+    public void onAttemptFailed(String mac, long attemptMs) {
+        DeviceStats s = statsFor(mac);
+        synchronized (s) {
+            s.failedAttempts++;
+            s.ewmaAttemptMs = DeviceStats.ewma(s.ewmaAttemptMs, attemptMs);
+        }
+    }
+
+    /**
+     * Ends the cycle successfully and learns its recovery time.
+     *
+     * @return Time from the start of the cycle to the connection, in milliseconds
+     */
+    public long onConnected(String mac, long attemptMs) {
+        DeviceStats s = statsFor(mac);
+        synchronized (s) {
+            s.ewmaAttemptMs = DeviceStats.ewma(s.ewmaAttemptMs, attemptMs);
+            s.abandonedAtMs = 0L;
+            if (s.cycleStartNanos == 0L) {
+                return 0L;
+            }
+            long recoveryMs = (System.nanoTime() - s.cycleStartNanos) / 1_000_000L;
+            s.cycleStartNanos = 0L;
+            s.recoveries++;
+            s.lastRecoveryMs = recoveryMs;
+            s.ewmaRecoveryMs = DeviceStats.ewma(s.ewmaRecoveryMs, recoveryMs);
+            return recoveryMs;
+        }
+    }
+
+    /**
+     * Ends the cycle after the last attempt failed. New cycles wait for the cooldown.
+     */
+    public void onCycleAbandoned(String mac) {
+        DeviceStats s = statsFor(mac);
+        synchronized (s) {
+            s.abandoned++;
+            s.cycleStartNanos = 0L;
+            s.abandonedAtMs = System.currentTimeMillis();
+        }
+    }
+
+    public DeviceStats getStats(String mac) {
+        return statsFor(mac);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    private DeviceStats statsFor(String mac) {
+        return stats.computeIfAbsent(mac == null ? "" : mac, key -> new DeviceStats());
+    }
+
+    private double nextDouble() {
+        return random != null ? random.nextDouble() : ThreadLocalRandom.current().nextDouble();
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,137 @@
+package com.heatsync.service.bluetooth;
+
+import com.heatsync.service.configIO.FanProfileIOService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection URLs resolved through SDP, keyed by device MAC and persisted between runs.
+ *
+ * Each line of the cache file holds {@code <mac> <resolvedAtMillis> <url>}. Entries older than the
+ * TTL are ignored so a device whose service moved to another channel is eventually looked up again
+ * even if the cached URL keeps failing for unrelated reasons.
+ */
+public class ServiceUrlCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServiceUrlCache.class);
+
+    public static final long DEFAULT_TTL_MS = TimeUnit.DAYS.toMillis(7);
+    // Next to the config file, so -Dheatsync.config.dir moves it too
+    static final Path DEFAULT_PATH = FanProfileIOService.getConfigFolder().resolve("spp-services.txt");
+
+    private static final class Entry {
+        final String url;
+        final long resolvedAtMs;
+
+        Entry(String url, long resolvedAtMs) {
+            this.url = url;
+            this.resolvedAtMs = resolvedAtMs;
+        }
+    }
+
+    private final Path file;
+    private final long ttlMs;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean loaded = false;
+
+    public ServiceUrlCache() {
+        this(DEFAULT_PATH, DEFAULT_TTL_MS);
+    }
+
+    public ServiceUrlCache(Path file, long ttlMs) {
+        this.file = file;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * @param mac Device MAC address
+     * @return The cached URL if present and younger than the TTL, null otherwise
+     */
+    public String get(String mac) {
+        ensureLoaded();
+        Entry entry = entries.get(key(mac));
+        if (entry == null) return null;
+        if (System.currentTimeMillis() - entry.resolvedAtMs > ttlMs) {
+            LOGGER.debug("Cached service URL for {} expired", mac);
+            return null;
+        }
+        return entry.url;
+    }
+
+    public void put(String mac, String url) {
+        ensureLoaded();
+        entries.put(key(mac), new Entry(url, System.currentTimeMillis()));
+        save();
+    }
+
+    /**
+     * Drops the entry for a device, e.g. after its cached URL failed to open.
+     */
+    public void invalidate(String mac) {
+        ensureLoaded();
+        if (entries.remove(key(mac)) != null) {
+            save();
+        }
+    }
+
+    private static String key(String mac) {
+        return mac.trim().toUpperCase();
+    }
+
+    private synchronized void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        if (!Files.exists(file)) return;
+
+        long now = System.currentTimeMillis();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                String[] parts = line.split("\\s+", 3);
+                if (parts.length != 3) continue;
+                try {
+                    long resolvedAt = Long.parseLong(parts[1]);
+                    if (now - resolvedAt <= ttlMs) {
+                        entries.put(key(parts[0]), new Entry(parts[2], resolvedAt));
+                    }
+                } catch (NumberFormatException e) {
+                    LOGGER.debug("Skipping malformed service cache line: {}", line);
+                }
+            }
+            LOGGER.info("Loaded {} cached service URL(s) from {}", entries.size(), file);
+        } catch (IOException e) {
+            LOGGER.warn("Could not read service cache {}", file, e);
+        }
+    }
+
+    private synchronized void save() {
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write("# mac resolvedAtMillis url");
+                writer.newLine();
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    writer.write(e.getKey() + " " + e.getValue().resolvedAtMs + " " + e.getValue().url);
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.warn("Could not write service cache {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.heatsync.service.bluetooth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.bluetooth.BluetoothStateException;
+import javax.bluetooth.DeviceClass;
+import javax.bluetooth.DiscoveryAgent;
+import javax.bluetooth.DiscoveryListener;
+import javax.bluetooth.RemoteDevice;
+import javax.bluetooth.ServiceRecord;
+import javax.bluetooth.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds the SPP connection URL of a device through SDP.
+ *
+ * Lookups go to the {@link ServiceUrlCache} first; an SDP search ({@link DiscoveryAgent#searchServices})
+ * only runs on a cache miss or when the caller reports that the cached URL failed.
+ */
+public class SppServiceLocator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SppServiceLocator.class);
+
+    // Serial Port Profile
+    static final UUID SPP_UUID = new UUID(0x1101);
+    private static final long SEARCH_TIMEOUT_MS = 10_000L;
+
+    private final ServiceUrlCache cache;
+
+    public SppServiceLocator(ServiceUrlCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the cached URL for a device, if any.
+     */
+    public String cached(String mac) {
+        return cache.get(mac);
+    }
+
+    /**
+     * Forgets the cached URL of a device and searches its service records again.
+     *
+     * @param agent Discovery agent of the local adapter
+     * @param device The device, or null to address it by MAC only
+     * @param mac Device MAC address
+     * @return The SPP connection URL, or null if the device publishes none or could not be reached
+     */
+    public String resolve(DiscoveryAgent agent, RemoteDevice device, String mac) {
+        cache.invalidate(mac);
+        if (agent == null) return null;
+
+        RemoteDevice target = device != null ? device : new RemoteDevice(mac) {};
+        Search search = new Search();
+        long start = System.nanoTime();
+        int transId;
+        try {
+            transId = agent.searchServices(null, new UUID[] { SPP_UUID }, target, search);
+        } catch (BluetoothStateException e) {
+            LOGGER.warn("Could not start SDP search on {}", mac, e);
+            return null;
+        }
+
+        try {
+            if (!search.done.await(SEARCH_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("SDP search on {} timed out", mac);
+                agent.cancelServiceSearch(transId);
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            agent.cancelServiceSearch(transId);
+            return null;
+        }
+
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000L;
+        if (search.url == null) {
+            LOGGER.warn("SDP search on {} found no SPP service (response {}, {} ms)", mac, search.respCode, elapsedMs);
+            return null;
+        }
+        LOGGER.info("SDP resolved {} to {} in {} ms", mac, search.url, elapsedMs);
+        cache.put(mac, search.url);
+        return search.url;
+    }
+
+    /**
+     * Listener for a single service search.
+     */
+    private static final class Search implements DiscoveryListener {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile String url;
+        volatile int respCode = -1;
+
+        @Override
+        public void servicesDiscovered(int transID, ServiceRecord[] records) {
+            for (ServiceRecord record : records) {
+                String candidate = record.getConnectionURL(ServiceRecord.NOAUTHENTICATE_NOENCRYPT, false);
+                if (candidate != null && candidate.startsWith("btspp") && url == null) {
+                    url = candidate;
+                }
+            }
+        }
+
+        @Override
+        public void serviceSearchCompleted(int transID, int respCode) {
+            this.respCode = respCode;
+            done.countDown();
+        }
+
+        @Override
+        public void deviceDiscovered(RemoteDevice device, DeviceClass deviceClass) {}
+
+        @Override
+        public void inquiryCompleted(int discType) {}
+    }
+}
@@ -0,0 +1,326 @@
+package com.heatsync.service.bluetooth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The threads of one part of the Bluetooth stack: a timer thread, a worker executor for blocking
+ * tasks such as connection attempts, and dedicated threads for loops that live as long as a link.
+ *
+ * Every task has a name, shown as its thread's name while it runs, and a {@link Task} handle to
+ * cancel it. A delayed task waits on the timer and then runs on a worker, so the timer never blocks
+ * on I/O. {@link #shutdown()} cancels every task still pending or running and waits for the threads to
+ * end, so a shutdown leaves nothing behind.
+ *
+ * Workers and dedicated threads are platform threads by default: a small shared pool of
+ * {@link #PLATFORM_WORKERS} workers, and one thread per dedicated loop. BlueCove reads and connects
+ * in native code, which pins the carrier of a virtual thread for as long as the call blocks, so a
+ * few links would take every carrier. With -Dheatsync.threads=virtual they are virtual threads
+ * when the JVM supports them (Java 21); use it only with transports read in Java (tcp, pipe). The
+ * timer is always a single platform thread, handed out by {@link #scheduler()} to components that
+ * only need short timer callbacks.
+ */
+public final class StackExecutor implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StackExecutor.class);
+
+    public enum Mode {
+        PLATFORM,
+        VIRTUAL
+    }
+
+    static final int PLATFORM_WORKERS = 4;
+    static final long SHUTDOWN_TIMEOUT_MS = 2000L;
+
+    private final String name;
+    private final Mode mode;
+    private final ThreadFactory threadFactory;
+    private final ExecutorService workers;
+    private final ScheduledThreadPoolExecutor timer;
+    private final Set<Task> tasks = ConcurrentHashMap.newKeySet();
+    private final AtomicLong started = new AtomicLong();
+    private volatile boolean closed = false;
+
+    /**
+     * Handle of a submitted task or dedicated thread.
+     */
+    public final class Task {
+        private final String taskName;
+        private volatile Future<?> future;
+        private volatile Thread thread;
+        private volatile boolean cancelled = false;
+        private volatile boolean done = false;
+
+        private Task(String taskName) {
+            this.taskName = taskName;
+        }
+
+        public String getName() { return taskName; }
+        public boolean isDone() { return done || cancelled; }
+
+        /**
+         * Cancels the task if it has not run yet and interrupts it if it is running.
+         */
+        public void cancel() {
+            cancelled = true;
+            Future<?> f = future;
+            if (f != null) f.cancel(true);
+            Thread t = thread;
+            if (t != null && t != Thread.currentThread()) t.interrupt();
+            tasks.remove(this);
+        }
+
+        /**
+         * Waits for a dedicated thread to end.
+         *
+         * @return true if it ended within the timeout
+         */
+        public boolean join(long timeoutMs) throws InterruptedException {
+            Thread t = thread;
+            if (t == null || t == Thread.currentThread()) return true;
+            t.join(timeoutMs);
+            return !t.isAlive();
+        }
+
+        @Override
+        public String toString() {
+            return taskName;
+        }
+    }
+
+    public StackExecutor(String name) {
+        this(name, modeFromProperty());
+    }
+
+    public StackExecutor(String name, Mode requested) {
+        this.name = name;
+        ThreadFactory virtual = requested == Mode.VIRTUAL ? virtualThreadFactory("heatsync-" + name + "-v") : null;
+        if (requested == Mode.VIRTUAL && virtual == null) {
+            LOGGER.info("Virtual threads are not available on Java {}. Using a pool of {} platform threads.",
+                    Runtime.version().feature(), PLATFORM_WORKERS);
+        }
+
+        if (virtual != null) {
+            this.mode = Mode.VIRTUAL;
+            this.threadFactory = virtual;
+            this.workers = newThreadPerTaskExecutor(virtual);
+        } else {
+            this.mode = Mode.PLATFORM;
+            this.threadFactory = platformThreadFactory("heatsync-" + name + "-worker");
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(PLATFORM_WORKERS, PLATFORM_WORKERS, 30L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), threadFactory);
+            pool.allowCoreThreadTimeOut(true);
+            this.workers = pool;
+        }
+
+        this.timer = new ScheduledThreadPoolExecutor(1, platformThreadFactory("heatsync-" + name + "-timer"));
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * @return The timer, for short callbacks that never block
+     */
+    public ScheduledExecutorService scheduler() {
+        return timer;
+    }
+
+    public Mode getMode() { return mode; }
+
+    /**
+     * Runs a blocking task on a worker.
+     */
+    public Task submit(String taskName, Runnable runnable) {
+        Task task = new Task(taskName);
+        if (!register(task)) return task;
+        try {
+            task.future = workers.submit(() -> run(task, runnable));
+        } catch (RejectedExecutionException e) {
+            rejected(task);
+        }
+        return task;
+    }
+
+    /**
+     * Runs a blocking task on a worker after a delay.
+     */
+    public Task schedule(String taskName, Runnable runnable, long delay, TimeUnit unit) {
+        if (delay <= 0) {
+            return submit(taskName, runnable);
+        }
+        Task task = new Task(taskName);
+        if (!register(task)) return task;
+        try {
+            task.future = timer.schedule(() -> {
+                if (task.cancelled) return;
+                try {
+                    task.future = workers.submit(() -> run(task, runnable));
+                } catch (RejectedExecutionException e) {
+                    rejected(task);
+                }
+            }, delay, unit);
+        } catch (RejectedExecutionException e) {
+            rejected(task);
+        }
+        return task;
+    }
+
+    /**
+     * Starts a dedicated thread for a loop that runs as long as a link, e.g. a reader.
+     */
+    public Task startThread(String taskName, Runnable runnable) {
+        Task task = new Task(taskName);
+        if (!register(task)) return task;
+        Thread thread = threadFactory.newThread(() -> run(task, runnable));
+        thread.setName("heatsync-" + name + "-" + taskName);
+        thread.setDaemon(true);
+        task.thread = thread;
+        thread.start();
+        return task;
+    }
+
+    /**
+     * @return Number of tasks pending or running
+     */
+    public int getLiveTasks() {
+        return tasks.size();
+    }
+
+    public long getStartedTasks() {
+        return started.get();
+    }
+
+    /**
+     * Cancels every pending and running task and waits for the threads to end.
+     *
+     * @return true if everything ended within {@link #SHUTDOWN_TIMEOUT_MS}
+     */
+    public boolean shutdown() {
+        if (closed) return true;
+        closed = true;
+        List<Task> live = new ArrayList<>(tasks);
+        for (Task task : live) {
+            task.cancel();
+        }
+        timer.shutdownNow();
+        workers.shutdownNow();
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SHUTDOWN_TIMEOUT_MS);
+        boolean clean = true;
+        try {
+            clean &= timer.awaitTermination(remainingMs(deadline), TimeUnit.MILLISECONDS);
+            clean &= workers.awaitTermination(remainingMs(deadline), TimeUnit.MILLISECONDS);
+            for (Task task : live) {
+                if (!task.join(remainingMs(deadline))) {
+                    LOGGER.warn("Task {} did not stop within {} ms", task, SHUTDOWN_TIMEOUT_MS);
+                    clean = false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            clean = false;
+        }
+        LOGGER.info("Executor {} closed{}: {}", name, clean ? "" : " with tasks still running", this);
+        return clean;
+    }
+
+    @Override
+    public void close() {
+        shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s threads, %d live tasks, %d started", mode.name().toLowerCase(Locale.ROOT),
+                tasks.size(), started.get());
+    }
+
+    private boolean register(Task task) {
+        if (closed) {
+            LOGGER.debug("Executor {} is closed. Task {} not started.", name, task);
+            task.cancelled = true;
+            return false;
+        }
+        tasks.add(task);
+        started.incrementAndGet();
+        return true;
+    }
+
+    private void rejected(Task task) {
+        LOGGER.debug("Executor {} rejected task {}", name, task);
+        task.cancelled = true;
+        tasks.remove(task);
+    }
+
+    private void run(Task task, Runnable runnable) {
+        if (task.cancelled) return;
+        Thread current = Thread.currentThread();
+        String previousName = current.getName();
+        if (task.thread == null) current.setName("heatsync-" + name + "-" + task.taskName);
+        try {
+            runnable.run();
+        } catch (RuntimeException e) {
+            LOGGER.error("Task {} failed", task, e);
+        } finally {
+            task.done = true;
+            tasks.remove(task);
+            if (task.thread == null) current.setName(previousName);
+        }
+    }
+
+    private static long remainingMs(long deadlineNanos) {
+        return Math.max(1L, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    private static Mode modeFromProperty() {
+        String value = System.getProperty("heatsync.threads", "platform");
+        return "virtual".equalsIgnoreCase(value.trim()) ? Mode.VIRTUAL : Mode.PLATFORM;
+    }
+
+    private static ThreadFactory platformThreadFactory(String prefix) {
+        AtomicInteger sequence = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // Thread.ofVirtual().name(prefix, 0).factory(), looked up so the code still targets Java 17
+    private static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix + "-", 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Executors.newThreadPerTaskExecutor(factory), Java 21
+    private static ExecutorService newThreadPerTaskExecutor(ThreadFactory factory) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads available but no thread per task executor", e);
+        }
+    }
+}
@@ -1,12 +1,20 @@
 package com.heatsync.service.configIO;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 import com.heatsync.util.PairedList;
 
@@ -15,87 +23,124 @@ import com.heatsync.util.PairedList;
  * 
  */
 public class ConfigFileIO {
-   /* Simple write of all pairs on file 
+   /* Atomic write of all pairs on file
+     *
+     * The pairs are written to a temporary file next to the target, forced to disk and then moved
+     * over the target, so a crash mid-write leaves either the old or the new config, never half of one.
+     * The temporary file takes the target's permissions before the move, so the rewrite keeps them.
      *
      * @exceptions:
-     * If the write was not allowed for some reason, fails with IOException 
+     * If the write was not allowed for some reason, fails with IOException. The target is left untouched
      * 
      * @warning: 
      * No safeguarding for incorrect {op : value} pair - Invalid configs can be written
      */
-    // 
     public static void writeSettingsFile(File file, PairedList<String, String> pairs) throws IOException {
+        writeContent(file, settingsContent(pairs));
+    }
+
+    /* The bytes writeSettingsFile puts on disk for these pairs, one "op: value" line each */
+    static byte[] settingsContent(PairedList<String, String> pairs) {
         List<String> opList = pairs.first;
         List<String> valList = pairs.second;
-        Thread.dumpStack();
-        
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-            for (int i = 0; i < opList.size(); i++) {
-                writer.write(opList.get(i) + ": " + valList.get(i) + System.lineSeparator());
-                System.out.println(opList.get(i) + ": " + valList.get(i) + System.lineSeparator());
+
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < opList.size(); i++) {
+            content.append(opList.get(i)).append(": ").append(valList.get(i)).append(System.lineSeparator());
+        }
+        return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /* Atomic write of content on file, as described for writeSettingsFile */
+    static void writeContent(File file, byte[] content) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        Path dir = target.getParent();
+        Path temp = createSibling(target);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) channel.write(buffer);
+                channel.force(true);
             }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        // Persist the rename itself; not every platform can open a directory, which only costs durability
+        try (FileChannel dirChannel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            dirChannel.force(true);
+        } catch (IOException e) {
+            // Ignored
         }
     }
 
+    /* Creates an empty file next to the target, to be moved over it
+     *
+     * Files.createTempFile would make it readable by the owner only. A plain new file gets the default
+     * permissions instead, and when the target exists its POSIX permissions are copied over
+     */
+    private static Path createSibling(Path target) throws IOException {
+        Path dir = target.getParent();
+        Path temp;
+        while (true) {
+            temp = dir.resolve(target.getFileName() + "." + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + ".tmp");
+            try {
+                Files.createFile(temp);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                // Name taken, draw another
+            }
+        }
+
+        PosixFileAttributeView view = Files.getFileAttributeView(temp, PosixFileAttributeView.class);
+        if (view != null && Files.exists(target)) {
+            try {
+                view.setPermissions(Files.getPosixFilePermissions(target));
+            } catch (IOException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+        }
+        return temp;
+    }
+
 
     /* Read values as pairs of {op : val}
      * Ignore empty lines
      * Ignore '#' char and everything to the right of it
+     * An empty value is read as null
      * 
-     * 
-     * Each operator is associated with a expected type. The argument operatorTypes defines which one
-     * Garantees both lists returned are of same size
+     * Garantees both lists returned are of same size. See ConfigScanner for the format
      * 
      * @exceptions:
      * If the read was not allowed for some reason, fails with IOException
-     * If a non empty line, excluding comments and whitespaces, as defined by String.trim(), has
-     * any existing stream of characters with no ':' separation, fails with SettingsSaverException
+     * If a non empty line, excluding comments and whitespaces, has no ':' separation, fails with
+     * ConfigIOException naming its line and column
      */
-    protected static PairedList<String,String> readKeyValueAssociations(FileReader fileReader) 
+    protected static PairedList<String,String> readKeyValueAssociations(Reader reader) 
     throws IOException, ConfigIOException {
-        String line;
-        BufferedReader reader = new BufferedReader(fileReader);
-
         PairedList<String, String> map = new PairedList<>();
+        StringBuilder errorTrace = new StringBuilder();
 
-        int lineIndex = 1;
-        while ((line = reader.readLine()) != null) {
-
-
-            // Remove rightmost comments
-            int commentIndex = line.indexOf("#");
-            if (commentIndex != -1 ) line = line.substring(0, commentIndex);
-            line = line.trim();
-            if (line.equals("")) continue;
-            
-            // Separate {op : arg}
-            int index = line.indexOf(":");
-            if (index == -1) {
-                throw new ConfigIOException(
-                    "No delimiter found for file line " + lineIndex + " of settings config file: " 
-                    + System.lineSeparator() + line
-                );
+        ConfigScanner.scan(reader, new ConfigScanner.Handler() {
+            @Override
+            public void entry(char[] buf, int keyStart, int keyEnd, int valueStart, int valueEnd, int line, int keyColumn, int valueColumn) {
+                String op = new String(buf, keyStart, keyEnd - keyStart);
+                map.add(op, valueStart < valueEnd ? new String(buf, valueStart, valueEnd - valueStart) : null);
             }
 
-
-            String op = line.substring(0,index);
-
-            index++; // Skip spaces after the delimiter
-            while (index < line.length() && line.charAt(index) == ' ') index++;
-
-
-            if (index < line.length()) {
-                String arg = line.substring(index);
-                map.add(op, arg);
-            } else {
-                System.out.println("No argument found after delimiter.");
-                map.add(op, null);
+            @Override
+            public void malformed(int line, int column, String message) {
+                errorTrace.append("line " + line + ", column " + column + ": " + message + System.lineSeparator());
             }
+        });
 
-
-            
-            lineIndex++;
-        }
+        if (errorTrace.length() > 0) throw new ConfigIOException(errorTrace.toString());
         return map;
     }
 
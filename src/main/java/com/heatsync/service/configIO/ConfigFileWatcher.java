@@ -0,0 +1,111 @@
+package com.heatsync.service.configIO;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+
+/*
+ * Watches the config file for changes made outside the program and reloads it.
+ *
+ * The folder is watched, not the file, so tools that replace the file (write a copy, then rename it
+ * over) are seen as well. Events come in bursts for one save, so the reload waits until the file has
+ * been quiet for the debounce window (300 ms, -Dheatsync.config.watchDebounceMs).
+ *
+ * The program's own writes also raise events. FanProfileIOService.reloadFile skips them, see there.
+ */
+public class ConfigFileWatcher implements AutoCloseable {
+    public static final long DEFAULT_DEBOUNCE_MS = 300L;
+
+    private final Path file;
+    private final long debounceMs;
+    private final Runnable reload;
+    private final WatchService watchService;
+    private final Thread thread;
+
+
+    public ConfigFileWatcher(Path file, Runnable reload) throws IOException {
+        this(file, Long.getLong("heatsync.config.watchDebounceMs", DEFAULT_DEBOUNCE_MS), reload);
+    }
+
+    public ConfigFileWatcher(Path file, long debounceMs, Runnable reload) throws IOException {
+        this.file = file;
+        this.debounceMs = Math.max(0L, debounceMs);
+        this.reload = reload;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        this.thread = new Thread(this::run, "heatsync-config-watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+
+    /* Stops watching. A pending reload is dropped */
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            System.err.println("Warning: Can not close config watcher: " + e.getMessage());
+        }
+        thread.interrupt();
+    }
+
+    private void run() {
+        long deadline = 0L; // When the pending reload is due, 0 if none is pending
+        try {
+            while (true) {
+                WatchKey key;
+                if (deadline == 0L) {
+                    key = watchService.take();
+                } else {
+                    long waitMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    key = waitMs > 0 ? watchService.poll(waitMs, TimeUnit.MILLISECONDS) : null;
+                }
+
+                if (key == null) {
+                    // Quiet for the whole window
+                    deadline = 0L;
+                    runReload();
+                    continue;
+                }
+
+                if (touchesFile(key)) deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(debounceMs);
+                if (!key.reset()) {
+                    System.err.println("Warning: Config folder " + file.getParent() + " is no longer watched");
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    private boolean touchesFile(WatchKey key) {
+        boolean touched = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                touched = true; // Events were lost; the file may be among them
+            } else if (file.getFileName().equals(event.context())) {
+                touched = true;
+            }
+        }
+        return touched;
+    }
+
+    private void runReload() {
+        try {
+            reload.run();
+        } catch (RuntimeException e) {
+            System.err.println("Warning: Config reload failed: " + e);
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package com.heatsync.service.configIO;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.heatsync.service.configIO.FanProfileConfigIO.Operators;
+import com.heatsync.service.configIO.FanProfileConfigIO.Response;
+
+
+/*
+ * Checks a config file against the schema while ConfigScanner reads it.
+ *
+ * Operator entries are checked against their Operators schema: type, then range. Profile entries
+ * ("profile.<name>", see FanProfile) are parsed in place, each setting checked against the range of
+ * the operator it stands for. Device entries ("device.<address>") must name a profile of the file,
+ * which is checked once the whole file is read, so they may come before the profile.
+ *
+ * Every problem is reported with the line and column it starts at, not only the first one. Valid
+ * entries are kept in the response even when others fail, so a caller may keep them and fill in
+ * the rest. Missing operators are not a problem; the layer above fills them in.
+ */
+public final class ConfigParser implements ConfigScanner.Handler {
+
+    public record Diagnostic(int line, int column, String message) {
+        @Override
+        public String toString() {
+            return "line " + line + ", column " + column + ": " + message;
+        }
+    }
+
+    public record Result(Response response, List<Diagnostic> diagnostics) {
+        public boolean isValid() { return diagnostics.isEmpty(); }
+
+        /* One problem per line */
+        public String report() {
+            StringBuilder sb = new StringBuilder();
+            for (Diagnostic diagnostic : diagnostics) sb.append(diagnostic).append(System.lineSeparator());
+            return sb.toString();
+        }
+    }
+
+    // A device default waiting for the end of the file to have its profile checked
+    private record DeviceReference(String device, String profile, int line, int column) {}
+
+    private static final Comparator<Diagnostic> IN_FILE_ORDER =
+            Comparator.comparingInt(Diagnostic::line).thenComparingInt(Diagnostic::column);
+
+    private final Response response = new Response();
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+    private final int[] operatorLines = new int[Operators.MAX_LIST_SIZE]; // 0 until the operator is set
+    private final Map<String, Integer> profileLines = new HashMap<>();
+    private final Map<String, Integer> deviceLines = new HashMap<>();
+    private final List<DeviceReference> deviceReferences = new ArrayList<>();
+
+    private ConfigParser() {}
+
+
+    public static Result parse(Reader reader) throws IOException {
+        ConfigParser parser = new ConfigParser();
+        ConfigScanner.scan(reader, parser);
+        return parser.finish();
+    }
+
+    public static Result parse(char[] buf, int length) {
+        ConfigParser parser = new ConfigParser();
+        ConfigScanner.scan(buf, length, parser);
+        return parser.finish();
+    }
+
+    /* Parses the value of a "profile.<name>" entry on its own, as FanProfile.parse does
+     *
+     * @exceptions:
+     * If the value is malformed or out of range, fails with ConfigIOException naming the first problem
+     */
+    static FanProfile parseProfile(String name, String value) throws ConfigIOException {
+        if (value == null) throw new ConfigIOException("Profile {" + name + "} has no value");
+        char[] buf = value.toCharArray();
+        List<Diagnostic> problems = new ArrayList<>();
+        FanProfile profile = parseProfileValue(name, buf, 0, buf.length, 1, 1, problems);
+        if (profile == null) throw new ConfigIOException(problems.get(0).message());
+        return profile;
+    }
+
+
+    @Override
+    public void entry(char[] buf, int keyStart, int keyEnd, int valueStart, int valueEnd, int line, int keyColumn, int valueColumn) {
+        if (ConfigScanner.startsWith(buf, keyStart, keyEnd, FanProfile.PROFILE_PREFIX)) {
+            profileEntry(buf, keyStart + FanProfile.PROFILE_PREFIX.length(), keyEnd, valueStart, valueEnd,
+                    line, keyColumn + FanProfile.PROFILE_PREFIX.length(), valueColumn);
+            return;
+        }
+        if (ConfigScanner.startsWith(buf, keyStart, keyEnd, FanProfile.DEVICE_PREFIX)) {
+            deviceEntry(buf, keyStart + FanProfile.DEVICE_PREFIX.length(), keyEnd, valueStart, valueEnd,
+                    line, keyColumn + FanProfile.DEVICE_PREFIX.length(), valueColumn);
+            return;
+        }
+
+        Operators op = Operators.getOperator(buf, keyStart, keyEnd);
+        if (op == null) {
+            error(line, keyColumn, "Unknown key {" + span(buf, keyStart, keyEnd) + "}");
+            return;
+        }
+        if (operatorLines[op.getCode()] != 0) {
+            error(line, keyColumn, "Repeated key {" + op + "}, first set on line " + operatorLines[op.getCode()]);
+            return;
+        }
+        operatorLines[op.getCode()] = line;
+        if (valueStart == valueEnd) {
+            error(line, valueColumn, "Key {" + op + "} has no value");
+            return;
+        }
+
+        try {
+            switch (op.getType()) {
+                case INTEGER: {
+                    long value = ConfigScanner.parseInt(buf, valueStart, valueEnd);
+                    if (value == ConfigScanner.INVALID_INT) {
+                        error(line, valueColumn, "Key {" + op + "} expects an integer, found {" + span(buf, valueStart, valueEnd) + "}");
+                    } else if (!op.inRange(value)) {
+                        error(line, valueColumn, "Key {" + op + "} value {" + value + "} is outside " + range(op));
+                    } else {
+                        response.addIntegerOperandResponse(op, (int) value);
+                    }
+                    break;
+                }
+                case DECIMAL: {
+                    double value = ConfigScanner.parseDecimal(buf, valueStart, valueEnd);
+                    if (Double.isNaN(value)) {
+                        error(line, valueColumn, "Key {" + op + "} expects a number, found {" + span(buf, valueStart, valueEnd) + "}");
+                    } else if (!op.inRange(value)) {
+                        error(line, valueColumn, "Key {" + op + "} value {" + value + "} is outside " + range(op));
+                    } else {
+                        response.addDecimalOperandResponse(op, value);
+                    }
+                    break;
+                }
+                case TEXT: {
+                    int length = valueEnd - valueStart;
+                    if (ConfigScanner.equals(buf, valueStart, valueEnd, "null")) {
+                        break; // Written for an unset value; stays unset
+                    }
+                    if (!op.inRange(length)) {
+                        error(line, valueColumn, "Key {" + op + "} length " + length + " is outside " + range(op));
+                    } else {
+                        response.addTextOperandResponse(op, span(buf, valueStart, valueEnd));
+                    }
+                    break;
+                }
+            }
+        } catch (ConfigIOException e) {
+            error(line, keyColumn, e.getMessage());
+        }
+    }
+
+    @Override
+    public void malformed(int line, int column, String message) {
+        error(line, column, message);
+    }
+
+
+    private void profileEntry(char[] buf, int nameStart, int nameEnd, int valueStart, int valueEnd,
+                              int line, int nameColumn, int valueColumn) {
+        for (int i = nameStart; i < nameEnd; i++) {
+            char c = buf[i];
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != '_') {
+                error(line, nameColumn + (i - nameStart), "Profile name may only hold letters, digits, '-' and '_'");
+                return;
+            }
+        }
+        if (nameStart == nameEnd) {
+            error(line, nameColumn, "Profile has no name");
+            return;
+        }
+
+        String name = span(buf, nameStart, nameEnd);
+        Integer first = profileLines.putIfAbsent(name, line);
+        if (first != null) {
+            error(line, nameColumn, "Repeated profile {" + name + "}, first set on line " + first);
+            return;
+        }
+        if (valueStart == valueEnd) {
+            error(line, valueColumn, "Profile {" + name + "} has no value");
+            return;
+        }
+
+        FanProfile profile = parseProfileValue(name, buf, valueStart, valueEnd, line, valueColumn, diagnostics);
+        if (profile != null) response.profiles.put(name, profile);
+    }
+
+    private void deviceEntry(char[] buf, int addressStart, int addressEnd, int valueStart, int valueEnd,
+                             int line, int addressColumn, int valueColumn) {
+        if (addressStart == addressEnd) {
+            error(line, addressColumn, "Device entry has no address");
+            return;
+        }
+        String device = FanProfile.deviceKey(span(buf, addressStart, addressEnd));
+        Integer first = deviceLines.putIfAbsent(device, line);
+        if (first != null) {
+            error(line, addressColumn, "Repeated device {" + device + "}, first set on line " + first);
+            return;
+        }
+        if (valueStart == valueEnd) {
+            error(line, valueColumn, "Device {" + device + "} names no profile");
+            return;
+        }
+
+        for (int i = valueStart; i < valueEnd; i++) {
+            if (buf[i] == ':') {
+                // The key ends at the first ':', so "device.00:1A:...: name" is cut inside the address
+                error(line, addressColumn, "Device address must be written without ':', as in device.001A7DDA7113");
+                return;
+            }
+        }
+
+        String profile = span(buf, valueStart, valueEnd);
+        response.deviceProfiles.put(device, profile);
+        deviceReferences.add(new DeviceReference(device, profile, line, valueColumn));
+    }
+
+    private Result finish() {
+        for (DeviceReference reference : deviceReferences) {
+            if (!response.profiles.containsKey(reference.profile())) {
+                response.deviceProfiles.remove(reference.device());
+                error(reference.line(), reference.column(),
+                        "Device {" + reference.device() + "} defaults to unknown profile {" + reference.profile() + "}");
+            }
+        }
+        diagnostics.sort(IN_FILE_ORDER);
+        return new Result(response, Collections.unmodifiableList(diagnostics));
+    }
+
+    /* Parses "constant=<speed>", "cpu=<min>-<max> gpu=<min>-<max> speed=<min>-<max> k=<constant>" or
+     * "cpuCurve=<temp>:<speed>,... gpuCurve=<temp>:<speed>,..." in place. Each setting is checked against
+     * the range of its operator. Returns null after reporting a problem */
+    private static FanProfile parseProfileValue(String name, char[] buf, int start, int end, int line, int column,
+                                                List<Diagnostic> out) {
+        int constant = -1;
+        int minCpu = -1, maxCpu = -1, minGpu = -1, maxGpu = -1, minSpeed = -1, maxSpeed = -1;
+        double k = Double.NaN;
+        FanCurve cpuCurve = null, gpuCurve = null;
+        boolean hasConstant = false, hasCpu = false, hasGpu = false, hasSpeed = false, hasK = false;
+
+        int pos = start;
+        while (pos < end) {
+            while (pos < end && (buf[pos] == ' ' || buf[pos] == '\t')) pos++;
+            if (pos == end) break;
+            int tokenStart = pos;
+            while (pos < end && buf[pos] != ' ' && buf[pos] != '\t') pos++;
+            int tokenEnd = pos;
+            int tokenColumn = column + (tokenStart - start);
+
+            int eq = tokenStart;
+            while (eq < tokenEnd && buf[eq] != '=') eq++;
+            if (eq == tokenStart || eq == tokenEnd) {
+                out.add(new Diagnostic(line, tokenColumn, "Profile {" + name + "} has malformed setting {"
+                        + span(buf, tokenStart, tokenEnd) + "}, expected <setting>=<value>"));
+                return null;
+            }
+            int argStart = eq + 1;
+            int argColumn = column + (argStart - start);
+
+            if (ConfigScanner.equals(buf, tokenStart, eq, "constant")) {
+                if (hasConstant) return repeated(name, "constant", line, tokenColumn, out);
+                hasConstant = true;
+                constant = bounded(name, "constant", Operators.MaxSpeed, buf, argStart, tokenEnd, line, argColumn, out);
+                if (constant < 0) return null;
+            } else if (ConfigScanner.equals(buf, tokenStart, eq, "k")) {
+                if (hasK) return repeated(name, "k", line, tokenColumn, out);
+                hasK = true;
+                k = ConfigScanner.parseDecimal(buf, argStart, tokenEnd);
+                if (Double.isNaN(k) || !Operators.CurveGrowthConstant.inRange(k)) {
+                    out.add(new Diagnostic(line, argColumn, "Profile {" + name + "} has k {" + span(buf, argStart, tokenEnd)
+                            + "} outside " + range(Operators.CurveGrowthConstant)));
+                    return null;
+                }
+            } else if (ConfigScanner.equals(buf, tokenStart, eq, "cpuCurve")) {
+                if (cpuCurve != null) return repeated(name, "cpuCurve", line, tokenColumn, out);
+                cpuCurve = parseCurve(name, "cpuCurve", buf, argStart, tokenEnd, line, argColumn, out);
+                if (cpuCurve == null) return null;
+            } else if (ConfigScanner.equals(buf, tokenStart, eq, "gpuCurve")) {
+                if (gpuCurve != null) return repeated(name, "gpuCurve", line, tokenColumn, out);
+                gpuCurve = parseCurve(name, "gpuCurve", buf, argStart, tokenEnd, line, argColumn, out);
+                if (gpuCurve == null) return null;
+            } else {
+                Operators op;
+                String setting;
+                if (ConfigScanner.equals(buf, tokenStart, eq, "cpu")) {
+                    if (hasCpu) return repeated(name, "cpu", line, tokenColumn, out);
+                    hasCpu = true;
+                    op = Operators.MinCpu;
+                    setting = "cpu";
+                } else if (ConfigScanner.equals(buf, tokenStart, eq, "gpu")) {
+                    if (hasGpu) return repeated(name, "gpu", line, tokenColumn, out);
+                    hasGpu = true;
+                    op = Operators.MinGpu;
+                    setting = "gpu";
+                } else if (ConfigScanner.equals(buf, tokenStart, eq, "speed")) {
+                    if (hasSpeed) return repeated(name, "speed", line, tokenColumn, out);
+                    hasSpeed = true;
+                    op = Operators.MinSpeed;
+                    setting = "speed";
+                } else {
+                    out.add(new Diagnostic(line, tokenColumn, "Profile {" + name + "} has unknown setting {"
+                            + span(buf, tokenStart, eq) + "}"));
+                    return null;
+                }
+
+                // <min>-<max>; the search starts past the first char so a sign is not taken for the dash
+                int dash = argStart + 1;
+                while (dash < tokenEnd && buf[dash] != '-') dash++;
+                if (dash >= tokenEnd) {
+                    out.add(new Diagnostic(line, argColumn, "Profile {" + name + "} setting " + setting
+                            + " expects <min>-<max>, found {" + span(buf, argStart, tokenEnd) + "}"));
+                    return null;
+                }
+                int low = bounded(name, setting, op, buf, argStart, dash, line, argColumn, out);
+                if (low < 0) return null;
+                int high = bounded(name, setting, op, buf, dash + 1, tokenEnd, line, column + (dash + 1 - start), out);
+                if (high < 0) return null;
+                if (low >= high) {
+                    out.add(new Diagnostic(line, argColumn, "Profile {" + name + "} has " + setting
+                            + " minimum {" + low + "} not below its maximum {" + high + "}"));
+                    return null;
+                }
+                switch (setting) {
+                    case "cpu": minCpu = low; maxCpu = high; break;
+                    case "gpu": minGpu = low; maxGpu = high; break;
+                    default: minSpeed = low; maxSpeed = high; break;
+                }
+            }
+        }
+
+        try {
+            if (cpuCurve != null || gpuCurve != null) {
+                if (hasConstant || hasCpu || hasGpu || hasSpeed || hasK) {
+                    out.add(new Diagnostic(line, column, "Profile {" + name + "} mixes cpuCurve/gpuCurve with other settings"));
+                    return null;
+                }
+                return FanProfile.points(name, cpuCurve, gpuCurve);
+            }
+            if (hasConstant) {
+                if (hasCpu || hasGpu || hasSpeed || hasK) {
+                    out.add(new Diagnostic(line, column, "Profile {" + name + "} mixes constant with curve settings"));
+                    return null;
+                }
+                return FanProfile.constant(name, constant);
+            }
+            if (!hasCpu || !hasGpu || !hasSpeed || !hasK) {
+                out.add(new Diagnostic(line, column, "Profile {" + name
+                        + "} needs either constant=, all of cpu=, gpu=, speed= and k=, or cpuCurve= and/or gpuCurve="));
+                return null;
+            }
+            return FanProfile.curve(name, minCpu, maxCpu, minGpu, maxGpu, minSpeed, maxSpeed, k);
+        } catch (ConfigIOException e) {
+            out.add(new Diagnostic(line, column, e.getMessage()));
+            return null;
+        }
+    }
+
+    // An integer setting within the range of op, or -1 after reporting why not
+    private static int bounded(String name, String setting, Operators op, char[] buf, int start, int end,
+                               int line, int column, List<Diagnostic> out) {
+        long value = ConfigScanner.parseInt(buf, start, end);
+        if (value == ConfigScanner.INVALID_INT || !op.inRange(value)) {
+            out.add(new Diagnostic(line, column, "Profile {" + name + "} has " + setting + " {" + span(buf, start, end)
+                    + "} outside " + range(op)));
+            return -1;
+        }
+        return (int) value;
+    }
+
+    // <temp>:<speed>,... with temperatures in the MinCpu range rising point to point, speeds in the
+    // MinSpeed range. Null after reporting the first bad point at its own column
+    private static FanCurve parseCurve(String name, String setting, char[] buf, int start, int end,
+                                       int line, int column, List<Diagnostic> out) {
+        int[] temps = new int[FanCurve.MAX_POINTS];
+        int[] speeds = new int[FanCurve.MAX_POINTS];
+        int count = 0;
+        int pos = start;
+        while (true) {
+            int pointStart = pos;
+            int pointColumn = column + (pointStart - start);
+            while (pos < end && buf[pos] != ',') pos++;
+            int pointEnd = pos;
+
+            int colon = pointStart;
+            while (colon < pointEnd && buf[colon] != ':') colon++;
+            if (colon == pointStart || colon >= pointEnd - 1) {
+                out.add(new Diagnostic(line, pointColumn, "Profile {" + name + "} setting " + setting
+                        + " expects <temp>:<speed>, found {" + span(buf, pointStart, pointEnd) + "}"));
+                return null;
+            }
+            if (count == FanCurve.MAX_POINTS) {
+                out.add(new Diagnostic(line, pointColumn, "Profile {" + name + "} has more than " + FanCurve.MAX_POINTS
+                        + " points in " + setting));
+                return null;
+            }
+            int temp = bounded(name, setting + " temperature", Operators.MinCpu, buf, pointStart, colon, line, pointColumn, out);
+            if (temp < 0) return null;
+            if (count > 0 && temp <= temps[count - 1]) {
+                out.add(new Diagnostic(line, pointColumn, "Profile {" + name + "} has " + setting + " temperature {"
+                        + temp + "} not above the one before, {" + temps[count - 1] + "}"));
+                return null;
+            }
+            int speed = bounded(name, setting + " speed", Operators.MinSpeed, buf, colon + 1, pointEnd, line,
+                    column + (colon + 1 - start), out);
+            if (speed < 0) return null;
+            temps[count] = temp;
+            speeds[count] = speed;
+            count++;
+
+            if (pos == end) break;
+            pos++; // Past the ','
+        }
+        if (count < FanCurve.MIN_POINTS) {
+            out.add(new Diagnostic(line, column, "Profile {" + name + "} needs at least " + FanCurve.MIN_POINTS
+                    + " points in " + setting));
+            return null;
+        }
+        return new FanCurve(Arrays.copyOf(temps, count), Arrays.copyOf(speeds, count));
+    }
+
+    private static FanProfile repeated(String name, String setting, int line, int column, List<Diagnostic> out) {
+        out.add(new Diagnostic(line, column, "Profile {" + name + "} sets " + setting + " twice"));
+        return null;
+    }
+
+    private static String range(Operators op) {
+        if (op.getType() == FanProfileConfigIO.ValueType.DECIMAL) return op.getMin() + "-" + op.getMax();
+        return (long) op.getMin() + "-" + (long) op.getMax();
+    }
+
+    private static String span(char[] buf, int start, int end) {
+        return new String(buf, start, end - start);
+    }
+
+    private void error(int line, int column, String message) {
+        diagnostics.add(new Diagnostic(line, column, message));
+    }
+}
@@ -0,0 +1,171 @@
+package com.heatsync.service.configIO;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+
+/*
+ * Single pass scanner of the {op : value} file format.
+ *
+ * The whole file is read into one char buffer, then walked once. Each entry is handed over as
+ * spans of that buffer (start inclusive, end exclusive) with its line and the columns of key and
+ * value, so the layer above validates while reading and allocates only what it keeps. Lines and
+ * columns count from 1; a column counts chars, a tab as one.
+ *
+ * Format, per line:
+ *     '#' and everything to the right of it is a comment
+ *     blank lines are skipped
+ *     <key> ':' <value>, both trimmed of spaces and tabs; the value may be empty
+ */
+public final class ConfigScanner {
+
+    /* Receives the entries of a file, in file order */
+    public interface Handler {
+        void entry(char[] buf, int keyStart, int keyEnd, int valueStart, int valueEnd, int line, int keyColumn, int valueColumn);
+
+        /* A non blank line with no ':' */
+        void malformed(int line, int column, String message);
+    }
+
+    public static final long INVALID_INT = Long.MIN_VALUE;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    // Hide constructor
+    private ConfigScanner() {}
+
+
+    /* Reads the whole reader, then scans it */
+    public static void scan(Reader reader, Handler handler) throws IOException {
+        char[] buf = new char[8192];
+        int length = 0, read;
+        while ((read = reader.read(buf, length, buf.length - length)) >= 0) {
+            length += read;
+            if (length == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        scan(buf, length, handler);
+    }
+
+    public static void scan(char[] buf, int length, Handler handler) {
+        int line = 1;
+        int pos = 0;
+        while (pos < length) {
+            int lineStart = pos;
+            int lineEnd = pos;
+            while (lineEnd < length && buf[lineEnd] != '\n') lineEnd++;
+            pos = lineEnd + 1;
+
+            // Content ends at a comment, then drop a \r and trailing blanks
+            int end = lineStart;
+            while (end < lineEnd && buf[end] != '#') end++;
+            end = trimEnd(buf, lineStart, end);
+
+            int keyStart = skipBlanks(buf, lineStart, end);
+            if (keyStart < end) {
+                int colon = keyStart;
+                while (colon < end && buf[colon] != ':') colon++;
+                if (colon == end) {
+                    handler.malformed(line, keyStart - lineStart + 1, "No ':' between key and value");
+                } else {
+                    int keyEnd = trimEnd(buf, keyStart, colon);
+                    int valueStart = skipBlanks(buf, colon + 1, end);
+                    handler.entry(buf, keyStart, keyEnd, valueStart, end, line,
+                            keyStart - lineStart + 1, valueStart - lineStart + 1);
+                }
+            }
+            line++;
+        }
+    }
+
+
+    /* Decimal integer of a span, optionally signed, of at most 9 digits. INVALID_INT if it is not one */
+    public static long parseInt(char[] buf, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buf[i] == '-' || buf[i] == '+')) negative = buf[i++] == '-';
+        if (i == end || end - i > 9) return INVALID_INT;
+
+        long value = 0;
+        for (; i < end; i++) {
+            char c = buf[i];
+            if (c < '0' || c > '9') return INVALID_INT;
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /* Decimal number of a span such as 1, 1.5 or -0.25. NaN if it is not one
+     *
+     * Up to 15 significant digits the value is exact: both the digits and the power of ten are exact
+     * doubles, so their quotient is rounded once, as Double.parseDouble rounds. Longer numbers and
+     * exponents go through Double.parseDouble.
+     */
+    public static double parseDecimal(char[] buf, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buf[i] == '-' || buf[i] == '+')) negative = buf[i++] == '-';
+
+        long digits = 0;
+        int count = 0, fraction = -1;
+        for (; i < end; i++) {
+            char c = buf[i];
+            if (c >= '0' && c <= '9') {
+                digits = digits * 10 + (c - '0');
+                count++;
+                if (fraction >= 0) fraction++;
+            } else if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else {
+                return parseDecimalSlow(buf, start, end);
+            }
+        }
+        if (count == 0 || fraction == 0) return Double.NaN;
+        if (count > 15) return parseDecimalSlow(buf, start, end);
+
+        double value = fraction > 0 ? digits / POWERS_OF_TEN[fraction] : digits;
+        return negative ? -value : value;
+    }
+
+    public static boolean equals(char[] buf, int start, int end, String s) {
+        if (end - start != s.length()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (buf[start + i] != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    public static boolean startsWith(char[] buf, int start, int end, String prefix) {
+        return end - start >= prefix.length() && equals(buf, start, start + prefix.length(), prefix);
+    }
+
+
+    private static double parseDecimalSlow(char[] buf, int start, int end) {
+        // Plain decimal and exponent notation only; Double.parseDouble would also take NaN, hex and 1d
+        for (int i = start; i < end; i++) {
+            char c = buf[i];
+            if (!(c >= '0' && c <= '9') && c != '.' && c != '-' && c != '+' && c != 'e' && c != 'E') return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(new String(buf, start, end - start));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static int skipBlanks(char[] buf, int start, int end) {
+        while (start < end && isBlank(buf[start])) start++;
+        return start;
+    }
+
+    private static int trimEnd(char[] buf, int start, int end) {
+        while (end > start && isBlank(buf[end - 1])) end--;
+        return end;
+    }
+
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\f';
+    }
+}
@@ -0,0 +1,140 @@
+package com.heatsync.service.configIO;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import com.heatsync.util.PairedList;
+
+
+/*
+ * Writes the config file on a background thread.
+ *
+ * Callers hand over where to take the config from and return at once. The first request of a burst
+ * starts a debounce window; requests during the window join it, and the config is taken when the window
+ * ends, so only the latest state is written. Writes go through ConfigFileIO.writeSettingsFile, so each one is atomic.
+ *
+ * Pending changes are written by a shutdown hook when the program exits.
+ */
+public class ConfigWriter {
+    public static final long DEFAULT_DEBOUNCE_MS = 250L;
+
+    private final Path file;
+    private final long debounceMs;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicReference<Supplier<PairedList<String, String>>> pending = new AtomicReference<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final AtomicLong requests = new AtomicLong();
+
+    // SHA-256 of the content last written here, to tell own writes from outside edits. Timestamps
+    // can not: an edit within the file system's time resolution that keeps the size looks the same
+    private volatile byte[] lastWrittenHash = null;
+
+    // Guarded by this: writes are serialised so an older snapshot never lands after a newer one
+    private long writes = 0, failures = 0;
+    private long lastWriteMicros = 0, maxWriteMicros = 0, totalWriteMicros = 0;
+
+
+    public ConfigWriter(Path file) {
+        this(file, Long.getLong("heatsync.config.debounceMs", DEFAULT_DEBOUNCE_MS));
+    }
+
+    public ConfigWriter(Path file, long debounceMs) {
+        this.file = file;
+        this.debounceMs = Math.max(0L, debounceMs);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "heatsync-config-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "heatsync-config-flush"));
+    }
+
+
+    /* Queues a write of the config the source returns. Never blocks on the disk */
+    public void submit(Supplier<PairedList<String, String>> snapshot) {
+        requests.incrementAndGet();
+        pending.set(snapshot);
+        if (scheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::writeScheduled, debounceMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /* Writes the pending snapshot, if any, on the calling thread */
+    public synchronized void flush() {
+        Supplier<PairedList<String, String>> snapshot = pending.getAndSet(null);
+        if (snapshot == null) return;
+
+        long start = System.nanoTime();
+        try {
+            byte[] content = ConfigFileIO.settingsContent(snapshot.get());
+            ConfigFileIO.writeContent(file.toFile(), content);
+            long micros = (System.nanoTime() - start) / 1000L;
+            writes++;
+            lastWriteMicros = micros;
+            maxWriteMicros = Math.max(maxWriteMicros, micros);
+            totalWriteMicros += micros;
+            lastWrittenHash = sha256(content);
+        } catch (IOException e) {
+            failures++;
+            System.err.println("Warning: Can not write config file " + file + ": " + e.getMessage());
+        }
+    }
+
+    /* True while the file on disk holds what this writer last wrote */
+    public boolean isLastWritten() {
+        byte[] written = lastWrittenHash;
+        if (written == null) return false;
+        try {
+            return MessageDigest.isEqual(written, sha256(Files.readAllBytes(file)));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static byte[] sha256(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeScheduled() {
+        // Cleared first: a snapshot submitted from here on opens a new window
+        scheduled.set(false);
+        flush();
+    }
+
+
+    public long getRequests() { return requests.get(); }
+    public synchronized long getWrites() { return writes; }
+    public synchronized long getFailures() { return failures; }
+    public synchronized long getLastWriteMicros() { return lastWriteMicros; }
+    public synchronized long getMaxWriteMicros() { return maxWriteMicros; }
+
+    /* Requests that joined a pending write instead of causing their own */
+    public synchronized long getCoalesced() {
+        return Math.max(0L, requests.get() - writes - failures - (pending.get() != null ? 1 : 0));
+    }
+
+    public synchronized double getMeanWriteMicros() {
+        return writes == 0 ? 0.0 : (double) totalWriteMicros / writes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("requests=%d writes=%d coalesced=%d failures=%d write us last=%d mean=%.0f max=%d",
+                requests.get(), writes, getCoalesced(), failures, lastWriteMicros, getMeanWriteMicros(), maxWriteMicros);
+    }
+}
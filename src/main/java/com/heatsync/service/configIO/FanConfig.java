@@ -0,0 +1,133 @@
+package com.heatsync.service.configIO;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.heatsync.service.configIO.FanProfileConfigIO.Operators;
+import com.heatsync.service.configIO.FanProfileConfigIO.Response;
+import com.heatsync.util.PairedList;
+
+
+/*
+ * One published version of the configuration.
+ *
+ * Immutable: a change builds a new record, and FanProfileIOService publishes it with a version one
+ * above the record it replaced. Readers take one record and read all the fields they need from it, so
+ * they never mix values of two versions. Derived data (an encoded profile frame, a compiled curve)
+ * can be cached against the version.
+ */
+public record FanConfig(long version, int maxCpu, int minCpu, int maxGpu, int minGpu, int maxSpeed, int minSpeed,
+                        double curveGrowthConstant, String macAddress,
+                        Map<String, FanProfile> profiles, Map<String, String> deviceProfiles) {
+
+    public FanConfig {
+        profiles = Collections.unmodifiableMap(new LinkedHashMap<>(profiles));
+        deviceProfiles = Collections.unmodifiableMap(new LinkedHashMap<>(deviceProfiles));
+    }
+
+    /* Builds a record from a parsed response. Every field of the response must be set */
+    static FanConfig of(Response res, long version) {
+        return new FanConfig(version, res.maxCpu, res.minCpu, res.maxGpu, res.minGpu, res.maxSpeed, res.minSpeed,
+                res.curveGrowthConstant, res.macAddress, res.profiles, res.deviceProfiles);
+    }
+
+    public FanConfig withProfile(int maxCpu, int minCpu, int maxGpu, int minGpu, int maxSpeed, int minSpeed, double curveGrowthConstant) {
+        return new FanConfig(version, maxCpu, minCpu, maxGpu, minGpu, maxSpeed, minSpeed, curveGrowthConstant, macAddress,
+                profiles, deviceProfiles);
+    }
+
+    public FanConfig withMacAddress(String macAddress) {
+        return new FanConfig(version, maxCpu, minCpu, maxGpu, minGpu, maxSpeed, minSpeed, curveGrowthConstant, macAddress,
+                profiles, deviceProfiles);
+    }
+
+    /* Adds the named profile, or replaces the one of the same name */
+    public FanConfig withNamedProfile(FanProfile profile) {
+        Map<String, FanProfile> changed = new LinkedHashMap<>(profiles);
+        changed.put(profile.name(), profile);
+        return new FanConfig(version, maxCpu, minCpu, maxGpu, minGpu, maxSpeed, minSpeed, curveGrowthConstant, macAddress,
+                changed, deviceProfiles);
+    }
+
+    /* Removes the named profile and the device defaults that pointed at it */
+    public FanConfig withoutNamedProfile(String name) {
+        Map<String, FanProfile> changed = new LinkedHashMap<>(profiles);
+        changed.remove(name);
+        Map<String, String> devices = new LinkedHashMap<>(deviceProfiles);
+        devices.values().removeIf(name::equals);
+        return new FanConfig(version, maxCpu, minCpu, maxGpu, minGpu, maxSpeed, minSpeed, curveGrowthConstant, macAddress,
+                changed, devices);
+    }
+
+    /* Sets the profile a device starts with, or clears it when name is null */
+    public FanConfig withDeviceProfile(String address, String name) {
+        Map<String, String> devices = new LinkedHashMap<>(deviceProfiles);
+        if (name == null) devices.remove(FanProfile.deviceKey(address));
+        else devices.put(FanProfile.deviceKey(address), name);
+        return new FanConfig(version, maxCpu, minCpu, maxGpu, minGpu, maxSpeed, minSpeed, curveGrowthConstant, macAddress,
+                profiles, devices);
+    }
+
+    FanConfig withVersion(long version) {
+        return new FanConfig(version, maxCpu, minCpu, maxGpu, minGpu, maxSpeed, minSpeed, curveGrowthConstant, macAddress,
+                profiles, deviceProfiles);
+    }
+
+    /* The default profile of a device, or null if it has none */
+    public FanProfile profileForDevice(String address) {
+        String name = address == null ? null : deviceProfiles.get(FanProfile.deviceKey(address));
+        return name == null ? null : profiles.get(name);
+    }
+
+    /* Same fan profile, whatever the version and device */
+    public boolean sameProfile(FanConfig other) {
+        return other != null && maxCpu == other.maxCpu && minCpu == other.minCpu && maxGpu == other.maxGpu
+                && minGpu == other.minGpu && maxSpeed == other.maxSpeed && minSpeed == other.minSpeed
+                && curveGrowthConstant == other.curveGrowthConstant;
+    }
+
+    /* Same values, whatever the version */
+    public boolean sameValues(FanConfig other) {
+        return sameProfile(other) && Objects.equals(macAddress, other.macAddress)
+                && profiles.equals(other.profiles) && deviceProfiles.equals(other.deviceProfiles);
+    }
+
+    /* The {op : value} pairs written to the config file: operators in order, then profiles and device defaults */
+    public PairedList<String, String> toPairs() {
+        List<String> opList = new ArrayList<>();
+        List<String> valList = new ArrayList<>();
+
+        for (Operators op : Operators.values()) {
+            opList.add(op.toString());
+            valList.add(getValueAsString(op));
+        }
+        for (FanProfile profile : profiles.values()) {
+            opList.add(FanProfile.PROFILE_PREFIX + profile.name());
+            valList.add(profile.format());
+        }
+        for (Map.Entry<String, String> device : deviceProfiles.entrySet()) {
+            opList.add(FanProfile.DEVICE_PREFIX + device.getKey());
+            valList.add(device.getValue());
+        }
+
+        return new PairedList<>(opList, valList);
+    }
+
+    private String getValueAsString(Operators op) {
+        switch (op) {
+            case MaxCpu: return Integer.toString(maxCpu);
+            case MinCpu: return Integer.toString(minCpu);
+            case MaxGpu: return Integer.toString(maxGpu);
+            case MinGpu: return Integer.toString(minGpu);
+            case MaxSpeed: return Integer.toString(maxSpeed);
+            case MinSpeed: return Integer.toString(minSpeed);
+            case CurveGrowthConstant: return Double.toString(curveGrowthConstant);
+            case MacAddress: return macAddress;
+            default: return "ILLEGAL CAST EXECUTED";
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.heatsync.service.configIO;
+
+/*
+ * Notified when FanProfileIOService publishes a new configuration.
+ *
+ * Called on the thread that made the change. Two changes made at the same time may be reported in
+ * either order; compare versions to keep only the newest.
+ */
+@FunctionalInterface
+public interface FanConfigListener {
+    void onConfigChanged(FanConfig previous, FanConfig current);
+}
@@ -0,0 +1,114 @@
+package com.heatsync.service.configIO;
+
+import java.util.Arrays;
+
+import com.heatsync.service.configIO.FanProfileConfigIO.Operators;
+
+
+/*
+ * Fan speed against the temperature of one channel, as points joined by straight lines.
+ *
+ * Written "<temp>:<speed>,<temp>:<speed>,..." in the cpuCurve= and gpuCurve= settings of a profile,
+ * e.g. cpuCurve=40:0,60:30,75:70,85:100. Temperatures must rise from point to point; below the first
+ * point the speed is that of the first point, above the last that of the last. Temperatures and
+ * speeds have the ranges of the matching operators.
+ */
+public record FanCurve(int[] temps, int[] speeds) {
+
+    public static final int MIN_POINTS = 2;
+    public static final int MAX_POINTS = 16;
+
+    public FanCurve {
+        temps = temps.clone();
+        speeds = speeds.clone();
+    }
+
+    public static FanCurve of(int[] temps, int[] speeds) throws ConfigIOException {
+        if (temps.length != speeds.length) {
+            throw new ConfigIOException("Curve has " + temps.length + " temperatures for " + speeds.length + " speeds");
+        }
+        if (temps.length < MIN_POINTS || temps.length > MAX_POINTS) {
+            throw new ConfigIOException("Curve has " + temps.length + " points, expected " + MIN_POINTS + " to " + MAX_POINTS);
+        }
+        for (int i = 0; i < temps.length; i++) {
+            if (!Operators.MinCpu.inRange(temps[i])) {
+                throw new ConfigIOException("Curve temperature {" + temps[i] + "} outside "
+                        + (int) Operators.MinCpu.getMin() + "-" + (int) Operators.MinCpu.getMax());
+            }
+            if (!Operators.MinSpeed.inRange(speeds[i])) {
+                throw new ConfigIOException("Curve speed {" + speeds[i] + "} outside "
+                        + (int) Operators.MinSpeed.getMin() + "-" + (int) Operators.MinSpeed.getMax());
+            }
+            if (i > 0 && temps[i] <= temps[i - 1]) {
+                throw new ConfigIOException("Curve temperature {" + temps[i] + "} does not rise above {" + temps[i - 1] + "}");
+            }
+        }
+        return new FanCurve(temps, speeds);
+    }
+
+    public int size() { return temps.length; }
+    public int temp(int i) { return temps[i]; }
+    public int speed(int i) { return speeds[i]; }
+
+    /* Speed in percent at a temperature, interpolated between the points around it */
+    public double speedAt(double temp) {
+        if (temp <= temps[0]) return speeds[0];
+        int last = temps.length - 1;
+        if (temp >= temps[last]) return speeds[last];
+
+        int i = 1;
+        while (temps[i] < temp) i++;
+        double fraction = (temp - temps[i - 1]) / (temps[i] - temps[i - 1]);
+        return speeds[i - 1] + fraction * (speeds[i] - speeds[i - 1]);
+    }
+
+    /* The value of a cpuCurve= or gpuCurve= setting */
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < temps.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(temps[i]).append(':').append(speeds[i]);
+        }
+        return sb.toString();
+    }
+
+    /* Parses a curve as written in the settings, for editors; the config file goes through ConfigParser
+     *
+     * @exceptions:
+     * If the text is malformed or a point out of range, fails with ConfigIOException
+     */
+    public static FanCurve parse(String text) throws ConfigIOException {
+        if (text == null || text.isBlank()) throw new ConfigIOException("Curve has no points");
+        String[] points = text.trim().split("\\s*,\\s*");
+        int[] temps = new int[points.length];
+        int[] speeds = new int[points.length];
+        for (int i = 0; i < points.length; i++) {
+            int colon = points[i].indexOf(':');
+            if (colon < 0) throw new ConfigIOException("Curve point {" + points[i] + "} is not <temp>:<speed>");
+            try {
+                temps[i] = Integer.parseInt(points[i].substring(0, colon).trim());
+                speeds[i] = Integer.parseInt(points[i].substring(colon + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new ConfigIOException("Curve point {" + points[i] + "} is not <temp>:<speed>");
+            }
+        }
+        return of(temps, speeds);
+    }
+
+    // Arrays compare by content, so equal curves make equal profiles and configs
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof FanCurve other && Arrays.equals(temps, other.temps) && Arrays.equals(speeds, other.speeds);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(temps) + Arrays.hashCode(speeds);
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+}
@@ -0,0 +1,109 @@
+package com.heatsync.service.configIO;
+
+
+/*
+ * A profile compiled into one fan speed lookup table per channel.
+ *
+ * Entry i holds the speed in percent (0-100) at MIN_TEMP + i / STEPS_PER_DEGREE degrees, from 30.0
+ * to 100.0 °C in half degree steps: 141 entries, one byte each. Every kind of profile compiles to
+ * the same shape, so a speed is two array reads whatever the profile:
+ *     constant   every entry holds the constant speed
+ *     curve      minSpeed + pow(fraction, k) * (maxSpeed - minSpeed), fraction of the way from the
+ *                channel's min to max temperature, as the firmware computes it per frame
+ *     points     the channel's FanCurve; a channel without one holds 0
+ * The fan runs at the higher of the two channels. Below 30 °C the first entry applies, above
+ * 100 °C the last.
+ *
+ * The same tables are uploaded to the device (see FanProtocol), which then looks the speed up
+ * instead of computing the curve.
+ */
+public final class FanCurveTable {
+
+    public static final int MIN_TEMP = 30;
+    public static final int MAX_TEMP = 100;
+    public static final int STEPS_PER_DEGREE = 2;
+    public static final int SIZE = (MAX_TEMP - MIN_TEMP) * STEPS_PER_DEGREE + 1;
+
+    private final byte[] cpu;
+    private final byte[] gpu;
+
+    private FanCurveTable(byte[] cpu, byte[] gpu) {
+        this.cpu = cpu;
+        this.gpu = gpu;
+    }
+
+
+    public static FanCurveTable compile(FanProfile profile) {
+        byte[] cpu = new byte[SIZE];
+        byte[] gpu = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            double temp = temperature(i);
+            if (profile.isConstant()) {
+                cpu[i] = (byte) profile.constantSpeed();
+                gpu[i] = (byte) profile.constantSpeed();
+            } else if (profile.isPoints()) {
+                cpu[i] = percent(profile.cpuCurve() == null ? 0 : profile.cpuCurve().speedAt(temp));
+                gpu[i] = percent(profile.gpuCurve() == null ? 0 : profile.gpuCurve().speedAt(temp));
+            } else {
+                cpu[i] = percent(powSpeed(temp, profile.minCpu(), profile.maxCpu(), profile));
+                gpu[i] = percent(powSpeed(temp, profile.minGpu(), profile.maxGpu(), profile));
+            }
+        }
+        return new FanCurveTable(cpu, gpu);
+    }
+
+    /* The saved curve of a config, compiled. The config was validated when published */
+    public static FanCurveTable compile(FanConfig config) {
+        return compile(new FanProfile("curve", FanProfile.NOT_CONSTANT, config.minCpu(), config.maxCpu(), config.minGpu(),
+                config.maxGpu(), config.minSpeed(), config.maxSpeed(), config.curveGrowthConstant(), null, null));
+    }
+
+    /* Speed in percent of a curve profile's channel, computed as the firmware does */
+    public static double powSpeed(double temp, int minTemp, int maxTemp, FanProfile profile) {
+        if (temp <= minTemp) return profile.minSpeed();
+        if (temp >= maxTemp) return profile.maxSpeed();
+        double fraction = (temp - minTemp) / (maxTemp - minTemp);
+        return profile.minSpeed() + Math.pow(fraction, profile.curveGrowthConstant()) * (profile.maxSpeed() - profile.minSpeed());
+    }
+
+    /* Temperature of entry i, in °C */
+    public static double temperature(int index) {
+        return MIN_TEMP + (double) index / STEPS_PER_DEGREE;
+    }
+
+    /* Index of the entry at or below a temperature, clamped to the table */
+    public static int index(double temp) {
+        if (!(temp > MIN_TEMP)) return 0; // Also NaN
+        int index = (int) ((temp - MIN_TEMP) * STEPS_PER_DEGREE);
+        return Math.min(index, SIZE - 1);
+    }
+
+    /* Fan speed in percent: the higher of both channels at the entries at or below their temperatures */
+    public int speedAt(double cpuTemp, double gpuTemp) {
+        return Math.max(cpu[index(cpuTemp)], gpu[index(gpuTemp)]);
+    }
+
+    /* As speedAt, interpolated between the entries around each temperature */
+    public double interpolatedSpeedAt(double cpuTemp, double gpuTemp) {
+        return Math.max(interpolate(cpu, cpuTemp), interpolate(gpu, gpuTemp));
+    }
+
+    public int cpuSpeed(int index) { return cpu[index]; }
+    public int gpuSpeed(int index) { return gpu[index]; }
+
+    /* Copies of the tables, as sent to the device */
+    public byte[] cpuTable() { return cpu.clone(); }
+    public byte[] gpuTable() { return gpu.clone(); }
+
+
+    private static double interpolate(byte[] table, double temp) {
+        int index = index(temp);
+        if (index == SIZE - 1 || !(temp > MIN_TEMP)) return table[index];
+        double fraction = (temp - temperature(index)) * STEPS_PER_DEGREE;
+        return table[index] + fraction * (table[index + 1] - table[index]);
+    }
+
+    private static byte percent(double speed) {
+        return (byte) Math.max(0, Math.min(100, Math.round(speed)));
+    }
+}
@@ -0,0 +1,127 @@
+package com.heatsync.service.configIO;
+
+import java.util.Locale;
+
+import com.heatsync.service.configIO.FanProfileConfigIO.Operators;
+
+
+/*
+ * A named fan profile of the profile store.
+ *
+ * Stored in the config file as "profile.<name>: <value>", where value is either
+ *     constant=<speed>
+ * or
+ *     cpu=<min>-<max> gpu=<min>-<max> speed=<min>-<max> k=<growth constant>
+ * with the ranges of the matching operators (see FanProfileConfigIO.Operators), or
+ *     cpuCurve=<temp>:<speed>,... gpuCurve=<temp>:<speed>,...
+ * with points as FanCurve reads them; either curve may be left out, its channel then asks for 0%.
+ * A device default
+ * is stored as "device.<address>: <profile name>", the address written without separators.
+ *
+ * Profiles are validated when parsed, so every stored profile can be sent as is.
+ */
+public record FanProfile(String name, int constantSpeed, int minCpu, int maxCpu, int minGpu, int maxGpu,
+                         int minSpeed, int maxSpeed, double curveGrowthConstant, FanCurve cpuCurve, FanCurve gpuCurve) {
+
+    public static final String PROFILE_PREFIX = "profile.";
+    public static final String DEVICE_PREFIX = "device.";
+    static final int NOT_CONSTANT = -1;
+
+    public static FanProfile constant(String name, int speed) throws ConfigIOException {
+        FanProfile profile = new FanProfile(name, speed, 0, 0, 0, 0, 0, 0, 0.0, null, null);
+        profile.validate();
+        return profile;
+    }
+
+    public static FanProfile curve(String name, int minCpu, int maxCpu, int minGpu, int maxGpu, int minSpeed, int maxSpeed,
+                                   double curveGrowthConstant) throws ConfigIOException {
+        FanProfile profile = new FanProfile(name, NOT_CONSTANT, minCpu, maxCpu, minGpu, maxGpu, minSpeed, maxSpeed,
+                curveGrowthConstant, null, null);
+        profile.validate();
+        return profile;
+    }
+
+    /* Either curve may be null, not both */
+    public static FanProfile points(String name, FanCurve cpuCurve, FanCurve gpuCurve) throws ConfigIOException {
+        if (cpuCurve == null && gpuCurve == null) {
+            throw new ConfigIOException("Profile {" + name + "} has neither a cpu nor a gpu curve");
+        }
+        FanProfile profile = new FanProfile(name, NOT_CONSTANT, 0, 0, 0, 0, 0, 0, 0.0, cpuCurve, gpuCurve);
+        profile.validate();
+        return profile;
+    }
+
+    public boolean isConstant() { return constantSpeed != NOT_CONSTANT; }
+    public boolean isPoints() { return cpuCurve != null || gpuCurve != null; }
+
+
+    /* Parses the value of a "profile.<name>" entry
+     *
+     * @exceptions:
+     * If the value is malformed or out of range, fails with ConfigIOException
+     */
+    public static FanProfile parse(String name, String value) throws ConfigIOException {
+        return ConfigParser.parseProfile(name, value);
+    }
+
+    /* The value of this profile's "profile.<name>" entry */
+    public String format() {
+        if (isConstant()) return "constant=" + constantSpeed;
+        if (isPoints()) {
+            if (gpuCurve == null) return "cpuCurve=" + cpuCurve.format();
+            if (cpuCurve == null) return "gpuCurve=" + gpuCurve.format();
+            return "cpuCurve=" + cpuCurve.format() + " gpuCurve=" + gpuCurve.format();
+        }
+        return "cpu=" + minCpu + "-" + maxCpu + " gpu=" + minGpu + "-" + maxGpu
+                + " speed=" + minSpeed + "-" + maxSpeed + " k=" + curveGrowthConstant;
+    }
+
+    /* Device addresses are keyed without separators and in upper case: 00:1A:7D:DA:71:13 -> 001A7DDA7113 */
+    public static String deviceKey(String address) {
+        return address == null ? null : address.replace(":", "").replace("-", "").toUpperCase(Locale.ROOT);
+    }
+
+    public static boolean isValidName(String name) {
+        if (name == null || name.isEmpty()) return false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != '_') return false;
+        }
+        return true;
+    }
+
+
+    private void validate() throws ConfigIOException {
+        if (!isValidName(name)) {
+            throw new ConfigIOException("Profile name {" + name + "} may only hold letters, digits, '-' and '_'");
+        }
+        if (isConstant()) {
+            requireRange("constant", constantSpeed, Operators.MaxSpeed);
+            return;
+        }
+        if (isPoints()) {
+            // The curves check their own points when built
+            return;
+        }
+        requireRange("cpu", minCpu, Operators.MinCpu);
+        requireRange("cpu", maxCpu, Operators.MaxCpu);
+        requireRange("gpu", minGpu, Operators.MinGpu);
+        requireRange("gpu", maxGpu, Operators.MaxGpu);
+        requireRange("speed", minSpeed, Operators.MinSpeed);
+        requireRange("speed", maxSpeed, Operators.MaxSpeed);
+        if (minCpu >= maxCpu || minGpu >= maxGpu || minSpeed >= maxSpeed) {
+            throw new ConfigIOException("Profile {" + name + "} has a minimum not below its maximum");
+        }
+        if (!Operators.CurveGrowthConstant.inRange(curveGrowthConstant)) {
+            throw new ConfigIOException("Profile {" + name + "} has k {" + curveGrowthConstant + "} outside "
+                    + Operators.CurveGrowthConstant.getMin() + "-" + Operators.CurveGrowthConstant.getMax());
+        }
+    }
+
+    private void requireRange(String setting, int value, Operators op) throws ConfigIOException {
+        if (!op.inRange(value)) {
+            throw new ConfigIOException("Profile {" + name + "} has " + setting + " {" + value + "} outside "
+                    + (int) op.getMin() + "-" + (int) op.getMax());
+        }
+    }
+}
@@ -1,13 +1,14 @@
 package com.heatsync.service.configIO;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import com.heatsync.util.ArrayFill;
@@ -18,20 +19,30 @@ public class FanProfileConfigIO {
 
 
 
+    /* Type of an operator's value. For TEXT the range bounds the length */
+    public enum ValueType { INTEGER, DECIMAL, TEXT }
+
+    /* The schema of the config file: key, value type, accepted range and default of each operator.
+     * The ranges are the ones the profile editor allows */
     public enum Operators {
         // The maximum value of code is associated with the size of many arrays
         // It must not be unecessarily a big integer for no reason
-        MaxCpu(0, "maxCpu"),
-        MinCpu(1, "minCpu"),
-        MaxGpu(2, "maxGpu"),
-        MinGpu(3, "minGpu"),
-        MaxSpeed(4, "maxSpeed"),
-        MinSpeed(5, "minSpeed"),
-        CurveGrowthConstant(6, "curveGrowthConstant"),
-        MacAddress(7, "macAddress");
+        MaxCpu(0, "maxCpu", ValueType.INTEGER, 30, 100, "85"),
+        MinCpu(1, "minCpu", ValueType.INTEGER, 30, 100, "30"),
+        MaxGpu(2, "maxGpu", ValueType.INTEGER, 30, 100, "65"),
+        MinGpu(3, "minGpu", ValueType.INTEGER, 30, 100, "30"),
+        MaxSpeed(4, "maxSpeed", ValueType.INTEGER, 0, 100, "100"),
+        MinSpeed(5, "minSpeed", ValueType.INTEGER, 0, 100, "0"),
+        CurveGrowthConstant(6, "curveGrowthConstant", ValueType.DECIMAL, 0.25, 2.0, "1"),
+        MacAddress(7, "macAddress", ValueType.TEXT, 1, 64, null);
     
         private final int code;
         private final String label;
+        private final ValueType type;
+        private final double min, max;
+        private final String defaultValue;
+
+        private static final Operators[] VALUES = values();
 
 
         static final Map<String, Operators> map = new HashMap<>(Map.ofEntries(
@@ -60,9 +71,13 @@ public class FanProfileConfigIO {
             return max;
         }
     
-        Operators(int code, String label) {
+        Operators(int code, String label, ValueType type, double min, double max, String defaultValue) {
             this.code = code;
             this.label = label;
+            this.type = type;
+            this.min = min;
+            this.max = max;
+            this.defaultValue = defaultValue;
         }
     
         public int getCode() {
@@ -72,10 +87,29 @@ public class FanProfileConfigIO {
         public String getLabel() {
             return label;
         }
+
+        public ValueType getType() { return type; }
+        public double getMin() { return min; }
+        public double getMax() { return max; }
+
+        /* The value used when the file has none; null if the operator may stay unset */
+        public String getDefaultValue() { return defaultValue; }
+
+        public boolean inRange(double value) {
+            return value >= min && value <= max;
+        }
     
         public static Operators getOperator(String s) {
             return map.get(s);
         }
+
+        /* The operator of a key span, without building a string */
+        public static Operators getOperator(char[] buf, int start, int end) {
+            for (Operators op : VALUES) {
+                if (ConfigScanner.equals(buf, start, end, op.label)) return op;
+            }
+            return null;
+        }
     
         @Override
         public String toString() {
@@ -89,6 +123,10 @@ public class FanProfileConfigIO {
         public Double curveGrowthConstant = null;
         public String macAddress = null;
 
+        // Named profiles of the profile store, and the default profile of each device, in file order
+        public final Map<String, FanProfile> profiles = new LinkedHashMap<>();
+        public final Map<String, String> deviceProfiles = new LinkedHashMap<>();
+
 
         // Table for checking if a operator was assigned
         protected boolean[] valuesNull = ArrayFill.createFilledArray(Operators.MAX_LIST_SIZE, true);
@@ -157,7 +195,6 @@ public class FanProfileConfigIO {
 
         public void setMacAddress(String s) { 
             valuesNull[Operators.MacAddress.getCode()] = false;
-            System.out.println("FOUND MAC ADDRESS: " + s);
             macAddress = s;
         }
 
@@ -243,6 +280,26 @@ public class FanProfileConfigIO {
             }
         }   
 
+        void addDecimalOperandResponse(Operators op, double val) throws ConfigIOException {
+            switch (op) {
+                case CurveGrowthConstant:
+                    setSpeedGrowthConstant(val);
+                    break;
+                default:
+                    throw new ConfigIOException("Not a decimal operator for: " + op.label + ". Attempt to set decimal values to it");
+            }
+        }
+
+        void addTextOperandResponse(Operators op, String val) throws ConfigIOException {
+            switch (op) {
+                case MacAddress:
+                    setMacAddress(val);
+                    break;
+                default:
+                    throw new ConfigIOException("Not a text operator for: " + op.label + ". Attempt to set text values to it");
+            }
+        }
+
         @Override
         public String toString() {
             StringBuilder sb = new StringBuilder();
@@ -262,86 +319,17 @@ public class FanProfileConfigIO {
 
 
 
-    public static Response readSettingsFile(FileReader fileReader) 
+    /* Reads and checks a config file against the operator schema, see ConfigParser
+     *
+     * @exceptions:
+     * If the read was not allowed for some reason, fails with IOException
+     * If any entry is invalid, fails with ConfigIOException listing every problem with its line and column
+     */
+    public static Response readSettingsFile(Reader reader) 
     throws IOException, ConfigIOException {
-        PairedList<String,String> lists = ConfigFileIO.readKeyValueAssociations(fileReader);
-        List<String> operators = lists.first;
-        List<String> values = lists.second;
-
-        StringBuilder errorTrace = new StringBuilder();
-        Response response = new Response();
-
-        for (int i = 0 ; i < operators.size(); i++) {
-            Operators op = Operators.getOperator(operators.get(i));
-            if (op == null) { 
-                errorTrace.append(
-                    "Operator does not match any of the expected operators: {" + operators.get(i) + "} for file line " 
-                    + i+1 + System.lineSeparator()
-                );
-                continue;
-            }
-
-            if (!response.isValueNull(op)) {
-                errorTrace.append(
-                    "Repeated operand {" + op.toString() + "} found on config value on line " + i+1 + System.lineSeparator()
-                );
-                continue;
-            }  
-
-            switch(op) {
-                // Integer operands
-                case MaxCpu:
-                case MinCpu:
-                case MaxGpu:
-                case MinGpu:
-                case MaxSpeed:
-                case MinSpeed:
-                    try {
-                        int val = Integer.parseInt(values.get(i));
-                        response.addIntegerOperandResponse(op, val);
-                        
-                    } catch (NumberFormatException e) {
-                        errorTrace.append(
-                            "Integer operator {" + op.label + "} has non integer argument {" + values.get(i) + "} for file line " +
-                            i+1 + System.lineSeparator()
-                        );
-                    }
-                    break;
-                
-                case CurveGrowthConstant:
-                    try {
-                        double val = Double.parseDouble(values.get(i));
-                        response.setSpeedGrowthConstant(val);
-                        
-                    } catch (NumberFormatException e) {
-                        errorTrace.append(
-                            "Double operator {" + op.label + "} has non double argument {" + values.get(i) + "} for file line " +
-                            i+1 + System.lineSeparator()
-                        );
-                    }
-                    break;
-
-                case MacAddress:
-                    String val = values.get(i);
-                    System.out.println("get value: " + val);
-                    if (val.isEmpty()) {
-                        errorTrace.append(
-                            "Mac address {" + op.label + "} has non valid length argument {" + val + "} for file line " +
-                            i+1 + System.lineSeparator()
-                        );
-                        System.out.println("INVALID MAC");
-                    } else {
-                        response.setMacAddress(val);
-                    }
-                    break;
-            }
-        }
-
-        String errorString = errorTrace.toString();
-        System.out.println(errorString);
-        if (!errorString.isEmpty()) throw new ConfigIOException(errorString);
-        
-        return response;
+        ConfigParser.Result result = ConfigParser.parse(reader);
+        if (!result.isValid()) throw new ConfigIOException(result.report());
+        return result.response();
     }
 
 
@@ -350,8 +338,6 @@ public class FanProfileConfigIO {
     }
 
     public static void writeConfig(File file, Response response) throws IOException {
-        Thread.dumpStack();
-
         ConfigFileIO.writeSettingsFile(file, response.toPairs());
     }
 }
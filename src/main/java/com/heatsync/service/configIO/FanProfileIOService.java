@@ -6,7 +6,12 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 
 import javax.imageio.IIOException;
 
@@ -18,34 +23,25 @@ import com.heatsync.util.PairedList;
 final class Defaults {
     static final String[] operatorDefaults = new String[Operators.MAX_LIST_SIZE];
     
+    // Taken from the operator schema
     static {
-        operatorDefaults[Operators.MaxCpu.getCode()] = "85";
-        operatorDefaults[Operators.MinCpu.getCode()] = "30";
-        operatorDefaults[Operators.MaxGpu.getCode()] = "65";
-        operatorDefaults[Operators.MinGpu.getCode()] = "30";
-        operatorDefaults[Operators.MaxSpeed.getCode()] = "100";
-        operatorDefaults[Operators.MinSpeed.getCode()] = "0";
-        operatorDefaults[Operators.CurveGrowthConstant.getCode()] = "1";
-        operatorDefaults[Operators.MacAddress.getCode()] = null;
-    }
-
-
-    final static PairedList<String, String> pairList = PairedList.asListPair(
-        Arrays.asList(
-            Operators.MaxCpu.getLabel(), 
-            Operators.MinCpu.getLabel(), 
-            Operators.MaxCpu.getLabel(), 
-            Operators.MinGpu.getLabel(), 
-            Operators.MaxSpeed.getLabel(), 
-            Operators.MinSpeed.getLabel(), 
-            Operators.CurveGrowthConstant.getLabel(), 
-            Operators.MacAddress.getLabel()
-        ), 
-        Arrays.asList(
-           getMaxCpu() , getMinCpu(), getMaxGpu(), getMinGpu(), getMaxSpeed(), 
-           getMinSpeed(), getCurveGrowthConstant(), getMacAddress()
-        )
-    );
+        for (Operators op : Operators.values()) {
+            operatorDefaults[op.getCode()] = op.getDefaultValue();
+        }
+    }
+
+
+    final static PairedList<String, String> pairList = createPairList();
+
+    private static PairedList<String, String> createPairList() {
+        List<String> labels = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (Operators op : Operators.values()) {
+            labels.add(op.getLabel());
+            values.add(op.getDefaultValue());
+        }
+        return PairedList.asListPair(labels, values);
+    }
 
     // Hide constructor
     private Defaults() {}
@@ -77,6 +73,12 @@ final class Defaults {
         if (res.macAddress == null) res.macAddress = Defaults.getMacAddress();
     }
 
+    /* The fan profile values have no empty default; the mac address may stay unset */
+    static boolean hasMissingProfileValue(Response res) {
+        return res.maxCpu == null || res.minCpu == null || res.maxGpu == null || res.minGpu == null
+                || res.maxSpeed == null || res.minSpeed == null || res.curveGrowthConstant == null;
+    }
+
     static Response getDefaultResponse() {
         Response res = new Response();
         setNullValuesAsDefault(res);
@@ -92,28 +94,43 @@ final public class FanProfileIOService {
 
     
     final static String workingDir = Paths.get("").toAbsolutePath().toString();
-    final static Path configFolderPath = Paths.get(workingDir, ".config");
+    // -Dheatsync.config.dir=<folder> keeps the config elsewhere, e.g. for tests
+    final static Path configFolderPath = configFolder(System.getProperty("heatsync.config.dir"));
     final static String configFileName = "profiles.txt";
     final static Path configFilePath = configFolderPath.resolve(configFileName);
 
     static boolean keepStateFlag = false;
     
 
-    static Response response = Defaults.getDefaultResponse();
+    // The published configuration. Replaced whole, never modified
+    static final AtomicReference<FanConfig> config = new AtomicReference<>(FanConfig.of(Defaults.getDefaultResponse(), 0L));
+
+    static final List<FanConfigListener> listeners = new CopyOnWriteArrayList<>();
+
+    static final ConfigWriter writer = new ConfigWriter(configFilePath);
+
+    // Told about changes read from outside edits of the config file, after they are published
+    static final List<FanConfigListener> reloadListeners = new CopyOnWriteArrayList<>();
+
+    static ConfigFileWatcher watcher = null;
+
+    // Outcome counts of reloads, for logs and checks
+    static final AtomicLong reloads = new AtomicLong(), rejectedReloads = new AtomicLong(), skippedReloads = new AtomicLong();
     
 
     // Hide constructor
     private FanProfileIOService() {}
 
 
+    static Path configFolder(String configDir) {
+        if (configDir == null || configDir.isBlank()) return Paths.get(workingDir, ".config");
+        return Paths.get(configDir).toAbsolutePath();
+    }
+
+
     
     public static void logValues() {
-        if (response == null) {
-            System.out.println("No Fan Profile Config Stored");
-            return;
-        }
-
-        System.out.println(response.toString());
+        System.out.println(config.get().toString());
     }
 
 
@@ -139,6 +156,8 @@ final public class FanProfileIOService {
         
         
         File file = configFilePath.toFile();
+        Response response = Defaults.getDefaultResponse();
+        boolean rewrite = false;
 
         try {
             if (!file.exists()) {
@@ -156,86 +175,218 @@ final public class FanProfileIOService {
         }
 
         
-        try {
-            
-            FileReader reader = new FileReader(file);
-            response = FanProfileConfigIO.readSettingsFile(reader);
-            reader.close();
+        try (FileReader reader = new FileReader(file)) {
+            ConfigParser.Result result = ConfigParser.parse(reader);
+            response = result.response();
+
+            // Invalid entries are left out of the response; the valid ones are kept
+            if (!result.isValid()) {
+                System.err.println("Invalid config file:" + System.lineSeparator() + result.report());
+                if (keepStateFlag == false) rewrite = true;
+            }
 
         } catch (IOException e) {
             System.err.println("Failed reading from config file. Using defaults");
             e.printStackTrace();
 
             response = Defaults.getDefaultResponse();
-            
-        } catch (ConfigIOException e) {
-            System.err.println("Invalid config file");
-
-            if (keepStateFlag == true) {
-                if (response.existsNullValue()) 
-                    throw new ConfigIOException("Error when reading config file: Empty value detected");
-            } else {
-                Defaults.setNullValuesAsDefault(response);
-    
-                try {
-                    //UPGRADE REUSE LOGIC HERE!!
-                    updateFile();
-                } catch (IOException io) {
-                    System.err.println("Failed to update new values on the writer");
-                }
-                
-            }
-        }   
+        }
 
+        if (Defaults.hasMissingProfileValue(response)) {
+            if (keepStateFlag == true)
+                throw new ConfigIOException("Error when reading config file: Missing values " + response.getNullValuesName());
+            Defaults.setNullValuesAsDefault(response);
+            rewrite = true;
+        }
 
+        Response loaded = response;
+        update(current -> FanConfig.of(loaded, current.version()));
+        if (rewrite) updateFile();
 
-        
         logValues();
     }
 
 
 
-    public static int getMaxCpu() { return response.maxCpu; }
-    public static int getMinCpu() { return response.minCpu; }
-    public static int getMaxGpu() { return response.maxGpu; }
-    public static int getMinGpu() { return response.minGpu; }
-    public static int getMaxSpeed() { return response.maxSpeed; }
-    public static int getMinSpeed() { return response.minSpeed; }
-    public static double getCurveGrowthConstant() { return response.curveGrowthConstant; }
-    public static String getMacAddress() { return response.macAddress; }
+    /* The current configuration. Read every field needed from the same record */
+    public static FanConfig getConfig() { return config.get(); }
+
+    public static int getMaxCpu() { return config.get().maxCpu(); }
+    public static int getMinCpu() { return config.get().minCpu(); }
+    public static int getMaxGpu() { return config.get().maxGpu(); }
+    public static int getMinGpu() { return config.get().minGpu(); }
+    public static int getMaxSpeed() { return config.get().maxSpeed(); }
+    public static int getMinSpeed() { return config.get().minSpeed(); }
+    public static double getCurveGrowthConstant() { return config.get().curveGrowthConstant(); }
+    public static String getMacAddress() { return config.get().macAddress(); }
 
 
     public static void setMacAddress(String macAddress) {
-        response.setMacAddress(macAddress);
-        System.out.println(macAddress);
+        update(current -> current.withMacAddress(macAddress));
+    }
+
+    public static void updateFanProfile(int maxCpu, int minCpu, int maxGpu, int minGpu, int maxSpeed, int minSpeed, double curveGrowthConstant) {
+        update(current -> current.withProfile(maxCpu, minCpu, maxGpu, minGpu, maxSpeed, minSpeed, curveGrowthConstant));
+    }
+
+    /* Adds a named profile to the store, or replaces the one of the same name */
+    public static void saveNamedProfile(FanProfile profile) {
+        update(current -> current.withNamedProfile(profile));
+    }
+
+    /* Removes a named profile, and the device defaults that pointed at it */
+    public static void removeNamedProfile(String name) {
+        update(current -> current.withoutNamedProfile(name));
+    }
+
+    /* Sets the profile a device switches to when it connects; null clears it */
+    public static void setDeviceProfile(String address, String name) {
+        update(current -> current.withDeviceProfile(address, name));
+    }
+
+    /* Makes a curve profile the saved curve, the one uploaded on connect. Constant and points profiles leave it unchanged */
+    public static void applyNamedProfile(FanProfile profile) {
+        if (profile.isConstant() || profile.isPoints()) return;
+        updateFanProfile(profile.maxCpu(), profile.minCpu(), profile.maxGpu(), profile.minGpu(),
+                profile.maxSpeed(), profile.minSpeed(), profile.curveGrowthConstant());
+    }
+
+    /* Copy-on-write update: applies the change to the current record and publishes the result with the
+     * next version. Retried if another thread published first, so the change must have no side effects.
+     * Returns the published record, or the current one if the change altered nothing */
+    public static FanConfig update(UnaryOperator<FanConfig> change) {
+        return update(change, true);
+    }
+
+    /* As update(change), queueing the config file rewrite only if persist. Values read from the file
+     * are published with persist false: the file already holds them */
+    static FanConfig update(UnaryOperator<FanConfig> change, boolean persist) {
+        while (true) {
+            FanConfig previous = config.get();
+            FanConfig next = change.apply(previous);
+            if (next.sameValues(previous)) return previous; // Unchanged: no rewrite, no notification
+
+            next = next.withVersion(previous.version() + 1);
+            if (config.compareAndSet(previous, next)) {
+                if (persist) updateFile();
+                for (FanConfigListener listener : listeners) {
+                    try {
+                        listener.onConfigChanged(previous, next);
+                    } catch (RuntimeException e) {
+                        System.err.println("Config listener failed: " + e);
+                    }
+                }
+                return next;
+            }
+        }
+    }
+
+    /* Starts reloading the config file when it is changed outside the program. Call after initiate() */
+    public static synchronized void startWatching() {
+        if (watcher != null) return;
         try {
-            updateFile();
+            watcher = new ConfigFileWatcher(configFilePath, FanProfileIOService::reloadFile);
+            System.out.println("Watching " + configFilePath + " for changes");
         } catch (IOException e) {
-            System.err.println("Warning: Can not write macAddres to config file");
-            e.printStackTrace();
+            System.err.println("Warning: Can not watch config file, edits are read on next start: " + e.getMessage());
         }
     }
 
-    public static void updateFanProfile(int maxCpu, int minCpu, int maxGpu, int minGpu, int maxSpeed, int minSpeed, double curveGrowthConstant) {
-        response.setMaxCpu(maxCpu);
-        response.setMinCpu(minCpu);
-        response.setMaxGpu(maxGpu);
-        response.setMinGpu(minGpu);
-        response.setMaxSpeed(maxSpeed);
-        response.setMinSpeed(minSpeed);
-        response.setSpeedGrowthConstant(curveGrowthConstant);
+    public static synchronized void stopWatching() {
+        if (watcher == null) return;
+        watcher.close();
+        watcher = null;
+    }
+
+    /* Re-reads the config file after an outside edit and publishes what changed.
+     *
+     * The file must parse and its curve must pass the profile editor's checks, otherwise the edit is
+     * rejected and the running config stays as is. Values missing from the file keep their running value.
+     * The program's own writes are skipped: the file is still the one the writer last wrote, or it holds
+     * the values already running. Reload listeners are told only when something changed. A published edit
+     * is not written back: the file stays as its editor left it.
+     *
+     * Returns the published record, or null if nothing was published */
+    public static FanConfig reloadFile() {
+        if (writer.isLastWritten()) {
+            skippedReloads.incrementAndGet();
+            return null;
+        }
+
+        Response loaded;
+        try (FileReader reader = new FileReader(configFilePath.toFile())) {
+            loaded = FanProfileConfigIO.readSettingsFile(reader);
+        } catch (IOException | ConfigIOException e) {
+            rejectedReloads.incrementAndGet();
+            System.err.println("Rejected config file edit, keeping the running config: " + e.getMessage());
+            return null;
+        }
+
+        FanConfig running = config.get();
+        if (loaded.maxCpu == null) loaded.maxCpu = running.maxCpu();
+        if (loaded.minCpu == null) loaded.minCpu = running.minCpu();
+        if (loaded.maxGpu == null) loaded.maxGpu = running.maxGpu();
+        if (loaded.minGpu == null) loaded.minGpu = running.minGpu();
+        if (loaded.maxSpeed == null) loaded.maxSpeed = running.maxSpeed();
+        if (loaded.minSpeed == null) loaded.minSpeed = running.minSpeed();
+        if (loaded.curveGrowthConstant == null) loaded.curveGrowthConstant = running.curveGrowthConstant();
+        if (loaded.macAddress == null) loaded.macAddress = running.macAddress();
 
         try {
-            updateFile();
-        } catch (IOException e) {
-            System.err.println("Warning: Can not write fanProfiles to config file");
-            e.printStackTrace();
+            FanProfile.curve("curve", loaded.minCpu, loaded.maxCpu, loaded.minGpu, loaded.maxGpu,
+                    loaded.minSpeed, loaded.maxSpeed, loaded.curveGrowthConstant);
+        } catch (ConfigIOException e) {
+            rejectedReloads.incrementAndGet();
+            System.err.println("Rejected config file edit, keeping the running config: " + e.getMessage());
+            return null;
+        }
+
+        FanConfig[] replaced = new FanConfig[1];
+        FanConfig published = update(current -> {
+            replaced[0] = current;
+            return FanConfig.of(loaded, current.version());
+        }, false);
+        if (published == replaced[0]) {
+            skippedReloads.incrementAndGet();
+            return null;
         }
 
+        reloads.incrementAndGet();
+        System.out.println("Reloaded config file, version " + published.version());
+        for (FanConfigListener listener : reloadListeners) {
+            try {
+                listener.onConfigChanged(replaced[0], published);
+            } catch (RuntimeException e) {
+                System.err.println("Config reload listener failed: " + e);
+            }
+        }
+        return published;
     }
 
-    static void updateFile() throws IOException {
-        
-        FanProfileConfigIO.writeConfig(configFilePath.toFile(), response);
+    public static long getReloadCount() { return reloads.get(); }
+    public static long getRejectedReloadCount() { return rejectedReloads.get(); }
+    public static long getSkippedReloadCount() { return skippedReloads.get(); }
+
+    public static void addConfigListener(FanConfigListener listener) { listeners.add(listener); }
+    public static void removeConfigListener(FanConfigListener listener) { listeners.remove(listener); }
+
+    /* Listeners told, after the config listeners, about changes that came from an outside edit of the file */
+    public static void addReloadListener(FanConfigListener listener) { reloadListeners.add(listener); }
+    public static void removeReloadListener(FanConfigListener listener) { reloadListeners.remove(listener); }
+
+    /* Folder of the config file, and of the other files the program keeps between runs */
+    public static Path getConfigFolder() { return configFolderPath; }
+
+    /* Write count and latency of the background config writer */
+    public static ConfigWriter getConfigWriter() { return writer; }
+
+    /* Writes pending config changes now, blocking until they are on disk */
+    public static void flush() {
+        writer.flush();
+    }
+
+    /* Queues the current values for the background writer; returns without touching the disk */
+    static void updateFile() {
+        writer.submit(() -> config.get().toPairs());
     }
 }
@@ -0,0 +1,81 @@
+package com.heatsync.service.transport;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * An open byte link to a fan controller, as returned by {@link FanLinkTransport#open}.
+ * Traffic through the streams is counted in {@link #getMetrics()}.
+ */
+public final class FanLink implements Closeable {
+    private final String address;
+    private final InputStream in;
+    private final OutputStream out;
+    private final Closeable resource;
+    private final LinkMetrics metrics;
+
+    /**
+     * @param address Address the link was opened to
+     * @param in Stream of bytes from the device
+     * @param out Stream of bytes to the device
+     * @param resource Underlying connection closed after the streams, or null
+     * @param openLatencyMs Time the transport needed to open the link
+     */
+    public FanLink(String address, InputStream in, OutputStream out, Closeable resource, long openLatencyMs) {
+        this.address = address;
+        this.metrics = new LinkMetrics(openLatencyMs);
+        this.resource = resource;
+        this.in = new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) metrics.addRead(1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                if (n > 0) metrics.addRead(n);
+                return n;
+            }
+        };
+        this.out = new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                this.out.write(b);
+                metrics.addWrite(1);
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                // FilterOutputStream would write byte by byte
+                this.out.write(buffer, offset, length);
+                metrics.addWrite(length);
+            }
+        };
+    }
+
+    public String getAddress() { return address; }
+    public InputStream getInputStream() { return in; }
+    public OutputStream getOutputStream() { return out; }
+    public LinkMetrics getMetrics() { return metrics; }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Closeable c : new Closeable[] { in, out, resource }) {
+            if (c == null) continue;
+            try {
+                c.close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+}
@@ -0,0 +1,27 @@
+package com.heatsync.service.transport;
+
+import java.io.IOException;
+
+/**
+ * A way of reaching the fan controller.
+ *
+ * {@link com.heatsync.service.bluetooth.BluetoothManager} only talks to the controller through a
+ * {@link FanLink} opened by a transport, so the protocol, the reconnect logic and everything above
+ * them run the same over Bluetooth SPP, a TCP socket or an in-memory pipe.
+ */
+public interface FanLinkTransport {
+
+    /**
+     * Opens a link to a device. Blocks until the link is usable or the attempt failed.
+     *
+     * @param address Device address; its meaning depends on the transport (MAC for Bluetooth)
+     * @return The open link
+     * @throws IOException If the device could not be reached
+     */
+    FanLink open(String address) throws IOException;
+
+    /**
+     * @return A short name for logs, e.g. "bluetooth-spp" or "tcp://localhost:7777"
+     */
+    String getName();
+}
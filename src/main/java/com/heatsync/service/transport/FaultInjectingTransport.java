@@ -0,0 +1,287 @@
+package com.heatsync.service.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps a transport and injects the faults of a bad radio link, so the reconnect and recovery paths
+ * above it can be exercised without walking away with the device.
+ *
+ * Every fault is drawn from a random generator seeded from {@link Faults#seed} and the number of
+ * the link, so a run with the same seed and traffic sees the same schedule. The faults are:
+ * - open failures and open latency;
+ * - latency and jitter before every write and every read chunk;
+ * - a bandwidth cap, in bytes per second, in both directions;
+ * - corruption: single bit flips in bytes passing either way;
+ * - partial writes: part of a write goes out, then the link drops, as when the radio fails mid-frame;
+ * - abrupt disconnects after an exponentially distributed time on the link.
+ *
+ * A dropped link is closed underneath the streams: blocked reads end and writes fail with an
+ * IOException, as with a real RFCOMM link.
+ */
+public class FaultInjectingTransport implements FanLinkTransport {
+
+    /**
+     * Fault settings. All faults are off by default.
+     */
+    public static final class Faults {
+        long seed = 1L;
+        double openFailureRate = 0.0;
+        long openLatencyMs = 0L;
+        long latencyMs = 0L;
+        long jitterMs = 0L;
+        long bytesPerSecond = 0L;
+        double corruptionRate = 0.0;
+        double partialWriteRate = 0.0;
+        long meanTimeToDisconnectMs = 0L;
+
+        public Faults seed(long seed) { this.seed = seed; return this; }
+        /** Probability that an open fails. */
+        public Faults openFailureRate(double rate) { this.openFailureRate = rate; return this; }
+        public Faults openLatencyMs(long ms) { this.openLatencyMs = ms; return this; }
+        /** Delay before every write and every read chunk. */
+        public Faults latencyMs(long ms) { this.latencyMs = ms; return this; }
+        /** Uniform extra delay, 0 to this value, added to the latency. */
+        public Faults jitterMs(long ms) { this.jitterMs = ms; return this; }
+        /** Bandwidth cap in each direction; 0 for none. */
+        public Faults bytesPerSecond(long rate) { this.bytesPerSecond = rate; return this; }
+        /** Probability that a byte gets one bit flipped. */
+        public Faults corruptionRate(double rate) { this.corruptionRate = rate; return this; }
+        /** Probability that a write is cut short and the link dropped. */
+        public Faults partialWriteRate(double rate) { this.partialWriteRate = rate; return this; }
+        /** Mean link lifetime before an abrupt disconnect; 0 for none. */
+        public Faults meanTimeToDisconnectMs(long ms) { this.meanTimeToDisconnectMs = ms; return this; }
+
+        @Override
+        public String toString() {
+            return String.format("seed=%d openFail=%.2f openLatency=%dms latency=%dms+%dms cap=%dB/s corrupt=%.4f partial=%.3f mttd=%dms",
+                    seed, openFailureRate, openLatencyMs, latencyMs, jitterMs, bytesPerSecond, corruptionRate,
+                    partialWriteRate, meanTimeToDisconnectMs);
+        }
+    }
+
+    private final FanLinkTransport delegate;
+    private final Faults faults;
+    private final ScheduledExecutorService scheduler;
+    private final SplittableRandom openRandom;
+    private final AtomicInteger linkNumber = new AtomicInteger();
+
+    private final AtomicLong opens = new AtomicLong();
+    private final AtomicLong failedOpens = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+    private final AtomicLong partialWrites = new AtomicLong();
+    private final AtomicLong corruptedBytes = new AtomicLong();
+    private final AtomicInteger openInProgress = new AtomicInteger();
+    private final AtomicInteger maxConcurrentOpens = new AtomicInteger();
+
+    /**
+     * @param delegate The transport that really reaches the device
+     * @param faults What to inject
+     * @param scheduler Runs the scheduled disconnects
+     */
+    public FaultInjectingTransport(FanLinkTransport delegate, Faults faults, ScheduledExecutorService scheduler) {
+        this.delegate = delegate;
+        this.faults = faults;
+        this.scheduler = scheduler;
+        this.openRandom = new SplittableRandom(faults.seed);
+    }
+
+    @Override
+    public FanLink open(String address) throws IOException {
+        int concurrent = openInProgress.incrementAndGet();
+        maxConcurrentOpens.accumulateAndGet(concurrent, Math::max);
+        try {
+            opens.incrementAndGet();
+            boolean fail;
+            synchronized (openRandom) {
+                fail = openRandom.nextDouble() < faults.openFailureRate;
+            }
+            sleep(faults.openLatencyMs);
+            if (fail) {
+                failedOpens.incrementAndGet();
+                throw new IOException("Injected open failure on " + address);
+            }
+            FanLink link = delegate.open(address);
+            return new FaultyLink(link, new SplittableRandom(faults.seed * 31 + linkNumber.incrementAndGet())).wrap();
+        } finally {
+            openInProgress.decrementAndGet();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "faulty(" + delegate.getName() + ")";
+    }
+
+    public Faults getFaults() { return faults; }
+    public long getOpens() { return opens.get(); }
+    public long getFailedOpens() { return failedOpens.get(); }
+    public long getDisconnects() { return disconnects.get(); }
+    public long getPartialWrites() { return partialWrites.get(); }
+    public long getCorruptedBytes() { return corruptedBytes.get(); }
+
+    /**
+     * @return Largest number of opens that were in progress at the same time
+     */
+    public int getMaxConcurrentOpens() { return maxConcurrentOpens.get(); }
+
+    @Override
+    public String toString() {
+        return String.format("opens=%d failedOpens=%d disconnects=%d partialWrites=%d corruptedBytes=%d maxConcurrentOpens=%d",
+                opens.get(), failedOpens.get(), disconnects.get(), partialWrites.get(), corruptedBytes.get(), maxConcurrentOpens.get());
+    }
+
+    /**
+     * The faults of one link. The generator is shared by both directions, under its own lock.
+     */
+    private final class FaultyLink {
+        private final FanLink link;
+        private final SplittableRandom random;
+        private final ScheduledFuture<?> disconnect;
+        private volatile boolean dropped = false;
+        private long writeBudgetNanos = System.nanoTime();
+        private long readBudgetNanos = System.nanoTime();
+
+        FaultyLink(FanLink link, SplittableRandom random) {
+            this.link = link;
+            this.random = random;
+            if (faults.meanTimeToDisconnectMs > 0) {
+                double u;
+                synchronized (random) {
+                    u = random.nextDouble();
+                }
+                long afterMs = (long) (-Math.log(1 - u) * faults.meanTimeToDisconnectMs);
+                disconnect = scheduler.schedule(() -> drop("scheduled disconnect"), afterMs, TimeUnit.MILLISECONDS);
+            } else {
+                disconnect = null;
+            }
+        }
+
+        FanLink wrap() {
+            InputStream in = new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    byte[] one = new byte[1];
+                    int n = read(one, 0, 1);
+                    return n < 0 ? -1 : one[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n;
+                    try {
+                        n = link.getInputStream().read(b, off, len);
+                    } catch (IOException e) {
+                        if (dropped) throw new IOException("Injected disconnect");
+                        throw e;
+                    }
+                    if (dropped) throw new IOException("Injected disconnect");
+                    if (n <= 0) return n;
+                    delay();
+                    readBudgetNanos = throttle(readBudgetNanos, n);
+                    corrupt(b, off, n);
+                    return n;
+                }
+            };
+            OutputStream out = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    if (dropped) throw new IOException("Injected disconnect");
+                    delay();
+                    byte[] copy = new byte[len];
+                    System.arraycopy(b, off, copy, 0, len);
+                    corrupt(copy, 0, len);
+                    int cut = len;
+                    synchronized (random) {
+                        if (len > 1 && random.nextDouble() < faults.partialWriteRate) {
+                            cut = 1 + random.nextInt(len - 1);
+                        }
+                    }
+                    writeBudgetNanos = throttle(writeBudgetNanos, cut);
+                    link.getOutputStream().write(copy, 0, cut);
+                    if (cut < len) {
+                        partialWrites.incrementAndGet();
+                        link.getOutputStream().flush();
+                        drop("partial write");
+                        throw new IOException("Injected partial write: " + cut + " of " + len + " bytes");
+                    }
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    if (dropped) throw new IOException("Injected disconnect");
+                    link.getOutputStream().flush();
+                }
+            };
+            return new FanLink(link.getAddress(), in, out, () -> {
+                if (disconnect != null) disconnect.cancel(false);
+                link.close();
+            }, link.getMetrics().getOpenLatencyMs() + faults.openLatencyMs);
+        }
+
+        private void drop(String reason) {
+            if (dropped) return;
+            dropped = true;
+            disconnects.incrementAndGet();
+            try {
+                link.close();
+            } catch (IOException ignored) {
+                // Dropping anyway
+            }
+        }
+
+        private void delay() throws IOException {
+            long ms = faults.latencyMs;
+            if (faults.jitterMs > 0) {
+                synchronized (random) {
+                    ms += random.nextLong(faults.jitterMs + 1);
+                }
+            }
+            sleep(ms);
+        }
+
+        // Token bucket of one direction: returns the time the next byte may pass
+        private long throttle(long budgetNanos, int bytes) throws IOException {
+            if (faults.bytesPerSecond <= 0) return budgetNanos;
+            long now = System.nanoTime();
+            long next = Math.max(budgetNanos, now) + bytes * 1_000_000_000L / faults.bytesPerSecond;
+            long waitNanos = next - now;
+            if (waitNanos > 0) sleep(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            return next;
+        }
+
+        private void corrupt(byte[] b, int off, int len) {
+            if (faults.corruptionRate <= 0) return;
+            synchronized (random) {
+                for (int i = off; i < off + len; i++) {
+                    if (random.nextDouble() < faults.corruptionRate) {
+                        b[i] ^= (byte) (1 << random.nextInt(8));
+                        corruptedBytes.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    private static void sleep(long ms) throws IOException {
+        if (ms <= 0) return;
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while injecting latency");
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.heatsync.service.transport;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Traffic counters of a single {@link FanLink}.
+ */
+public class LinkMetrics {
+    private final long openedAtMs = System.currentTimeMillis();
+    private final long openLatencyMs;
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+
+    public LinkMetrics(long openLatencyMs) {
+        this.openLatencyMs = openLatencyMs;
+    }
+
+    void addRead(long bytes) { bytesRead.addAndGet(bytes); }
+
+    void addWrite(long bytes) {
+        bytesWritten.addAndGet(bytes);
+        writes.incrementAndGet();
+    }
+
+    public long getOpenedAtMs() { return openedAtMs; }
+    public long getOpenLatencyMs() { return openLatencyMs; }
+    public long getBytesRead() { return bytesRead.get(); }
+    public long getBytesWritten() { return bytesWritten.get(); }
+    public long getWrites() { return writes.get(); }
+
+    public long getUptimeMs() {
+        return System.currentTimeMillis() - openedAtMs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("open=%dms up=%dms read=%dB written=%dB writes=%d",
+                openLatencyMs, getUptimeMs(), getBytesRead(), getBytesWritten(), getWrites());
+    }
+}
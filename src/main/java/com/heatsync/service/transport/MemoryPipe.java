@@ -0,0 +1,112 @@
+package com.heatsync.service.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Bounded in-memory byte pipe with blocking ends.
+ *
+ * Unlike {@link java.io.PipedInputStream}, neither end is tied to the thread that first used it,
+ * so both ends may be driven from thread pools.
+ */
+public class MemoryPipe {
+    private final byte[] buffer;
+    private int head = 0, size = 0;
+    private boolean sinkClosed = false, sourceClosed = false;
+
+    private final InputStream source = new InputStream() {
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            synchronized (MemoryPipe.this) {
+                while (size == 0) {
+                    if (sinkClosed || sourceClosed) return -1;
+                    await();
+                }
+                int n = Math.min(len, size);
+                for (int i = 0; i < n; i++) {
+                    b[off + i] = buffer[(head + i) % buffer.length];
+                }
+                head = (head + n) % buffer.length;
+                size -= n;
+                MemoryPipe.this.notifyAll();
+                return n;
+            }
+        }
+
+        @Override
+        public int available() {
+            synchronized (MemoryPipe.this) { return size; }
+        }
+
+        @Override
+        public void close() {
+            synchronized (MemoryPipe.this) {
+                sourceClosed = true;
+                MemoryPipe.this.notifyAll();
+            }
+        }
+    };
+
+    private final OutputStream sink = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (MemoryPipe.this) {
+                while (len > 0) {
+                    if (sinkClosed) throw new IOException("Pipe closed");
+                    if (sourceClosed) throw new IOException("Pipe reader closed");
+                    if (size == buffer.length) {
+                        await();
+                        continue;
+                    }
+                    int n = Math.min(len, buffer.length - size);
+                    for (int i = 0; i < n; i++) {
+                        buffer[(head + size + i) % buffer.length] = b[off + i];
+                    }
+                    size += n;
+                    off += n;
+                    len -= n;
+                    MemoryPipe.this.notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (MemoryPipe.this) {
+                sinkClosed = true;
+                MemoryPipe.this.notifyAll();
+            }
+        }
+    };
+
+    public MemoryPipe(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    public InputStream source() { return source; }
+    public OutputStream sink() { return sink; }
+
+    // Must hold the monitor
+    private void await() throws InterruptedIOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting on pipe");
+        }
+    }
+}
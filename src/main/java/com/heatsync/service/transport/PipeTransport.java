@@ -0,0 +1,57 @@
+package com.heatsync.service.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Connects the host to a device living in the same JVM through a pair of {@link MemoryPipe}s.
+ *
+ * Every {@link #open} hands the device end of the new link to the attached device, which must
+ * serve it on its own thread. Closing either end makes the other end's reads return -1.
+ */
+public class PipeTransport implements FanLinkTransport {
+    private static final int PIPE_CAPACITY = 4096;
+
+    private volatile Consumer<FanLink> device;
+
+    public PipeTransport() {}
+
+    public PipeTransport(Consumer<FanLink> device) {
+        this.device = device;
+    }
+
+    /**
+     * Sets what serves the device end of links opened from now on; null detaches the device,
+     * making further opens fail like an unreachable device.
+     */
+    public void attach(Consumer<FanLink> device) {
+        this.device = device;
+    }
+
+    @Override
+    public FanLink open(String address) throws IOException {
+        Consumer<FanLink> target = device;
+        if (target == null) {
+            throw new IOException("No device attached to " + getName());
+        }
+
+        MemoryPipe toDevice = new MemoryPipe(PIPE_CAPACITY);
+        MemoryPipe toHost = new MemoryPipe(PIPE_CAPACITY);
+        Closeable both = () -> {
+            toDevice.sink().close();
+            toDevice.source().close();
+            toHost.sink().close();
+            toHost.source().close();
+        };
+
+        FanLink deviceEnd = new FanLink(address, toDevice.source(), toHost.sink(), both, 0L);
+        target.accept(deviceEnd);
+        return new FanLink(address, toHost.source(), toDevice.sink(), both, 0L);
+    }
+
+    @Override
+    public String getName() {
+        return "pipe";
+    }
+}
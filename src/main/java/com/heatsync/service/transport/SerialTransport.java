@@ -0,0 +1,168 @@
+package com.heatsync.service.transport;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reaches the controller over its USB serial port (/dev/ttyUSB* or /dev/ttyACM*).
+ *
+ * The port is configured with stty (raw 8N1 at the firmware's 9600 baud, no echo, no hang-up on
+ * close) and then read and written through NIO file channels. Reads and writes use separate
+ * channels: a file channel serialises its operations, so a read blocked waiting for the device
+ * would otherwise hold every write back. Closing the link closes both channels, which wakes a
+ * blocked reader.
+ *
+ * Opening the port raises DTR, which resets most Arduino boards; the link is handed out only after
+ * {@code settleMs}, once the bootloader has handed over to the firmware.
+ *
+ * The device address passed to {@link #open} only identifies the device; the port is fixed, or the
+ * first USB serial port present when the transport was created with "auto".
+ */
+public class SerialTransport implements FanLinkTransport {
+    public static final int DEFAULT_BAUD = 9600;
+    public static final long DEFAULT_SETTLE_MS = 2000L;
+    private static final long STTY_TIMEOUT_MS = 5000L;
+    private static final String[] PORT_PREFIXES = { "ttyUSB", "ttyACM" };
+
+    private final String port;
+    private final int baud;
+    private final long settleMs;
+
+    /**
+     * @param port Device path such as /dev/ttyUSB0, or "auto" to use the first USB serial port found
+     * @param baud Line speed
+     * @param settleMs Wait after opening, while the board resets
+     */
+    public SerialTransport(String port, int baud, long settleMs) {
+        this.port = port;
+        this.baud = baud;
+        this.settleMs = Math.max(0L, settleMs);
+    }
+
+    /**
+     * Parses a {@code serial:<port>[@<baud>]} specification, e.g. serial:/dev/ttyACM0@9600 or
+     * serial:auto. The settle time is read from -Dheatsync.serial.settleMs.
+     *
+     * @throws IllegalArgumentException If the specification is malformed
+     */
+    public static SerialTransport parse(String spec) {
+        String rest = spec.startsWith("serial:") ? spec.substring("serial:".length()) : spec;
+        if (rest.startsWith("//")) rest = rest.substring(2);
+        int baud = DEFAULT_BAUD;
+        int at = rest.lastIndexOf('@');
+        if (at >= 0) {
+            baud = Integer.parseInt(rest.substring(at + 1));
+            rest = rest.substring(0, at);
+        }
+        if (rest.isEmpty()) {
+            throw new IllegalArgumentException("Expected serial:<port>[@<baud>], got " + spec);
+        }
+        return new SerialTransport(rest, baud, Long.getLong("heatsync.serial.settleMs", DEFAULT_SETTLE_MS));
+    }
+
+    /**
+     * @return The USB serial ports present, sorted by name
+     */
+    public static List<String> listPorts() {
+        List<String> ports = new ArrayList<>();
+        String[] names = new File("/dev").list();
+        if (names == null) return ports;
+        Arrays.sort(names);
+        for (String name : names) {
+            for (String prefix : PORT_PREFIXES) {
+                if (name.startsWith(prefix)) ports.add("/dev/" + name);
+            }
+        }
+        return ports;
+    }
+
+    @Override
+    public FanLink open(String address) throws IOException {
+        long start = System.nanoTime();
+        String device = resolvePort();
+        configure(device);
+
+        Path path = Paths.get(device);
+        FileChannel in = FileChannel.open(path, StandardOpenOption.READ);
+        FileChannel out;
+        try {
+            out = FileChannel.open(path, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        Closeable both = () -> {
+            try {
+                in.close();
+            } finally {
+                out.close();
+            }
+        };
+
+        if (settleMs > 0) {
+            try {
+                Thread.sleep(settleMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                both.close();
+                throw new IOException("Interrupted while " + device + " was settling");
+            }
+        }
+
+        long latencyMs = (System.nanoTime() - start) / 1_000_000L;
+        return new FanLink(address, Channels.newInputStream(in), Channels.newOutputStream(out), both, latencyMs);
+    }
+
+    @Override
+    public String getName() {
+        return "serial:" + port + "@" + baud;
+    }
+
+    private String resolvePort() throws IOException {
+        if (!"auto".equals(port)) {
+            return port;
+        }
+        List<String> ports = listPorts();
+        if (ports.isEmpty()) {
+            throw new IOException("No USB serial port found");
+        }
+        return ports.get(0);
+    }
+
+    // Raw 8N1, no flow control, no echo, keep DTR on close so closing does not reset the board again
+    private void configure(String device) throws IOException {
+        String flag = System.getProperty("os.name", "").toLowerCase().contains("mac") ? "-f" : "-F";
+        List<String> command = Arrays.asList("stty", flag, device, Integer.toString(baud),
+                "raw", "-echo", "cs8", "-cstopb", "-parenb", "-crtscts", "-hupcl", "clocal", "min", "1", "time", "0");
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output;
+        try (InputStream stdout = process.getInputStream()) {
+            output = new String(stdout.readAllBytes(), StandardCharsets.UTF_8).trim();
+        }
+        try {
+            if (!process.waitFor(STTY_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+                throw new IOException("stty timed out on " + device);
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while configuring " + device);
+        }
+        if (process.exitValue() != 0) {
+            throw new IOException("stty failed on " + device + ": " + output);
+        }
+    }
+}
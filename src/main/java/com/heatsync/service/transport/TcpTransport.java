@@ -0,0 +1,55 @@
+package com.heatsync.service.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Reaches the controller over a TCP socket, e.g. a firmware emulator or a serial-to-TCP bridge.
+ * The device address passed to {@link #open} only identifies the device; the endpoint is fixed.
+ */
+public class TcpTransport implements FanLinkTransport {
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    private final String host;
+    private final int port;
+
+    public TcpTransport(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Parses a {@code tcp://host:port} specification.
+     *
+     * @throws IllegalArgumentException If the specification is malformed
+     */
+    public static TcpTransport parse(String spec) {
+        String rest = spec.startsWith("tcp://") ? spec.substring("tcp://".length()) : spec;
+        int colon = rest.lastIndexOf(':');
+        if (colon <= 0 || colon == rest.length() - 1) {
+            throw new IllegalArgumentException("Expected tcp://host:port, got " + spec);
+        }
+        return new TcpTransport(rest.substring(0, colon), Integer.parseInt(rest.substring(colon + 1)));
+    }
+
+    @Override
+    public FanLink open(String address) throws IOException {
+        long start = System.nanoTime();
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        long latencyMs = (System.nanoTime() - start) / 1_000_000L;
+        return new FanLink(address, socket.getInputStream(), socket.getOutputStream(), socket, latencyMs);
+    }
+
+    @Override
+    public String getName() {
+        return "tcp://" + host + ":" + port;
+    }
+}
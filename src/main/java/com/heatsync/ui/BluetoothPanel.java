@@ -2,22 +2,22 @@ package com.heatsync.ui;
 
 import com.heatsync.service.BluetoothService;
 import com.heatsync.service.bluetooth.BluetoothEventListener;
+import com.heatsync.service.bluetooth.LinkQuality;
 
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 import javax.swing.BorderFactory;
-import javax.swing.DefaultListModel;
 import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JList;
@@ -40,9 +40,10 @@ public class BluetoothPanel implements BluetoothEventListener {
     // UI components
     private JPanel devicesPanel;
     private JPanel controlPanel;
-    private JList<String> deviceList;
-    private DefaultListModel<String> deviceListModel;
+    private JList<DeviceListModel.Item> deviceList;
+    private DeviceListModel deviceListModel;
     private JLabel connectionStatusLabel;
+    private JLabel linkQualityLabel;
     private JButton connectButton;
     private JButton disconnectButton;
     private JButton scanButton;
@@ -50,7 +51,6 @@ public class BluetoothPanel implements BluetoothEventListener {
     private JSlider fanSpeedSlider;
     
     // Data
-    private Map<String, String> deviceAddressMap = new HashMap<>(); // Maps display string to device address
     private boolean autoMode = true;
     private boolean scanning = false;
     
@@ -95,7 +95,26 @@ public class BluetoothPanel implements BluetoothEventListener {
         devicesPanel.setBorder(BorderFactory.createTitledBorder("Discovered Devices"));
         
         // Create the device list with scrolling
-        deviceListModel = new DefaultListModel<>();
+        deviceListModel = new DeviceListModel();
+        deviceListModel.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                // Enable connect button if there's at least one device
+                if (!connectButton.isEnabled() && !bluetoothService.isConnected()) {
+                    connectButton.setEnabled(true);
+                }
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+                if (deviceListModel.getSize() == 0) {
+                    connectButton.setEnabled(false);
+                }
+            }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {}
+        });
         deviceList = new JList<>(deviceListModel);
         deviceList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         deviceList.addListSelectionListener(e -> {
@@ -117,6 +136,10 @@ public class BluetoothPanel implements BluetoothEventListener {
         // Connection status
         connectionStatusLabel = new JLabel("Status: Disconnected");
         connectionStatusLabel.setForeground(Color.RED);
+
+        // Link health, filled in by the monitoring loop
+        linkQualityLabel = new JLabel("Link: -");
+        linkQualityLabel.setForeground(Color.GRAY);
         
         // RSSI filter slider
         JPanel rssiPanel = new JPanel(new BorderLayout());
@@ -153,10 +176,7 @@ public class BluetoothPanel implements BluetoothEventListener {
                     scanButton.setText("Stopping Scan..."); // Indicate intermediate state
                     scanButton.setEnabled(false); // Prevent rapid clicking
                 } else {
-                    // Clear previous devices before starting a new scan
-                    deviceListModel.clear();
-                    deviceAddressMap.clear();
-                    connectButton.setEnabled(false); // Disable connect until devices are found
+                    // Known devices stay listed; the device registry removes the ones that went away
                     
                     // Start scanning
                     if (bluetoothService.startDeviceDiscovery()) {
@@ -183,11 +203,11 @@ public class BluetoothPanel implements BluetoothEventListener {
             public void actionPerformed(ActionEvent e) {
                 int selectedIndex = deviceList.getSelectedIndex();
                 if (selectedIndex != -1) {
-                    String selectedDeviceDisplay = deviceListModel.getElementAt(selectedIndex);
-                    String deviceAddress = deviceAddressMap.get(selectedDeviceDisplay);
+                    DeviceListModel.Item selectedDevice = deviceListModel.getElementAt(selectedIndex);
+                    String deviceAddress = selectedDevice.getAddress();
                     
                     if (deviceAddress != null) {
-                        logCallback.accept("Attempting to connect to: " + selectedDeviceDisplay);
+                        logCallback.accept("Attempting to connect to: " + selectedDevice);
                         bluetoothService.connectToDevice(deviceAddress);
                     } else {
                         logCallback.accept("ERROR: Could not find the address for the selected device.");
@@ -240,6 +260,7 @@ public class BluetoothPanel implements BluetoothEventListener {
         
         // Add components to control panel
         controlPanel.add(connectionStatusLabel);
+        controlPanel.add(linkQualityLabel);
         controlPanel.add(rssiPanel);
         controlPanel.add(scanButton);
         controlPanel.add(connectButton);
@@ -262,38 +283,51 @@ public class BluetoothPanel implements BluetoothEventListener {
             logCallback.accept("WARNING: BluetoothService was not initialized correctly. Check if your Bluetooth hardware is available.");
             scanButton.setEnabled(false);
         }
+
+        // The startup connect may finish before this panel registers
+        if (bluetoothService.isConnected()) {
+            onDeviceConnected(null);
+        }
     }
 
     // BluetoothEventListener implementation
+    // Discovery events arrive on the stack's threads; the model batches them onto the EDT
     @Override
     public void onDeviceDiscovered(Object deviceObj, String name, String address, int rssi) {
-        String deviceInfo = name + " (" + address + ") RSSI: " + rssi + " dBm";
-        
-        // Check if device already exists in the visual list
-        boolean deviceExists = false;
-        for (int i = 0; i < deviceListModel.size(); i++) {
-            String item = deviceListModel.getElementAt(i);
-            if (item.contains(address)) {
-                // If item contains the address, update it
-                deviceListModel.setElementAt(deviceInfo, i);
-                deviceExists = true;
-                
-                // Update the map too
-                deviceAddressMap.put(deviceInfo, address);
-                break;
+        deviceListModel.put(address, name, rssi);
+    }
+
+    /**
+     * Shows the measured health of the link. Safe to call from any thread.
+     *
+     * @param quality The measurements, or null when disconnected
+     */
+    public void updateLinkQuality(LinkQuality quality) {
+        SwingUtilities.invokeLater(() -> {
+            if (quality == null) {
+                linkQualityLabel.setText("Link: -");
+                linkQualityLabel.setToolTipText(null);
+                linkQualityLabel.setForeground(Color.GRAY);
+                return;
             }
-        }
-        
-        // If it doesn't exist, add it
-        if (!deviceExists) {
-            deviceListModel.addElement(deviceInfo);
-            deviceAddressMap.put(deviceInfo, address);
-        }
-        
-        // Enable connect button if there's at least one device
-        if (deviceListModel.size() > 0 && !connectButton.isEnabled()) {
-            connectButton.setEnabled(true);
-        }
+
+            String rtt = quality.getRttP50Ms() < 0 ? "RTT n/a"
+                    : String.format("RTT %d/%d ms", quality.getRttP50Ms(), quality.getRttP95Ms());
+            linkQualityLabel.setText(String.format("Link: %s, %s, %.0f B/s, telemetry every %.1f s",
+                    quality.getGrade(), rtt, quality.getTxBytesPerSecond(), quality.getTelemetryIntervalMs() / 1000.0));
+            linkQualityLabel.setToolTipText(quality.toString());
+            switch (quality.getGrade()) {
+                case GOOD: linkQualityLabel.setForeground(new Color(0, 128, 0)); break;
+                case DEGRADED: linkQualityLabel.setForeground(Color.ORANGE.darker()); break;
+                case POOR: linkQualityLabel.setForeground(Color.RED); break;
+                default: linkQualityLabel.setForeground(Color.GRAY); break;
+            }
+        });
+    }
+
+    @Override
+    public void onDeviceLost(Object deviceObj, String address) {
+        deviceListModel.remove(address);
     }
 
     @Override
@@ -380,11 +414,7 @@ public class BluetoothPanel implements BluetoothEventListener {
 
     @Override
     public void onFanRpmReceived(int rpm) {
-        SwingUtilities.invokeLater(() -> {
-            // Aqui você pode atualizar um label ou outro componente da UI com o valor do RPM
-            LOGGER.info("Fan RPM received: " + rpm);
-            temperaturePanel.updateFanRpm(rpm); // Atualiza o painel de temperatura com o RPM recebido
-        });
+        // Shown by MonitoringController, which subscribes to RPM frames directly
     }
 
     // Add a listener method for scan completion/termination
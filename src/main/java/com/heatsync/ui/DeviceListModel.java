@@ -0,0 +1,182 @@
+package com.heatsync.ui;
+
+import javax.swing.AbstractListModel;
+import javax.swing.SwingUtilities;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * List model of discovered devices, indexed by MAC address.
+ *
+ * {@link #put} and {@link #remove} may be called from any thread. Changes are queued, coalesced per
+ * address (the latest wins) and applied on the EDT in one batch, firing one event per changed row
+ * instead of rebuilding the list. Lookups by address are O(1). The number of rows is bounded; when
+ * full, the device updated longest ago is dropped.
+ */
+public class DeviceListModel extends AbstractListModel<DeviceListModel.Item> {
+    public static final int DEFAULT_MAX_ROWS = 200;
+
+    /**
+     * One row of the list. Rendered through {@link #toString()}.
+     */
+    public static final class Item {
+        private final String address;
+        private final String name;
+        private final int rssi;
+        private final long updatedAtMs;
+
+        Item(String address, String name, int rssi) {
+            this.address = address;
+            this.name = name;
+            this.rssi = rssi;
+            this.updatedAtMs = System.currentTimeMillis();
+        }
+
+        public String getAddress() { return address; }
+        public String getName() { return name; }
+        public int getRssi() { return rssi; }
+
+        @Override
+        public String toString() {
+            return name + " (" + address + ") RSSI: " + rssi + " dBm";
+        }
+    }
+
+    // EDT only
+    private final List<Item> rows = new ArrayList<>();
+    private final Map<String, Integer> index = new HashMap<>();
+
+    // Any thread, guarded by itself. A null value means "remove".
+    private final Map<String, Item> pending = new LinkedHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final int maxRows;
+
+    public DeviceListModel() {
+        this(DEFAULT_MAX_ROWS);
+    }
+
+    public DeviceListModel(int maxRows) {
+        this.maxRows = Math.max(1, maxRows);
+    }
+
+    /**
+     * Adds a device or updates its row. Safe to call from any thread.
+     */
+    public void put(String address, String name, int rssi) {
+        enqueue(address, new Item(address, name, rssi));
+    }
+
+    /**
+     * Removes the row of a device, if any. Safe to call from any thread.
+     */
+    public void remove(String address) {
+        enqueue(address, null);
+    }
+
+    /**
+     * Removes every row and discards queued changes. EDT only.
+     */
+    public void clear() {
+        synchronized (pending) {
+            pending.clear();
+        }
+        int size = rows.size();
+        if (size == 0) return;
+        rows.clear();
+        index.clear();
+        fireIntervalRemoved(this, 0, size - 1);
+    }
+
+    /**
+     * @return The row index of a device, or -1. EDT only.
+     */
+    public int indexOf(String address) {
+        Integer row = index.get(address);
+        return row != null ? row : -1;
+    }
+
+    @Override
+    public int getSize() {
+        return rows.size();
+    }
+
+    @Override
+    public Item getElementAt(int i) {
+        return rows.get(i);
+    }
+
+    private void enqueue(String address, Item item) {
+        synchronized (pending) {
+            pending.put(address, item);
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::flush);
+        }
+    }
+
+    // EDT
+    private void flush() {
+        flushScheduled.set(false);
+        List<Map.Entry<String, Item>> batch;
+        synchronized (pending) {
+            if (pending.isEmpty()) return;
+            batch = new ArrayList<>(pending.entrySet());
+            pending.clear();
+        }
+
+        int firstAdded = -1;
+        for (Map.Entry<String, Item> change : batch) {
+            String address = change.getKey();
+            Item item = change.getValue();
+            Integer row = index.get(address);
+
+            if (item == null) {
+                if (row != null) {
+                    if (firstAdded >= 0) {
+                        fireIntervalAdded(this, firstAdded, rows.size() - 1);
+                        firstAdded = -1;
+                    }
+                    removeRow(row);
+                }
+            } else if (row != null) {
+                rows.set(row, item);
+                fireContentsChanged(this, row, row);
+            } else {
+                if (rows.size() >= maxRows) {
+                    if (firstAdded >= 0) {
+                        fireIntervalAdded(this, firstAdded, rows.size() - 1);
+                        firstAdded = -1;
+                    }
+                    removeRow(stalestRow());
+                }
+                index.put(address, rows.size());
+                rows.add(item);
+                if (firstAdded < 0) firstAdded = rows.size() - 1;
+            }
+        }
+        if (firstAdded >= 0) {
+            fireIntervalAdded(this, firstAdded, rows.size() - 1);
+        }
+    }
+
+    private void removeRow(int row) {
+        Item removed = rows.remove(row);
+        index.remove(removed.getAddress());
+        for (int i = row; i < rows.size(); i++) {
+            index.put(rows.get(i).getAddress(), i);
+        }
+        fireIntervalRemoved(this, row, row);
+    }
+
+    private int stalestRow() {
+        int stalest = 0;
+        for (int i = 1; i < rows.size(); i++) {
+            if (rows.get(i).updatedAtMs < rows.get(stalest).updatedAtMs) stalest = i;
+        }
+        return stalest;
+    }
+}
@@ -1,12 +1,18 @@
 package com.heatsync.ui;
 
 import com.heatsync.service.BluetoothService;
+import com.heatsync.service.ProfileSwitcher;
 import com.heatsync.service.TemperatureMonitor;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -73,6 +79,7 @@ public class MainWindow {
         temperaturePanel = new TemperaturePanel(this, 0);
         bluetoothPanel = new BluetoothPanel(bluetoothService, this::logMessage, temperaturePanel);
         profilePanel = new ProfilePanel(this);
+        installProfileSwitching();
 
         // Add JVM shutdown hook for system power off
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -96,6 +103,88 @@ public class MainWindow {
         });
     }
     
+    /**
+     * Lets the user switch saved profiles from anywhere in the window (Ctrl+1 to Ctrl+9, in store
+     * order) and from the system tray, where supported.
+     */
+    private void installProfileSwitching() {
+        ProfileSwitcher switcher = bluetoothService.getProfileSwitcher();
+
+        JRootPane rootPane = mainFrame.getRootPane();
+        for (int i = 0; i < 9; i++) {
+            int index = i;
+            String actionKey = "switchProfile" + (i + 1);
+            rootPane.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW)
+                    .put(KeyStroke.getKeyStroke(KeyEvent.VK_1 + i, InputEvent.CTRL_DOWN_MASK), actionKey);
+            rootPane.getActionMap().put(actionKey, new AbstractAction() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    List<String> names = switcher.getProfileNames();
+                    if (index < names.size()) {
+                        logMessage("Switching to profile " + names.get(index));
+                        switcher.switchTo(index);
+                    }
+                }
+            });
+        }
+
+        if (!SystemTray.isSupported()) {
+            LOGGER.info("System tray not supported. Profile switching from the tray disabled.");
+            return;
+        }
+        PopupMenu menu = new PopupMenu();
+        TrayIcon trayIcon = new TrayIcon(createTrayImage(), "HeatSync", menu);
+        trayIcon.setImageAutoSize(true);
+        trayIcon.addActionListener(e -> show());
+        rebuildTrayMenu(menu, switcher);
+        switcher.addListener(new ProfileSwitcher.Listener() {
+            @Override
+            public void onProfilesChanged(List<String> names) {
+                EventQueue.invokeLater(() -> rebuildTrayMenu(menu, switcher));
+            }
+
+            @Override
+            public void onActiveProfileChanged(String name) {
+                EventQueue.invokeLater(() -> rebuildTrayMenu(menu, switcher));
+            }
+        });
+        try {
+            SystemTray.getSystemTray().add(trayIcon);
+        } catch (AWTException e) {
+            LOGGER.warning("Could not add the tray icon: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lists the saved profiles in the tray menu, the active one checked.
+     */
+    private void rebuildTrayMenu(PopupMenu menu, ProfileSwitcher switcher) {
+        menu.removeAll();
+        String active = switcher.getActiveProfile();
+        for (String name : switcher.getProfileNames()) {
+            CheckboxMenuItem item = new CheckboxMenuItem(name, name.equals(active));
+            item.addItemListener(e -> {
+                logMessage("Switching to profile " + name);
+                switcher.switchTo(name);
+            });
+            menu.add(item);
+        }
+        if (menu.getItemCount() > 0) menu.addSeparator();
+        MenuItem showItem = new MenuItem("Show HeatSync");
+        showItem.addActionListener(e -> show());
+        menu.add(showItem);
+    }
+
+    private static Image createTrayImage() {
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(new Color(0xE0, 0x5A, 0x2B));
+        g.fillOval(1, 1, 14, 14);
+        g.dispose();
+        return image;
+    }
+
     /**
      * Applies the specified layout to the main frame.
      * 
@@ -1,13 +1,24 @@
 package com.heatsync.ui;
 
 import com.heatsync.service.BluetoothService;
+import com.heatsync.service.ProfileSwitcher;
+import com.heatsync.service.bluetooth.CommandResult;
+import com.heatsync.service.configIO.ConfigIOException;
+import com.heatsync.service.configIO.FanConfig;
+import com.heatsync.service.configIO.FanCurve;
+import com.heatsync.service.configIO.FanCurveTable;
+import com.heatsync.service.configIO.FanProfile;
 import com.heatsync.service.configIO.FanProfileConfigIO;
 import com.heatsync.service.configIO.FanProfileIOService;
 import com.profesorfalken.jsensors.model.sensors.Fan;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionListener;
+import java.util.List;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
 
@@ -20,7 +31,7 @@ public class ProfilePanel extends JPanel {
     private BluetoothService bluetoothService;
     
     // Components for profile type selection
-    private int currentProfileType; // 0 = Constant, 1 = Linear, 2 = Exponential
+    private int currentProfileType; // 0 = Constant, 1 = Linear, 2 = Exponential, 3 = Multi-point
     
     // Components for Constant profile
     private JSpinner constantValueSpinner;
@@ -42,6 +53,18 @@ public class ProfilePanel extends JPanel {
     private int defaultMaxSpeedSpinner;
     private double defaultKSpinner;
 
+    // Components for Multi-point profile, as <temp>:<speed>,... per channel
+    private JTextField cpuPointsField;
+    private JTextField gpuPointsField;
+
+    // The editor's values compiled into the lookup tables the device gets
+    private DefaultTableModel compiledTableModel;
+    private JLabel compiledTableStatus;
+
+    // Named profiles of the profile store
+    private JComboBox<String> storedProfileCombo;
+    private boolean updatingStoredProfiles = false;
+
     
     /**
      * Creates a new ProfilePanel.
@@ -60,13 +83,14 @@ public class ProfilePanel extends JPanel {
         setLayout(new BorderLayout(10, 10));
         setBorder(BorderFactory.createTitledBorder("Profile Editor"));
         
-        defaultCpuMaxSpinner = FanProfileIOService.getMaxCpu();
-        defaultCpuMinSpinner = FanProfileIOService.getMinCpu();
-        defaultGpuMaxSpinner = FanProfileIOService.getMaxGpu();
-        defaultGpuMinSpinner = FanProfileIOService.getMinGpu();
-        defaultMinSpeedSpinner = FanProfileIOService.getMinSpeed();
-        defaultMaxSpeedSpinner = FanProfileIOService.getMaxSpeed();
-        defaultKSpinner = FanProfileIOService.getCurveGrowthConstant();
+        FanConfig config = FanProfileIOService.getConfig();
+        defaultCpuMaxSpinner = config.maxCpu();
+        defaultCpuMinSpinner = config.minCpu();
+        defaultGpuMaxSpinner = config.maxGpu();
+        defaultGpuMinSpinner = config.minGpu();
+        defaultMinSpeedSpinner = config.minSpeed();
+        defaultMaxSpeedSpinner = config.maxSpeed();
+        defaultKSpinner = config.curveGrowthConstant();
 
         // Top panel with profile type selection
         JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
@@ -75,12 +99,14 @@ public class ProfilePanel extends JPanel {
         JRadioButton constantButton = new JRadioButton("Constant", true);
         JRadioButton simplifiedButton = new JRadioButton("Simplified temperature control (linear)");
         JRadioButton completeButton = new JRadioButton("Custom temperature control");
+        JRadioButton pointsButton = new JRadioButton("Multi-point curve");
 
         // Group the buttons for single selection
         ButtonGroup group = new ButtonGroup();
         group.add(constantButton);
         group.add(simplifiedButton);
         group.add(completeButton);
+        group.add(pointsButton);
 
         // Add ActionListener to update the current profile
         ActionListener profileListener = e -> {
@@ -90,6 +116,8 @@ public class ProfilePanel extends JPanel {
                 currentProfileType = 1;
             } else if (completeButton.isSelected()) {
                 currentProfileType = 2;
+            } else if (pointsButton.isSelected()) {
+                currentProfileType = 3;
             }
             updateUIForProfileType();
         };
@@ -97,12 +125,20 @@ public class ProfilePanel extends JPanel {
         constantButton.addActionListener(profileListener);
         simplifiedButton.addActionListener(profileListener);
         completeButton.addActionListener(profileListener);
+        pointsButton.addActionListener(profileListener);
 
         topPanel.add(constantButton);
         topPanel.add(simplifiedButton);
         topPanel.add(completeButton);
+        topPanel.add(pointsButton);
 
-        add(topPanel, BorderLayout.NORTH);
+        JPanel northPanel = new JPanel(new GridLayout(2, 1));
+        northPanel.add(createStoredProfilesPanel());
+        northPanel.add(topPanel);
+        add(northPanel, BorderLayout.NORTH);
+
+        // Right side panel with the compiled lookup table
+        add(createCompiledTablePanel(), BorderLayout.EAST);
         
         // Center panel with inputs based on current profile type
         updateUIForProfileType();
@@ -114,12 +150,9 @@ public class ProfilePanel extends JPanel {
             if (bluetoothService != null && bluetoothService.isConnected()) {
                 if (currentProfileType == 0) { // Constant profile
                     int constantValue = (Integer) constantValueSpinner.getValue();
-                    boolean sent = bluetoothService.sendConstantProfile(constantValue);
-                    if (sent) {
-                        logMessage("Constant profile sent: " + constantValue);
-                    } else {
-                        logMessage("Failed to send constant profile");
-                    }
+                    bluetoothService.getProfileSwitcher().clearActive();
+                    bluetoothService.sendConstantProfileAcknowledged(constantValue).thenAccept(result ->
+                        reportResult(result, "Constant profile sent: " + constantValue, "Failed to send constant profile"));
                 } else if(currentProfileType == 1) { // Simplified profile
                     int cpuMin = (Integer) cpuMinSpinner.getValue();
                     int cpuMax = (Integer) cpuMaxSpinner.getValue();
@@ -129,12 +162,20 @@ public class ProfilePanel extends JPanel {
                         logMessage("Validation error: Ensure that minimum values are less than maximum values.");
                         return;
                     }
-                    boolean sent = bluetoothService.sendSimplifiedProfileData(cpuMin, gpuMin, cpuMax, gpuMax);
-                    if (sent) {
-                        logMessage("Simplified" + " profile sent: CPU (" + cpuMin + "-" + cpuMax + "), GPU (" + gpuMin + "-" + gpuMax + ")");
-                    } else {
-                        logMessage("Failed to send profile data");
+                    bluetoothService.getProfileSwitcher().clearActive();
+                    bluetoothService.sendSimplifiedProfileDataAcknowledged(cpuMin, gpuMin, cpuMax, gpuMax).thenAccept(result ->
+                        reportResult(result, "Simplified" + " profile sent: CPU (" + cpuMin + "-" + cpuMax + "), GPU (" + gpuMin + "-" + gpuMax + ")", "Failed to send profile data"));
+                } else if (currentProfileType == 3) { // Multi-point profile, sent as its compiled table
+                    FanProfile profile;
+                    try {
+                        profile = editorProfile("editor");
+                    } catch (ConfigIOException ex) {
+                        logMessage("Validation error: " + ex.getMessage());
+                        return;
                     }
+                    bluetoothService.getProfileSwitcher().clearActive();
+                    bluetoothService.sendTableProfileAcknowledged(FanCurveTable.compile(profile)).thenAccept(result ->
+                        reportResult(result, "Multi-point profile sent as table: " + profile.format(), "Failed to send multi-point profile"));
                 } else { // Custom profile
                     int cpuMin = (Integer) cpuMinSpinner.getValue();
                     int cpuMax = (Integer) cpuMaxSpinner.getValue();
@@ -147,12 +188,9 @@ public class ProfilePanel extends JPanel {
                         logMessage("Validation error: Ensure that minimum values are less than maximum values.");
                         return;
                     } 
-                    boolean sent = bluetoothService.sendProfileData(cpuMin, gpuMin, cpuMax, gpuMax, minSpeed, maxSpeed, k);
-                    if (sent) {
-                        logMessage("Custom profile sent: CPU (" + cpuMin + "-" + cpuMax + "), GPU (" + gpuMin + "-" + gpuMax + "), Fan Speed (" + minSpeed + "-" + maxSpeed + ") with k = " + k);
-                    } else {
-                        logMessage("Failed to send custom profile data");
-                    }
+                    bluetoothService.getProfileSwitcher().clearActive();
+                    bluetoothService.sendProfileDataAcknowledged(cpuMin, gpuMin, cpuMax, gpuMax, minSpeed, maxSpeed, k).thenAccept(result ->
+                        reportResult(result, "Custom profile sent: CPU (" + cpuMin + "-" + cpuMax + "), GPU (" + gpuMin + "-" + gpuMax + "), Fan Speed (" + minSpeed + "-" + maxSpeed + ") with k = " + k, "Failed to send custom profile data"));
                 }
             } else {
                 logMessage("Cannot send profile: No device connected");
@@ -162,9 +200,158 @@ public class ProfilePanel extends JPanel {
         add(buttonPanel, BorderLayout.SOUTH);
     }
     
+    /**
+     * Creates the row of the profile store: switch to a saved profile, save the editor's values as
+     * one, or make the selected profile the default of the connected device.
+     */
+    private JPanel createStoredProfilesPanel() {
+        JPanel storePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        storePanel.add(new JLabel("Saved profiles:"));
+
+        ProfileSwitcher switcher = bluetoothService.getProfileSwitcher();
+        storedProfileCombo = new JComboBox<>();
+        storedProfileCombo.setToolTipText("Switch to a saved profile (also Ctrl+1 to Ctrl+9)");
+        storedProfileCombo.addActionListener(e -> {
+            String name = (String) storedProfileCombo.getSelectedItem();
+            if (updatingStoredProfiles || name == null || name.equals(switcher.getActiveProfile())) return;
+            switcher.switchTo(name).thenAccept(result -> reportResult(result, "Switched to profile " + name, "Failed to send profile " + name));
+        });
+        storePanel.add(storedProfileCombo);
+
+        JButton saveButton = new JButton("Save As...");
+        saveButton.addActionListener(e -> saveEditorAsProfile());
+        storePanel.add(saveButton);
+
+        JButton deviceDefaultButton = new JButton("Default for Device");
+        deviceDefaultButton.setToolTipText("Use the selected profile whenever the saved device connects");
+        deviceDefaultButton.addActionListener(e -> {
+            String name = (String) storedProfileCombo.getSelectedItem();
+            String address = FanProfileIOService.getMacAddress();
+            if (name == null || address == null) {
+                logMessage("Select a profile and connect a device first");
+                return;
+            }
+            FanProfileIOService.setDeviceProfile(address, name);
+            logMessage("Device " + address + " now starts with profile " + name);
+        });
+        storePanel.add(deviceDefaultButton);
+
+        refreshStoredProfiles(switcher.getProfileNames(), switcher.getActiveProfile());
+        switcher.addListener(new ProfileSwitcher.Listener() {
+            @Override
+            public void onProfilesChanged(List<String> names) {
+                SwingUtilities.invokeLater(() -> refreshStoredProfiles(names, switcher.getActiveProfile()));
+            }
+
+            @Override
+            public void onActiveProfileChanged(String name) {
+                SwingUtilities.invokeLater(() -> refreshStoredProfiles(switcher.getProfileNames(), name));
+            }
+        });
+        return storePanel;
+    }
+
+    /**
+     * Fills the saved profile list without triggering a switch.
+     */
+    private void refreshStoredProfiles(List<String> names, String active) {
+        updatingStoredProfiles = true;
+        try {
+            storedProfileCombo.removeAllItems();
+            for (String name : names) storedProfileCombo.addItem(name);
+            storedProfileCombo.setSelectedItem(active);
+            if (active == null) storedProfileCombo.setSelectedIndex(-1);
+        } finally {
+            updatingStoredProfiles = false;
+        }
+    }
+
+    /**
+     * Stores the values of the editor as a named profile.
+     */
+    private void saveEditorAsProfile() {
+        String name = JOptionPane.showInputDialog(this, "Profile name (letters, digits, '-' and '_'):", "Save Profile", JOptionPane.PLAIN_MESSAGE);
+        if (name == null) return;
+        name = name.trim();
+        try {
+            FanProfile profile = editorProfile(name);
+            FanProfileIOService.saveNamedProfile(profile);
+            logMessage("Saved profile " + name + ": " + profile.format());
+        } catch (ConfigIOException ex) {
+            logMessage("Profile not saved: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Builds a profile from the values of the editor.
+     *
+     * @param name The profile name
+     * @throws ConfigIOException if the values do not make a valid profile
+     */
+    private FanProfile editorProfile(String name) throws ConfigIOException {
+        if (currentProfileType == 0) {
+            return FanProfile.constant(name, (Integer) constantValueSpinner.getValue());
+        } else if (currentProfileType == 1) {
+            return FanProfile.curve(name, (Integer) cpuMinSpinner.getValue(), (Integer) cpuMaxSpinner.getValue(),
+                    (Integer) gpuMinSpinner.getValue(), (Integer) gpuMaxSpinner.getValue(), 0, 100, 1.0);
+        } else if (currentProfileType == 2) {
+            return FanProfile.curve(name, (Integer) cpuMinSpinner.getValue(), (Integer) cpuMaxSpinner.getValue(),
+                    (Integer) gpuMinSpinner.getValue(), (Integer) gpuMaxSpinner.getValue(),
+                    (Integer) minSpeedSpinner.getValue(), (Integer) maxSpeedSpinner.getValue(), (Double) kSpinner.getValue());
+        }
+        String cpuPoints = cpuPointsField.getText().trim();
+        String gpuPoints = gpuPointsField.getText().trim();
+        return FanProfile.points(name, cpuPoints.isEmpty() ? null : FanCurve.parse(cpuPoints),
+                gpuPoints.isEmpty() ? null : FanCurve.parse(gpuPoints));
+    }
+
+    /**
+     * Creates the view of the lookup table the editor's values compile to: one row per half degree,
+     * with the speed of each channel.
+     */
+    private JPanel createCompiledTablePanel() {
+        JPanel tablePanel = new JPanel(new BorderLayout(5, 5));
+        tablePanel.setBorder(BorderFactory.createTitledBorder("Compiled Table"));
+
+        compiledTableModel = new DefaultTableModel(new Object[] { "Temp (°C)", "CPU (%)", "GPU (%)" }, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable table = new JTable(compiledTableModel);
+        table.setToolTipText("Fan speed per half degree, as looked up by the device; the fan runs at the higher channel");
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setPreferredSize(new Dimension(240, 0));
+        tablePanel.add(scrollPane, BorderLayout.CENTER);
+
+        compiledTableStatus = new JLabel(" ");
+        tablePanel.add(compiledTableStatus, BorderLayout.SOUTH);
+        return tablePanel;
+    }
+
+    /**
+     * Compiles the editor's values and shows the resulting table, or why they do not compile.
+     */
+    private void refreshCompiledTable() {
+        if (compiledTableModel == null) return;
+        compiledTableModel.setRowCount(0);
+        try {
+            FanCurveTable table = FanCurveTable.compile(editorProfile("editor"));
+            for (int i = 0; i < FanCurveTable.SIZE; i++) {
+                compiledTableModel.addRow(new Object[] {
+                    String.format("%.1f", FanCurveTable.temperature(i)), table.cpuSpeed(i), table.gpuSpeed(i) });
+            }
+            compiledTableStatus.setText(FanCurveTable.SIZE + " entries per channel");
+        } catch (ConfigIOException ex) {
+            compiledTableStatus.setText("<html>" + ex.getMessage() + "</html>");
+        }
+    }
+
     /**
      * Updates the center configuration panel according to the selected profile type.
-     * For "Constant" it displays a single input; for "Linear"/"Exponential", it displays the full set of fields.
+     * For "Constant" it displays a single input; for "Linear"/"Exponential", it displays the full set of fields;
+     * for "Multi-point", a list of points per channel.
      */
     private void updateUIForProfileType() {
         // Remove any existing center component
@@ -289,7 +476,7 @@ public class ProfilePanel extends JPanel {
             gpuMaxSpinner = new JSpinner(new SpinnerNumberModel(65, 30, 100, 1));
             configPanel.add(gpuMaxSpinner);
             
-        } else { // Custom profile: full set of fields with range [30,100] for temps and [0,100] for fan speed and an exponent k parameter
+        } else if (currentProfileType == 2) { // Custom profile: full set of fields with range [30,100] for temps and [0,100] for fan speed and an exponent k parameter
             configPanel = new JPanel(new GridLayout(4, 4, 10, 10));
             String header = "Custom Profile Configuration";
             configPanel.setBorder(BorderFactory.createTitledBorder(header));
@@ -435,13 +622,92 @@ public class ProfilePanel extends JPanel {
             configPanel.add(kPanel);
             kSpinner = new JSpinner(new SpinnerNumberModel(defaultKSpinner, 0.25d, 2.0d, 0.1d));
             configPanel.add(kSpinner);
+        } else { // Multi-point profile: a list of <temp>:<speed> points per channel
+            configPanel = new JPanel(new GridLayout(4, 2, 10, 10));
+            configPanel.setBorder(BorderFactory.createTitledBorder("Multi-point Profile Configuration"));
+
+            JPanel pointsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+            JLabel pointsHelp = new JLabel("?");
+            pointsHelp.setForeground(Color.BLUE);
+            pointsHelp.setCursor(new Cursor(Cursor.HAND_CURSOR));
+            String pointsTooltip = "<html>Fan speed points as temperature:speed, separated by commas, e.g. 40:0,60:30,75:70,85:100.<br>"
+                    + "Temperatures between 30 and 100 and rising from point to point, speeds between 0 and 100, 2 to 16 points.<br>"
+                    + "Between points the speed follows a straight line. Leave a channel empty to let only the other one drive the fan.</html>";
+            pointsHelp.setToolTipText(pointsTooltip);
+            pointsHelp.addMouseListener(new java.awt.event.MouseAdapter() {
+                @Override
+                public void mouseClicked(java.awt.event.MouseEvent e) {
+                    JOptionPane.showMessageDialog(ProfilePanel.this, pointsTooltip, "Multi-point Description", JOptionPane.INFORMATION_MESSAGE);
+                }
+            });
+            pointsPanel.add(pointsHelp);
+            pointsPanel.add(new JLabel("CPU Points (°C:%):"));
+            configPanel.add(pointsPanel);
+            cpuPointsField = new JTextField(cpuPointsField == null ? "40:0,60:30,75:70,85:100" : cpuPointsField.getText());
+            configPanel.add(cpuPointsField);
+
+            configPanel.add(new JLabel("GPU Points (°C:%):"));
+            gpuPointsField = new JTextField(gpuPointsField == null ? "40:0,55:30,65:70,75:100" : gpuPointsField.getText());
+            configPanel.add(gpuPointsField);
+
+            DocumentListener pointsListener = new DocumentListener() {
+                @Override
+                public void insertUpdate(DocumentEvent e) { refreshCompiledTable(); }
+                @Override
+                public void removeUpdate(DocumentEvent e) { refreshCompiledTable(); }
+                @Override
+                public void changedUpdate(DocumentEvent e) { refreshCompiledTable(); }
+            };
+            cpuPointsField.getDocument().addDocumentListener(pointsListener);
+            gpuPointsField.getDocument().addDocumentListener(pointsListener);
+
+            for (int i = 0; i < 2; i++) {
+                configPanel.add(new JLabel("")); // Placeholder labels for layout
+                configPanel.add(new JLabel(""));
+            }
         }
+
+        // Keep the compiled table in step with the spinners
+        for (Component component : configPanel.getComponents()) {
+            if (component instanceof JSpinner) {
+                ((JSpinner) component).addChangeListener(e -> refreshCompiledTable());
+            }
+        }
+        refreshCompiledTable();
         
         add(configPanel, BorderLayout.CENTER);
         revalidate();
         repaint();
     }
     
+    /**
+     * Logs the outcome of a profile upload. Only reports success once the device
+     * acknowledged the frame, or once it was written when acknowledgements are disabled.
+     *
+     * @param result The command result
+     * @param sentMessage Message describing the profile that was sent
+     * @param failedMessage Message to log when the frame could not be written
+     */
+    private void reportResult(CommandResult result, String sentMessage, String failedMessage) {
+        switch (result.getStatus()) {
+            case ACKED:
+                logMessage(sentMessage + " (acknowledged in " + result.getLatencyMs() + " ms)");
+                break;
+            case UNCONFIRMED:
+                logMessage(sentMessage);
+                break;
+            case NAKED:
+                logMessage("Device rejected the profile: " + result);
+                break;
+            case TIMED_OUT:
+                logMessage("Device did not acknowledge the profile: " + result);
+                break;
+            default:
+                logMessage(failedMessage);
+                break;
+        }
+    }
+
     /**
      * Logs a message.
      *
@@ -20,6 +20,7 @@ public class TemperaturePanel extends JPanel {
     private JLabel cpuTempLabel;
     private JLabel gpuTempLabel;
     private JLabel fanRpmLabel;
+    private JLabel targetSpeedLabel;
 
     private JButton editFanProfileButton;
     private MainWindow mainWindow;
@@ -47,6 +48,7 @@ public class TemperaturePanel extends JPanel {
         cpuTempLabel = new JLabel("CPU Temperature: --,--°C");
         gpuTempLabel = new JLabel("GPU Temperature: --,--°C");
         fanRpmLabel = new JLabel("Fan RPM: ---RPM");
+        targetSpeedLabel = new JLabel("Target Fan Speed: --%");
         
 
         editFanProfileButton = new JButton("Edit Fan Profile");
@@ -78,6 +80,7 @@ public class TemperaturePanel extends JPanel {
         add(cpuTempLabel);
         add(gpuTempLabel);
         add(fanRpmLabel);
+        add(targetSpeedLabel);
         // Only add edit button in mode 0 (default mode)
         if (mode == 0) {
             // Enable or disable the button based on the Bluetooth connection status.
@@ -87,7 +90,6 @@ public class TemperaturePanel extends JPanel {
             
             LOGGER.fine("Temperature panel in default mode with edit button");
         } else {
-            add(new JLabel("")); // Placeholder in profile edit mode
             LOGGER.fine("Temperature panel in profile edit mode without edit button");
         }
         
@@ -141,6 +143,16 @@ public class TemperaturePanel extends JPanel {
             gpuTempLabel.setText(String.format("GPU Temperature: %.2f°C", temperature)));
     }
     
+    /**
+     * Updates the fan speed the active profile asks for at the current temperatures.
+     * 
+     * @param percent The target speed in percent
+     */
+    public void updateTargetSpeed(int percent) {
+        SwingUtilities.invokeLater(() -> 
+            targetSpeedLabel.setText(String.format("Target Fan Speed: %d%%", percent)));
+    }
+    
     /**
      * Updates the fan RPM display.
      * 
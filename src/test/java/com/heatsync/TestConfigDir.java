@@ -0,0 +1,27 @@
+package com.heatsync;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Keeps tests that reach FanProfileIOService away from the .config folder of the working directory.
+ *
+ * Maven sets -Dheatsync.config.dir (see the surefire configuration in pom.xml); runs without it, e.g.
+ * from an IDE, get a temporary folder. Call before FanProfileIOService is first used, its path is
+ * fixed when the class loads.
+ */
+public final class TestConfigDir {
+
+    // Hide constructor
+    private TestConfigDir() {}
+
+    public static Path use() throws IOException {
+        String dir = System.getProperty("heatsync.config.dir");
+        Path folder = dir == null || dir.isBlank() ? Files.createTempDirectory("heatsync-config") : Paths.get(dir);
+        Files.createDirectories(folder);
+        System.setProperty("heatsync.config.dir", folder.toString());
+        return folder;
+    }
+}
@@ -0,0 +1,72 @@
+package com.heatsync.emulator;
+
+import com.heatsync.service.bluetooth.CommandPipeline;
+import com.heatsync.service.bluetooth.CommandResult;
+import com.heatsync.service.bluetooth.FanProtocol;
+import com.heatsync.service.transport.FanLink;
+import com.heatsync.service.transport.PipeTransport;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a {@link CommandPipeline} with its default timeout against a {@link FanControllerEmulator}
+ * that is busy ramping the fan.
+ *
+ * The board handles one frame per pass of loop() and acks it afterwards, so a profile frame queued
+ * behind a T frame that moves the PWM from 0 to the top of the curve is acked only once that ramp
+ * of several seconds is over. It must still come back ACKED, not TIMED_OUT.
+ */
+public class CommandPipelineRampTest {
+
+    @Test(timeout = 30_000L)
+    public void frameQueuedBehindARampIsAcked() throws Exception {
+        ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor();
+        try (FanLink link = new PipeTransport(new FanControllerEmulator()).open("EMU")) {
+            OutputStream out = link.getOutputStream();
+            CommandPipeline pipeline = new CommandPipeline(bytes -> {
+                synchronized (out) {
+                    out.write(bytes);
+                    out.flush();
+                }
+            }, timers);
+            Thread reader = new Thread(() -> {
+                try (BufferedReader in = new BufferedReader(new InputStreamReader(link.getInputStream(), StandardCharsets.US_ASCII))) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        pipeline.handleInboundLine(line);
+                    }
+                } catch (IOException ignored) {
+                    // Closed
+                }
+            }, "ramp-test-reader");
+            reader.setDaemon(true);
+            reader.start();
+
+            // Past the maximum temperatures of the default curve: the PWM ramps from 0 to its top
+            long start = System.nanoTime();
+            CompletableFuture<CommandResult> ramp = pipeline.submit(FanProtocol.temperatureFrame(95.0, 95.0, 40.0));
+            CompletableFuture<CommandResult> profile = pipeline.submit(FanProtocol.autoProfileFrame(30, 30, 80, 70, 30, 100, 1.0));
+
+            CommandResult profileResult = profile.get(20, TimeUnit.SECONDS);
+            long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertEquals(CommandResult.Status.ACKED, ramp.get(20, TimeUnit.SECONDS).getStatus());
+            assertEquals("after " + waitedMs + " ms", CommandResult.Status.ACKED, profileResult.getStatus());
+            assertTrue("the ramp took only " + waitedMs + " ms", waitedMs > 3000L);
+            pipeline.close();
+        } finally {
+            timers.shutdownNow();
+        }
+    }
+}
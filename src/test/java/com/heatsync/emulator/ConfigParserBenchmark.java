@@ -0,0 +1,214 @@
+package com.heatsync.emulator;
+
+import com.heatsync.service.configIO.ConfigIOException;
+import com.heatsync.service.configIO.ConfigParser;
+import com.heatsync.service.configIO.FanProfile;
+import com.heatsync.service.configIO.FanProfileConfigIO.Operators;
+import com.heatsync.service.configIO.FanProfileConfigIO.ValueType;
+
+import java.io.BufferedReader;
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Benchmark of {@link ConfigParser} on large generated config files.
+ *
+ * Each file holds the operators, then half its entries as profiles (one in four constant) and half
+ * as device defaults, as a provisioning tool would write for a fleet. Every file is parsed by the
+ * single pass parser and by a line based baseline that works as the parser did before: read a line,
+ * trim and cut it with substring, look the key up in a map, split profile values on blanks. The run
+ * reports the median parse time, entries per millisecond and bytes allocated per entry.
+ *
+ * It then breaks one line in every hundred at a known column and checks that each break is reported
+ * at its exact line and column, and nothing else.
+ *
+ * Usage: ConfigParserBenchmark [runs] (default 15)
+ */
+public final class ConfigParserBenchmark {
+
+    private static final int[] SIZES = { 1_000, 10_000, 100_000 };
+    private static final int ERROR_EVERY = 100;
+
+    // Hide constructor
+    private ConfigParserBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 15;
+        System.out.printf("%-9s %-10s %8s %10s %12s %10s%n", "entries", "parser", "KiB", "median ms", "entries/ms", "B/entry");
+        for (int size : SIZES) {
+            char[] file = generate(size).toCharArray();
+            run("single", size, file, runs, () -> singlePass(file));
+            run("baseline", size, file, runs, () -> lineBased(file));
+        }
+        checkDiagnostics(10_000);
+    }
+
+    private interface Parse {
+        int parse() throws Exception;
+    }
+
+    private static void run(String name, int size, char[] file, int runs, Parse parse) throws Exception {
+        // Warm up for at least a second and five parses, so the small files are measured compiled too
+        long warmUntil = System.nanoTime() + 1_000_000_000L;
+        for (int i = 0; i < 5 || System.nanoTime() < warmUntil; i++) parse.parse();
+
+        long[] times = new long[runs];
+        long allocatedBefore = allocatedBytes();
+        int kept = 0;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            kept = parse.parse();
+            times[i] = System.nanoTime() - start;
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+        Arrays.sort(times);
+
+        double medianMs = times[runs / 2] / 1e6;
+        String perEntry = allocated < 0 ? "n/a" : Long.toString(allocated / runs / size);
+        System.out.printf("%-9d %-10s %8d %10.2f %12.0f %10s%n",
+                size, name, file.length * 2 / 1024, medianMs, size / medianMs, perEntry);
+        if (kept != size / 2) {
+            throw new IllegalStateException(name + " kept " + kept + " profiles, expected " + size / 2);
+        }
+    }
+
+    private static int singlePass(char[] file) {
+        ConfigParser.Result result = ConfigParser.parse(file, file.length);
+        if (!result.isValid()) throw new IllegalStateException(result.report());
+        return result.response().profiles.size();
+    }
+
+    /* The parser as it was: line by line with String operations */
+    private static int lineBased(char[] file) throws IOException, ConfigIOException {
+        BufferedReader reader = new BufferedReader(new CharArrayReader(file));
+        Map<String, FanProfile> profiles = new LinkedHashMap<>();
+        Map<String, String> devices = new LinkedHashMap<>();
+        Integer[] values = new Integer[Operators.MAX_LIST_SIZE];
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int comment = line.indexOf('#');
+            if (comment != -1) line = line.substring(0, comment);
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            int colon = line.indexOf(':');
+            if (colon == -1) throw new ConfigIOException("No delimiter");
+            String key = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+
+            if (key.startsWith(FanProfile.PROFILE_PREFIX)) {
+                String profileName = key.substring(FanProfile.PROFILE_PREFIX.length());
+                profiles.put(profileName, splitProfile(profileName, value));
+            } else if (key.startsWith(FanProfile.DEVICE_PREFIX)) {
+                devices.put(FanProfile.deviceKey(key.substring(FanProfile.DEVICE_PREFIX.length())), value);
+            } else {
+                Operators op = Operators.getOperator(key);
+                if (op == null) throw new ConfigIOException("Unknown key " + key);
+                if (op.getType() == ValueType.INTEGER) {
+                    values[op.getCode()] = Integer.parseInt(value);
+                } else if (op.getType() == ValueType.DECIMAL) {
+                    Double.parseDouble(value);
+                }
+            }
+        }
+        return profiles.size();
+    }
+
+    private static FanProfile splitProfile(String name, String value) throws ConfigIOException {
+        int constant = -1;
+        int[] cpu = null, gpu = null, speed = null;
+        double k = 0;
+        for (String token : value.split("\\s+")) {
+            int eq = token.indexOf('=');
+            String setting = token.substring(0, eq);
+            String arg = token.substring(eq + 1);
+            switch (setting) {
+                case "constant": constant = Integer.parseInt(arg); break;
+                case "cpu": cpu = range(arg); break;
+                case "gpu": gpu = range(arg); break;
+                case "speed": speed = range(arg); break;
+                case "k": k = Double.parseDouble(arg); break;
+                default: throw new ConfigIOException("Unknown setting " + setting);
+            }
+        }
+        if (constant >= 0) return FanProfile.constant(name, constant);
+        return FanProfile.curve(name, cpu[0], cpu[1], gpu[0], gpu[1], speed[0], speed[1], k);
+    }
+
+    private static int[] range(String arg) {
+        int dash = arg.indexOf('-', 1);
+        return new int[] { Integer.parseInt(arg.substring(0, dash)), Integer.parseInt(arg.substring(dash + 1)) };
+    }
+
+    private static String generate(int entries) {
+        StringBuilder sb = new StringBuilder(entries * 48);
+        sb.append("# Generated by ConfigParserBenchmark\n");
+        sb.append("maxCpu: 85\nminCpu: 40\nmaxGpu: 75\nminGpu: 40\nmaxSpeed: 100\nminSpeed: 0\n");
+        sb.append("curveGrowthConstant: 1.5\nmacAddress: 001A7DDA7113\n\n");
+        int profiles = entries / 2;
+        for (int i = 0; i < profiles; i++) {
+            sb.append("profile.fleet-").append(i).append(": ");
+            if (i % 4 == 0) {
+                sb.append("constant=").append(i % 101);
+            } else {
+                sb.append("cpu=").append(30 + i % 20).append('-').append(70 + i % 30)
+                  .append(" gpu=").append(30 + i % 25).append('-').append(65 + i % 35)
+                  .append(" speed=").append(i % 40).append('-').append(60 + i % 41)
+                  .append(" k=").append(0.25 + (i % 8) * 0.25);
+            }
+            sb.append('\n');
+        }
+        // Devices default to the constant profiles, which the diagnostics check leaves intact
+        for (int i = 0; i < entries - profiles; i++) {
+            sb.append("device.").append(String.format("%012X", 0x001A7D000000L + i))
+              .append(": fleet-").append(i * 4 % (profiles - profiles % 4)).append("   # rack ").append(i / 40).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /* Breaks a value on every ERROR_EVERY-th profile line and checks each break is reported where it is */
+    private static void checkDiagnostics(int entries) {
+        String[] lines = generate(entries).split("\n", -1);
+        int expected = 0;
+        StringBuilder broken = new StringBuilder();
+        StringBuilder want = new StringBuilder();
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            if (line.startsWith("profile.") && line.contains(" gpu=") && i % ERROR_EVERY == 0) {
+                int column = line.indexOf(" gpu=") + " gpu=".length() + 1;
+                line = line.replace(" gpu=", " gpu=x");
+                want.append(i + 1).append(':').append(column).append(' ');
+                expected++;
+            }
+            broken.append(line).append('\n');
+        }
+
+        char[] file = broken.toString().toCharArray();
+        ConfigParser.Result result = ConfigParser.parse(file, file.length);
+        StringBuilder got = new StringBuilder();
+        for (ConfigParser.Diagnostic diagnostic : result.diagnostics()) {
+            got.append(diagnostic.line()).append(':').append(diagnostic.column()).append(' ');
+        }
+        boolean exact = got.toString().equals(want.toString());
+        System.out.printf("%ndiagnostics: %d breaks, %d reported, positions %s%n",
+                expected, result.diagnostics().size(), exact ? "exact" : "WRONG");
+        if (!result.diagnostics().isEmpty()) System.out.println("first: " + result.diagnostics().get(0));
+        if (!exact) {
+            System.out.println("expected " + want);
+            System.out.println("reported " + got);
+            System.exit(1);
+        }
+    }
+
+    /* Bytes allocated by this thread so far, or -1 where the JVM does not count them */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1L;
+    }
+}
@@ -0,0 +1,177 @@
+package com.heatsync.emulator;
+
+import com.heatsync.service.bluetooth.ConnectionPool;
+import com.heatsync.service.bluetooth.FanProtocol;
+import com.heatsync.service.transport.FanLink;
+import com.heatsync.service.transport.FanLinkTransport;
+import com.heatsync.service.transport.PipeTransport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scaling benchmark of {@link ConnectionPool} against several {@link FanControllerEmulator}s.
+ *
+ * Telemetry is broadcast at a fixed rate to 1, 2, 4, ... emulated pads and the run reports the
+ * aggregate number of frames the firmware handled per second, the spread between pads and the cost
+ * of one broadcast call. Every size runs twice: with the pool (a writer per pad) and with a single
+ * thread writing each pad in turn, the way one shared sender would.
+ *
+ * A last pair of runs adds a stalled pad that never reads its link. Those runs last long enough for
+ * its 4 KiB pipe to fill; from then on a shared sender blocks every pad, while with the pool only
+ * the stalled pad falls behind.
+ *
+ * Usage: ConnectionPoolBenchmark [seconds] [maxDevices] [rateHz] (default 10 8 10)
+ */
+public final class ConnectionPoolBenchmark {
+
+    private static final int PIPE_CAPACITY = 4096;
+    private static final String PROFILE = FanProtocol.autoProfileFrame(30, 30, 80, 80, 20, 100, 0.5);
+
+    // Hide constructor
+    private ConnectionPoolBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 10L;
+        int maxDevices = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int rateHz = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        System.out.printf("%-8s %7s %7s %9s %10s %10s %10s %11s%n",
+                "mode", "devices", "stalled", "offered/s", "handled/s", "min pad/s", "max pad/s", "call p50");
+        for (int n = 1; n <= maxDevices; n *= 2) {
+            run(n, false, true, seconds, rateHz);
+            run(n, false, false, seconds, rateHz);
+        }
+        int n = Math.max(2, Math.min(4, maxDevices));
+        int frameBytes = FanProtocol.temperatureFrame(55.0, 45.0, 35.0).length();
+        long stallSeconds = seconds + PIPE_CAPACITY / ((long) frameBytes * rateHz) + 1;
+        run(n, true, true, stallSeconds, rateHz);
+        run(n, true, false, stallSeconds, rateHz);
+    }
+
+    private static void run(int devices, boolean withStalledPad, boolean pooled, long seconds, int rateHz) throws Exception {
+        Map<String, FanControllerEmulator> emulators = new HashMap<>();
+        Map<String, PipeTransport> pipes = new HashMap<>();
+        List<String> addresses = new ArrayList<>();
+        for (int i = 0; i < devices; i++) {
+            String address = String.format("PAD%02d", i);
+            addresses.add(address);
+            if (withStalledPad && i == devices - 1) {
+                // Accepts the link and never reads it
+                pipes.put(address, new PipeTransport(link -> {}));
+            } else {
+                FanControllerEmulator emulator = new FanControllerEmulator();
+                emulators.put(address, emulator);
+                pipes.put(address, new PipeTransport(emulator));
+            }
+        }
+        FanLinkTransport transport = new FanLinkTransport() {
+            @Override
+            public FanLink open(String address) throws IOException {
+                return pipes.get(address).open(address);
+            }
+
+            @Override
+            public String getName() {
+                return "pipe-pool";
+            }
+        };
+
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+        ConnectionPool pool = pooled ? new ConnectionPool(transport) : null;
+        List<FanLink> serialLinks = new ArrayList<>();
+        List<Long> callNanos = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong broadcasts = new AtomicLong();
+        try {
+            if (pooled) {
+                for (String address : addresses) pool.add(address, PROFILE);
+                long deadline = System.currentTimeMillis() + 5000L;
+                while (pool.connectedCount() < devices && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10L);
+                }
+            } else {
+                for (String address : addresses) {
+                    FanLink link = transport.open(address);
+                    link.getOutputStream().write(PROFILE.getBytes(StandardCharsets.US_ASCII));
+                    serialLinks.add(link);
+                }
+            }
+            Map<String, Long> handledBefore = new HashMap<>();
+            for (Map.Entry<String, FanControllerEmulator> e : emulators.entrySet()) {
+                handledBefore.put(e.getKey(), e.getValue().getFramesHandled());
+            }
+
+            long start = System.nanoTime();
+            ticker.scheduleAtFixedRate(() -> {
+                double t = (System.nanoTime() - start) / 1e9;
+                double cpu = Math.round((55 + 20 * Math.sin(2 * Math.PI * t / 20.0)) * 10) / 10.0;
+                long callStart = System.nanoTime();
+                if (pooled) {
+                    pool.broadcastTemperature(cpu, 45.0, 35.0);
+                } else {
+                    byte[] frame = FanProtocol.temperatureFrame(cpu, 45.0, 35.0).getBytes(StandardCharsets.US_ASCII);
+                    for (FanLink link : serialLinks) {
+                        try {
+                            OutputStream out = link.getOutputStream();
+                            out.write(frame);
+                            out.flush();
+                        } catch (IOException e) {
+                            // Counted as not handled
+                        }
+                    }
+                }
+                callNanos.add(System.nanoTime() - callStart);
+                broadcasts.incrementAndGet();
+            }, 0L, 1000L / rateHz, TimeUnit.MILLISECONDS);
+
+            Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+            ticker.shutdownNow();
+            ticker.awaitTermination(5, TimeUnit.SECONDS);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+
+            long total = 0;
+            double minRate = Double.MAX_VALUE, maxRate = 0;
+            for (Map.Entry<String, FanControllerEmulator> e : emulators.entrySet()) {
+                long handled = e.getValue().getFramesHandled() - handledBefore.get(e.getKey());
+                total += handled;
+                minRate = Math.min(minRate, handled / elapsed);
+                maxRate = Math.max(maxRate, handled / elapsed);
+            }
+            System.out.printf("%-8s %7d %7s %9d %10.1f %10.1f %10.1f %9.1fus%n",
+                    pooled ? "pool" : "serial", devices, withStalledPad ? "1" : "0",
+                    (long) (broadcasts.get() * (devices) / elapsed), total / elapsed,
+                    emulators.isEmpty() ? 0.0 : minRate, maxRate,
+                    median(callNanos) / 1000.0);
+        } finally {
+            ticker.shutdownNow();
+            if (pool != null) pool.close();
+            for (FanLink link : serialLinks) {
+                try {
+                    link.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    private static double median(List<Long> samples) {
+        List<Long> sorted;
+        synchronized (samples) {
+            if (samples.isEmpty()) return 0.0;
+            sorted = new ArrayList<>(samples);
+        }
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+}
@@ -0,0 +1,202 @@
+package com.heatsync.emulator;
+
+import com.heatsync.service.bluetooth.CommandPipeline;
+import com.heatsync.service.bluetooth.CommandResult;
+import com.heatsync.service.bluetooth.FanProtocol;
+import com.heatsync.service.configIO.FanCurve;
+import com.heatsync.service.configIO.FanCurveTable;
+import com.heatsync.service.configIO.FanProfile;
+import com.heatsync.service.transport.FanLink;
+import com.heatsync.service.transport.PipeTransport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark of {@link FanCurveTable} lookups against the curves they are compiled from.
+ *
+ * Evaluation: the fan speed of random telemetry temperatures (one decimal, 25 to 105 degrees) is
+ * computed per profile with the firmware's formula (a Math.pow per frame) or the points' line
+ * search, then looked up in the compiled table, plain and interpolated. The run reports the median
+ * nanoseconds per evaluation and the largest difference to the exact curve over every telemetry
+ * temperature, in percent.
+ *
+ * Upload: each table is sent to {@link FanControllerEmulator} as the firmware receives it, one
+ * acknowledged frame after the other, and the run reports frames, bytes and time until the table is
+ * active. It then checks the emulator reports the U frame's hash and drives the PWM the table asks for.
+ *
+ * Usage: CurveTableBenchmark [runs] (default 15)
+ */
+public final class CurveTableBenchmark {
+
+    private static final int SAMPLES = 1 << 16;
+
+    // Keeps the evaluations from being optimized away
+    private static volatile double sink;
+
+    // Hide constructor
+    private CurveTableBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 15;
+        FanProfile[] profiles = {
+            FanProfile.curve("linear", 40, 85, 40, 75, 20, 100, 1.0),
+            FanProfile.curve("quiet", 40, 85, 40, 75, 20, 100, 1.75),
+            FanProfile.curve("eager", 40, 85, 40, 75, 20, 100, 0.5),
+            FanProfile.points("points", FanCurve.parse("40:0,55:20,65:35,72:60,80:85,88:100"),
+                    FanCurve.parse("40:0,60:30,70:70,78:100")),
+        };
+
+        double[] cpu = new double[SAMPLES];
+        double[] gpu = new double[SAMPLES];
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            cpu[i] = Math.round((25 + random.nextDouble() * 80) * 10) / 10.0;
+            gpu[i] = Math.round((25 + random.nextDouble() * 80) * 10) / 10.0;
+        }
+
+        System.out.printf("%-8s %-12s %10s %12s%n", "profile", "evaluation", "ns/eval", "max error %");
+        for (FanProfile profile : profiles) {
+            FanCurveTable table = FanCurveTable.compile(profile);
+            String exactName = profile.isPoints() ? "points" : "pow";
+            report(profile.name(), exactName, runs, cpu, gpu, (c, g) -> exact(profile, c, g), profile, null);
+            report(profile.name(), "lut", runs, cpu, gpu, table::speedAt, profile, table);
+            report(profile.name(), "lut interp", runs, cpu, gpu, table::interpolatedSpeedAt, profile, table);
+        }
+
+        System.out.printf("%n%-8s %7s %7s %10s %8s %9s%n", "profile", "frames", "bytes", "upload ms", "hash", "pwm");
+        for (FanProfile profile : profiles) {
+            upload(profile);
+        }
+    }
+
+    private interface Evaluation {
+        double speed(double cpuTemp, double gpuTemp);
+    }
+
+    private static void report(String profile, String name, int runs, double[] cpu, double[] gpu, Evaluation evaluation,
+                               FanProfile exactProfile, FanCurveTable table) {
+        // Warm up for at least a second, so every evaluation is measured compiled
+        long warmUntil = System.nanoTime() + 1_000_000_000L;
+        while (System.nanoTime() < warmUntil) sink += pass(cpu, gpu, evaluation);
+
+        long[] times = new long[runs];
+        for (int r = 0; r < runs; r++) {
+            long start = System.nanoTime();
+            sink += pass(cpu, gpu, evaluation);
+            times[r] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+
+        // Against the exact curve at every telemetry temperature, one channel hot at a time
+        double maxError = 0;
+        if (table != null) {
+            for (int t = 250; t <= 1050; t++) {
+                double temp = t / 10.0;
+                maxError = Math.max(maxError, Math.abs(evaluation.speed(temp, 0) - exact(exactProfile, temp, 0)));
+                maxError = Math.max(maxError, Math.abs(evaluation.speed(0, temp) - exact(exactProfile, 0, temp)));
+            }
+        }
+        System.out.printf("%-8s %-12s %10.2f %12s%n", profile, name, (double) times[runs / 2] / SAMPLES,
+                table == null ? "-" : String.format("%.2f", maxError));
+    }
+
+    private static double pass(double[] cpu, double[] gpu, Evaluation evaluation) {
+        double sum = 0;
+        for (int i = 0; i < SAMPLES; i++) sum += evaluation.speed(cpu[i], gpu[i]);
+        return sum;
+    }
+
+    /* Speed in percent as the firmware computes it per T frame, or along the points */
+    private static double exact(FanProfile profile, double cpuTemp, double gpuTemp) {
+        if (profile.isPoints()) {
+            double cpuSpeed = profile.cpuCurve() == null ? 0 : profile.cpuCurve().speedAt(cpuTemp);
+            double gpuSpeed = profile.gpuCurve() == null ? 0 : profile.gpuCurve().speedAt(gpuTemp);
+            return Math.max(cpuSpeed, gpuSpeed);
+        }
+        if (cpuTemp <= profile.minCpu() && gpuTemp <= profile.minGpu()) return profile.minSpeed();
+        if (cpuTemp >= profile.maxCpu() || gpuTemp >= profile.maxGpu()) return profile.maxSpeed();
+        double fractionCpu = (cpuTemp - profile.minCpu()) / (profile.maxCpu() - profile.minCpu());
+        double fractionGpu = (gpuTemp - profile.minGpu()) / (profile.maxGpu() - profile.minGpu());
+        double fraction = Math.max(0, Math.max(fractionCpu, fractionGpu));
+        return profile.minSpeed() + Math.pow(fraction, profile.curveGrowthConstant()) * (profile.maxSpeed() - profile.minSpeed());
+    }
+
+    /* Sends the table frames one after the other, as BluetoothManager.sendProfileFrames does */
+    private static void upload(FanProfile profile) throws Exception {
+        FanCurveTable table = FanCurveTable.compile(profile);
+        String frames = FanProtocol.tableProfileFrames(table.cpuTable(), table.gpuTable());
+        String[] parts = FanProtocol.splitFrames(frames);
+
+        FanControllerEmulator emulator = new FanControllerEmulator();
+        AtomicInteger lastPwm = new AtomicInteger(-1);
+        emulator.setListener(new FanControllerEmulator.Listener() {
+            @Override
+            public void onPwmWrite(int pwm, long nanos) {
+                lastPwm.set(pwm);
+            }
+        });
+        PipeTransport transport = new PipeTransport(emulator);
+        ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor();
+        CompletableFuture<Integer> hash = new CompletableFuture<>();
+        try (FanLink link = transport.open("EMULATOR")) {
+            OutputStream out = link.getOutputStream();
+            CommandPipeline.FrameWriter writer = bytes -> {
+                synchronized (out) {
+                    out.write(bytes);
+                    out.flush();
+                }
+            };
+            // The T frame is answered after the PWM ramp, which may take longer than the default timeout
+            CommandPipeline pipeline = new CommandPipeline(writer, timers, CommandPipeline.DEFAULT_WINDOW_SIZE, 10_000L);
+            Thread reader = new Thread(() -> {
+                try (BufferedReader in = new BufferedReader(new InputStreamReader(link.getInputStream(), StandardCharsets.US_ASCII))) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        if (pipeline.handleInboundLine(line)) continue;
+                        if (line.startsWith("H")) hash.complete(Integer.parseInt(line.substring(1).trim()));
+                    }
+                } catch (IOException e) {
+                    // Link closed at the end of the run
+                }
+            }, "benchmark-reader");
+            reader.setDaemon(true);
+            reader.start();
+
+            long start = System.nanoTime();
+            for (String frame : parts) {
+                CommandResult result = pipeline.submit(frame).get(10, TimeUnit.SECONDS);
+                if (result.getStatus() != CommandResult.Status.ACKED) {
+                    throw new IllegalStateException(profile.name() + ": frame " + frame.trim() + " " + result);
+                }
+            }
+            long uploadMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            writer.write(FanProtocol.profileHashQuery().getBytes(StandardCharsets.US_ASCII));
+            int deviceHash = hash.get(5, TimeUnit.SECONDS);
+            boolean hashOk = deviceHash == FanProtocol.profileHash(frames);
+
+            // The emulator ramps the PWM one step per 16 ms and answers once the ramp ends
+            CommandResult result = pipeline.submit(FanProtocol.temperatureFrame(70.0, 40.0, 35.0)).get(15, TimeUnit.SECONDS);
+            int expectedPwm = FanControllerEmulator.map(table.speedAt(70.0, 40.0), 0, 100, 60, 242);
+            boolean pwmOk = result.getStatus() == CommandResult.Status.ACKED && lastPwm.get() == expectedPwm;
+
+            System.out.printf("%-8s %7d %7d %10d %8s %9s%n", profile.name(), parts.length, frames.length(), uploadMs,
+                    hashOk ? "ok" : "WRONG", pwmOk ? lastPwm.get() + " ok" : lastPwm.get() + "/" + expectedPwm);
+            pipeline.close();
+            if (!hashOk || !pwmOk) System.exit(1);
+        } finally {
+            timers.shutdownNow();
+        }
+    }
+}
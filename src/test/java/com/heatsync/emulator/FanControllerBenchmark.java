@@ -0,0 +1,183 @@
+package com.heatsync.emulator;
+
+import com.heatsync.service.bluetooth.CommandPipeline;
+import com.heatsync.service.bluetooth.FanProtocol;
+import com.heatsync.service.transport.FanLink;
+import com.heatsync.service.transport.PipeTransport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end benchmark of the host protocol against {@link FanControllerEmulator}.
+ *
+ * A synthetic CPU temperature trace (a 20 s sine between 35 and 75 degrees) is sent with each
+ * {@link Policy} over an in-memory link, and the run reports:
+ * - sensor-to-PWM latency: from writing a T frame to the firmware finishing its PWM ramp for it;
+ * - dropped frames: frames sent but never handled, mostly lost to the 64 byte receive buffer
+ *   while the firmware sits in its 1 s tachometer window;
+ * - RPM feedback latency: from a PWM change to the host receiving the next RPM line.
+ *
+ * Usage: FanControllerBenchmark [secondsPerPolicy] (default 20)
+ */
+public final class FanControllerBenchmark {
+
+    enum Policy {
+        PERIODIC_1HZ(1000, false, false),   // MonitoringController today
+        PERIODIC_10HZ(100, false, false),
+        ON_CHANGE_10HZ(100, true, false),   // Sample at 10 Hz, send on a 0.5 degree change or every 5 s
+        ACKNOWLEDGED_10HZ(100, false, true);
+
+        final long periodMs;
+        final boolean onChange;
+        final boolean acknowledged;
+
+        Policy(long periodMs, boolean onChange, boolean acknowledged) {
+            this.periodMs = periodMs;
+            this.onChange = onChange;
+            this.acknowledged = acknowledged;
+        }
+    }
+
+    private static final double CHANGE_THRESHOLD = 0.5;
+    private static final long HEARTBEAT_MS = 5000L;
+
+    // Hide constructor
+    private FanControllerBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 20L;
+        System.out.printf("%-18s %6s %7s %7s %8s %9s %9s %9s %8s %9s%n",
+                "policy", "sent", "handled", "dropped", "rxLostB", "pwm p50", "pwm p95", "pwm max", "rpm n", "rpm p50");
+        for (Policy policy : Policy.values()) {
+            run(policy, seconds);
+        }
+    }
+
+    private static void run(Policy policy, long seconds) throws Exception {
+        FanControllerEmulator emulator = new FanControllerEmulator();
+        Map<String, Long> sentAt = new ConcurrentHashMap<>();
+        List<Long> pwmLatencies = Collections.synchronizedList(new ArrayList<>());
+        List<Long> rpmLatencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong pendingPwmChange = new AtomicLong(0L);
+
+        emulator.setListener(new FanControllerEmulator.Listener() {
+            @Override
+            public void onCommand(String frame, boolean ok, long receivedNanos, long handledNanos) {
+                Long sent = sentAt.remove(frame);
+                if (ok && sent != null) pwmLatencies.add(handledNanos - sent);
+            }
+
+            @Override
+            public void onPwmWrite(int pwm, long nanos) {
+                pendingPwmChange.compareAndSet(0L, nanos);
+            }
+        });
+
+        PipeTransport transport = new PipeTransport(emulator);
+        ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor();
+        ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor();
+        try (FanLink link = transport.open("EMULATOR")) {
+            OutputStream out = link.getOutputStream();
+            CommandPipeline.FrameWriter writer = bytes -> {
+                synchronized (out) {
+                    out.write(bytes);
+                    out.flush();
+                }
+            };
+            CommandPipeline pipeline = policy.acknowledged ? new CommandPipeline(writer, timers) : null;
+
+            Thread reader = new Thread(() -> {
+                try (BufferedReader in = new BufferedReader(new InputStreamReader(link.getInputStream(), StandardCharsets.US_ASCII))) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        if (pipeline != null && pipeline.handleInboundLine(line)) continue;
+                        long changedAt = pendingPwmChange.getAndSet(0L);
+                        if (changedAt != 0L) rpmLatencies.add(System.nanoTime() - changedAt);
+                    }
+                } catch (IOException e) {
+                    // Link closed at the end of the run
+                }
+            }, "benchmark-reader");
+            reader.setDaemon(true);
+            reader.start();
+
+            AtomicLong sent = new AtomicLong();
+            long start = System.nanoTime();
+            double[] lastSent = { Double.NaN };
+            long[] lastSentAt = { 0L };
+            sender.scheduleAtFixedRate(() -> {
+                double t = (System.nanoTime() - start) / 1e9;
+                double cpu = Math.round((55 + 20 * Math.sin(2 * Math.PI * t / 20.0)) * 10) / 10.0;
+                long now = System.nanoTime();
+                if (policy.onChange && !Double.isNaN(lastSent[0])
+                        && Math.abs(cpu - lastSent[0]) < CHANGE_THRESHOLD
+                        && now - lastSentAt[0] < TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_MS)) {
+                    return;
+                }
+                lastSent[0] = cpu;
+                lastSentAt[0] = now;
+
+                String frame = FanProtocol.temperatureFrame(cpu, 45.0, 35.0);
+                // The emulator reports frames without the terminator
+                sentAt.put(frame.trim(), now);
+                sent.incrementAndGet();
+                try {
+                    if (pipeline != null) {
+                        pipeline.submit(frame);
+                    } else {
+                        writer.write(frame.getBytes(StandardCharsets.US_ASCII));
+                    }
+                } catch (IOException e) {
+                    System.err.println("Write failed: " + e.getMessage());
+                }
+            }, 0L, policy.periodMs, TimeUnit.MILLISECONDS);
+
+            Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+            sender.shutdownNow();
+            // Let in-flight frames land
+            Thread.sleep(2000L);
+
+            long handled = emulator.getFramesHandled();
+            long dropped = Math.max(0, sent.get() - handled);
+            System.out.printf("%-18s %6d %7d %7d %8d %9s %9s %9s %8d %9s%n",
+                    policy, sent.get(), handled, dropped, emulator.getBytesDropped(),
+                    ms(percentile(pwmLatencies, 50)), ms(percentile(pwmLatencies, 95)), ms(percentile(pwmLatencies, 100)),
+                    rpmLatencies.size(), ms(percentile(rpmLatencies, 50)));
+            if (pipeline != null) {
+                System.out.println("  ack pipeline: " + pipeline);
+                pipeline.close();
+            }
+        } finally {
+            sender.shutdownNow();
+            timers.shutdownNow();
+        }
+    }
+
+    private static long percentile(List<Long> samples, int percentile) {
+        List<Long> sorted;
+        synchronized (samples) {
+            if (samples.isEmpty()) return -1L;
+            sorted = new ArrayList<>(samples);
+        }
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+
+    private static String ms(long nanos) {
+        return nanos < 0 ? "-" : String.format("%.1fms", nanos / 1e6);
+    }
+}
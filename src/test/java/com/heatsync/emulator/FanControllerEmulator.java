@@ -0,0 +1,637 @@
+package com.heatsync.emulator;
+
+import com.heatsync.service.bluetooth.FanProtocol;
+import com.heatsync.service.transport.FanLink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Java model of ArduinoFanControl.ino, for driving the host stack without hardware.
+ *
+ * The model follows the firmware line by line where timing matters:
+ * - bytes arrive through a 9600 baud UART into SoftwareSerial's 64 byte receive buffer; bytes that
+ *   do not fit are lost, exactly like on the board;
+ * - loop() reads a frame with readStringUntil('\n'), which waits up to the 1000 ms stream timeout,
+ *   so an unterminated frame costs a full second and takes in whatever arrives within it;
+ * - a T frame that changes the target runs setFanSpeedGradual, blocking 16 ms per PWM step;
+ * - when nothing is buffered, loop() busy waits a 1 s tachometer window and reports the RPM only
+ *   if it moved more than 100 from the last report;
+ * - replies are written at 9600 baud with Arduino's "\r\n" line ending;
+ * - an E<token> link probe is echoed back from loop(), so its round trip includes the wait
+ *   for the current tachometer window, like any other command;
+ * - the opt-in H query is answered with the CRC of the last applied A, C or U frame, which the
+ *   firmware computes on receipt (0 before any profile);
+ * - the USB port speaks the same protocol, answered on USB; the board reads it before the
+ *   Bluetooth port, and its first protocol line silences the debug messages the firmware prints
+ *   there for the Serial Monitor;
+ * - L frames fill the two 141 entry speed tables; while they arrive the A curve runs, and a U
+ *   frame whose CRC matches the tables switches T frames over to a table lookup.
+ *
+ * A simulated fan turns the PWM output into tachometer pulses (two per revolution) with a first
+ * order lag and a stall threshold.
+ *
+ * Serve a link with {@link #accept(FanLink)} (e.g. as the device of a
+ * {@link com.heatsync.service.transport.PipeTransport}) or over TCP with {@link #listen(int)}; a
+ * board reached over both Bluetooth and USB comes from {@link #board()}.
+ */
+public class FanControllerEmulator implements Consumer<FanLink> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FanControllerEmulator.class);
+
+    static final int MODE_AUTO = 0;
+    static final int MODE_CONSTANT = 1;
+    static final int MODE_TABLE = 2;
+    static final int TABLE_SIZE = 141;           // 30.0 to 100.0 °C in half degrees
+
+    static final int DEFAULT_BAUD = 9600;
+    static final int RX_BUFFER_SIZE = 64;        // _SS_MAX_RX_BUFF, SERIAL_RX_BUFFER_SIZE
+    static final int TX_BUFFER_SIZE = 64;        // SERIAL_TX_BUFFER_SIZE
+    static final long STREAM_TIMEOUT_MS = 1000L; // Stream::setTimeout default
+    static final long UPDATE_DELAY_MS = 16L;     // updateDelay
+    static final long RPM_WINDOW_MS = 1000L;
+    static final int RPM_DEADBAND = 100;
+
+    // Simulated fan
+    private static final double MAX_RPM = 2400.0;
+    private static final int STALL_PWM = 40;
+    private static final double FAN_TIME_CONSTANT_S = 0.4;
+
+    /**
+     * Observes the emulated firmware. Times are {@link System#nanoTime()} values.
+     */
+    public interface Listener {
+        /** A frame was read and handled; {@code ok} is false for unknown commands. */
+        default void onCommand(String frame, boolean ok, long receivedNanos, long handledNanos) {}
+        /** analogWrite on the fan pin. */
+        default void onPwmWrite(int pwm, long nanos) {}
+        /** An RPM line was sent to the host. */
+        default void onRpmReport(int rpm, long nanos) {}
+    }
+
+    private final int baud;
+    private volatile Listener listener = new Listener() {};
+
+    // Counters across all boards
+    private final AtomicLong framesHandled = new AtomicLong();
+    private final AtomicLong framesRejected = new AtomicLong();
+    private final AtomicLong bytesDropped = new AtomicLong();
+    private final AtomicLong rpmReports = new AtomicLong();
+
+    public FanControllerEmulator() {
+        this(DEFAULT_BAUD);
+    }
+
+    public FanControllerEmulator(int baud) {
+        this.baud = baud;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener != null ? listener : new Listener() {};
+    }
+
+    public long getFramesHandled() { return framesHandled.get(); }
+    public long getFramesRejected() { return framesRejected.get(); }
+    public long getBytesDropped() { return bytesDropped.get(); }
+    public long getRpmReports() { return rpmReports.get(); }
+
+    /**
+     * Serves the device end of a link as the Bluetooth port of a new board, on new threads until
+     * the link closes.
+     */
+    @Override
+    public void accept(FanLink link) {
+        new Board().attachBluetooth(link);
+    }
+
+    /**
+     * A board whose Bluetooth and USB ports are attached separately, as a controller wired to both
+     * the HC-05 module and a USB cable.
+     */
+    public Board board() {
+        return new Board();
+    }
+
+    /**
+     * Accepts TCP connections on a port, one board per connection, until the thread is interrupted
+     * or the socket fails.
+     *
+     * @return The server socket, closing it stops listening
+     */
+    public ServerSocket listen(int port) throws IOException {
+        ServerSocket server = new ServerSocket(port);
+        Thread acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    socket.setTcpNoDelay(true);
+                    new Board().attach(true, socket.getInputStream(), socket.getOutputStream(),
+                            "emulator-" + socket.getRemoteSocketAddress());
+                } catch (IOException e) {
+                    if (!server.isClosed()) LOGGER.warn("Emulator accept failed", e);
+                    return;
+                }
+            }
+        }, "emulator-acceptor-" + port);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        LOGGER.info("Fan controller emulator listening on port {}", server.getLocalPort());
+        return server;
+    }
+
+    /**
+     * One emulated board: the firmware's loop() over its two ports. The loop runs while either port
+     * has a link, and starts again when a port is attached after both were gone.
+     *
+     * Like the firmware, the USB port is read first. A line starting with a digit is a PWM value
+     * typed in the Serial Monitor; any other line is the host's protocol and switches the debug
+     * messages off, so the USB port then carries nothing but replies and RPM reports.
+     */
+    public final class Board {
+        private final Port bluetooth = new Port(true);
+        private final Port usb = new Port(false);
+        private Thread loopThread; // Guarded by the board's monitor
+
+        // Firmware globals
+        private int lastRpm = 0;
+        private int targetPwm = 0;
+        private int currentPwm = 0;
+        private int cpuMinTemp = 30, gpuMinTemp = 30, cpuMaxTemp = 85, gpuMaxTemp = 65;
+        private int pwmMinVel = 65, pwmMaxVel = 242;
+        private double k = 1;
+        private int opMode = MODE_AUTO;
+        private int profileHash = 0;
+        private boolean serialHost = false;
+        private final byte[] cpuTable = new byte[TABLE_SIZE];
+        private final byte[] gpuTable = new byte[TABLE_SIZE];
+
+        // Fan and tachometer
+        private int pinPwm = 0;
+        private double fanRpm = 0;
+        private double pulses = 0;
+        private long fanUpdatedNanos = System.nanoTime();
+
+        private Board() {}
+
+        /** Serves a link as the HC-05 on SoftwareSerial until the link closes. */
+        public void attachBluetooth(FanLink link) {
+            attach(true, link.getInputStream(), link.getOutputStream(), "emulator-" + link.getAddress());
+        }
+
+        /** Serves a link as the USB cable on the hardware serial port until the link closes. */
+        public void attachUsb(FanLink link) {
+            attach(false, link.getInputStream(), link.getOutputStream(), "emulator-usb-" + link.getAddress());
+        }
+
+        private synchronized void attach(boolean software, InputStream in, OutputStream out, String name) {
+            (software ? bluetooth : usb).attach(in, out, name);
+            if (loopThread == null) {
+                loopThread = new Thread(this::run, name + "-loop");
+                loopThread.setDaemon(true);
+                loopThread.start();
+            }
+        }
+
+        private void run() {
+            analogWrite(targetPwm);
+            try {
+                while (true) {
+                    synchronized (this) {
+                        if (!bluetooth.running && !usb.running) {
+                            loopThread = null;
+                            return;
+                        }
+                    }
+                    loop();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                synchronized (this) {
+                    loopThread = null;
+                }
+            }
+        }
+
+        private void loop() throws InterruptedException {
+            if (usb.available()) {
+                String read = usb.readStringUntil('\n');
+                if (Character.isDigit(charAt(read, 0))) {
+                    // PWM value typed in the Serial Monitor, applied as is
+                    targetPwm = (int) toInt(read);
+                    if (targetPwm != currentPwm) {
+                        setFanSpeedGradual(targetPwm, UPDATE_DELAY_MS);
+                        currentPwm = targetPwm;
+                    }
+                    debug("Pwm da fan alterado: " + targetPwm);
+                } else {
+                    serialHost = true;
+                    handleLine(usb, read);
+                }
+            } else if (bluetooth.available()) {
+                handleLine(bluetooth, bluetooth.readStringUntil('\n'));
+            } else {
+                long start = System.nanoTime();
+                resetCounter();
+                sleepUntil(start + TimeUnit.MILLISECONDS.toNanos(RPM_WINDOW_MS));
+                int rpm = (int) (readCounter() * 60) / 2;
+
+                if (lastRpm < rpm - RPM_DEADBAND || lastRpm > rpm + RPM_DEADBAND) {
+                    bluetooth.println(Integer.toString(rpm));
+                    usb.println(serialHost ? Integer.toString(rpm) : rpm + " rpm");
+                    rpmReports.incrementAndGet();
+                    listener.onRpmReport(rpm, System.nanoTime());
+                    analogWrite(targetPwm);
+                    lastRpm = rpm;
+                }
+            }
+        }
+
+        // Replies go back through the port the line came from
+        private void handleLine(Port port, String read) throws InterruptedException {
+            long receivedNanos = port.frameStartNanos;
+            if (charAt(read, 0) == '#') {
+                int sep = read.indexOf(' ');
+                int seq = (int) toInt(sep > 0 ? read.substring(1, sep) : read.substring(1));
+                boolean ok = sep > 1 && handleCommand(read.substring(sep + 1), receivedNanos);
+                port.println((ok ? "K" : "N") + seq);
+            } else if (charAt(read, 0) == 'E') {
+                // Link probe: echoed back as is
+                port.println(read);
+            } else if (charAt(read, 0) == 'H') {
+                // Profile hash query, answered without touching the operation mode
+                port.println("H" + profileHash);
+            } else {
+                handleCommand(read, receivedNanos);
+            }
+        }
+
+        private void debug(String message) {
+            if (!serialHost) usb.println(message);
+        }
+
+        private boolean handleCommand(String read, long receivedNanos) throws InterruptedException {
+            String frame = read;
+            char command = charAt(read, 0);
+            boolean ok = true;
+            if (command == 'T' && opMode == MODE_CONSTANT) {
+                // Temperatures do not move a constant PWM; the frame is accepted and ignored
+                debug("BT Read (Temp) ignorado no modo constante");
+            } else if (command == 'T') {
+                read = read.substring(1);
+                int pos1 = read.indexOf(':');
+                int pos2 = read.indexOf(':', pos1 + 1);
+                float cpuTemp = (float) toFloat(field(read, 0, pos1));
+                float gpuTemp = (float) toFloat(field(read, pos1 + 1, pos2));
+                debug("BT Read (Temp): " + read);
+                targetPwm = opMode == MODE_TABLE ? tableToPwm(cpuTemp, gpuTemp) : temperatureToPwm(cpuTemp, gpuTemp);
+                if (targetPwm != currentPwm) {
+                    debug("Pwm da fan alterado: " + targetPwm);
+                    setFanSpeedGradual(targetPwm, UPDATE_DELAY_MS);
+                    currentPwm = targetPwm;
+                }
+                debug("Pwm da fan igual: " + targetPwm);
+            } else if (command == 'C') {
+                opMode = MODE_CONSTANT;
+                int percent = (int) toInt(read.substring(1));
+                targetPwm = percentToPwm(percent, 0, pwmMaxVel);
+                debug("BT Read (PWM %): " + percent);
+                analogWrite(targetPwm);
+            } else if (command == 'A') {
+                opMode = MODE_AUTO;
+                debug("BT Read : " + read);
+                String config = read.replace(",", ".").substring(1);
+                int pos1 = config.indexOf(':');
+                int pos2 = config.indexOf(':', pos1 + 1);
+                int pos3 = config.indexOf(':', pos2 + 1);
+                int pos4 = config.indexOf(':', pos3 + 1);
+                int pos5 = config.indexOf(':', pos4 + 1);
+                int pos6 = config.indexOf(':', pos5 + 1);
+                cpuMinTemp = (int) toInt(field(config, 0, pos1));
+                gpuMinTemp = (int) toInt(field(config, pos1 + 1, pos2));
+                cpuMaxTemp = (int) toInt(field(config, pos2 + 1, pos3));
+                gpuMaxTemp = (int) toInt(field(config, pos3 + 1, pos4));
+                pwmMinVel = percentToPwm((int) toInt(field(config, pos4 + 1, pos5)), 60, 242);
+                pwmMaxVel = percentToPwm((int) toInt(field(config, pos5 + 1, pos6)), 60, 242);
+                k = toFloat(field(config, pos6 + 1, -1));
+                debug("Profile updated: " + pwmMinVel + ":" + pwmMaxVel + ":" + k);
+            } else if (command == 'L') {
+                ok = storeTableEntries(read);
+                // The tables change under the lookup; the A curve runs until a U frame checks them
+                if (ok && opMode == MODE_TABLE) opMode = MODE_AUTO;
+                if (!ok) debug("BT Invalid table entries: " + read);
+            } else if (command == 'U') {
+                ok = (int) toInt(read.substring(1)) == FanProtocol.tableCrc(cpuTable, gpuTable);
+                if (ok) opMode = MODE_TABLE;
+                debug(ok ? "Table profile active" : "BT Table CRC mismatch: " + read);
+            } else {
+                ok = false;
+                debug("BT Unknown command: " + read);
+            }
+
+            if (ok && (command == 'A' || command == 'C' || command == 'U')) {
+                profileHash = FanProtocol.profileHash(frame);
+            }
+            if (ok) framesHandled.incrementAndGet(); else framesRejected.incrementAndGet();
+            listener.onCommand(frame, ok, receivedNanos, System.nanoTime());
+            return ok;
+        }
+
+        // L<c|g><start>:<hex pairs>; nothing is stored unless the whole frame is valid
+        private boolean storeTableEntries(String read) {
+            char table = charAt(read, 1);
+            int colon = read.indexOf(':');
+            if ((table != 'c' && table != 'g') || colon < 3) return false;
+            int start = (int) toInt(read.substring(2, colon));
+            int digits = read.length() - colon - 1;
+            int count = digits / 2;
+            if (digits == 0 || digits % 2 != 0 || start < 0 || start + count > TABLE_SIZE) return false;
+
+            byte[] entries = new byte[count];
+            for (int i = 0; i < count; i++) {
+                int high = Character.digit(read.charAt(colon + 1 + 2 * i), 16);
+                int low = Character.digit(read.charAt(colon + 2 + 2 * i), 16);
+                if (high < 0 || low < 0 || high * 16 + low > 100) return false;
+                entries[i] = (byte) (high * 16 + low);
+            }
+            System.arraycopy(entries, 0, table == 'c' ? cpuTable : gpuTable, start, count);
+            return true;
+        }
+
+        private int tableToPwm(float cpuTemp, float gpuTemp) {
+            if (cpuTemp < 0 || gpuTemp < 0) return currentPwm;
+            int percent = Math.max(cpuTable[tableIndex(cpuTemp)], gpuTable[tableIndex(gpuTemp)]);
+            return percentToPwm(percent, 60, 242);
+        }
+
+        private int tableIndex(float temp) {
+            int index = (int) ((temp - 30) * 2);
+            if (index < 0) return 0;
+            return Math.min(index, TABLE_SIZE - 1);
+        }
+
+        private int percentToPwm(int percent, int infLimit, int supLimit) {
+            if (percent < 0) percent = 0;
+            if (percent > 100) percent = 100;
+            return map(percent, 0, 100, infLimit, supLimit);
+        }
+
+        private int temperatureToPwm(float cpuTemp, float gpuTemp) {
+            if (cpuTemp < 0 || gpuTemp < 0) return currentPwm;
+            if (cpuTemp <= cpuMinTemp && gpuTemp <= gpuMinTemp) return pwmMinVel;
+            if (cpuTemp >= cpuMaxTemp || gpuTemp >= gpuMaxTemp) return pwmMaxVel;
+
+            double percentageCpu = (cpuTemp - cpuMinTemp) / (cpuMaxTemp - cpuMinTemp);
+            double percentageGpu = (gpuTemp - gpuMinTemp) / (gpuMaxTemp - gpuMinTemp);
+            double percentage = Math.max(percentageCpu, percentageGpu);
+            double finalPercentage = Math.pow(percentage, k);
+            return (int) (finalPercentage * (pwmMaxVel - pwmMinVel) + pwmMinVel);
+        }
+
+        private void setFanSpeedGradual(int targetPWM, long stepDelayMs) throws InterruptedException {
+            // uint8_t parameter, as on the board
+            targetPWM &= 0xFF;
+            while (currentPwm != targetPwm) {
+                if (currentPwm < targetPWM) currentPwm++;
+                else currentPwm--;
+                analogWrite(currentPwm);
+                Thread.sleep(stepDelayMs);
+            }
+        }
+
+        // Fan and tachometer -------------------------------------------------------------------
+
+        private synchronized void analogWrite(int pwm) {
+            advanceFan();
+            pinPwm = Math.max(0, Math.min(255, pwm));
+            listener.onPwmWrite(pinPwm, System.nanoTime());
+        }
+
+        private synchronized void resetCounter() {
+            advanceFan();
+            pulses = 0;
+        }
+
+        private synchronized long readCounter() {
+            advanceFan();
+            return (long) pulses;
+        }
+
+        // Must hold the monitor. Integrates the fan speed and tachometer pulses up to now.
+        private void advanceFan() {
+            long now = System.nanoTime();
+            double dt = (now - fanUpdatedNanos) / 1e9;
+            fanUpdatedNanos = now;
+            if (dt <= 0) return;
+
+            double target = pinPwm < STALL_PWM ? 0 : MAX_RPM * pinPwm / 255.0;
+            double start = fanRpm;
+            double decay = Math.exp(-dt / FAN_TIME_CONSTANT_S);
+            fanRpm = target + (start - target) * decay;
+            // Exact integral of the exponential approach over dt
+            double revolutions = (target * dt + (start - target) * FAN_TIME_CONSTANT_S * (1 - decay)) / 60.0;
+            pulses += revolutions * 2;
+        }
+        // Serial -------------------------------------------------------------------------------
+
+        /**
+         * One UART of the board: SoftwareSerial to the HC-05, or the hardware serial port behind
+         * the USB bridge. Both keep 64 received bytes and lose the rest. SoftwareSerial transmits
+         * with interrupts off, blocking the loop for the whole line; the hardware port sends from a
+         * 64 byte buffer by interrupt and only blocks once that buffer is full. A port without a
+         * link still spends the transmit time, the bytes just go nowhere.
+         */
+        private final class Port {
+            private final boolean software;
+            private final long byteNanos = TimeUnit.SECONDS.toNanos(10) / baud; // 8N1
+
+            // The attached link; replaced when the port is attached again
+            private volatile InputStream in;
+            private volatile OutputStream out;
+            private volatile boolean running = false;
+
+            // Receive ring buffer, filled by the "interrupt" thread
+            private final byte[] rx = new byte[RX_BUFFER_SIZE];
+            private final long[] rxArrival = new long[RX_BUFFER_SIZE];
+            private int rxHead = 0, rxSize = 0;
+            private volatile long frameStartNanos;
+
+            // When the hardware port's transmit buffer drains
+            private long txIdleNanos;
+
+            Port(boolean software) {
+                this.software = software;
+            }
+
+            synchronized void attach(InputStream in, OutputStream out, String name) {
+                this.in = in;
+                this.out = out;
+                rxHead = 0;
+                rxSize = 0;
+                running = true;
+                Thread receiver = new Thread(() -> receive(in, out), name + "-rx");
+                receiver.setDaemon(true);
+                receiver.start();
+            }
+
+            // UART receive: one byte per character time, dropped if the buffer is full
+            private void receive(InputStream link, OutputStream linkOut) {
+                long next = System.nanoTime();
+                try {
+                    int b;
+                    while ((b = link.read()) >= 0) {
+                        next = Math.max(next, System.nanoTime()) + byteNanos;
+                        sleepUntil(next);
+                        synchronized (this) {
+                            if (in != link) return;
+                            if (rxSize == rx.length) {
+                                bytesDropped.incrementAndGet();
+                                continue;
+                            }
+                            int slot = (rxHead + rxSize) % rx.length;
+                            rx[slot] = (byte) b;
+                            rxArrival[slot] = System.nanoTime();
+                            rxSize++;
+                            notifyAll();
+                        }
+                    }
+                } catch (IOException e) {
+                    LOGGER.debug("Emulator link read ended: {}", e.getMessage());
+                } finally {
+                    synchronized (this) {
+                        // A port attached again meanwhile keeps its new link
+                        if (in == link) {
+                            in = null;
+                            out = null;
+                            running = false;
+                            notifyAll();
+                        }
+                    }
+                    try {
+                        linkOut.close();
+                    } catch (IOException ignored) {
+                        // Already gone
+                    }
+                }
+            }
+
+            synchronized boolean available() {
+                return rxSize > 0;
+            }
+
+            private synchronized int timedRead() throws InterruptedException {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STREAM_TIMEOUT_MS);
+                while (rxSize == 0) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0 || !running) return -1;
+                    TimeUnit.NANOSECONDS.timedWait(this, left);
+                }
+                int b = rx[rxHead] & 0xFF;
+                rxHead = (rxHead + 1) % rx.length;
+                rxSize--;
+                return b;
+            }
+
+            String readStringUntil(char terminator) throws InterruptedException {
+                synchronized (this) {
+                    frameStartNanos = rxArrival[rxHead];
+                }
+                StringBuilder sb = new StringBuilder();
+                int c;
+                while ((c = timedRead()) >= 0 && c != terminator) {
+                    sb.append((char) c);
+                }
+                return sb.toString();
+            }
+
+            void println(String line) {
+                byte[] bytes = (line + "\r\n").getBytes(StandardCharsets.US_ASCII);
+                long now = System.nanoTime();
+                OutputStream link = out;
+                if (link != null) {
+                    try {
+                        link.write(bytes);
+                        link.flush();
+                    } catch (IOException e) {
+                        // The receive side sees the link end and detaches the port
+                        LOGGER.debug("Emulator link write failed: {}", e.getMessage());
+                    }
+                }
+                if (software) {
+                    sleepUntil(now + bytes.length * byteNanos);
+                } else {
+                    txIdleNanos = Math.max(txIdleNanos, now) + bytes.length * byteNanos;
+                    sleepUntil(txIdleNanos - TX_BUFFER_SIZE * byteNanos);
+                }
+            }
+        }
+    }
+
+    // Arduino helpers ------------------------------------------------------------------------------
+
+    static int map(long x, long inMin, long inMax, long outMin, long outMax) {
+        return (int) ((x - inMin) * (outMax - outMin) / (inMax - inMin) + outMin);
+    }
+
+    private static char charAt(String s, int index) {
+        return index < s.length() ? s.charAt(index) : 0;
+    }
+
+    // String::substring with an indexOf result that may be -1 (meaning "to the end")
+    private static String field(String s, int from, int to) {
+        if (from < 0 || from > s.length()) return "";
+        return to < from ? s.substring(from) : s.substring(from, to);
+    }
+
+    // String::toInt (atol): optional whitespace and sign, then digits; 0 if none
+    static long toInt(String s) {
+        int i = 0, n = s.length();
+        while (i < n && Character.isWhitespace(s.charAt(i))) i++;
+        boolean negative = false;
+        if (i < n && (s.charAt(i) == '-' || s.charAt(i) == '+')) negative = s.charAt(i++) == '-';
+        long value = 0;
+        while (i < n && Character.isDigit(s.charAt(i))) value = value * 10 + (s.charAt(i++) - '0');
+        return negative ? -value : value;
+    }
+
+    // String::toFloat (atof): longest numeric prefix; 0 if none
+    static double toFloat(String s) {
+        String t = s.trim();
+        int end = 0;
+        while (end < t.length() && "+-.0123456789".indexOf(t.charAt(end)) >= 0) end++;
+        while (end > 0) {
+            try {
+                return Double.parseDouble(t.substring(0, end));
+            } catch (NumberFormatException e) {
+                end--;
+            }
+        }
+        return 0;
+    }
+
+    private static void sleepUntil(long deadlineNanos) {
+        long left;
+        while ((left = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(left);
+        }
+    }
+
+    /**
+     * Runs the emulator as a TCP server for -Dheatsync.transport=tcp://localhost:port.
+     *
+     * @param args [port] (default 7777)
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7777;
+        new FanControllerEmulator().listen(port);
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,205 @@
+package com.heatsync.emulator;
+
+import com.heatsync.TestConfigDir;
+import com.heatsync.service.bluetooth.BluetoothManager;
+import com.heatsync.service.bluetooth.CommandPipeline;
+import com.heatsync.service.bluetooth.ConnectionState;
+import com.heatsync.service.bluetooth.FanProtocol;
+import com.heatsync.service.transport.FanLink;
+import com.heatsync.service.transport.FanLinkTransport;
+import com.heatsync.service.transport.FaultInjectingTransport;
+import com.heatsync.service.transport.PipeTransport;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link BluetoothManager} against a {@link FanControllerEmulator} behind a
+ * {@link FaultInjectingTransport} and checks that the stack recovers from sustained faults.
+ *
+ * The run sends telemetry and acknowledged profile frames for the whole duration while the link
+ * suffers latency, jitter, a bandwidth cap, corruption, partial writes, failed opens and abrupt
+ * disconnects. It fails if:
+ * - a lost link took longer than the limit to come back;
+ * - two opens ran at the same time, or a single lost link started more than one reconnect cycle;
+ * - the acknowledged command queue or the write batch grew past its bound;
+ * - the stack left threads behind once shut down;
+ * - the same seed did not give the same fault schedule.
+ *
+ * -Dheatsync.fault.seconds and -Dheatsync.fault.seed change the run (default 20 s, seed 42).
+ */
+public class FaultInjectionTest {
+    private static final long RECOVERY_LIMIT_MS = 20_000L;
+    private static final int QUEUE_LIMIT = CommandPipeline.DEFAULT_WINDOW_SIZE + 32;
+    private static final int THREAD_SLACK = 2;
+
+    private static final long SECONDS = Long.getLong("heatsync.fault.seconds", 20L);
+    private static final long SEED = Long.getLong("heatsync.fault.seed", 42L);
+
+    @BeforeClass
+    public static void keepConfigAway() throws IOException {
+        // Connecting saves the device address in the config file
+        TestConfigDir.use();
+    }
+
+    @Test
+    public void recoversFromSustainedFaults() throws Exception {
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        ScheduledExecutorService faultTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "fault-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        FaultInjectingTransport.Faults faults = new FaultInjectingTransport.Faults()
+                .seed(SEED)
+                .openFailureRate(0.3)
+                .openLatencyMs(150L)
+                .latencyMs(20L)
+                .jitterMs(30L)
+                .bytesPerSecond(960L)
+                .corruptionRate(0.002)
+                .partialWriteRate(0.01)
+                .meanTimeToDisconnectMs(6000L);
+        FaultInjectingTransport transport = new FaultInjectingTransport(
+                new PipeTransport(new FanControllerEmulator()), faults, faultTimer);
+
+        BluetoothManager manager = new BluetoothManager(transport);
+        manager.setAcknowledgedMode(true);
+
+        // Outage durations, from leaving CONNECTED to entering it again
+        List<Long> recoveries = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong lostAt = new AtomicLong();
+        AtomicInteger connects = new AtomicInteger();
+        AtomicInteger cycles = new AtomicInteger();
+        manager.addConnectionStateListener((from, to) -> {
+            if (from == ConnectionState.CONNECTED) {
+                lostAt.set(System.nanoTime());
+            }
+            if (to == ConnectionState.CONNECTED) {
+                connects.incrementAndGet();
+                long since = lostAt.getAndSet(0L);
+                if (since != 0L) recoveries.add((System.nanoTime() - since) / 1_000_000L);
+            }
+            // A failed attempt moves CONNECTING -> BACKOFF; any other way in starts a new cycle
+            if (to == ConnectionState.BACKOFF && from != ConnectionState.CONNECTING) {
+                cycles.incrementAndGet();
+            }
+        });
+
+        int maxQueue = 0;
+        int maxPending = 0;
+        boolean endedConnected;
+        try {
+            assertTrue("initial connect failed 10 times", connect(manager, "EMU"));
+
+            long end = System.currentTimeMillis() + SECONDS * 1000L;
+            for (int tick = 0; System.currentTimeMillis() < end; tick++) {
+                manager.sendTemperatureData(40 + tick % 30, 35, 30);
+                if (tick % 5 == 0) {
+                    manager.sendCommandAcknowledged(FanProtocol.autoProfileFrame(30, 30, 80, 70, tick % 100, 100, 1.0));
+                }
+                CommandPipeline pipeline = manager.getCommandPipeline();
+                if (pipeline != null) {
+                    maxQueue = Math.max(maxQueue, pipeline.getInFlightCount() + pipeline.getQueuedCount());
+                }
+                maxPending = Math.max(maxPending, manager.getOutboundBatcher().getPendingBytes());
+                Thread.sleep(250L);
+            }
+
+            // Let a final outage finish
+            long settle = System.currentTimeMillis() + RECOVERY_LIMIT_MS;
+            while (!manager.isConnected() && System.currentTimeMillis() < settle) {
+                Thread.sleep(100L);
+            }
+            endedConnected = manager.isConnected();
+        } finally {
+            manager.shutdown();
+            faultTimer.shutdownNow();
+        }
+
+        long[] sorted = recoveries.stream().mapToLong(Long::longValue).sorted().toArray();
+        long linksLost = transport.getDisconnects();
+        long opened = transport.getOpens() - transport.getFailedOpens();
+        long slowest = sorted.length == 0 ? 0L : sorted[sorted.length - 1];
+
+        assertTrue("not connected at the end of the run", endedConnected);
+        assertTrue("slowest recovery " + slowest + " ms over " + RECOVERY_LIMIT_MS + " ms", slowest <= RECOVERY_LIMIT_MS);
+        assertTrue(transport.getMaxConcurrentOpens() + " opens ran concurrently", transport.getMaxConcurrentOpens() <= 1);
+        assertTrue(cycles.get() + " reconnect cycles for " + linksLost + " dropped links", cycles.get() <= linksLost + 1);
+        assertTrue(connects.get() + " connects for " + opened + " opened links", connects.get() == opened);
+        assertTrue("ack queue reached " + maxQueue + ", limit " + QUEUE_LIMIT, maxQueue <= QUEUE_LIMIT);
+        assertTrue("write batch reached " + maxPending + " bytes", maxPending <= 64);
+
+        // Threads of the last link and the stack's pools end shortly after shutdown
+        int threadsAfter = ManagementFactory.getThreadMXBean().getThreadCount();
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (threadsAfter > threadsBefore + THREAD_SLACK && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100L);
+            threadsAfter = ManagementFactory.getThreadMXBean().getThreadCount();
+        }
+        assertTrue("threads grew from " + threadsBefore + " to " + threadsAfter + " after shutdown",
+                threadsAfter <= threadsBefore + THREAD_SLACK);
+    }
+
+    // connectToDevice only starts an attempt, and a failed manual attempt is not retried. A new
+    // manager also makes an attempt of its own when an earlier test saved a device
+    private static boolean connect(BluetoothManager manager, String address) throws InterruptedException {
+        for (int i = 0; i < 10; i++) {
+            awaitAttempt(manager);
+            if (manager.isConnected()) return true;
+            manager.connectToDevice(address);
+        }
+        awaitAttempt(manager);
+        return manager.isConnected();
+    }
+
+    private static void awaitAttempt(BluetoothManager manager) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (manager.getConnectionState() == ConnectionState.CONNECTING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20L);
+        }
+    }
+
+    // Two transports with the same seed must corrupt and cut the same bytes
+    @Test
+    public void sameSeedGivesSameFaultSchedule() throws IOException {
+        assertArrayEquals(corruptedCopy(SEED), corruptedCopy(SEED));
+    }
+
+    private static byte[] corruptedCopy(long seed) throws IOException {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        FanLinkTransport capture = new FanLinkTransport() {
+            @Override
+            public FanLink open(String address) {
+                return new FanLink(address, new ByteArrayInputStream(new byte[0]), sink, () -> {}, 0L);
+            }
+
+            @Override
+            public String getName() {
+                return "capture";
+            }
+        };
+        FaultInjectingTransport.Faults faults = new FaultInjectingTransport.Faults().seed(seed).corruptionRate(0.05);
+        try (FanLink link = new FaultInjectingTransport(capture, faults, null).open("X")) {
+            for (int i = 0; i < 50; i++) {
+                link.getOutputStream().write(FanProtocol.temperatureFrame(40 + i, 35, 30).getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        return sink.toByteArray();
+    }
+}
@@ -0,0 +1,221 @@
+package com.heatsync.emulator;
+
+import com.heatsync.service.bluetooth.CommandPipeline;
+import com.heatsync.service.bluetooth.CommandResult;
+import com.heatsync.service.bluetooth.FanProtocol;
+import com.heatsync.service.bluetooth.LinkSupervisor;
+import com.heatsync.service.bluetooth.StackExecutor;
+import com.heatsync.service.transport.FanLink;
+import com.heatsync.service.transport.FanLinkTransport;
+import com.heatsync.service.transport.PipeTransport;
+import com.heatsync.service.transport.SerialTransport;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives {@link SerialTransport} and {@link LinkSupervisor} over a pseudo-terminal pair.
+ *
+ * python3 opens two pseudo-terminals and copies bytes between their masters, so the two slave
+ * devices behave like the ends of a USB serial cable. One {@link FanControllerEmulator} board serves
+ * both paths, as the firmware does: its USB port on one pty end, which the host opens through
+ * SerialTransport with stty and NIO file channels exactly as for a real /dev/ttyACM0, and its
+ * Bluetooth port behind an in-memory pipe standing in for the HC-05. A third path that reads but
+ * never answers, like a port with another device on it, comes first in the preference order.
+ *
+ * The run sends acknowledged A and T frames through the supervised link, cuts the Bluetooth path
+ * halfway and checks that
+ * - every frame was acknowledged, and handled once by the board;
+ * - the PWM never dropped below the profile floor, so no protocol line reached the Serial
+ *   Monitor's PWM input;
+ * - the silent path got probes only, never a frame.
+ *
+ * Skipped where python3 or stty is not on the PATH, e.g. on Windows.
+ */
+public class SerialFailoverTest {
+    private static final int FRAMES = 20;
+
+    private static final String PTY_BRIDGE = String.join("\n",
+            "import os, pty, select, sys",
+            "m1, s1 = pty.openpty()",
+            "m2, s2 = pty.openpty()",
+            "print(os.ttyname(s1)); print(os.ttyname(s2)); sys.stdout.flush()",
+            "while True:",
+            "    r, _, _ = select.select([m1, m2, 0], [], [])",
+            "    if 0 in r and not os.read(0, 1): break",
+            "    for a, b in ((m1, m2), (m2, m1)):",
+            "        if a in r:",
+            "            try: data = os.read(a, 4096)",
+            "            except OSError: data = b''",
+            "            if data: os.write(b, data)");
+
+    // Lowest PWM the A frames below allow: 30% mapped to 60-242
+    private static final int PWM_FLOOR = FanControllerEmulator.map(30, 0, 100, 60, 242);
+
+    @BeforeClass
+    public static void needsPtyTools() {
+        Assume.assumeTrue("python3 is not on the PATH", onPath("python3"));
+        Assume.assumeTrue("stty is not on the PATH", onPath("stty"));
+    }
+
+    @Test(timeout = 120_000L)
+    public void failsOverToSerialWithoutLosingFrames() throws Exception {
+        Process bridge = new ProcessBuilder("python3", "-c", PTY_BRIDGE).start();
+        BufferedReader names = new BufferedReader(new InputStreamReader(bridge.getInputStream(), StandardCharsets.US_ASCII));
+        String deviceEnd = names.readLine();
+        String hostEnd = names.readLine();
+        Assume.assumeTrue("python3 could not open a pty pair", deviceEnd != null && hostEnd != null);
+
+        FanControllerEmulator emulator = new FanControllerEmulator();
+        AtomicInteger handled = new AtomicInteger();
+        AtomicInteger lowPwm = new AtomicInteger(-1);
+        AtomicBoolean aboveFloor = new AtomicBoolean();
+        emulator.setListener(new FanControllerEmulator.Listener() {
+            @Override
+            public void onCommand(String frame, boolean ok, long receivedNanos, long handledNanos) {
+                if (ok) handled.incrementAndGet();
+            }
+
+            @Override
+            public void onPwmWrite(int pwm, long nanos) {
+                // The first ramp starts from 0; once above the floor the fan must stay there
+                if (pwm >= PWM_FLOOR) aboveFloor.set(true);
+                else if (aboveFloor.get()) lowPwm.set(pwm);
+            }
+        });
+
+        // A path that takes every byte and answers none
+        ByteArrayOutputStream silentBytes = new ByteArrayOutputStream();
+        PipeTransport silent = new PipeTransport(link -> {
+            Thread sink = new Thread(() -> {
+                byte[] buffer = new byte[256];
+                int n;
+                try {
+                    while ((n = link.getInputStream().read(buffer)) >= 0) {
+                        synchronized (silentBytes) {
+                            silentBytes.write(buffer, 0, n);
+                        }
+                    }
+                } catch (IOException ignored) {
+                    // Closed
+                }
+            }, "test-silent");
+            sink.setDaemon(true);
+            sink.start();
+        });
+
+        StackExecutor executor = new StackExecutor("failover-test");
+        ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor();
+        List<String> failures = new ArrayList<>();
+        int acked = 0;
+        try {
+            FanControllerEmulator.Board board = emulator.board();
+            board.attachUsb(new SerialTransport(deviceEnd, SerialTransport.DEFAULT_BAUD, 0L).open("device"));
+
+            // The stand-in Bluetooth path, with a handle to cut its link
+            AtomicReference<FanLink> bluetoothLink = new AtomicReference<>();
+            PipeTransport pipe = new PipeTransport(board::attachBluetooth);
+            FanLinkTransport bluetooth = new FanLinkTransport() {
+                @Override
+                public FanLink open(String address) throws IOException {
+                    FanLink link = pipe.open(address);
+                    bluetoothLink.set(link);
+                    return link;
+                }
+
+                @Override
+                public String getName() {
+                    return "bluetooth-standin";
+                }
+            };
+
+            SerialTransport serial = new SerialTransport(hostEnd, SerialTransport.DEFAULT_BAUD, 0L);
+            LinkSupervisor supervisor = new LinkSupervisor(Arrays.asList(silent, bluetooth, serial), executor, 1000L);
+
+            try (FanLink link = supervisor.open("AA:BB:CC:DD:EE:FF")) {
+                OutputStream out = link.getOutputStream();
+                CommandPipeline pipeline = new CommandPipeline(bytes -> {
+                    synchronized (out) {
+                        out.write(bytes);
+                        out.flush();
+                    }
+                }, timers);
+                Thread reader = new Thread(() -> {
+                    try (BufferedReader in = new BufferedReader(new InputStreamReader(link.getInputStream(), StandardCharsets.US_ASCII))) {
+                        String line;
+                        while ((line = in.readLine()) != null) {
+                            pipeline.handleInboundLine(line);
+                        }
+                    } catch (IOException ignored) {
+                        // Closed
+                    }
+                }, "test-reader");
+                reader.setDaemon(true);
+                reader.start();
+
+                for (int i = 0; i < FRAMES; i++) {
+                    if (i == FRAMES / 2) {
+                        pipe.attach(null);
+                        bluetoothLink.get().close();
+                    }
+                    String frame = i % 2 == 0
+                            ? FanProtocol.autoProfileFrame(30, 30, 80, 70, 30 + i % 50, 100, 1.0)
+                            : FanProtocol.temperatureFrame(40.0 + i, 35.0 + i, 30.0);
+                    CommandResult result = pipeline.submit(frame).get(15, TimeUnit.SECONDS);
+                    if (result.getStatus() == CommandResult.Status.ACKED) acked++;
+                    else failures.add("frame " + i + ": " + result);
+                    // At most two frames per tachometer window, so the 64 byte receive buffer never overflows
+                    Thread.sleep(500L);
+                }
+                pipeline.close();
+            }
+        } finally {
+            executor.shutdown();
+            timers.shutdownNow();
+            bridge.getOutputStream().close();
+            bridge.destroy();
+        }
+
+        String silentText;
+        synchronized (silentBytes) {
+            silentText = silentBytes.toString(StandardCharsets.US_ASCII);
+        }
+
+        assertEquals("frames acknowledged across the failover, not acked: " + failures, FRAMES, acked);
+        assertEquals("frames handled by the board", FRAMES, handled.get());
+        assertEquals("PWM dropped below the profile floor " + PWM_FLOOR, -1, lowPwm.get());
+        assertTrue("the unanswered path was sent frames: " + silentText,
+                silentText.lines().allMatch(line -> line.startsWith("E")));
+    }
+
+    private static boolean onPath(String program) {
+        String path = System.getenv("PATH");
+        if (path == null) return false;
+        for (String dir : path.split(File.pathSeparator)) {
+            if (!dir.isEmpty() && Files.isExecutable(Paths.get(dir, program))) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,90 @@
+package com.heatsync.emulator;
+
+import com.heatsync.service.bluetooth.ConnectionPool;
+import com.heatsync.service.bluetooth.FanProtocol;
+import com.heatsync.service.transport.FanLink;
+import com.heatsync.service.transport.FanLinkTransport;
+import com.heatsync.service.transport.PipeTransport;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Thread and memory footprint of the Bluetooth stack's executor model.
+ *
+ * A {@link ConnectionPool} connects to N {@link FanControllerEmulator}s, once with the platform
+ * thread model (a reader and a writer platform thread per device, as every link had before) and once
+ * with virtual threads, then the run reports:
+ * - platform threads owned by the pool, found by name;
+ * - the JVM's live platform thread count, which includes the emulators' own two threads per device;
+ * - heap in use after a GC;
+ * - tasks still live after {@link ConnectionPool#close()}, which should be none.
+ *
+ * Virtual threads need Java 21; on older JVMs the second run falls back to platform threads.
+ *
+ * Usage: ThreadModelBenchmark [devices] (default 32)
+ */
+public final class ThreadModelBenchmark {
+
+    private static final String PROFILE = FanProtocol.autoProfileFrame(30, 30, 80, 80, 20, 100, 0.5);
+
+    // Hide constructor
+    private ThreadModelBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        int devices = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        System.out.printf("Java %d, %d devices%n", Runtime.version().feature(), devices);
+        System.out.printf("%-9s %10s %11s %9s %11s %12s%n",
+                "mode", "connected", "pool thr", "jvm thr", "heap MiB", "live after");
+        for (String mode : new String[] { "platform", "virtual" }) {
+            run(mode, devices);
+        }
+    }
+
+    private static void run(String mode, int devices) throws Exception {
+        System.setProperty("heatsync.threads", mode);
+        Map<String, PipeTransport> pipes = new HashMap<>();
+        for (int i = 0; i < devices; i++) {
+            pipes.put(String.format("PAD%02d", i), new PipeTransport(new FanControllerEmulator()));
+        }
+        FanLinkTransport transport = new FanLinkTransport() {
+            @Override
+            public FanLink open(String address) throws IOException {
+                return pipes.get(address).open(address);
+            }
+
+            @Override
+            public String getName() {
+                return "pipe-pool";
+            }
+        };
+
+        ConnectionPool pool = new ConnectionPool(transport);
+        for (String address : pipes.keySet()) pool.add(address, PROFILE);
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (pool.connectedCount() < devices && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        Thread.sleep(500L);
+
+        int poolThreads = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("heatsync-pool")) poolThreads++;
+        }
+        int jvmThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+        System.gc();
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        int connected = pool.connectedCount();
+        String actualMode = pool.getExecutor().getMode().name().toLowerCase();
+
+        pool.close();
+        int liveAfter = pool.getExecutor().getLiveTasks();
+
+        System.out.printf("%-9s %10d %11d %9d %11.1f %12d%n",
+                actualMode, connected, poolThreads, jvmThreads, heap.getUsed() / (1024.0 * 1024.0), liveAfter);
+        Thread.sleep(1500L); // Let the emulators notice their links closed
+    }
+}
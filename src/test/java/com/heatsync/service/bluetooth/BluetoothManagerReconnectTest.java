@@ -0,0 +1,461 @@
+package com.heatsync.service.bluetooth;
+
+import com.heatsync.TestConfigDir;
+import com.heatsync.emulator.FanControllerEmulator;
+import com.heatsync.service.transport.FanLink;
+import com.heatsync.service.transport.FanLinkTransport;
+import com.heatsync.service.transport.PipeTransport;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Stresses {@link BluetoothManager} with links that outlive their close: reads and writes that
+ * only return when released, as a blocked RFCOMM stream does.
+ *
+ * - A reader of a closed link that wakes up after the next link was opened must leave the new link
+ *   alone.
+ * - A batched write that fails because the link was closed on purpose must not start a reconnect.
+ *
+ * Either failure shows up as an unexpected BACKOFF, an extra open or a closed current link.
+ *
+ * A hammer then runs threads that connect, close, send and cut the device's end of the link at
+ * random against a {@link FanControllerEmulator}, and checks that
+ * - every transition published is an edge of the diagram in {@link ConnectionState};
+ * - no two connection attempts ever ran at once;
+ * - every link that came up was reported down exactly once;
+ * - every reconnect cycle was started by a link the device cut, and by no other failure.
+ *
+ * -Dheatsync.hammer.seconds and -Dheatsync.hammer.threads change its run (default 5 s, 4 threads).
+ */
+public class BluetoothManagerReconnectTest {
+    private static final String ADDRESS = "00:11:22:33:44:55";
+
+    private static final long HAMMER_SECONDS = Long.getLong("heatsync.hammer.seconds", 5L);
+    private static final int HAMMER_THREADS = Integer.getInteger("heatsync.hammer.threads", 4);
+
+    // The edges of the diagram in ConnectionState
+    private static final Map<ConnectionState, Set<ConnectionState>> EDGES = Map.of(
+            ConnectionState.IDLE, EnumSet.of(ConnectionState.SCANNING, ConnectionState.CONNECTING, ConnectionState.BACKOFF),
+            ConnectionState.SCANNING, EnumSet.of(ConnectionState.IDLE, ConnectionState.CONNECTING, ConnectionState.BACKOFF),
+            ConnectionState.CONNECTING, EnumSet.of(ConnectionState.CONNECTED, ConnectionState.BACKOFF, ConnectionState.IDLE),
+            ConnectionState.CONNECTED, EnumSet.of(ConnectionState.DRAINING),
+            ConnectionState.DRAINING, EnumSet.of(ConnectionState.IDLE),
+            ConnectionState.BACKOFF, EnumSet.of(ConnectionState.CONNECTING, ConnectionState.IDLE));
+
+    private BluetoothManager manager;
+    private final List<ConnectionState> entered = new CopyOnWriteArrayList<>();
+
+    @BeforeClass
+    public static void keepConfigAway() throws IOException {
+        // Connecting saves the device address in the config file
+        TestConfigDir.use();
+    }
+
+    @After
+    public void shutdown() {
+        if (manager != null) manager.shutdown();
+    }
+
+    @Test(timeout = 60_000L)
+    public void staleReaderLeavesTheNextLinkOpen() throws Exception {
+        TestTransport transport = new TestTransport(false);
+        start(transport);
+        int opens = transport.opens();
+        Random random = new Random(27);
+
+        connect();
+        for (int i = 0; i < 200; i++) {
+            TestLink old = transport.last();
+            manager.closeConnection();
+
+            // The old read returns somewhere around the next connect
+            int delayMicros = random.nextInt(2000);
+            Thread releaser = new Thread(() -> {
+                sleepMicros(delayMicros);
+                old.releaseRead();
+            });
+            releaser.start();
+            connect();
+            releaser.join();
+
+            TestLink current = transport.last();
+            waitForReader(old);
+            assertEquals("iteration " + i, ConnectionState.CONNECTED, manager.getConnectionState());
+            assertFalse("iteration " + i + ": the stale reader closed the next link", current.isClosed());
+            assertEquals("iteration " + i + ": extra opens", opens + i + 2, transport.opens());
+        }
+        assertFalse("a reconnect was started: " + entered, entered.contains(ConnectionState.BACKOFF));
+    }
+
+    @Test(timeout = 60_000L)
+    public void batchFailingAfterCloseDoesNotReconnect() throws Exception {
+        TestTransport transport = new TestTransport(true);
+        start(transport);
+        int opens = transport.opens();
+
+        for (int i = 0; i < 20; i++) {
+            connect();
+            TestLink link = transport.last();
+            link.blockWrites();
+            // Sent from another thread, as the telemetry tick does: it may queue behind the profile
+            // sync of the connect, whose write then is the one blocking
+            CompletableFuture<Boolean> send = CompletableFuture.supplyAsync(() -> manager.sendTemperatureData(50.0, 40.0, 30.0));
+            assertTrue("iteration " + i + ": nothing was written", link.awaitBlockedWrite());
+
+            // The flush holds the batch while its write blocks; closing must not wait for it
+            CompletableFuture<Void> close = CompletableFuture.runAsync(manager::closeConnection);
+            try {
+                close.get(5, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                fail("iteration " + i + ": closeConnection waited for the blocked write");
+            }
+            assertTrue("iteration " + i + ": the blocked write did not fail", link.awaitFailedWrite());
+            send.get(5, TimeUnit.SECONDS);
+
+            // The error handler runs on the flush thread right after the write failed
+            Thread.sleep(100L);
+            assertEquals("iteration " + i, ConnectionState.IDLE, manager.getConnectionState());
+            assertEquals("iteration " + i + ": extra opens", opens + i + 1, transport.opens());
+        }
+        assertFalse("a reconnect was started: " + entered, entered.contains(ConnectionState.BACKOFF));
+    }
+
+    @Test(timeout = 120_000L)
+    public void hammerKeepsTransitionsAndEventsConsistent() throws Exception {
+        HammerTransport transport = new HammerTransport(new PipeTransport(new FanControllerEmulator()));
+        manager = new BluetoothManager(transport);
+        manager.setAcknowledgedMode(true);
+        awaitSettled();
+        manager.closeConnection();
+
+        List<String> illegal = new CopyOnWriteArrayList<>();
+        AtomicInteger connectedStates = new AtomicInteger();
+        AtomicInteger cycles = new AtomicInteger();
+        // Attempts never overlap, so the link that came up last is the one a new cycle recovers
+        AtomicReference<FanLink> upLink = new AtomicReference<>();
+        Set<FanLink> recovered = ConcurrentHashMap.newKeySet();
+        List<String> spurious = new CopyOnWriteArrayList<>();
+        manager.addConnectionStateListener((from, to) -> {
+            if (!EDGES.get(from).contains(to)) illegal.add(from + " -> " + to);
+            if (to == ConnectionState.CONNECTED) {
+                connectedStates.incrementAndGet();
+                upLink.set(transport.latest.get());
+            }
+            // A failed attempt moves CONNECTING -> BACKOFF; any other way in starts a new cycle,
+            // which only a link the device cut may start, and only once
+            if (to == ConnectionState.BACKOFF && from != ConnectionState.CONNECTING) {
+                cycles.incrementAndGet();
+                FanLink lost = upLink.get();
+                if (lost == null || !transport.isCut(lost)) spurious.add("cycle " + cycles.get() + " for a link the device did not cut");
+                else if (!recovered.add(lost)) spurious.add("cycle " + cycles.get() + " for a link already recovered");
+            }
+        });
+        AtomicInteger connectEvents = new AtomicInteger();
+        AtomicInteger disconnectEvents = new AtomicInteger();
+        AtomicInteger failedAttemptEvents = new AtomicInteger();
+        manager.setEventListener(new BluetoothEventListener() {
+            @Override public void onDeviceDiscovered(Object deviceObj, String name, String address, int rssi) {}
+            @Override public void onDeviceConnected(Object deviceObj) { connectEvents.incrementAndGet(); }
+            @Override public void onScanFailed(int errorCode) {}
+            @Override public void onScanStopped() {}
+            @Override public void onFanRpmReceived(int rpm) {}
+
+            @Override
+            public void onDeviceDisconnected(Object deviceObj, int status) {
+                // -2 reports an attempt that failed to open, not a link going down
+                if (status == -2) failedAttemptEvents.incrementAndGet();
+                else disconnectEvents.incrementAndGet();
+            }
+        });
+        int opensBefore = transport.opens.get();
+
+        long end = System.currentTimeMillis() + HAMMER_SECONDS * 1000L;
+        AtomicReference<Throwable> crashed = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < HAMMER_THREADS; t++) {
+            Random random = new Random(27L * 31 + t);
+            Thread worker = new Thread(() -> {
+                try {
+                    while (System.currentTimeMillis() < end) {
+                        int action = random.nextInt(100);
+                        if (action < 25) {
+                            manager.connectToDevice(ADDRESS);
+                        } else if (action < 40) {
+                            manager.closeConnection();
+                        } else if (action < 75) {
+                            manager.sendTemperatureData(40 + random.nextInt(40), 35, 30);
+                        } else if (action < 85) {
+                            manager.sendCommandAcknowledged(FanProtocol.autoProfileFrame(30, 30, 80, 70, 30 + random.nextInt(20), 100, 1.0));
+                        } else if (action < 90) {
+                            transport.cutLatest();
+                        } else {
+                            // Repeats a reconnect request, as the UI and the telemetry tick may
+                            manager.reconnectToSavedMac();
+                        }
+                        sleepMicros(random.nextInt(2000));
+                    }
+                } catch (Throwable e) {
+                    crashed.compareAndSet(null, e);
+                }
+            }, "hammer-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) worker.join();
+        if (crashed.get() != null) throw new AssertionError("a hammer thread failed", crashed.get());
+
+        // Let a reconnect in progress finish, then take the last link down
+        awaitSettled();
+        manager.closeConnection();
+        awaitSettled();
+        assertEquals(ConnectionState.IDLE, manager.getConnectionState());
+
+        int opened = transport.opens.get() - opensBefore;
+        assertTrue("illegal transitions: " + illegal, illegal.isEmpty());
+        assertTrue(transport.maxConcurrentOpens.get() + " connection attempts ran at once", transport.maxConcurrentOpens.get() <= 1);
+        assertEquals("links that came up against links opened", opened, connectedStates.get());
+        assertEquals("connect events against links that came up", connectedStates.get(), connectEvents.get());
+        assertEquals("disconnect events against links that came up", connectedStates.get(), disconnectEvents.get());
+        assertEquals("failed attempts reported, no open failed", 0, failedAttemptEvents.get());
+        assertTrue("reconnects not caused by a cut: " + spurious, spurious.isEmpty());
+        assertTrue("the hammer did not reconnect: " + cycles.get() + " cycles", HAMMER_SECONDS < 2 || cycles.get() > 0);
+    }
+
+    // Waits for an attempt or reconnect cycle in progress to end
+    private void awaitSettled() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20_000L;
+        while (System.currentTimeMillis() < deadline) {
+            ConnectionState state = manager.getConnectionState();
+            if (state != ConnectionState.CONNECTING && state != ConnectionState.BACKOFF && state != ConnectionState.DRAINING) return;
+            Thread.sleep(10L);
+        }
+        fail("still " + manager.getConnectionState() + " after 20 s");
+    }
+
+    // A manager connects to the address an earlier test saved on startup; that link is closed again
+    private void start(TestTransport transport) throws InterruptedException {
+        manager = new BluetoothManager(transport);
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (manager.getConnectionState() == ConnectionState.CONNECTING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1L);
+        }
+        manager.closeConnection();
+        transport.links.forEach(TestLink::releaseRead);
+        manager.addConnectionStateListener((from, to) -> entered.add(to));
+    }
+
+    private void connect() throws InterruptedException {
+        assertTrue("connect not started, state " + manager.getConnectionState(), manager.connectToDevice(ADDRESS));
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (!manager.isConnected() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1L);
+        }
+        assertEquals(ConnectionState.CONNECTED, manager.getConnectionState());
+    }
+
+    // The reader handles its failed read on its own thread; give it the time to act on it
+    private static void waitForReader(TestLink link) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (link.readsInProgress() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1L);
+        }
+        assertEquals("the old read was never released", 0, link.readsInProgress());
+        Thread.sleep(5L);
+    }
+
+    private static void sleepMicros(int micros) {
+        long end = System.nanoTime() + micros * 1000L;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /*
+     * Opens emulator links, counting attempts that overlap, and cuts the latest link from the
+     * device's side on request, as a controller that lost power does
+     */
+    private static final class HammerTransport implements FanLinkTransport {
+        private final FanLinkTransport inner;
+        private final AtomicInteger opening = new AtomicInteger();
+        private final AtomicInteger maxConcurrentOpens = new AtomicInteger();
+        private final AtomicInteger opens = new AtomicInteger();
+        private final AtomicInteger cuts = new AtomicInteger();
+        private final AtomicReference<FanLink> latest = new AtomicReference<>();
+        private final Map<FanLink, AtomicBoolean> cut = new ConcurrentHashMap<>();
+
+        HammerTransport(FanLinkTransport inner) {
+            this.inner = inner;
+        }
+
+        @Override
+        public FanLink open(String address) throws IOException {
+            int now = opening.incrementAndGet();
+            maxConcurrentOpens.accumulateAndGet(now, Math::max);
+            try {
+                // Paging takes a while; keep the attempt open long enough to overlap with others
+                sleepMicros(500);
+                FanLink link = inner.open(address);
+                cut.put(link, new AtomicBoolean());
+                latest.set(link);
+                opens.incrementAndGet();
+                return link;
+            } finally {
+                opening.decrementAndGet();
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "hammer";
+        }
+
+        boolean isCut(FanLink link) {
+            AtomicBoolean flag = cut.get(link);
+            return flag != null && flag.get();
+        }
+
+        // Closing the host end makes the manager's read return -1, as a dropped RFCOMM channel does
+        void cutLatest() throws IOException {
+            FanLink link = latest.get();
+            if (link != null && cut.get(link).compareAndSet(false, true)) {
+                cuts.incrementAndGet();
+                link.close();
+            }
+        }
+    }
+
+    /* Opens a TestLink per call */
+    private static final class TestTransport implements FanLinkTransport {
+        private final boolean closeEndsRead;
+        private final List<TestLink> links = new CopyOnWriteArrayList<>();
+
+        TestTransport(boolean closeEndsRead) {
+            this.closeEndsRead = closeEndsRead;
+        }
+
+        @Override
+        public FanLink open(String address) {
+            TestLink link = new TestLink(closeEndsRead);
+            links.add(link);
+            return new FanLink(address, link.in, link.out, link, 0L);
+        }
+
+        @Override
+        public String getName() {
+            return "test";
+        }
+
+        TestLink last() { return links.get(links.size() - 1); }
+        int opens() { return links.size(); }
+    }
+
+    /*
+     * A link whose read blocks until released, or until closed if closeEndsRead, and then fails.
+     * Like a native read, it does not wake up when its thread is interrupted.
+     * Writes are swallowed until blockWrites(); the next write then blocks until the link closes
+     * and fails, as a write to a peer that stopped reading does.
+     */
+    private static final class TestLink implements Closeable {
+        private final boolean closeEndsRead;
+        private final CountDownLatch readRelease = new CountDownLatch(1);
+        private final AtomicInteger readsInProgress = new AtomicInteger();
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private final CountDownLatch writeBlocked = new CountDownLatch(1);
+        private final CountDownLatch writeFailed = new CountDownLatch(1);
+        private volatile boolean blockWrites;
+
+        TestLink(boolean closeEndsRead) {
+            this.closeEndsRead = closeEndsRead;
+        }
+
+        final InputStream in = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return read(new byte[1], 0, 1);
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                readsInProgress.incrementAndGet();
+                boolean interrupted = false;
+                try {
+                    while (true) {
+                        try {
+                            readRelease.await();
+                            break;
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                } finally {
+                    readsInProgress.decrementAndGet();
+                    if (interrupted) Thread.currentThread().interrupt();
+                }
+                throw new IOException("Connection reset");
+            }
+        };
+
+        final OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (isClosed()) throw new IOException("Socket closed");
+                if (!blockWrites) return;
+                writeBlocked.countDown();
+                try {
+                    closed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                writeFailed.countDown();
+                throw new IOException("Socket closed");
+            }
+        };
+
+        void blockWrites() { blockWrites = true; }
+        void releaseRead() { readRelease.countDown(); }
+        boolean isClosed() { return closed.getCount() == 0; }
+        int readsInProgress() { return readsInProgress.get(); }
+
+        boolean awaitBlockedWrite() throws InterruptedException { return writeBlocked.await(5, TimeUnit.SECONDS); }
+        boolean awaitFailedWrite() throws InterruptedException { return writeFailed.await(5, TimeUnit.SECONDS); }
+
+        @Override
+        public void close() {
+            closed.countDown();
+            if (closeEndsRead) readRelease.countDown();
+        }
+    }
+}